@@ -0,0 +1,157 @@
+package com.example.mentalhealthjournal;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Running per-day mood statistics (count, sum and sum of squares of mood scores, and a per-mood
+ * histogram indexed by {@link Mood} ordinal), built once when the user's data is loaded and updated as each mood entry is recorded.
+ * <p>
+ * The day buckets feed the chart. Period summaries come from Fenwick trees indexed by epoch day over
+ * the same statistics, so average, deviation and mood counts for any range cost O(log n) (times the
+ * number of distinct moods for the histogram) regardless of how much history there is.
+ * Used from the JavaFX Application Thread only.
+ */
+final class DailyMoodAggregates {
+
+    /** Slack kept on both sides of the indexed range so nearby back-dated entries do not force a rebuild. */
+    private static final int INDEX_PADDING_DAYS = 366;
+    /** Above this span the trees would get large; summaries then merge the day buckets instead. */
+    private static final int MAX_INDEXED_DAYS = 200 * 366;
+
+    static final class DayBucket {
+        int count;
+        long sum;
+        long sumOfSquares;
+        final int[] moodCounts = new int[Mood.COUNT];
+
+        double average() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+    }
+
+    /** Statistics of the entries in a period. */
+    static final class Summary {
+        int count;
+        long sum;
+        long sumOfSquares;
+        final int[] moodCounts = new int[Mood.COUNT];
+
+        double average() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        /** Population standard deviation of the mood scores. */
+        double standardDeviation() {
+            if (count == 0) return 0.0;
+            double mean = average();
+            return Math.sqrt(Math.max(0.0, (double) sumOfSquares / count - mean * mean));
+        }
+    }
+
+    private final NavigableMap<Long, DayBucket> days = new TreeMap<>();
+
+    // Fenwick trees over [originDay, originDay + size); null when there is nothing to index.
+    private long originDay;
+    private FenwickTree counts;
+    private FenwickTree sums;
+    private FenwickTree squares;
+    private final FenwickTree[] moodTrees = new FenwickTree[Mood.COUNT]; // null for moods never logged
+
+    /** Builds the buckets from every dated entry in {@code entries}, reading only the date and mood columns. */
+    static DailyMoodAggregates of(MoodEntryList entries) {
+        DailyMoodAggregates aggregates = new DailyMoodAggregates();
+        entries.forEachMoodBetween(LocalDate.MIN, LocalDate.MAX, aggregates::addToBucket);
+        aggregates.rebuildIndex();
+        return aggregates;
+    }
+
+    void add(HelloApplication.MoodEntry entry) {
+        if (entry.date != null) add(entry.date.toEpochDay(), entry.moodKind);
+    }
+
+    void add(long epochDay, Mood mood) {
+        addToBucket(epochDay, mood);
+        if (counts == null || epochDay < originDay || epochDay >= originDay + counts.size()) {
+            rebuildIndex();
+            return;
+        }
+        int index = (int) (epochDay - originDay);
+        int score = mood.score;
+        counts.add(index, 1);
+        sums.add(index, score);
+        squares.add(index, (long) score * score);
+        if (moodTrees[mood.ordinal()] == null) moodTrees[mood.ordinal()] = new FenwickTree(counts.size());
+        moodTrees[mood.ordinal()].add(index, 1);
+    }
+
+    private void addToBucket(long epochDay, Mood mood) {
+        int score = mood.score;
+        DayBucket day = days.computeIfAbsent(epochDay, d -> new DayBucket());
+        day.count++;
+        day.sum += score;
+        day.sumOfSquares += (long) score * score;
+        day.moodCounts[mood.ordinal()]++;
+    }
+
+    /** Re-creates the trees to cover every bucket (plus padding), in O(days + moods * days). */
+    private void rebuildIndex() {
+        counts = sums = squares = null;
+        Arrays.fill(moodTrees, null);
+        if (days.isEmpty()) return;
+        long span = days.lastKey() - days.firstKey() + 1 + 2L * INDEX_PADDING_DAYS;
+        if (span > MAX_INDEXED_DAYS) return;
+
+        originDay = days.firstKey() - INDEX_PADDING_DAYS;
+        int size = (int) span;
+        long[] countValues = new long[size];
+        long[] sumValues = new long[size];
+        long[] squareValues = new long[size];
+        long[][] moodValues = new long[Mood.COUNT][];
+        days.forEach((epochDay, day) -> {
+            int index = (int) (epochDay - originDay);
+            countValues[index] = day.count;
+            sumValues[index] = day.sum;
+            squareValues[index] = day.sumOfSquares;
+            for (int mood = 0; mood < Mood.COUNT; mood++) {
+                if (day.moodCounts[mood] == 0) continue;
+                if (moodValues[mood] == null) moodValues[mood] = new long[size];
+                moodValues[mood][index] = day.moodCounts[mood];
+            }
+        });
+        counts = FenwickTree.of(countValues);
+        sums = FenwickTree.of(sumValues);
+        squares = FenwickTree.of(squareValues);
+        for (int mood = 0; mood < Mood.COUNT; mood++) {
+            if (moodValues[mood] != null) moodTrees[mood] = FenwickTree.of(moodValues[mood]);
+        }
+    }
+
+    /** Day buckets within [start, end], in date order. */
+    NavigableMap<Long, DayBucket> daysBetween(LocalDate start, LocalDate end) {
+        return Collections.unmodifiableNavigableMap(days.subMap(start.toEpochDay(), true, end.toEpochDay(), true));
+    }
+
+    Summary summarize(LocalDate start, LocalDate end) {
+        Summary summary = new Summary();
+        if (counts == null) {
+            for (DayBucket day : days.subMap(start.toEpochDay(), true, end.toEpochDay(), true).values()) {
+                summary.count += day.count;
+                summary.sum += day.sum;
+                summary.sumOfSquares += day.sumOfSquares;
+                for (int mood = 0; mood < Mood.COUNT; mood++) summary.moodCounts[mood] += day.moodCounts[mood];
+            }
+            return summary;
+        }
+
+        int from = (int) Math.max(0, Math.min(counts.size(), start.toEpochDay() - originDay));
+        int to = (int) Math.max(-1, Math.min(counts.size() - 1, end.toEpochDay() - originDay));
+        summary.count = (int) counts.rangeSum(from, to);
+        summary.sum = sums.rangeSum(from, to);
+        summary.sumOfSquares = squares.rangeSum(from, to);
+        for (int mood = 0; mood < Mood.COUNT; mood++) {
+            if (moodTrees[mood] != null) summary.moodCounts[mood] = (int) moodTrees[mood].rangeSum(from, to);
+        }
+        return summary;
+    }
+}
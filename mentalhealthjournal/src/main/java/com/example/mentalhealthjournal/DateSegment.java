@@ -0,0 +1,43 @@
+package com.example.mentalhealthjournal;
+
+/**
+ * Read-only, memory-mapped snapshot of entries with an epoch-day per row. In a segment sorted by
+ * date the day column doubles as the index: a date range is located with two binary searches and
+ * only the pages holding those rows are touched.
+ */
+interface DateSegment<T> {
+
+    /** Day stored for entries without a date; it sorts before every real date. */
+    int NO_DATE = Integer.MIN_VALUE;
+
+    int rows();
+
+    /** Epoch day of {@code row}, or {@link #NO_DATE}. */
+    int epochDay(int row);
+
+    T entry(int row);
+
+    /** {@link Mood#score} of the mood of {@code row}, read without decoding the row. */
+    int moodScore(int row);
+
+    /** Length in UTF-8 bytes of the text of {@code row}, read without decoding the row. */
+    int textLength(int row);
+
+    /** Whether rows are in ascending epoch-day order, so {@link #lowerBound} can be used. */
+    boolean sortedByDate();
+
+    /** First row whose day is {@code >= day}, or {@link #rows()} if there is none. Requires a sorted segment. */
+    default int lowerBound(long day) {
+        int low = 0;
+        int high = rows();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochDay(mid) < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,392 @@
+package com.example.mentalhealthjournal;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record log that sits next to a snapshot of the same entries.
+ * <p>
+ * Every saved entry becomes one length-prefixed, checksummed record, so a save no longer rewrites the
+ * whole history. The log header names the snapshot generation that holds everything up to its base
+ * sequence number. Compaction writes the next generation as a new file and then atomically replaces
+ * the log, so the snapshot currently being read (or memory-mapped) is never overwritten in place.
+ * Generation 0 is the legacy file written by older versions and is never deleted.
+ * <p>
+ * File layout: header {@code [int magic][short version][long baseSeq][int generation]}, then records
+ * {@code [int length][int crc32][long seq][payload]} where length and crc cover seq + payload.
+ * <p>
+ * A log opened with {@link #openReadOnly} (e.g. a doctor viewing a patient's entries) never creates,
+ * truncates or deletes a file and rejects appends and compactions.
+ */
+final class EntryLog<T> implements Closeable {
+
+    @FunctionalInterface
+    interface SnapshotWriter<T> {
+        /** Writes {@code entries} to {@code target} and forces them to disk before returning. */
+        void write(List<T> entries, Path target) throws IOException;
+    }
+
+    private static final int MAGIC = 0x4D484A4C; // "MHJL"
+    private static final short VERSION_1 = 1; // no generation field; the snapshot is always generation 0
+    private static final short VERSION = 2;
+    private static final int HEADER_SIZE_V1 = Integer.BYTES + Short.BYTES + Long.BYTES;
+    private static final int HEADER_SIZE = HEADER_SIZE_V1 + Integer.BYTES;
+    private static final int RECORD_PREFIX_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final IntFunction<Path> snapshotPaths;
+    private final Path logPath;
+    private final RecordCodecs.RecordCodec<T> codec;
+    private final SnapshotWriter<T> snapshotWriter;
+    private final boolean readOnly;
+
+    private FileChannel channel; // null for a read-only log whose file does not exist
+    private int headerSize;
+    private long baseSeq;
+    private int generation;
+    private long lastSeq;
+    private int recordsSinceCompaction;
+    private boolean compacting;
+    private boolean closed;
+
+    private EntryLog(IntFunction<Path> snapshotPaths, Path logPath, RecordCodecs.RecordCodec<T> codec, SnapshotWriter<T> snapshotWriter, boolean readOnly) {
+        this.snapshotPaths = snapshotPaths;
+        this.logPath = logPath;
+        this.codec = codec;
+        this.snapshotWriter = snapshotWriter;
+        this.readOnly = readOnly;
+    }
+
+    /**
+     * Opens (or creates) the log and removes leftovers of a compaction that never committed.
+     *
+     * @param snapshotPaths maps a snapshot generation to its file; generation 0 is the legacy snapshot
+     */
+    static <T> EntryLog<T> open(IntFunction<Path> snapshotPaths, Path logPath, RecordCodecs.RecordCodec<T> codec, SnapshotWriter<T> snapshotWriter) throws IOException {
+        EntryLog<T> log = new EntryLog<>(snapshotPaths, logPath, codec, snapshotWriter, false);
+        log.openChannel();
+        log.removeStaleFiles();
+        return log;
+    }
+
+    /**
+     * Opens the log for reading only: a missing log reads as empty, a torn tail is skipped rather than
+     * truncated, and no leftover files are removed.
+     */
+    static <T> EntryLog<T> openReadOnly(IntFunction<Path> snapshotPaths, Path logPath, RecordCodecs.RecordCodec<T> codec) throws IOException {
+        EntryLog<T> log = new EntryLog<>(snapshotPaths, logPath, codec, null, true);
+        log.openChannel();
+        return log;
+    }
+
+    /** The snapshot file the log is currently based on. */
+    synchronized Path snapshotPath() {
+        return snapshotPaths.apply(generation);
+    }
+
+    synchronized int snapshotGeneration() {
+        return generation;
+    }
+
+    /**
+     * Appends every entry recorded after the snapshot to {@code target} and truncates a torn trailing record.
+     */
+    synchronized void replayInto(List<T> target) throws IOException {
+        ensureOpen();
+        if (channel == null) return;
+        ByteBuffer prefix = ByteBuffer.allocate(RECORD_PREFIX_SIZE);
+        long position = headerSize;
+        long size = channel.size();
+        int replayed = 0;
+
+        while (position + RECORD_PREFIX_SIZE <= size) {
+            prefix.clear();
+            readFully(channel, prefix, position);
+            prefix.flip();
+            int length = prefix.getInt();
+            int crc = prefix.getInt();
+            if (length < Long.BYTES || position + RECORD_PREFIX_SIZE + length > size) break;
+
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(channel, body, position + RECORD_PREFIX_SIZE);
+            if (crc32(body.array(), length) != crc) break;
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(body.array()));
+            long seq = in.readLong();
+            if (seq > baseSeq) {
+                target.add(codec.read(in));
+                replayed++;
+            }
+            lastSeq = Math.max(lastSeq, seq);
+            position += RECORD_PREFIX_SIZE + length;
+        }
+
+        if (position < size && readOnly) {
+            System.err.println("Warning: " + logPath.getFileName() + " has a torn or corrupt tail at byte " + position + ". Ignoring it (read-only).");
+        } else if (position < size) {
+            System.err.println("Warning: " + logPath.getFileName() + " has a torn or corrupt tail at byte " + position + ". Truncating.");
+            channel.truncate(position);
+            channel.force(true);
+        }
+        channel.position(channel.size());
+        recordsSinceCompaction = replayed;
+    }
+
+    /**
+     * Durably appends a single entry. Cost is proportional to the entry, not to the history.
+     */
+    synchronized void append(T entry) throws IOException {
+        ensureWritable();
+        long seq = lastSeq + 1;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(seq);
+        codec.write(entry, out);
+        out.flush();
+
+        byte[] body = bytes.toByteArray();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_PREFIX_SIZE + body.length);
+        record.putInt(body.length).putInt(crc32(body, body.length)).put(body).flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        channel.force(false);
+        lastSeq = seq;
+        recordsSinceCompaction++;
+    }
+
+    synchronized int recordsSinceCompaction() {
+        return recordsSinceCompaction;
+    }
+
+    /**
+     * Folds the log into a new snapshot generation on {@code executor}. {@code snapshot} must be an
+     * unchanging copy of every entry appended so far, taken on the appending thread.
+     */
+    void compactAsync(List<T> snapshot, Executor executor) {
+        long throughSeq;
+        synchronized (this) {
+            if (closed || readOnly || compacting) return;
+            compacting = true;
+            throughSeq = lastSeq;
+        }
+        executor.execute(() -> {
+            try {
+                compact(snapshot, throughSeq);
+            } catch (IOException e) {
+                System.err.println("Compaction of " + logPath.getFileName() + " failed; the log is kept as is: " + e.getMessage());
+            } finally {
+                synchronized (this) {
+                    compacting = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Same as {@link #compactAsync} but on the calling thread, e.g. to migrate a legacy snapshot at load time.
+     */
+    void compactNow(List<T> snapshot) throws IOException {
+        long throughSeq;
+        synchronized (this) {
+            ensureWritable();
+            if (compacting) throw new IOException("A compaction of " + logPath.getFileName() + " is already running.");
+            compacting = true;
+            throughSeq = lastSeq;
+        }
+        try {
+            compact(snapshot, throughSeq);
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    private void compact(List<T> snapshot, long throughSeq) throws IOException {
+        int nextGeneration;
+        synchronized (this) {
+            nextGeneration = generation + 1;
+        }
+        Path nextSnapshot = snapshotPaths.apply(nextGeneration);
+        Path logTmp = tmpPath(logPath);
+
+        // The snapshot is written outside the lock so appends are not blocked while it is encoded.
+        snapshotWriter.write(snapshot, nextSnapshot);
+
+        Path previousSnapshot;
+        synchronized (this) {
+            if (closed) {
+                Files.deleteIfExists(nextSnapshot);
+                return;
+            }
+            int carried = writeTail(logTmp, throughSeq, nextGeneration);
+            channel.close();
+            try {
+                // Commit point: the new log header is the only thing that names the new generation.
+                Files.move(logTmp, logPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                Files.deleteIfExists(logTmp);
+                Files.deleteIfExists(nextSnapshot);
+                reopenChannel();
+                throw e;
+            }
+            previousSnapshot = snapshotPaths.apply(generation);
+            headerSize = HEADER_SIZE;
+            baseSeq = throughSeq;
+            generation = nextGeneration;
+            recordsSinceCompaction = carried;
+            reopenChannel();
+        }
+        if (nextGeneration - 1 > 0) {
+            deleteQuietly(previousSnapshot);
+        }
+        System.out.println("Compacted " + logPath.getFileName() + " into " + nextSnapshot.getFileName() + " (" + snapshot.size() + " entries).");
+    }
+
+    /**
+     * Writes a new log based on {@code throughSeq}, carrying over records appended after the snapshot was taken.
+     */
+    private int writeTail(Path target, long throughSeq, int targetGeneration) throws IOException {
+        int carried = 0;
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeHeader(out, throughSeq, targetGeneration);
+            ByteBuffer prefix = ByteBuffer.allocate(RECORD_PREFIX_SIZE);
+            long position = headerSize;
+            long size = channel.size();
+            while (position + RECORD_PREFIX_SIZE <= size) {
+                prefix.clear();
+                readFully(channel, prefix, position);
+                prefix.flip();
+                int length = prefix.getInt();
+                ByteBuffer record = ByteBuffer.allocate(RECORD_PREFIX_SIZE + length);
+                readFully(channel, record, position);
+                if (record.getLong(RECORD_PREFIX_SIZE) > throughSeq) {
+                    record.flip();
+                    while (record.hasRemaining()) out.write(record);
+                    carried++;
+                }
+                position += RECORD_PREFIX_SIZE + length;
+            }
+            out.force(true);
+        }
+        return carried;
+    }
+
+    private void openChannel() throws IOException {
+        boolean fresh = !Files.exists(logPath) || Files.size(logPath) < HEADER_SIZE_V1;
+        if (readOnly && fresh) {
+            headerSize = HEADER_SIZE;
+            baseSeq = 0;
+            generation = 0;
+            lastSeq = 0;
+            return;
+        }
+        channel = readOnly
+                ? FileChannel.open(logPath, StandardOpenOption.READ)
+                : FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (fresh) {
+            channel.truncate(0);
+            writeHeader(channel, 0, 0);
+            channel.force(true);
+            headerSize = HEADER_SIZE;
+            baseSeq = 0;
+            generation = 0;
+        } else {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE_V1);
+            readFully(channel, header, 0);
+            header.flip();
+            int magic = header.getInt();
+            short version = header.getShort();
+            if (magic != MAGIC || (version != VERSION_1 && version != VERSION)) {
+                channel.close();
+                throw new IOException(logPath.getFileName() + " is not a supported entry log (magic " + Integer.toHexString(magic) + ", version " + version + ").");
+            }
+            baseSeq = header.getLong();
+            if (version == VERSION_1) {
+                headerSize = HEADER_SIZE_V1;
+                generation = 0;
+            } else {
+                ByteBuffer generationField = ByteBuffer.allocate(Integer.BYTES);
+                readFully(channel, generationField, HEADER_SIZE_V1);
+                headerSize = HEADER_SIZE;
+                generation = generationField.getInt(0);
+            }
+        }
+        lastSeq = baseSeq;
+        channel.position(channel.size());
+    }
+
+    private void removeStaleFiles() throws IOException {
+        // An uncommitted compaction leaves a temp log and/or the next generation behind; the previous
+        // generation can linger if it was still mapped when the last compaction tried to delete it.
+        Files.deleteIfExists(tmpPath(logPath));
+        Files.deleteIfExists(snapshotPaths.apply(generation + 1));
+        if (generation - 1 > 0) {
+            deleteQuietly(snapshotPaths.apply(generation - 1));
+        }
+    }
+
+    private void reopenChannel() throws IOException {
+        channel = FileChannel.open(logPath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+    }
+
+    private static void writeHeader(FileChannel out, long baseSeq, int generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putShort(VERSION).putLong(baseSeq).putInt(generation).flip();
+        out.position(0);
+        while (header.hasRemaining()) out.write(header);
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, position);
+            if (read < 0) throw new EOFException("Unexpected end of entry log");
+            position += read;
+        }
+    }
+
+    private static int crc32(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return (int) crc.getValue();
+    }
+
+    private static Path tmpPath(Path path) {
+        return path.resolveSibling(path.getFileName() + TMP_SUFFIX);
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            System.err.println("Warning: Could not delete old snapshot " + path.getFileName() + " (will retry on next load): " + e.getMessage());
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException(logPath.getFileName() + " is closed.");
+    }
+
+    private void ensureWritable() throws IOException {
+        ensureOpen();
+        if (readOnly) throw new IOException(logPath.getFileName() + " is open read-only.");
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        if (channel != null) channel.close();
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.mentalhealthjournal;
+
+/**
+ * Binary indexed tree over {@code long} values: point updates and range sums in O(log n).
+ * Indexes are 0-based.
+ */
+final class FenwickTree {
+
+    private final long[] tree;
+
+    FenwickTree(int size) {
+        this.tree = new long[size + 1];
+    }
+
+    /** Builds the tree over {@code values} in O(n). */
+    static FenwickTree of(long[] values) {
+        FenwickTree fenwick = new FenwickTree(values.length);
+        long[] tree = fenwick.tree;
+        System.arraycopy(values, 0, tree, 1, values.length);
+        for (int i = 1; i < tree.length; i++) {
+            int parent = i + (i & -i);
+            if (parent < tree.length) tree[parent] += tree[i];
+        }
+        return fenwick;
+    }
+
+    int size() {
+        return tree.length - 1;
+    }
+
+    void add(int index, long delta) {
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /** Sum of the values at indexes {@code [0, index]}; 0 for a negative index. */
+    long prefixSum(int index) {
+        long sum = 0;
+        for (int i = Math.min(index + 1, tree.length - 1); i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /** Sum of the values at indexes {@code [from, to]}. */
+    long rangeSum(int from, int to) {
+        if (to < from) return 0;
+        return prefixSum(to) - prefixSum(from - 1);
+    }
+}
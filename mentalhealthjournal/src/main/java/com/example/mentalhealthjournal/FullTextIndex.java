@@ -0,0 +1,299 @@
+package com.example.mentalhealthjournal;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Inverted index over the text of a user's entries, used by the History search.
+ * <p>
+ * Document ids are positions in the entry list, so documents are added in list order and an entry
+ * recorded later is indexed with one {@link #add} call. Each token keeps a posting list of document
+ * ids with the token's positions, which answers multi-term AND, phrase ({@code "went for a walk"}) and
+ * prefix ({@code walk*}) queries without touching the entry text.
+ * <p>
+ * The index is a cache: it records the snapshot generation whose row order its ids follow and is
+ * rebuilt when that no longer matches. Entries are added on the JavaFX Application Thread while
+ * History searches run on a background thread, so the public operations are synchronized.
+ */
+final class FullTextIndex {
+
+    private static final int MAGIC = 0x4D484A49; // "MHJI"
+    private static final short VERSION = 1;
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /** Document ids in ascending order, each followed by its frequency and that many token positions. */
+    private static final class Postings {
+        int[] data = new int[8];
+        int size;
+        int documents;
+        int lastDocument = -1;
+        int frequencyAt;
+
+        void add(int document, int position) {
+            if (document != lastDocument) {
+                ensureCapacity(3);
+                data[size++] = document;
+                frequencyAt = size;
+                data[size++] = 0;
+                lastDocument = document;
+                documents++;
+            } else {
+                ensureCapacity(1);
+            }
+            data[frequencyAt]++;
+            data[size++] = position;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > data.length) {
+                data = Arrays.copyOf(data, Math.max(size + extra, data.length * 2));
+            }
+        }
+
+        void collectDocuments(BitSet into) {
+            for (int i = 0; i < size; i += 2 + data[i + 1]) {
+                into.set(data[i]);
+            }
+        }
+    }
+
+    private final NavigableMap<String, Postings> dictionary = new TreeMap<>();
+    private final long sourceGeneration;
+    private int documents;
+
+    FullTextIndex(long sourceGeneration) {
+        this.sourceGeneration = sourceGeneration;
+    }
+
+    /** Snapshot generation of the entry list this index was built from. */
+    long sourceGeneration() {
+        return sourceGeneration;
+    }
+
+    synchronized int documentCount() {
+        return documents;
+    }
+
+    /** Indexes {@code text} (may be null) as the next document and returns its id. */
+    synchronized int add(String text) {
+        int document = documents++;
+        List<String> tokens = Tokenizer.SEARCH.tokens(text);
+        for (int position = 0; position < tokens.size(); position++) {
+            dictionary.computeIfAbsent(tokens.get(position), t -> new Postings()).add(document, position);
+        }
+        return document;
+    }
+
+    /**
+     * Ids of the documents matching {@code query}: every whitespace-separated term must occur, a term
+     * ending in {@code *} matches any token starting with it, and a double-quoted phrase must occur as
+     * consecutive tokens. A query without any searchable term matches every document.
+     */
+    synchronized BitSet search(String query) {
+        BitSet matches = new BitSet(documents);
+        matches.set(0, documents);
+        for (String clause : parseClauses(query)) {
+            if (matches.isEmpty()) break;
+            if (clause.startsWith("\"")) {
+                matches.and(matchPhrase(Tokenizer.SEARCH.tokens(clause.substring(1)), matches));
+            } else if (clause.endsWith("*")) {
+                for (String prefix : Tokenizer.SEARCH.tokens(clause.substring(0, clause.length() - 1))) {
+                    matches.and(matchPrefix(prefix));
+                }
+            } else {
+                for (String token : Tokenizer.SEARCH.tokens(clause)) {
+                    matches.and(matchToken(token));
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Relevance of each of {@code documentIds} for {@code query}: the sum over the query's tokens (a
+     * prefix term counts every token it expands to) of the token's frequency in the document times
+     * its inverse document frequency.
+     */
+    synchronized double[] relevance(String query, int[] documentIds) {
+        double[] scores = new double[documentIds.length];
+        if (documentIds.length == 0 || documents == 0) return scores;
+        int[] slots = new int[documents];
+        Arrays.fill(slots, -1);
+        for (int i = 0; i < documentIds.length; i++) {
+            if (documentIds[i] < documents) slots[documentIds[i]] = i;
+        }
+
+        Set<Postings> scored = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (String clause : parseClauses(query)) {
+            boolean phrase = clause.startsWith("\"");
+            boolean prefix = !phrase && clause.endsWith("*");
+            String text = phrase ? clause.substring(1) : prefix ? clause.substring(0, clause.length() - 1) : clause;
+            for (String token : Tokenizer.SEARCH.tokens(text)) {
+                Collection<Postings> lists = prefix
+                        ? dictionary.subMap(token, true, token + Character.MAX_VALUE, false).values()
+                        : dictionary.containsKey(token) ? List.of(dictionary.get(token)) : List.of();
+                for (Postings postings : lists) {
+                    if (!scored.add(postings)) continue;
+                    double idf = Math.log(1.0 + (double) documents / postings.documents);
+                    for (int i = 0; i < postings.size; i += 2 + postings.data[i + 1]) {
+                        int slot = slots[postings.data[i]];
+                        if (slot >= 0) scores[slot] += postings.data[i + 1] * idf;
+                    }
+                }
+            }
+        }
+        return scores;
+    }
+
+    /** Splits a query into plain terms and quoted phrases; a phrase clause keeps its opening quote. */
+    private static List<String> parseClauses(String query) {
+        List<String> clauses = new ArrayList<>();
+        if (query == null) return clauses;
+        int i = 0;
+        int length = query.length();
+        while (i < length) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int close = query.indexOf('"', i + 1);
+                int end = close < 0 ? length : close;
+                clauses.add(query.substring(i, end));
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < length && !Character.isWhitespace(query.charAt(end)) && query.charAt(end) != '"') end++;
+                clauses.add(query.substring(i, end));
+                i = end;
+            }
+        }
+        return clauses;
+    }
+
+    private BitSet matchToken(String token) {
+        BitSet found = new BitSet(documents);
+        Postings postings = dictionary.get(token);
+        if (postings != null) postings.collectDocuments(found);
+        return found;
+    }
+
+    private BitSet matchPrefix(String prefix) {
+        BitSet found = new BitSet(documents);
+        for (Postings postings : dictionary.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            postings.collectDocuments(found);
+        }
+        return found;
+    }
+
+    /** Documents among {@code candidates} where {@code tokens} occur consecutively. */
+    private BitSet matchPhrase(List<String> tokens, BitSet candidates) {
+        BitSet found = new BitSet(documents);
+        if (tokens.isEmpty()) {
+            found.or(candidates);
+            return found;
+        }
+        List<Postings> lists = new ArrayList<>(tokens.size());
+        BitSet containsAll = (BitSet) candidates.clone();
+        for (String token : tokens) {
+            Postings postings = dictionary.get(token);
+            if (postings == null) return found;
+            lists.add(postings);
+            containsAll.and(matchToken(token));
+        }
+        if (containsAll.isEmpty()) return found;
+
+        // Walk every posting list once, in document order, and compare positions of shared documents.
+        int[] cursors = new int[lists.size()];
+        int[] starts = new int[lists.size()];
+        for (int document = containsAll.nextSetBit(0); document >= 0; document = containsAll.nextSetBit(document + 1)) {
+            for (int t = 0; t < lists.size(); t++) {
+                Postings postings = lists.get(t);
+                while (postings.data[cursors[t]] < document) {
+                    cursors[t] += 2 + postings.data[cursors[t] + 1];
+                }
+                starts[t] = cursors[t];
+            }
+            if (hasConsecutivePositions(lists, starts)) found.set(document);
+        }
+        return found;
+    }
+
+    private static boolean hasConsecutivePositions(List<Postings> lists, int[] starts) {
+        int[] first = lists.get(0).data;
+        int firstFrequency = first[starts[0] + 1];
+        for (int p = 0; p < firstFrequency; p++) {
+            int position = first[starts[0] + 2 + p];
+            boolean all = true;
+            for (int t = 1; t < lists.size() && all; t++) {
+                int[] data = lists.get(t).data;
+                all = Arrays.binarySearch(data, starts[t] + 2, starts[t] + 2 + data[starts[t] + 1], position + t) >= 0;
+            }
+            if (all) return true;
+        }
+        return false;
+    }
+
+    // --- Persistence ---
+    // [int magic][short version][long sourceGeneration][int documents][int terms], then per term
+    // [string token][int documents][int size][int data...].
+
+    /** Writes the index to a temporary file, forces it to disk and renames it over {@code target}. */
+    synchronized void writeTo(Path target) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + TMP_SUFFIX);
+        try (FileOutputStream fos = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(sourceGeneration);
+            out.writeInt(documents);
+            out.writeInt(dictionary.size());
+            for (Map.Entry<String, Postings> term : dictionary.entrySet()) {
+                Postings postings = term.getValue();
+                RecordCodecs.writeString(out, term.getKey());
+                out.writeInt(postings.documents);
+                out.writeInt(postings.size);
+                for (int i = 0; i < postings.size; i++) out.writeInt(postings.data[i]);
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static FullTextIndex readFrom(Path source) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(source), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException(source.getFileName() + " is not a supported search index.");
+            }
+            FullTextIndex index = new FullTextIndex(in.readLong());
+            index.documents = in.readInt();
+            int terms = in.readInt();
+            for (int t = 0; t < terms; t++) {
+                String token = RecordCodecs.readString(in);
+                Postings postings = new Postings();
+                postings.documents = in.readInt();
+                postings.size = in.readInt();
+                if (token == null || postings.size < 0) throw new IOException(source.getFileName() + " is corrupt.");
+                postings.data = new int[Math.max(postings.size, 1)];
+                for (int i = 0; i < postings.size; i++) postings.data[i] = in.readInt();
+                int last = -1;
+                for (int i = 0; i < postings.size; i += 2 + postings.data[i + 1]) {
+                    if (i + 1 >= postings.size || postings.data[i + 1] < 1 || i + 2 + postings.data[i + 1] > postings.size
+                            || postings.data[i] >= index.documents || (last >= 0 && postings.data[i] <= postings.data[last])) {
+                        throw new IOException(source.getFileName() + " has a corrupt posting list for '" + token + "'.");
+                    }
+                    last = i;
+                }
+                if (last >= 0) {
+                    postings.lastDocument = postings.data[last];
+                    postings.frequencyAt = last + 1;
+                }
+                index.dictionary.put(token, postings);
+            }
+            return index;
+        }
+    }
+}
@@ -38,20 +38,27 @@ import javafx.util.Duration;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class HelloApplication extends Application {
@@ -95,10 +102,19 @@ public class HelloApplication extends Application {
         String content;
         String mood;
 
+        transient Mood moodKind;
+
         public JournalEntry(LocalDate date, String content, String mood) {
             this.date = date;
             this.content = content != null ? content : "";
             this.mood = mood != null ? mood : "Unknown";
+            this.moodKind = Mood.of(this.mood);
+        }
+
+        @Serial
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            this.moodKind = Mood.of(this.mood);
         }
 
         @Override
@@ -114,10 +130,19 @@ public class HelloApplication extends Application {
         String mood;
         String notes;
 
+        transient Mood moodKind;
+
         public MoodEntry(LocalDate date, String mood, String notes) {
             this.date = date;
             this.mood = mood != null ? mood : "Unknown";
             this.notes = notes != null ? notes : "";
+            this.moodKind = Mood.of(this.mood);
+        }
+
+        @Serial
+        private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+            in.defaultReadObject();
+            this.moodKind = Mood.of(this.mood);
         }
 
         @Override
@@ -151,7 +176,8 @@ public class HelloApplication extends Application {
         transient boolean isOnline = false;
         transient LocalDateTime lastSeen;
         transient ObservableList<ChatMessage> chatMessages;
-
+        transient Set<Long> receivedMessageIds; // built from the chat history on first use; FX thread only
+        transient int unreadMessages; // received since the friend's chat was last open; FX thread only
 
         public Friend(String uid, String nickname) {
             this.uid = uid;
@@ -169,6 +195,21 @@ public class HelloApplication extends Application {
             return this.chatMessages;
         }
 
+        /**
+         * Records the id of a message received from this friend; {@code false} if the chat history, which is
+         * saved, already holds a message with that id, so a resend after a lost acknowledgement is dropped
+         * even across restarts.
+         */
+        boolean firstReceipt(long messageId) {
+            if (receivedMessageIds == null) {
+                receivedMessageIds = new HashSet<>();
+                for (ChatMessage message : getChatMessages()) {
+                    if (!message.isMe && message.messageId != 0) receivedMessageIds.add(message.messageId);
+                }
+            }
+            return receivedMessageIds.add(messageId);
+        }
+
         @Serial
         private void writeObject(ObjectOutputStream out) throws IOException {
             if (this.chatMessages != null) {
@@ -189,6 +230,13 @@ public class HelloApplication extends Application {
         }
 
 
+        /** Copy with its own message list, so it can be serialized off the FX thread. */
+        Friend copyForSave() {
+            Friend copy = new Friend(uid, nickname);
+            copy.chatMessages = FXCollections.observableArrayList(getChatMessages());
+            return copy;
+        }
+
         public String getDisplayStatus() {
             return isOnline ? "Online" : "Offline";
         }
@@ -208,17 +256,35 @@ public class HelloApplication extends Application {
 
         @Override
         public String toString() {
-            return nickname + " (" + uid.substring(0, Math.min(8,uid.length())) + ") - " + getDisplayStatus();
+            return nickname + " (" + uid.substring(0, Math.min(8,uid.length())) + ") - " + getDisplayStatus()
+                    + (unreadMessages > 0 ? ", " + unreadMessages + " new" : "");
         }
     }
 
     static class ChatMessage implements Serializable {
         @Serial
         private static final long serialVersionUID = 6L;
+
+        /** Delivery of a message of our own; received messages and older history count as {@code ACKED}. */
+        enum Delivery {
+            /** In the friend's outbox: not yet written to the peer, or lost before it was acknowledged. */
+            PENDING,
+            /** Written to a peer on the line protocol, which cannot acknowledge. */
+            SENT,
+            /** Acknowledged by the peer. */
+            ACKED,
+            /** Given up on after {@link NetworkManager#MAX_SEND_ATTEMPTS} failed sends. */
+            FAILED
+        }
+
         String senderUid;
         String content;
         LocalDateTime timestamp;
         boolean isMe;
+        long messageId; // 0 for messages from before delivery tracking
+        Delivery delivery = Delivery.ACKED; // null when read from an older serialized file
+        transient boolean sending; // a send of this message is in progress; FX thread only
+        transient int failedSends; // since the application started; FX thread only
 
         public ChatMessage(String senderUid, String content, LocalDateTime timestamp, boolean isMe) {
             this.senderUid = senderUid;
@@ -227,6 +293,16 @@ public class HelloApplication extends Application {
             this.isMe = isMe;
         }
 
+        ChatMessage(String senderUid, String content, LocalDateTime timestamp, boolean isMe, long messageId, Delivery delivery) {
+            this(senderUid, content, timestamp, isMe);
+            this.messageId = messageId;
+            this.delivery = delivery;
+        }
+
+        boolean isPending() {
+            return isMe && delivery == Delivery.PENDING;
+        }
+
         @Override
         public String toString() {
             String prefix = isMe ? "You: " : "";
@@ -242,7 +318,12 @@ public class HelloApplication extends Application {
                     prefix = senderUid.substring(0, Math.min(6,senderUid.length())) + "...: ";
                 }
             }
-            return String.format("[%s] %s%s", timestamp.format(DateTimeFormatter.ofPattern("HH:mm")), prefix, content);
+            String status = "";
+            if (isPending()) status = " (queued)";
+            else if (isMe && delivery == Delivery.SENT) status = " ✓";
+            else if (isMe && delivery == Delivery.ACKED && messageId != 0) status = " ✓✓";
+            else if (isMe && delivery == Delivery.FAILED) status = " (failed)";
+            return String.format("[%s] %s%s%s", timestamp.format(DateTimeFormatter.ofPattern("HH:mm")), prefix, content, status);
         }
     }
 
@@ -274,35 +355,17 @@ public class HelloApplication extends Application {
     // --- End Data Classes ---
 
     // --- Suggestion Engine Data Structures ---
-    static class AnalysisData {
-        Map<String, Long> moodCountsLast7Days;
-        List<String> keywordsInJournalLast7Days;
-        int consecutiveLowMoodDays;
-
-        public AnalysisData(Map<String, Long> moodCountsLast7Days, List<String> keywordsInJournalLast7Days, int consecutiveLowMoodDays) {
-            this.moodCountsLast7Days = moodCountsLast7Days != null ? moodCountsLast7Days : new HashMap<>();
-            this.keywordsInJournalLast7Days = keywordsInJournalLast7Days != null ? keywordsInJournalLast7Days : new ArrayList<>();
-            this.consecutiveLowMoodDays = consecutiveLowMoodDays;
-        }
-    }
-
-    @FunctionalInterface
-    interface SuggestionCondition {
-        boolean test(AnalysisData data, List<JournalEntry> recentJournalEntries, List<MoodEntry> recentMoodEntries);
-    }
-
+    /** A suggestion from the rules file; see {@link RuleBook}. */
     public static class SuggestionRule {
         String id;
         String conditionDescription;
-        SuggestionCondition condition;
         String suggestionText;
         String detailedExplanation;
         int priority;
 
-        public SuggestionRule(String id, String conditionDescription, SuggestionCondition condition, String suggestionText, String detailedExplanation, int priority) {
+        public SuggestionRule(String id, String conditionDescription, String suggestionText, String detailedExplanation, int priority) {
             this.id = id;
             this.conditionDescription = conditionDescription;
-            this.condition = condition;
             this.suggestionText = suggestionText;
             this.detailedExplanation = detailedExplanation;
             this.priority = priority;
@@ -311,44 +374,77 @@ public class HelloApplication extends Application {
     // --- End Suggestion Engine Data Structures ---
 
     // --- Well Being Feature Data Structures ---
-    static class AnalysisDataForWellBeing {
-        Set<String> recentNegativeMoods;
-        Set<String> recentPositiveMoods;
-        Set<String> recentKeywordsFromJournals;
+    static class AnalysisDataForWellBeing implements RulePlan.Facts {
+        Set<Mood> recentNegativeMoods;
+        Set<Mood> recentPositiveMoods;
+        BitSet recentRuleTerms; // ids of the rule keyword terms found, see KeywordMatcher
+        long[] recentMoodCounts; // by Mood ordinal; moods of journal entries and mood logs
+        long journalCount;
+        long moodEntryCount;
+        int lowMoodStreak;
+        int currentLowMoodStreak;
+        int longestLowMoodStreak;
         boolean lowEngagementJournal;
         boolean lowEngagementMood;
 
-        public AnalysisDataForWellBeing(Set<String> recentNegativeMoods,
-                                        Set<String> recentPositiveMoods,
-                                        Set<String> recentKeywordsFromJournals,
-                                        boolean lowEngagementJournal,
-                                        boolean lowEngagementMood) {
-            this.recentNegativeMoods = recentNegativeMoods != null ? recentNegativeMoods : new HashSet<>();
-            this.recentPositiveMoods = recentPositiveMoods != null ? recentPositiveMoods : new HashSet<>();
-            this.recentKeywordsFromJournals = recentKeywordsFromJournals != null ? recentKeywordsFromJournals : new HashSet<>();
-            this.lowEngagementJournal = lowEngagementJournal;
-            this.lowEngagementMood = lowEngagementMood;
+        public AnalysisDataForWellBeing(Set<Mood> recentNegativeMoods,
+                                        Set<Mood> recentPositiveMoods,
+                                        BitSet recentRuleTerms,
+                                        long[] recentMoodCounts,
+                                        long journalCount,
+                                        long moodEntryCount,
+                                        int lowMoodStreak,
+                                        int currentLowMoodStreak,
+                                        int longestLowMoodStreak) {
+            this.recentNegativeMoods = recentNegativeMoods != null ? recentNegativeMoods : EnumSet.noneOf(Mood.class);
+            this.recentPositiveMoods = recentPositiveMoods != null ? recentPositiveMoods : EnumSet.noneOf(Mood.class);
+            this.recentRuleTerms = recentRuleTerms != null ? recentRuleTerms : new BitSet();
+            this.recentMoodCounts = recentMoodCounts != null ? recentMoodCounts : new long[Mood.COUNT];
+            this.journalCount = journalCount;
+            this.moodEntryCount = moodEntryCount;
+            this.lowMoodStreak = lowMoodStreak;
+            this.currentLowMoodStreak = currentLowMoodStreak;
+            this.longestLowMoodStreak = longestLowMoodStreak;
+            this.lowEngagementJournal = journalCount < 2;
+            this.lowEngagementMood = moodEntryCount < 2;
+        }
+
+        @Override
+        public long moodCount(String mood) {
+            Mood kind = Mood.find(mood);
+            return kind != null ? recentMoodCounts[kind.ordinal()] : 0;
+        }
+
+        @Override
+        public BitSet matchedTerms() {
+            return recentRuleTerms;
         }
-    }
 
-    @FunctionalInterface
-    interface WellBeingCondition {
-        boolean test(AnalysisDataForWellBeing data);
+        @Override
+        public long metric(RulePlan.Metric metric) {
+            switch (metric) {
+                case LOW_MOOD_STREAK: return lowMoodStreak;
+                case CURRENT_LOW_MOOD_STREAK: return currentLowMoodStreak;
+                case LONGEST_LOW_MOOD_STREAK: return longestLowMoodStreak;
+                case JOURNAL_ENTRIES: return journalCount;
+                case MOOD_ENTRIES: return moodEntryCount;
+                default: throw new IllegalArgumentException("Unknown metric: " + metric);
+            }
+        }
     }
 
+    /** A well-being task from the rules file; see {@link RuleBook}. */
     static class WellBeingTask {
         String title;
         String description;
         String category;
-        WellBeingCondition condition;
         String estimatedTime;
 
-        public WellBeingTask(String title, String description, String category, String estimatedTime, WellBeingCondition condition) {
+        public WellBeingTask(String title, String description, String category, String estimatedTime) {
             this.title = title;
             this.description = description;
             this.category = category;
             this.estimatedTime = estimatedTime;
-            this.condition = condition;
         }
     }
     // --- End Well-being Feature Data Structures ---
@@ -358,14 +454,18 @@ public class HelloApplication extends Application {
     private User currentUser;
     private List<User> allUsers = new ArrayList<>();
 
+    private static final SegmentedEntryList.Fields<JournalEntry> JOURNAL_FIELDS = new SegmentedEntryList.Fields<>(e -> e.date, e -> e.moodKind, e -> e.content);
+
     // Data for the current logged-in user
-    private List<JournalEntry> journalEntries;
-    private List<MoodEntry> moodEntries;
+    private SegmentedEntryList<JournalEntry> journalEntries;
+    private MoodEntryList moodEntries;
+    private DailyMoodAggregates moodAggregates;
+    private LowMoodStreaks lowMoodStreaks;
+    private SuggestionWindow suggestionWindow;
     ObservableList<Friend> friendsList;
     private MyInfo myApplicationInfo;
 
-    private final List<SuggestionRule> suggestionRules = new ArrayList<>();
-    private final List<WellBeingTask> wellBeingTaskList = new ArrayList<>();
+    private volatile RuleBook ruleBook = RuleBook.EMPTY;
     private VBox wellBeingViewContent;
 
     // Prescription data
@@ -374,24 +474,57 @@ public class HelloApplication extends Application {
     // --- File Paths ---
     private static final String DATA_DIR = System.getProperty("user.home") + File.separator + ".neurodevelopmental";
     private static final String USERS_DATA_FILE = DATA_DIR + File.separator + "users.dat";
+    private static final String RULES_FILE_NAME = "rules.txt"; // in DATA_DIR, overriding the bundled resource
     private static final String USER_JOURNAL_FILE_NAME = "journalEntries.dat";
     private static final String USER_MOOD_FILE_NAME = "moodEntries.dat";
+    private static final String USER_JOURNAL_LOG_FILE_NAME = "journalEntries.log";
+    private static final String USER_MOOD_LOG_FILE_NAME = "moodEntries.log";
     private static final String USER_MYINFO_FILE_NAME = "myAppInfo.dat";
     private static final String USER_FRIENDS_FILE_NAME = "friends.dat";
     private static final String USER_PROFILE_PIC_FILE_NAME = "profile.png";
     private static final String USER_PRESCRIPTIONS_FILE_NAME = "prescriptions.dat"; // New file for prescriptions
     private static final String BACKUP_SUFFIX = "_backup.dat";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    // --- Append-only entry logs (journal and mood saves write one record instead of the whole list) ---
+    private static final int LOG_COMPACTION_THRESHOLD = 200;
+    private EntryLog<JournalEntry> journalLog;
+    private EntryLog<MoodEntry> moodLog;
+    private final ExecutorService compactionExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "entry-log-compaction");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // --- History search indexes (a cache next to the entry logs; rebuilt when their generation is stale) ---
+    private static final String USER_JOURNAL_INDEX_FILE_NAME = "journalEntries.idx";
+    private static final String USER_MOOD_INDEX_FILE_NAME = "moodEntries.idx";
+    private FullTextIndex journalSearchIndex;
+    private FullTextIndex moodSearchIndex;
+    private String searchIndexOwner;
+
+    // --- History search: debounced, runs off the FX thread; a newer query cancels the running one ---
+    private static final Duration HISTORY_SEARCH_DEBOUNCE = Duration.millis(250);
+    private final ExecutorService historySearchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "history-search");
+        t.setDaemon(true);
+        return t;
+    });
+    private Task<int[][]> historyQuery;
+
+    // --- Background persistence: every write runs on one writer thread, in submission order ---
+    private static final long PERSISTENCE_FLUSH_TIMEOUT_SECONDS = 10;
+    private final PersistenceQueue persistenceQueue = new PersistenceQueue("user-data-writer");
+
+    // --- Dirty tracking for the remaining per-user files (bursts within the window become one write) ---
+    private final SaveCoordinator saveCoordinator = new SaveCoordinator(Duration.millis(200), this::prepareUserFileWrite,
+            persistenceQueue, e -> System.err.println("Failed to save user data: " + e.getMessage()));
 
 
     private final Random random = new Random();
     private StackPane contentArea;
     private Stage mainApplicationStage;
 
-    private static final List<String> VALID_MOODS = Arrays.asList(
-            "Very Happy", "Happy", "Content", "Neutral", "Sad", "Very Sad",
-            "Anxious", "Stressed", "Calm", "Energetic", "Tired"
-    );
-
     private NetworkManager networkManager;
     private static final int DEFAULT_TCP_PORT = 25566;
 
@@ -401,6 +534,7 @@ public class HelloApplication extends Application {
     private Button sendMessageButton;
     private Label chatWithLabel;
     private Friend currentChatFriend;
+    private boolean newMessageAlertOpen; // one alert covers all messages until it is closed; FX thread only
     private ImageView sidebarProfileImageView;
 
     private static HelloApplication instance;
@@ -1226,11 +1360,15 @@ public class HelloApplication extends Application {
                     showAlert("Save Error", "Failed to save data for " + currentUser.username + " on exit: " + ex.getMessage(), Alert.AlertType.ERROR);
                 }
             }
+            closeEntryLogs();
             try {
                 saveUserProfiles();
             } catch (IOException ex) {
                 showAlert("Save Error", "Failed to save user profiles on exit: " + ex.getMessage(), Alert.AlertType.ERROR);
             }
+            if (!persistenceQueue.shutdown(PERSISTENCE_FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("Warning: Pending saves did not finish before exit.");
+            }
             if (networkManager != null) {
                 networkManager.shutdown();
             }
@@ -1258,27 +1396,22 @@ public class HelloApplication extends Application {
             @Override
             protected Void call() throws Exception {
                 updateMessage("Initializing core systems...");
-                updateProgress(1, 5);
+                updateProgress(1, 4);
                 Thread.sleep(300);
 
                 updateMessage("Ensuring data directory...");
                 ensureDataDirectory();
-                updateProgress(2, 5);
+                updateProgress(2, 4);
                 Thread.sleep(300);
 
                 updateMessage("Loading user profiles...");
                 loadUserProfiles();
-                updateProgress(3, 5);
+                updateProgress(3, 4);
                 Thread.sleep(300);
 
-                updateMessage("Preparing suggestions engine...");
-                initializeSuggestionRules();
-                updateProgress(4, 5);
-                Thread.sleep(300);
-
-                updateMessage("Setting up well-being tasks...");
-                initializeWellBeingTasks();
-                updateProgress(5, 5);
+                updateMessage("Loading suggestion and well-being rules...");
+                loadRuleBook();
+                updateProgress(4, 4);
                 Thread.sleep(300);
                 return null;
             }
@@ -1662,6 +1795,8 @@ public class HelloApplication extends Application {
                 showAlert("Save Error", "Failed to save data for " + currentUser.username + " during logout: " + e.getMessage(), Alert.AlertType.ERROR);
             }
         }
+        closeEntryLogs();
+        saveCoordinator.discard();
 
         if (networkManager != null) {
             networkManager.shutdown();
@@ -1671,6 +1806,9 @@ public class HelloApplication extends Application {
         currentUser = null;
         journalEntries = null;
         moodEntries = null;
+        moodAggregates = null;
+        lowMoodStreaks = null;
+        suggestionWindow = null;
         friendsList = null;
         myApplicationInfo = null;
         currentChatFriend = null;
@@ -1789,9 +1927,15 @@ public class HelloApplication extends Application {
         tabs.getTabs().clear();
 
         try {
-            List<JournalEntry> patientJournals = loadSpecificUserData(patient.username, USER_JOURNAL_FILE_NAME, List.class, new ArrayList<>());
-            List<MoodEntry> patientMoods = loadSpecificUserData(patient.username, USER_MOOD_FILE_NAME, List.class, new ArrayList<>());
-            List<PrescriptionEntry> patientPrescriptions = loadSpecificUserData(patient.username, USER_PRESCRIPTIONS_FILE_NAME, List.class, new ArrayList<>());
+            List<JournalEntry> patientJournals;
+            try (EntryLog<JournalEntry> log = openJournalLogReadOnly(patient.username)) {
+                patientJournals = loadJournalEntries(log, false);
+            }
+            List<MoodEntry> patientMoods;
+            try (EntryLog<MoodEntry> log = openMoodLogReadOnly(patient.username)) {
+                patientMoods = loadMoodEntries(log, patient.username, false);
+            }
+            List<PrescriptionEntry> patientPrescriptions = loadSpecificUserData(patient.username, USER_PRESCRIPTIONS_FILE_NAME, RecordCodecs.listOf(RecordCodecs.PRESCRIPTION), List.class, new ArrayList<>());
 
             Tab journalTab = new Tab("Journals", createConfiguredScrollPane(createPatientJournalView(patientJournals)));
             Tab moodTab = new Tab("Moods", createConfiguredScrollPane(createPatientMoodView(patientMoods)));
@@ -2104,18 +2248,19 @@ public class HelloApplication extends Application {
                         if (actualContentNode instanceof VBox historyVBoxNode) {
                             Platform.runLater(() -> {
                                 ComboBox<String> viewTypeCombo = (ComboBox<String>) historyVBoxNode.lookup("#historyViewTypeCombo");
+                                ComboBox<String> sortCombo = (ComboBox<String>) historyVBoxNode.lookup("#historySortCombo");
                                 DatePicker startDatePicker = (DatePicker) historyVBoxNode.lookup("#historyStartDatePicker");
                                 DatePicker endDatePicker = (DatePicker) historyVBoxNode.lookup("#historyEndDatePicker");
                                 TextField searchField = (TextField) historyVBoxNode.lookup("#historySearchField");
-                                ListView<JournalEntry> journalListView = (ListView<JournalEntry>) historyVBoxNode.lookup("#journalHistoryListView");
-                                ListView<MoodEntry> moodHistoryListView = (ListView<MoodEntry>) historyVBoxNode.lookup("#moodHistoryListView");
+                                ListView<LazyHistoryList.Row<JournalEntry>> journalListView = (ListView<LazyHistoryList.Row<JournalEntry>>) historyVBoxNode.lookup("#journalHistoryListView");
+                                ListView<LazyHistoryList.Row<MoodEntry>> moodHistoryListView = (ListView<LazyHistoryList.Row<MoodEntry>>) historyVBoxNode.lookup("#moodHistoryListView");
                                 TextArea selectedJournalArea = (TextArea) historyVBoxNode.lookup("#selectedJournalContentArea");
                                 TextArea selectedMoodArea = (TextArea) historyVBoxNode.lookup("#selectedMoodNotesArea");
                                 Label statusLabel = (Label) historyVBoxNode.lookup("#historyResultsStatusLabel");
 
-                                if (viewTypeCombo != null && startDatePicker != null && endDatePicker != null && searchField != null &&
+                                if (viewTypeCombo != null && sortCombo != null && startDatePicker != null && endDatePicker != null && searchField != null &&
                                         journalListView != null && moodHistoryListView != null && selectedJournalArea != null && selectedMoodArea != null && statusLabel != null) {
-                                    populateHistoryView(viewTypeCombo, startDatePicker, endDatePicker, searchField, journalListView, moodHistoryListView, selectedJournalArea, selectedMoodArea, statusLabel);
+                                    populateHistoryView(viewTypeCombo, sortCombo, startDatePicker, endDatePicker, searchField, journalListView, moodHistoryListView, selectedJournalArea, selectedMoodArea, statusLabel);
                                 } else {
                                     showAlert("History View Error", "Could not fully initialize history view components. Some may be null.", Alert.AlertType.WARNING);
                                     System.err.println("One or more History view components are null during lookup.");
@@ -2290,9 +2435,9 @@ public class HelloApplication extends Application {
 
         Label journalMoodLabel = new Label("Overall Mood Today:");
         journalMoodLabel.getStyleClass().add("title-label");
-        ComboBox<String> moodCombo = new ComboBox<>(FXCollections.observableList(VALID_MOODS));
+        ComboBox<Mood> moodCombo = new ComboBox<>(FXCollections.observableList(Mood.SELECTABLE));
         moodCombo.getStyleClass().add("combo-box");
-        moodCombo.setValue("Neutral");
+        moodCombo.setValue(Mood.NEUTRAL);
 
         Button saveButton = new Button("Save Entry");
         saveButton.getStyleClass().add("primary-button");
@@ -2317,10 +2462,10 @@ public class HelloApplication extends Application {
         return journalBox;
     }
 
-    private void handleSaveJournalEntry(DatePicker datePicker, TextArea journalEntryArea, ComboBox<String> moodCombo, Label promptLabel, String[] prompts, Button saveButton) {
+    private void handleSaveJournalEntry(DatePicker datePicker, TextArea journalEntryArea, ComboBox<Mood> moodCombo, Label promptLabel, String[] prompts, Button saveButton) {
         LocalDate date = datePicker.getValue();
         String entryText = journalEntryArea.getText();
-        String mood = moodCombo.getValue();
+        Mood mood = moodCombo.getValue();
 
         if (date == null || date.isAfter(LocalDate.now())) {
             showAlert("Invalid Date", "Please select a valid date (today or past).", Alert.AlertType.WARNING); return;
@@ -2328,7 +2473,7 @@ public class HelloApplication extends Application {
         if (entryText == null || entryText.trim().isEmpty()) {
             showAlert("Missing Entry", "Please write something in your journal before saving.", Alert.AlertType.WARNING); return;
         }
-        if (mood == null || !VALID_MOODS.contains(mood)) {
+        if (mood == null || !Mood.SELECTABLE.contains(mood)) {
             showAlert("Invalid Mood", "Please select a valid mood from the list.", Alert.AlertType.WARNING); return;
         }
         if (journalEntries == null) {
@@ -2339,27 +2484,24 @@ public class HelloApplication extends Application {
         saveButton.setText("Saving...");
         saveButton.setDisable(true);
 
-        PauseTransition pause = new PauseTransition(Duration.millis(300));
-        pause.setOnFinished(event -> {
-            try {
-                journalEntries.add(new JournalEntry(date, entryText, mood));
-                String moodNote = "From journal entry (summary): " + entryText.substring(0, Math.min(50, entryText.length())) + (entryText.length() > 50 ? "..." : "");
-                if (moodEntries != null) moodEntries.add(new MoodEntry(date, mood, moodNote));
-                saveDataForCurrentUser();
+        CompletableFuture<Void> saved = recordJournalEntry(new JournalEntry(date, entryText, mood.label));
+        String moodNote = "From journal entry (summary): " + entryText.substring(0, Math.min(50, entryText.length())) + (entryText.length() > 50 ? "..." : "");
+        if (moodEntries != null) saved = CompletableFuture.allOf(saved, recordMoodEntry(new MoodEntry(date, mood.label, moodNote)));
 
+        saved.whenComplete((v, ex) -> Platform.runLater(() -> {
+            if (ex == null) {
                 showAlert("Journal Entry Saved", "Your entry for " + date.format(DateTimeFormatter.ofPattern("MMMM d, yyyy")) + " has been saved successfully!", Alert.AlertType.INFORMATION);
                 journalEntryArea.clear();
-                moodCombo.setValue("Neutral");
+                moodCombo.setValue(Mood.NEUTRAL);
                 promptLabel.setText(getRandomPrompt(prompts));
-            } catch (Exception ex) {
-                showAlert("Save Error", "Failed to save journal entry: " + ex.getMessage(), Alert.AlertType.ERROR);
-                System.err.println("Error saving journal entry: " + ex.getMessage());
-            } finally {
-                saveButton.setText(originalText);
-                saveButton.setDisable(false);
+            } else {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                showAlert("Save Error", "Failed to save journal entry: " + cause.getMessage(), Alert.AlertType.ERROR);
+                System.err.println("Error saving journal entry: " + cause.getMessage());
             }
-        });
-        pause.play();
+            saveButton.setText(originalText);
+            saveButton.setDisable(false);
+        }));
     }
 
     private VBox createMoodTrackerView() {
@@ -2389,17 +2531,14 @@ public class HelloApplication extends Application {
 
 
         ToggleGroup moodToggle = new ToggleGroup();
-        String[] moods = {"Very Happy", "Happy", "Content", "Neutral", "Sad", "Very Sad", "Anxious", "Stressed", "Calm", "Energetic", "Tired"};
-        String[] emojis = {"😄", "🙂", "😌", "😐", "😔", "😢", "😰", "😫", "🧘", "⚡", "😴"};
-
         int moodButtonWidth = 160;
         int moodButtonHeight = 55;
 
-        for (int i = 0; i < moods.length; i++) {
-            ToggleButton moodBtn = new ToggleButton(emojis[i] + " " + moods[i]);
+        for (Mood mood : Mood.SELECTABLE) {
+            ToggleButton moodBtn = new ToggleButton(mood.emoji + " " + mood.label);
             moodBtn.getStyleClass().add("mood-button");
             moodBtn.setToggleGroup(moodToggle);
-            moodBtn.setUserData(moods[i]);
+            moodBtn.setUserData(mood);
             moodBtn.setPrefSize(moodButtonWidth, moodButtonHeight);
             moodBtn.setAlignment(Pos.CENTER_LEFT);
             moodBtn.setPadding(new Insets(0,0,0,10));
@@ -2456,8 +2595,7 @@ public class HelloApplication extends Application {
         if (moodToggle.getSelectedToggle() == null) {
             showAlert("Missing Selection", "Please select a mood.", Alert.AlertType.WARNING); return;
         }
-        String selectedMood = (String) moodToggle.getSelectedToggle().getUserData();
-        if (!VALID_MOODS.contains(selectedMood)) {
+        if (!(moodToggle.getSelectedToggle().getUserData() instanceof Mood selectedMood) || !Mood.SELECTABLE.contains(selectedMood)) {
             showAlert("Invalid Mood", "The selected mood is not recognized.", Alert.AlertType.WARNING); return;
         }
         String notes = notesArea.getText() != null ? notesArea.getText().trim() : "";
@@ -2470,25 +2608,20 @@ public class HelloApplication extends Application {
         saveButton.setText("Saving...");
         saveButton.setDisable(true);
 
-        PauseTransition pause = new PauseTransition(Duration.millis(300));
-        pause.setOnFinished(event -> {
-            try {
-                moodEntries.add(new MoodEntry(date, selectedMood, notes));
-                saveDataForCurrentUser();
+        recordMoodEntry(new MoodEntry(date, selectedMood.label, notes)).whenComplete((v, ex) -> Platform.runLater(() -> {
+            if (ex == null) {
                 showAlert("Mood Recorded", "Your mood for " + date.format(DateTimeFormatter.ofPattern("MMMM d, yyyy")) + " has been recorded!", Alert.AlertType.INFORMATION);
                 if (!moodToggle.getToggles().isEmpty() && moodToggle.getToggles().size() > 3) {
                     moodToggle.getToggles().get(3).setSelected(true);
                 }
                 notesArea.clear();
-            } catch (Exception ex) {
+            } else {
                 showAlert("Save Error", "Failed to save mood entry: " + ex.getMessage(), Alert.AlertType.ERROR);
                 System.err.println("Error saving mood entry: " + ex.getMessage());
-            } finally {
-                saveButton.setText(originalText);
-                saveButton.setDisable(false);
             }
-        });
-        pause.play();
+            saveButton.setText(originalText);
+            saveButton.setDisable(false);
+        }));
     }
 
     private LineChart<String, Number> createMoodChart() {
@@ -2678,10 +2811,16 @@ public class HelloApplication extends Application {
         filterPane.add(new Label("View Type:"), 0, 0); filterPane.add(viewTypeCombo, 1, 0);
 
         TextField searchField = new TextField();
-        searchField.setPromptText("Search content/notes..."); searchField.getStyleClass().add("text-field");
+        searchField.setPromptText("Search words, \"phrases\" or prefix*..."); searchField.getStyleClass().add("text-field");
         searchField.setId("historySearchField");
         searchField.setMaxWidth(Double.MAX_VALUE);
-        filterPane.add(new Label("Keyword Search:"), 2, 0); filterPane.add(searchField, 3, 0);
+        CheckBox liveSearchCheckBox = new CheckBox("Search as you type");
+        liveSearchCheckBox.setSelected(true);
+        liveSearchCheckBox.getStyleClass().add("summary-label");
+        HBox searchBox = new HBox(10, searchField, liveSearchCheckBox);
+        searchBox.setAlignment(Pos.CENTER_LEFT);
+        HBox.setHgrow(searchField, Priority.ALWAYS);
+        filterPane.add(new Label("Keyword Search:"), 2, 0); filterPane.add(searchBox, 3, 0);
 
         DatePicker startDatePicker = new DatePicker(getMinDateFromEntries());
         startDatePicker.getStyleClass().add("date-picker");
@@ -2695,6 +2834,12 @@ public class HelloApplication extends Application {
         endDatePicker.setMaxWidth(Double.MAX_VALUE);
         filterPane.add(new Label("To Date:"), 2, 1); filterPane.add(endDatePicker, 3, 1);
 
+        ComboBox<String> sortCombo = new ComboBox<>(FXCollections.observableArrayList(HistoryOrder.MODES));
+        sortCombo.setValue(HistoryOrder.NEWEST_FIRST); sortCombo.getStyleClass().add("combo-box");
+        sortCombo.setId("historySortCombo");
+        sortCombo.setMaxWidth(Double.MAX_VALUE);
+        filterPane.add(new Label("Sort By:"), 0, 2); filterPane.add(sortCombo, 1, 2);
+
         filterPane.getChildren().stream()
                 .filter(node -> node instanceof Label && GridPane.getColumnIndex(node) % 2 == 0)
                 .forEach(node -> node.getStyleClass().add("history-filter-label"));
@@ -2705,13 +2850,13 @@ public class HelloApplication extends Application {
         GridPane.setColumnSpan(applyFiltersButton, 4);
         GridPane.setHalignment(applyFiltersButton, HPos.CENTER);
         GridPane.setMargin(applyFiltersButton, new Insets(10,0,0,0));
-        filterPane.add(applyFiltersButton, 0, 2);
+        filterPane.add(applyFiltersButton, 0, 3);
 
         Label resultsStatusLabel = new Label("Filter and search your past entries.");
         resultsStatusLabel.getStyleClass().add("summary-label");
         resultsStatusLabel.setId("historyResultsStatusLabel");
 
-        ListView<JournalEntry> journalHistoryListView = new ListView<>();
+        ListView<LazyHistoryList.Row<JournalEntry>> journalHistoryListView = new ListView<>();
         journalHistoryListView.setPlaceholder(new Label("No journal entries match your current filters."));
         VBox.setVgrow(journalHistoryListView, Priority.ALWAYS);
         journalHistoryListView.setId("journalHistoryListView");
@@ -2724,7 +2869,7 @@ public class HelloApplication extends Application {
         VBox.setVgrow(journalHistoryListView, Priority.ALWAYS); VBox.setVgrow(selectedJournalContentArea, Priority.ALWAYS);
         TitledPane journalPane = new TitledPane("Filtered Journal Entries", journalDisplayBox);
 
-        ListView<MoodEntry> moodHistoryListView = new ListView<>();
+        ListView<LazyHistoryList.Row<MoodEntry>> moodHistoryListView = new ListView<>();
         moodHistoryListView.setPlaceholder(new Label("No mood entries match your current filters."));
         VBox.setVgrow(moodHistoryListView, Priority.ALWAYS);
         moodHistoryListView.setId("moodHistoryListView");
@@ -2757,14 +2902,14 @@ public class HelloApplication extends Application {
 
 
         journalHistoryListView.setCellFactory(lv -> new ListCell<>() {
-            @Override protected void updateItem(JournalEntry entry, boolean empty) {
-                super.updateItem(entry, empty);
-                if (empty || entry == null) { setText(null); setGraphic(null); }
+            @Override protected void updateItem(LazyHistoryList.Row<JournalEntry> row, boolean empty) {
+                super.updateItem(row, empty);
+                if (empty || row == null) { setText(null); setGraphic(null); }
                 else {
                     VBox cellContent = new VBox(3);
-                    Label dateMoodLabel = new Label(String.format("Date: %s  |  Mood: %s", entry.date.format(DateTimeFormatter.ISO_DATE), entry.mood));
+                    Label dateMoodLabel = new Label(String.format("Date: %s  |  Mood: %s", row.date.format(DateTimeFormatter.ISO_DATE), row.mood));
                     dateMoodLabel.setStyle("-fx-font-weight: bold; -fx-text-fill: #FFFFFF;");
-                    Label previewLabel = new Label("Entry Preview: " + entry.content.substring(0, Math.min(entry.content.length(), 70)) + (entry.content.length() > 70 ? "..." : ""));
+                    Label previewLabel = new Label("Entry Preview: " + row.preview.substring(0, Math.min(row.preview.length(), 70)) + (row.textLength > 70 ? "..." : ""));
                     previewLabel.setWrapText(true); previewLabel.getStyleClass().add("summary-label");
                     cellContent.getChildren().addAll(dateMoodLabel, previewLabel);
                     setGraphic(cellContent); Tooltip.install(this, new Tooltip("Click to view full entry below"));
@@ -2772,15 +2917,15 @@ public class HelloApplication extends Application {
             }
         });
         moodHistoryListView.setCellFactory(lv -> new ListCell<>() {
-            @Override protected void updateItem(MoodEntry entry, boolean empty) {
-                super.updateItem(entry, empty);
-                if (empty || entry == null) { setText(null); setGraphic(null); }
+            @Override protected void updateItem(LazyHistoryList.Row<MoodEntry> row, boolean empty) {
+                super.updateItem(row, empty);
+                if (empty || row == null) { setText(null); setGraphic(null); }
                 else {
                     VBox cellContent = new VBox(3);
-                    Label dateMoodLabel = new Label(String.format("Date: %s  |  Mood: %s", entry.date.format(DateTimeFormatter.ISO_DATE), entry.mood));
+                    Label dateMoodLabel = new Label(String.format("Date: %s  |  Mood: %s", row.date.format(DateTimeFormatter.ISO_DATE), row.mood));
                     dateMoodLabel.setStyle("-fx-font-weight: bold; -fx-text-fill: #FFFFFF;");
-                    String notesPreview = entry.notes.isEmpty() ? "No additional notes." :
-                            "Notes: " + entry.notes.substring(0, Math.min(entry.notes.length(), 70)) + (entry.notes.length() > 70 ? "..." : "");
+                    String notesPreview = row.textLength == 0 ? "No additional notes." :
+                            "Notes: " + row.preview.substring(0, Math.min(row.preview.length(), 70)) + (row.textLength > 70 ? "..." : "");
                     Label notesPreviewLabel = new Label(notesPreview);
                     notesPreviewLabel.setWrapText(true); notesPreviewLabel.getStyleClass().add("summary-label");
                     cellContent.getChildren().addAll(dateMoodLabel, notesPreviewLabel);
@@ -2789,15 +2934,27 @@ public class HelloApplication extends Application {
             }
         });
 
-        journalHistoryListView.getSelectionModel().selectedItemProperty().addListener((obs, o, n) -> selectedJournalContentArea.setText(n != null ? n.content : "Select a journal entry to view its full content."));
-        moodHistoryListView.getSelectionModel().selectedItemProperty().addListener((obs, o, n) -> selectedMoodNotesArea.setText(n != null ? n.notes : "Select a mood entry to view its notes."));
+        journalHistoryListView.getSelectionModel().selectedItemProperty().addListener((obs, o, n) -> selectedJournalContentArea.setText(n != null ? n.entry().content : "Select a journal entry to view its full content."));
+        moodHistoryListView.getSelectionModel().selectedItemProperty().addListener((obs, o, n) -> selectedMoodNotesArea.setText(n != null ? n.entry().notes : "Select a mood entry to view its notes."));
 
 
         SplitPane dataDisplayPane = new SplitPane(journalPane, moodPane);
         dataDisplayPane.setOrientation(Orientation.VERTICAL); dataDisplayPane.setDividerPositions(0.5);
         VBox.setVgrow(dataDisplayPane, Priority.ALWAYS);
 
-        applyFiltersButton.setOnAction(e -> populateHistoryView(viewTypeCombo, startDatePicker, endDatePicker, searchField, journalHistoryListView, moodHistoryListView, selectedJournalContentArea, selectedMoodNotesArea, resultsStatusLabel));
+        applyFiltersButton.setOnAction(e -> populateHistoryView(viewTypeCombo, sortCombo, startDatePicker, endDatePicker, searchField, journalHistoryListView, moodHistoryListView, selectedJournalContentArea, selectedMoodNotesArea, resultsStatusLabel));
+        sortCombo.setOnAction(e -> applyFiltersButton.fire());
+
+        // Live search: a query starts once typing pauses; Enter searches right away.
+        PauseTransition searchDebounce = new PauseTransition(HISTORY_SEARCH_DEBOUNCE);
+        searchDebounce.setOnFinished(e -> applyFiltersButton.fire());
+        searchField.textProperty().addListener((obs, oldText, newText) -> {
+            if (liveSearchCheckBox.isSelected()) searchDebounce.playFromStart();
+        });
+        searchField.setOnAction(e -> {
+            searchDebounce.stop();
+            applyFiltersButton.fire();
+        });
         historyBox.getChildren().addAll(historyTitle, filterPane, resultsStatusLabel, dataDisplayPane);
         return historyBox;
     }
@@ -2806,86 +2963,126 @@ public class HelloApplication extends Application {
     /**
      * FIX: Added the missing populateHistoryView method.
      * This method filters and displays journal and mood entries based on UI controls.
+     * The search runs on the history search thread and replaces any query still running; the lists
+     * it fills decode entries only as their rows are shown.
      */
-    private void populateHistoryView(ComboBox<String> viewTypeCombo, DatePicker startDatePicker, DatePicker endDatePicker,
-                                     TextField searchField, ListView<JournalEntry> journalListView,
-                                     ListView<MoodEntry> moodListView, TextArea selectedJournalArea,
+    private void populateHistoryView(ComboBox<String> viewTypeCombo, ComboBox<String> sortCombo, DatePicker startDatePicker, DatePicker endDatePicker,
+                                     TextField searchField, ListView<LazyHistoryList.Row<JournalEntry>> journalListView,
+                                     ListView<LazyHistoryList.Row<MoodEntry>> moodListView, TextArea selectedJournalArea,
                                      TextArea selectedMoodArea, Label statusLabel) {
 
-        if (journalEntries == null || moodEntries == null || viewTypeCombo == null || journalListView == null || moodListView == null) {
+        if (journalEntries == null || moodEntries == null || journalSearchIndex == null || moodSearchIndex == null
+                || viewTypeCombo == null || sortCombo == null || journalListView == null || moodListView == null) {
             statusLabel.setText("Error: History view components not ready.");
             return;
         }
 
         LocalDate startDate = startDatePicker.getValue();
         LocalDate endDate = endDatePicker.getValue();
-        String searchTerm = searchField.getText().toLowerCase().trim();
+        String searchTerm = searchField.getText().trim();
         String viewType = viewTypeCombo.getValue();
+        String sortMode = sortCombo.getValue() != null ? sortCombo.getValue() : HistoryOrder.NEWEST_FIRST;
 
         if (startDate == null || endDate == null || endDate.isBefore(startDate)) {
+            cancelHistoryQuery();
             statusLabel.setText("Invalid date range selected.");
             journalListView.getItems().clear();
             moodListView.getItems().clear();
             return;
         }
 
-        List<JournalEntry> filteredJournals = new ArrayList<>();
-        if ("All Entries".equals(viewType) || "Journal Entries Only".equals(viewType)) {
-            filteredJournals = journalEntries.stream()
-                    .filter(entry -> entry.date != null && !entry.date.isBefore(startDate) && !entry.date.isAfter(endDate))
-                    .filter(entry -> searchTerm.isEmpty() || entry.content.toLowerCase().contains(searchTerm))
-                    .sorted(Comparator.comparing(JournalEntry::toString).reversed())
-                    .toList();
-        }
+        boolean showJournals = !"Mood Entries Only".equals(viewType);
+        boolean showMoods = !"Journal Entries Only".equals(viewType);
 
-        List<MoodEntry> filteredMoods = new ArrayList<>();
-        if ("All Entries".equals(viewType) || "Mood Entries Only".equals(viewType)) {
-            filteredMoods = moodEntries.stream()
-                    .filter(entry -> entry.date != null && !entry.date.isBefore(startDate) && !entry.date.isAfter(endDate))
-                    .filter(entry -> searchTerm.isEmpty() || entry.notes.toLowerCase().contains(searchTerm))
-                    .sorted(Comparator.comparing(MoodEntry::toString).reversed())
-                    .toList();
-        }
-
-        // Clear previous content
-        journalListView.getItems().clear();
-        moodListView.getItems().clear();
+        // Manage visibility
+        TitledPane journalPane = (TitledPane) journalListView.getParent().getParent();
+        TitledPane moodPane = (TitledPane) moodListView.getParent().getParent();
+        journalPane.setVisible(showJournals);
+        journalPane.setManaged(showJournals);
+        moodPane.setVisible(showMoods);
+        moodPane.setManaged(showMoods);
+
+        // The query works on copies so entries recorded meanwhile cannot change them; the mapped rows are shared.
+        SegmentedEntryList<JournalEntry> journals = journalEntries.snapshot();
+        MoodEntryList moods = moodEntries.snapshot();
+        FullTextIndex journalIndex = journalSearchIndex;
+        FullTextIndex moodIndex = moodSearchIndex;
+
+        cancelHistoryQuery();
+        journalListView.setItems(FXCollections.observableArrayList());
+        moodListView.setItems(FXCollections.observableArrayList());
         selectedJournalArea.clear();
         selectedMoodArea.clear();
+        statusLabel.setText("Searching...");
 
-        // Populate lists
-        journalListView.setItems(FXCollections.observableArrayList(filteredJournals));
-        moodListView.setItems(FXCollections.observableArrayList(filteredMoods));
+        // The query only produces entry ids; the lists decode the rows the list views actually show.
+        // Once it is cancelled, remaining rows are rejected and keys are skipped without decoding anything.
+        Task<int[][]> query = new Task<>() {
+            @Override
+            protected int[][] call() {
+                int[] journalIds = new int[0];
+                if (showJournals) {
+                    BitSet hits = searchTerm.isEmpty() ? null : journalIndex.search(searchTerm);
+                    int[] inRange = journals.indexesBetween(startDate, endDate, i -> !isCancelled() && (hits == null || hits.get(i)));
+                    journalIds = HistoryOrder.sort(inRange, sortMode,
+                            id -> isCancelled() ? 0 : journals.moodScore(id),
+                            id -> isCancelled() ? 0 : journals.textLength(id),
+                            journalIndex, searchTerm);
+                }
 
-        // Manage visibility
-        TitledPane journalPane = (TitledPane) journalListView.getParent().getParent();
-        TitledPane moodPane = (TitledPane) moodListView.getParent().getParent();
-        journalPane.setVisible(!"Mood Entries Only".equals(viewType));
-        journalPane.setManaged(!"Mood Entries Only".equals(viewType));
-        moodPane.setVisible(!"Journal Entries Only".equals(viewType));
-        moodPane.setManaged(!"Journal Entries Only".equals(viewType));
+                int[] moodIds = new int[0];
+                if (showMoods) {
+                    BitSet hits = searchTerm.isEmpty() ? null : moodIndex.search(searchTerm);
+                    int[] inRange = moods.indexesBetween(startDate, endDate, i -> !isCancelled() && (hits == null || hits.get(i)));
+                    moodIds = HistoryOrder.sort(inRange, sortMode,
+                            id -> isCancelled() ? 0 : moods.moodScore(id),
+                            id -> isCancelled() ? 0 : moods.textLength(id),
+                            moodIndex, searchTerm);
+                }
+                return new int[][] {journalIds, moodIds};
+            }
+        };
 
+        query.setOnSucceeded(e -> {
+            int[][] ids = query.getValue();
+            journalListView.setItems(new LazyHistoryList<>(ids[0], journals::get, entry -> entry.date, entry -> entry.mood, entry -> entry.content));
+            moodListView.setItems(new LazyHistoryList<>(ids[1], moods::get, entry -> entry.date, entry -> entry.mood, entry -> entry.notes));
 
-        // Update status label
-        String journalStatus = String.format("%d journal entries found.", filteredJournals.size());
-        String moodStatus = String.format("%d mood entries found.", filteredMoods.size());
+            // Update status label
+            String journalStatus = String.format("%d journal entries found.", ids[0].length);
+            String moodStatus = String.format("%d mood entries found.", ids[1].length);
 
-        switch (viewType) {
-            case "All Entries":
-                statusLabel.setText(journalStatus + " " + moodStatus);
-                break;
-            case "Journal Entries Only":
-                statusLabel.setText(journalStatus);
-                break;
-            case "Mood Entries Only":
-                statusLabel.setText(moodStatus);
-                break;
-            default:
-                statusLabel.setText("Filter applied.");
+            switch (viewType) {
+                case "All Entries":
+                    statusLabel.setText(journalStatus + " " + moodStatus);
+                    break;
+                case "Journal Entries Only":
+                    statusLabel.setText(journalStatus);
+                    break;
+                case "Mood Entries Only":
+                    statusLabel.setText(moodStatus);
+                    break;
+                default:
+                    statusLabel.setText("Filter applied.");
+            }
+        });
+        query.setOnFailed(e -> {
+            statusLabel.setText("Search failed: " + query.getException().getMessage());
+            System.err.println("History search failed: " + query.getException());
+        });
+        historyQuery = query;
+        historySearchExecutor.execute(query);
+    }
+
+    private void cancelHistoryQuery() {
+        if (historyQuery != null) {
+            historyQuery.cancel();
+            historyQuery = null;
         }
     }
 
 
+
     private VBox createConnectView() {
         VBox connectBox = new VBox(15);
         connectBox.setPadding(new Insets(10));
@@ -2979,6 +3176,10 @@ public class HelloApplication extends Application {
         });
         friendsListViewForConnect.getSelectionModel().selectedItemProperty().addListener((obs, oldFriend, newFriend) -> {
             currentChatFriend = newFriend;
+            if (newFriend != null && newFriend.unreadMessages > 0) {
+                newFriend.unreadMessages = 0;
+                friendsListViewForConnect.refresh();
+            }
             updateChatUIForSelectedFriend();
         });
         friendsListPane.getChildren().addAll(friendsListTitle, friendsListViewForConnect);
@@ -3046,12 +3247,7 @@ public class HelloApplication extends Application {
             showAlert("Peer Added", nickname + " has been added to your peer list.", Alert.AlertType.INFORMATION);
             uidField.clear();
             nicknameField.clear();
-            try {
-                saveDataForCurrentUser();
-            } catch (IOException e) {
-                showAlert("Save Error", "Could not save updated peer list: " + e.getMessage(), Alert.AlertType.ERROR);
-                System.err.println("Error saving updated peer list: " + e.getMessage());
-            }
+            saveCoordinator.markDirty(SaveCoordinator.UserFile.FRIENDS);
         }
     }
 
@@ -3061,63 +3257,111 @@ public class HelloApplication extends Application {
             if(messageInputField != null) messageInputField.requestFocus();
             return;
         }
-        if (!currentChatFriend.isOnline) {
-            showAlert("Peer Offline", currentChatFriend.nickname + " is currently offline. Messages cannot be sent.", Alert.AlertType.WARNING);
-            return;
-        }
         String messageContent = messageInputField.getText().trim();
         if (messageContent.isEmpty()) {
             return;
         }
+        if (messageContent.getBytes(StandardCharsets.UTF_8).length > PeerProtocol.MAX_PAYLOAD_BYTES) {
+            showAlert("Message Too Long", "This message is too long to send. Please shorten it.", Alert.AlertType.WARNING);
+            return;
+        }
 
         if (networkManager != null && myApplicationInfo != null) {
-            ChatMessage msgObject = new ChatMessage(myApplicationInfo.uid, messageContent, LocalDateTime.now(), true);
+            // Queued in the friend's outbox; sent now if they are online, otherwise once they come online.
+            ChatMessage msgObject = new ChatMessage(myApplicationInfo.uid, messageContent, LocalDateTime.now(), true,
+                    networkManager.nextMessageId(), ChatMessage.Delivery.PENDING);
             currentChatFriend.getChatMessages().add(msgObject);
             refreshChatDisplay();
-            networkManager.sendMessage(currentChatFriend, messageContent);
+            networkManager.flushOutbox(currentChatFriend, false);
             messageInputField.clear();
             messageInputField.requestFocus();
-            try {
-                saveDataForCurrentUser();
-            } catch (IOException e) {
-                System.err.println("Failed to save chat message with friend data: " + e.getMessage());
-            }
+            saveCoordinator.markDirty(SaveCoordinator.UserFile.FRIENDS);
         } else {
             showAlert("Network Error", "Network service is not available or your user ID is missing. Cannot send message.", Alert.AlertType.ERROR);
         }
     }
 
     public void receiveMessage(String senderUid, String messageContent) {
-        Platform.runLater(() -> {
-            if (friendsList == null) return;
+        receiveMessage(senderUid, 0, messageContent, LocalDateTime.now());
+    }
 
-            Friend senderFriend = friendsList.stream()
-                    .filter(f -> f.uid.equals(senderUid))
-                    .findFirst().orElse(null);
+    /**
+     * {@code messageId} is the sender's id of the message, or 0 if it has none; a message whose id is already
+     * in the friend's chat history is dropped. {@code sentAt} is the sender's clock when the message was written.
+     * The future completes once the friends file holding the message has been written, so that it is only
+     * acknowledged to the sender when it survives a crash, or at once if the message is not kept.
+     */
+    public CompletableFuture<Void> receiveMessage(String senderUid, long messageId, String messageContent, LocalDateTime sentAt) {
+        CompletableFuture<Void> saved = new CompletableFuture<>();
+        Platform.runLater(() -> addReceivedMessage(senderUid, messageId, messageContent, sentAt).whenComplete((v, ex) -> {
+            if (ex == null) saved.complete(null);
+            else saved.completeExceptionally(ex);
+        }));
+        return saved;
+    }
 
-            if (senderFriend == null) {
-                System.out.println("Received message from unknown UID: " + senderUid + ". Not processing further.");
-                return;
-            }
+    private CompletableFuture<Void> addReceivedMessage(String senderUid, long messageId, String messageContent, LocalDateTime sentAt) {
+        if (friendsList == null) return CompletableFuture.completedFuture(null);
 
-            ChatMessage msgObject = new ChatMessage(senderUid, messageContent, LocalDateTime.now(), false);
-            senderFriend.getChatMessages().add(msgObject);
+        Friend senderFriend = friendsList.stream()
+                .filter(f -> f.uid.equals(senderUid))
+                .findFirst().orElse(null);
 
-            if (currentChatFriend != null && currentChatFriend.uid.equals(senderUid)) {
-                refreshChatDisplay();
-            } else {
-                showAlert("New Message", "You have a new message from " + senderFriend.nickname + ".", Alert.AlertType.INFORMATION);
-                if (friendsListViewForConnect != null) friendsListViewForConnect.refresh();
+        if (senderFriend == null) {
+            System.out.println("Received message from unknown UID: " + senderUid + ". Not processing further.");
+            return CompletableFuture.completedFuture(null);
+        }
+
+        if (messageId != 0 && !senderFriend.firstReceipt(messageId)) {
+            System.out.println("Duplicate message " + messageId + " from UID " + senderUid + " ignored.");
+            // The first copy may not be on disk yet; acknowledge the resend with the next write.
+            return saveCoordinator.markDirtyAndAwaitWrite(SaveCoordinator.UserFile.FRIENDS);
+        }
+        ChatMessage msgObject = new ChatMessage(senderUid, messageContent, sentAt, false, messageId, ChatMessage.Delivery.ACKED);
+        senderFriend.getChatMessages().add(msgObject);
+
+        if (currentChatFriend != null && currentChatFriend.uid.equals(senderUid)) {
+            refreshChatDisplay();
+        } else {
+            senderFriend.unreadMessages++;
+            if (friendsListViewForConnect != null) friendsListViewForConnect.refresh();
+            if (!newMessageAlertOpen) {
+                newMessageAlertOpen = true;
+                // Deferred, so a batch of queued messages that arrives together is announced once.
+                Platform.runLater(this::showNewMessageAlert);
             }
-            try {
-                saveDataForCurrentUser();
-            } catch (IOException e) {
-                System.err.println("Failed to save received chat message for " + senderFriend.nickname + ": " + e.getMessage());
+        }
+        return saveCoordinator.markDirtyAndAwaitWrite(SaveCoordinator.UserFile.FRIENDS);
+    }
+
+    /** Announces the unread messages of all friends; messages arriving while it is open only update the friends list. */
+    private void showNewMessageAlert() {
+        List<String> senders = new ArrayList<>();
+        if (friendsList != null) {
+            for (Friend friend : friendsList) {
+                if (friend.unreadMessages > 0) {
+                    senders.add(friend.unreadMessages + (friend.unreadMessages == 1 ? " new message" : " new messages") + " from " + friend.nickname);
+                }
             }
-        });
+        }
+        if (!senders.isEmpty()) {
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("New Message");
+            alert.setHeaderText(null);
+            alert.setContentText("You have " + String.join(", ", senders) + ".");
+            applyDialogStyles(alert.getDialogPane());
+            alert.showAndWait();
+        }
+        newMessageAlertOpen = false;
     }
 
 
+    /** Called by the network layer on the FX thread after the delivery state of {@code friend}'s messages changed. */
+    void chatDeliveryChanged(Friend friend) {
+        if (currentChatFriend != null && currentChatFriend.uid.equals(friend.uid)) refreshChatDisplay();
+        saveCoordinator.markDirty(SaveCoordinator.UserFile.FRIENDS);
+    }
+
     private void updateChatUIForSelectedFriend() {
         if (chatWithLabel == null || chatDisplayArea == null || messageInputField == null || sendMessageButton == null) {
             return;
@@ -3132,9 +3376,9 @@ public class HelloApplication extends Application {
         } else {
             chatWithLabel.setText("Chatting with: " + currentChatFriend.nickname + (currentChatFriend.isOnline ? " (Online)" : " (Offline)"));
             chatDisplayArea.setDisable(false);
-            messageInputField.setDisable(!currentChatFriend.isOnline);
-            sendMessageButton.setDisable(!currentChatFriend.isOnline);
-            chatDisplayArea.setPromptText(currentChatFriend.isOnline ? "Type a message below..." : currentChatFriend.nickname + " is offline. You can view past messages.");
+            messageInputField.setDisable(false);
+            sendMessageButton.setDisable(false);
+            chatDisplayArea.setPromptText(currentChatFriend.isOnline ? "Type a message below..." : currentChatFriend.nickname + " is offline. Messages will be sent when they come back online.");
             refreshChatDisplay();
         }
     }
@@ -3144,7 +3388,7 @@ public class HelloApplication extends Application {
 
         chatDisplayArea.clear();
         if (currentChatFriend.getChatMessages().isEmpty()) {
-            chatDisplayArea.setPromptText("No messages with " + currentChatFriend.nickname + " yet. Send one if they are online!");
+            chatDisplayArea.setPromptText("No messages with " + currentChatFriend.nickname + " yet. Send one!");
         } else {
             currentChatFriend.getChatMessages().forEach(msg -> {
                 String formattedMsg = msg.toString() + "\n";
@@ -3168,6 +3412,8 @@ public class HelloApplication extends Application {
                         friend.ipAddress = ipAddress;
                         friend.tcpPort = tcpPort;
                         if (isOnline) friend.lastSeen = LocalDateTime.now();
+                        // Coming online retries the outbox at once; later presence updates respect the backoff.
+                        if (isOnline && networkManager != null) networkManager.flushOutbox(friend, statusChanged);
 
                         if (friendsListViewForConnect != null) friendsListViewForConnect.refresh();
 
@@ -3359,16 +3605,19 @@ public class HelloApplication extends Application {
         PrescriptionEntry newEntry = new PrescriptionEntry(date, doctorName, prescriptionText, filePath);
         prescriptionEntries.add(newEntry);
 
-        try {
-            saveDataForCurrentUser();
+        saveCoordinator.markDirty(SaveCoordinator.UserFile.PRESCRIPTIONS);
+        saveCoordinator.flushNow().whenComplete((v, ex) -> Platform.runLater(() -> {
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                showAlert("Save Error", "Failed to save prescription: " + cause.getMessage(), Alert.AlertType.ERROR);
+                return;
+            }
             showAlert("Success", "Prescription saved successfully.", Alert.AlertType.INFORMATION);
             doctorField.clear();
             prescriptionArea.clear();
             fileStatus.setText("No file selected.");
             updatePrescriptionsView((VBox) contentArea.getChildren().get(8).getUserData()); // Refresh view
-        } catch (IOException ex) {
-            showAlert("Save Error", "Failed to save prescription: " + ex.getMessage(), Alert.AlertType.ERROR);
-        }
+        }));
     }
 
     private void handleSendToPharmacy(PrescriptionEntry selectedEntry) {
@@ -3423,11 +3672,20 @@ public class HelloApplication extends Application {
         String username = currentUser.username;
         ensureUserDirectory(username);
 
-        journalEntries = loadSpecificUserData(username, USER_JOURNAL_FILE_NAME, List.class, new ArrayList<>());
-        moodEntries = loadSpecificUserData(username, USER_MOOD_FILE_NAME, List.class, new ArrayList<>());
-        myApplicationInfo = loadSpecificUserData(username, USER_MYINFO_FILE_NAME, MyInfo.class, null);
-
-        List<Friend> loadedFriends = loadSpecificUserData(username, USER_FRIENDS_FILE_NAME, List.class, new ArrayList<>());
+        closeEntryLogs();
+        journalLog = openJournalLog(username);
+        moodLog = openMoodLog(username);
+        journalEntries = loadJournalEntries(journalLog, true);
+        moodEntries = loadMoodEntries(moodLog, username, true);
+        moodAggregates = DailyMoodAggregates.of(moodEntries);
+        lowMoodStreaks = LowMoodStreaks.of(moodEntries);
+        suggestionWindow = new SuggestionWindow(ruleBook, journalEntries, moodEntries, lowMoodStreaks, LocalDate.now());
+        journalSearchIndex = loadSearchIndex(username, USER_JOURNAL_INDEX_FILE_NAME, journalLog, journalEntries, e -> e.content);
+        moodSearchIndex = loadSearchIndex(username, USER_MOOD_INDEX_FILE_NAME, moodLog, moodEntries, e -> e.notes);
+        searchIndexOwner = username;
+        myApplicationInfo = loadSpecificUserData(username, USER_MYINFO_FILE_NAME, RecordCodecs.MY_INFO, MyInfo.class, null);
+
+        List<Friend> loadedFriends = loadSpecificUserData(username, USER_FRIENDS_FILE_NAME, RecordCodecs.listOf(RecordCodecs.FRIEND), List.class, new ArrayList<>());
         friendsList = FXCollections.observableArrayList();
         if (loadedFriends != null) {
             for(Friend f : loadedFriends) {
@@ -3437,17 +3695,19 @@ public class HelloApplication extends Application {
             }
         }
 
-        prescriptionEntries = loadSpecificUserData(username, USER_PRESCRIPTIONS_FILE_NAME, List.class, new ArrayList<>()); // Load prescriptions
+        prescriptionEntries = loadSpecificUserData(username, USER_PRESCRIPTIONS_FILE_NAME, RecordCodecs.listOf(RecordCodecs.PRESCRIPTION), List.class, new ArrayList<>()); // Load prescriptions
 
 
         if (myApplicationInfo == null) {
             String newUID = UUID.randomUUID().toString();
             myApplicationInfo = new MyInfo(newUID, DEFAULT_TCP_PORT);
+            saveCoordinator.markDirty(SaveCoordinator.UserFile.MY_INFO);
             System.out.println("New application info (UID, Port) created for user " + username);
         }
-        if (journalEntries == null) journalEntries = new ArrayList<>();
-        if (moodEntries == null) moodEntries = new ArrayList<>();
         if (prescriptionEntries == null) prescriptionEntries = new ArrayList<>();
+
+        compactIfNeeded(journalLog, journalEntries::snapshot);
+        compactIfNeeded(moodLog, moodEntries::snapshot);
     }
 
     private void saveDataForCurrentUser() throws IOException {
@@ -3457,34 +3717,225 @@ public class HelloApplication extends Application {
         String username = currentUser.username;
         ensureUserDirectory(username);
 
-        saveSpecificUserData(username, USER_JOURNAL_FILE_NAME, journalEntries);
-        saveSpecificUserData(username, USER_MOOD_FILE_NAME, moodEntries);
-        saveSpecificUserData(username, USER_MYINFO_FILE_NAME, myApplicationInfo);
+        // Journal and mood entries are persisted record-by-record through their entry logs;
+        // the other files are only rewritten if they were marked dirty.
+        saveCoordinator.flushNow();
+        if (!persistenceQueue.flush(PERSISTENCE_FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IOException("Pending saves did not finish within " + PERSISTENCE_FLUSH_TIMEOUT_SECONDS + " seconds.");
+        }
+        System.out.println("Save stats for " + username + ": " + saveCoordinator.statsSummary());
+    }
+
+    /** Copies {@code file}'s data on the FX thread; the returned write runs on the persistence queue. */
+    private SaveCoordinator.Prepared prepareUserFileWrite(SaveCoordinator.UserFile file) {
+        if (currentUser == null) {
+            return new SaveCoordinator.Prepared(file.name(), () -> { });
+        }
+        String username = currentUser.username;
+        switch (file) {
+            case MY_INFO:
+                MyInfo info = myApplicationInfo != null ? new MyInfo(myApplicationInfo.uid, myApplicationInfo.tcpPort) : null;
+                return new SaveCoordinator.Prepared(getUserSpecificFilePath(username, USER_MYINFO_FILE_NAME),
+                        () -> saveSpecificUserData(username, USER_MYINFO_FILE_NAME, info, RecordCodecs.MY_INFO));
+            case FRIENDS:
+                List<Friend> serializableFriends = new ArrayList<>();
+                if (friendsList != null) {
+                    for (Friend f : friendsList) serializableFriends.add(f.copyForSave());
+                }
+                return new SaveCoordinator.Prepared(getUserSpecificFilePath(username, USER_FRIENDS_FILE_NAME),
+                        () -> saveSpecificUserData(username, USER_FRIENDS_FILE_NAME, serializableFriends, RecordCodecs.listOf(RecordCodecs.FRIEND)));
+            case PRESCRIPTIONS:
+                List<PrescriptionEntry> prescriptions = prescriptionEntries != null ? new ArrayList<>(prescriptionEntries) : new ArrayList<>();
+                return new SaveCoordinator.Prepared(getUserSpecificFilePath(username, USER_PRESCRIPTIONS_FILE_NAME),
+                        () -> saveSpecificUserData(username, USER_PRESCRIPTIONS_FILE_NAME, prescriptions, RecordCodecs.listOf(RecordCodecs.PRESCRIPTION)));
+            default:
+                throw new IllegalArgumentException("Unknown user file: " + file);
+        }
+    }
 
-        List<Friend> serializableFriends = (friendsList != null) ? new ArrayList<>(friendsList) : new ArrayList<>();
-        saveSpecificUserData(username, USER_FRIENDS_FILE_NAME, serializableFriends);
+    // --- Entry logs and snapshots ---
+    // Generation 0 is the original .dat file; compaction writes generation 1, 2, ... next to it.
+    // Snapshots are sorted by date and memory-mapped, so date-range queries only read the rows they return.
 
-        saveSpecificUserData(username, USER_PRESCRIPTIONS_FILE_NAME, prescriptionEntries); // Save prescriptions
+    private EntryLog<JournalEntry> openJournalLog(String username) throws IOException {
+        return EntryLog.open(journalSnapshotPaths(username), Paths.get(getUserSpecificFilePath(username, USER_JOURNAL_LOG_FILE_NAME)),
+                RecordCodecs.JOURNAL, JournalSegmentFile::write);
+    }
+
+    private EntryLog<MoodEntry> openMoodLog(String username) throws IOException {
+        return EntryLog.open(moodSnapshotPaths(username), Paths.get(getUserSpecificFilePath(username, USER_MOOD_LOG_FILE_NAME)),
+                RecordCodecs.MOOD, MoodColumnFile::write);
+    }
+
+    /** Another user's journal log, e.g. a patient's in the doctor view; no file is created or removed. */
+    private EntryLog<JournalEntry> openJournalLogReadOnly(String username) throws IOException {
+        return EntryLog.openReadOnly(journalSnapshotPaths(username), Paths.get(getUserSpecificFilePath(username, USER_JOURNAL_LOG_FILE_NAME)), RecordCodecs.JOURNAL);
+    }
+
+    private EntryLog<MoodEntry> openMoodLogReadOnly(String username) throws IOException {
+        return EntryLog.openReadOnly(moodSnapshotPaths(username), Paths.get(getUserSpecificFilePath(username, USER_MOOD_LOG_FILE_NAME)), RecordCodecs.MOOD);
+    }
+
+    private IntFunction<Path> journalSnapshotPaths(String username) {
+        return generation -> Paths.get(getUserSpecificFilePath(username, generation == 0 ? USER_JOURNAL_FILE_NAME : "journalEntries." + generation + ".dat"));
+    }
+
+    private IntFunction<Path> moodSnapshotPaths(String username) {
+        return generation -> Paths.get(getUserSpecificFilePath(username, generation == 0 ? USER_MOOD_FILE_NAME : "moodEntries." + generation + ".mcol"));
+    }
+
+    /**
+     * Maps the journal segment and replays the log on top of it. A snapshot that is still a plain list
+     * (the legacy journalEntries.dat or an older generation), or a segment without sort key columns, is
+     * migrated once when {@code migrate} is set.
+     */
+    private SegmentedEntryList<JournalEntry> loadJournalEntries(EntryLog<JournalEntry> log, boolean migrate) throws IOException {
+        if (!JournalSegmentFile.isSegment(log.snapshotPath())) {
+            String snapshotPath = log.snapshotPath().toString();
+            List<JournalEntry> listed = loadGenericData(snapshotPath, snapshotPath.replace(".dat", BACKUP_SUFFIX), RecordCodecs.listOf(RecordCodecs.JOURNAL_RECORD), List.class, new ArrayList<>());
+            SegmentedEntryList<JournalEntry> legacy = new SegmentedEntryList<>(null, new ArrayList<>(listed), JOURNAL_FIELDS);
+            log.replayInto(legacy);
+            if (!migrate) return legacy;
+            log.compactNow(legacy);
+        }
+        JournalSegmentFile.Reader segment = JournalSegmentFile.open(log.snapshotPath());
+        SegmentedEntryList<JournalEntry> entries = new SegmentedEntryList<>(segment, new ArrayList<>(), JOURNAL_FIELDS);
+        log.replayInto(entries);
+        if (migrate && !segment.hasSortKeys()) {
+            log.compactNow(entries.snapshot());
+            entries = new SegmentedEntryList<>(JournalSegmentFile.open(log.snapshotPath()), new ArrayList<>(), JOURNAL_FIELDS);
+            log.replayInto(entries);
+        }
+        return entries;
+    }
+
+    /** Loads the mood entries of {@code username}; see {@link MoodEntryList#load}. */
+    private MoodEntryList loadMoodEntries(EntryLog<MoodEntry> log, String username, boolean migrate) throws IOException {
+        return MoodEntryList.load(log,
+                () -> loadSpecificUserData(username, USER_MOOD_FILE_NAME, RecordCodecs.listOf(RecordCodecs.MOOD_RECORD), List.class, new ArrayList<>()),
+                migrate);
+    }
+
+    // The entry is added to the in-memory list right away and appended on the persistence queue.
+    // Because the queue is FIFO, a compaction queued after it sees exactly the appends in its snapshot.
+    private CompletableFuture<Void> recordJournalEntry(JournalEntry entry) {
+        EntryLog<JournalEntry> log = journalLog;
+        journalEntries.add(entry);
+        suggestionWindow.journalEntryRecorded(entry);
+        journalSearchIndex.add(entry.content);
+        CompletableFuture<Void> appended = persistenceQueue.submit("journal entry", () -> log.append(entry));
+        compactIfNeeded(log, journalEntries::snapshot);
+        return appended;
+    }
+
+    private CompletableFuture<Void> recordMoodEntry(MoodEntry entry) {
+        EntryLog<MoodEntry> log = moodLog;
+        moodEntries.add(entry);
+        moodAggregates.add(entry);
+        lowMoodStreaks.add(entry);
+        suggestionWindow.moodEntryRecorded(entry);
+        moodSearchIndex.add(entry.notes);
+        CompletableFuture<Void> appended = persistenceQueue.submit("mood entry", () -> log.append(entry));
+        compactIfNeeded(log, moodEntries::snapshot);
+        return appended;
+    }
+
+    private <T> void compactIfNeeded(EntryLog<T> log, Supplier<List<T>> snapshot) {
+        if (log != null && log.recordsSinceCompaction() >= LOG_COMPACTION_THRESHOLD) {
+            List<T> entries = snapshot.get();
+            persistenceQueue.submit("log compaction", () -> log.compactAsync(entries, compactionExecutor));
+        }
+    }
+
+    /**
+     * Reads the cached search index for {@code entries} and indexes the entries recorded since it was
+     * saved. The index is rebuilt when it is missing, unreadable or was built on another snapshot
+     * generation (compaction re-sorts the rows, which changes the document ids).
+     */
+    private <T> FullTextIndex loadSearchIndex(String username, String fileName, EntryLog<T> log, List<T> entries, Function<T, String> text) {
+        Path indexPath = Paths.get(getUserSpecificFilePath(username, fileName));
+        FullTextIndex index = null;
+        if (Files.exists(indexPath)) {
+            try {
+                index = FullTextIndex.readFrom(indexPath);
+            } catch (IOException e) {
+                System.err.println("Warning: Rebuilding " + fileName + ": " + e.getMessage());
+            }
+        }
+        if (index == null || index.sourceGeneration() != log.snapshotGeneration() || index.documentCount() > entries.size()) {
+            index = new FullTextIndex(log.snapshotGeneration());
+        }
+        for (int i = index.documentCount(); i < entries.size(); i++) {
+            index.add(text.apply(entries.get(i)));
+        }
+        return index;
+    }
+
+    /** Queues the current user's search indexes for writing; they are not modified once the logs close. */
+    private void saveSearchIndexes() {
+        if (searchIndexOwner == null) return;
+        FullTextIndex journalIndex = journalSearchIndex;
+        FullTextIndex moodIndex = moodSearchIndex;
+        Path journalIndexPath = Paths.get(getUserSpecificFilePath(searchIndexOwner, USER_JOURNAL_INDEX_FILE_NAME));
+        Path moodIndexPath = Paths.get(getUserSpecificFilePath(searchIndexOwner, USER_MOOD_INDEX_FILE_NAME));
+        if (journalIndex != null) persistenceQueue.submitLatest(journalIndexPath.toString(), () -> journalIndex.writeTo(journalIndexPath));
+        if (moodIndex != null) persistenceQueue.submitLatest(moodIndexPath.toString(), () -> moodIndex.writeTo(moodIndexPath));
+        journalSearchIndex = null;
+        moodSearchIndex = null;
+        searchIndexOwner = null;
+    }
+
+    private void closeEntryLogs() {
+        saveSearchIndexes();
+        if (!persistenceQueue.flush(PERSISTENCE_FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            System.err.println("Warning: Pending entry saves did not finish before the logs were closed.");
+        }
+        for (EntryLog<?> log : Arrays.asList(journalLog, moodLog)) {
+            if (log == null) continue;
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.err.println("Warning: Failed to close entry log: " + e.getMessage());
+            }
+        }
+        journalLog = null;
+        moodLog = null;
     }
 
     private void loadUserProfiles() {
-        allUsers = loadGenericData(USERS_DATA_FILE, USERS_DATA_FILE.replace(".dat", BACKUP_SUFFIX), List.class, new ArrayList<>());
+        allUsers = loadGenericData(USERS_DATA_FILE, USERS_DATA_FILE.replace(".dat", BACKUP_SUFFIX), RecordCodecs.listOf(RecordCodecs.USER), List.class, new ArrayList<>());
         if (allUsers == null) allUsers = new ArrayList<>();
     }
 
     private void saveUserProfiles() throws IOException {
-        saveGenericData(USERS_DATA_FILE, USERS_DATA_FILE.replace(".dat", BACKUP_SUFFIX), new ArrayList<>(allUsers));
+        saveGenericData(USERS_DATA_FILE, USERS_DATA_FILE.replace(".dat", BACKUP_SUFFIX), new ArrayList<>(allUsers), RecordCodecs.listOf(RecordCodecs.USER));
     }
 
 
-    private <T> T loadGenericData(String dataFilePath, String backupFilePath, Class<?> expectedPrimaryType, T defaultValue) {
+    /**
+     * Loads a data file written with {@code codec}. Files from older versions, written with
+     * {@code ObjectOutputStream}, are still read (as {@code legacyType}) and are converted on their next save.
+     */
+    static <T> T loadGenericData(String dataFilePath, String backupFilePath, RecordCodecs.RecordCodec<T> codec, Class<?> legacyType, T defaultValue) {
         File dataFile = new File(dataFilePath);
         File backupFile = new File(backupFilePath);
-        Object loadedObject = null;
+        File tmpFile = new File(dataFilePath + TMP_SUFFIX);
+        T loadedObject = null;
+
+        if (!dataFile.exists() && tmpFile.exists() && tmpFile.length() > 0) {
+            // A save was interrupted after the previous version became the backup; the temp file was
+            // already forced to disk, so finishing the rename recovers the latest save.
+            try {
+                Files.move(tmpFile.toPath(), dataFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                System.out.println("Recovered " + dataFile.getName() + " from an interrupted save.");
+            } catch (IOException e) {
+                System.err.println("Could not recover " + dataFile.getName() + " from " + tmpFile.getName() + ": " + e.getMessage());
+            }
+        }
 
         if (dataFile.exists() && dataFile.length() > 0) {
-            try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(dataFile)))) {
-                loadedObject = ois.readObject();
+            try {
+                loadedObject = readDataFile(dataFile, codec, legacyType);
             } catch (ClassNotFoundException | InvalidClassException | StreamCorruptedException e) {
                 System.err.println("Error: " + dataFile.getName() + " is corrupt or class structure changed: " + e.getMessage() + ". Attempting backup.");
                 loadedObject = null;
@@ -3496,8 +3947,8 @@ public class HelloApplication extends Application {
 
         if (loadedObject == null && backupFile.exists() && backupFile.length() > 0) {
             System.out.println("Attempting to load from backup: " + backupFile.getName());
-            try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(backupFile)))) {
-                loadedObject = ois.readObject();
+            try {
+                loadedObject = readDataFile(backupFile, codec, legacyType);
                 System.out.println(backupFile.getName() + " (backup) loaded successfully.");
                 Files.copy(backupFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
             } catch (Exception e) {
@@ -3506,51 +3957,70 @@ public class HelloApplication extends Application {
             }
         }
 
-        if (expectedPrimaryType.isInstance(loadedObject)) {
-            try {
-                return (T) loadedObject;
-            } catch (ClassCastException cce) {
-                System.err.println("ClassCastException for " + dataFile.getName() + ". Type mismatch. Using default. Error: " + cce.getMessage());
-                return defaultValue;
+        return loadedObject != null ? loadedObject : defaultValue;
+    }
+
+    private static <T> T readDataFile(File file, RecordCodecs.RecordCodec<T> codec, Class<?> legacyType) throws IOException, ClassNotFoundException {
+        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            if (RecordCodecs.readDataFileHeader(in)) {
+                return codec.read(new DataInputStream(in));
+            }
+            Object legacyObject = new ObjectInputStream(in).readObject();
+            if (legacyType.isInstance(legacyObject)) {
+                return (T) legacyObject;
             }
-        } else if (loadedObject != null) {
-            System.err.println(dataFile.getName() + " contained an object of unexpected type (" + loadedObject.getClass().getName() + " vs " + expectedPrimaryType.getName() +"). Using default value.");
+            System.err.println(file.getName() + " contained an object of unexpected type (" + legacyObject.getClass().getName() + " vs " + legacyType.getName() + ").");
+            return null;
         }
-        return defaultValue;
     }
 
-    private void saveGenericData(String dataFilePath, String backupFilePath, Object dataToSave) throws IOException {
-        File dataFile = new File(dataFilePath);
-        File backupFile = new File(backupFilePath);
+    /**
+     * Writes {@code dataToSave} to a temp file, forces it to disk and renames it over the data file.
+     * The previous version is renamed to the backup rather than copied, so each save writes the data
+     * once and the data file is never left half-written.
+     */
+    private <T> void saveGenericData(String dataFilePath, String backupFilePath, T dataToSave, RecordCodecs.RecordCodec<T> codec) throws IOException {
+        Path dataFile = Paths.get(dataFilePath);
+        Path backupFile = Paths.get(backupFilePath);
+        Path tmpFile = Paths.get(dataFilePath + TMP_SUFFIX);
 
         ensureDataDirectory();
 
-        if (dataFile.exists() && dataFile.length() > 0) {
-            Files.copy(dataFile.toPath(), backupFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        }
-        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile)))) {
-            oos.writeObject(dataToSave);
+        try {
+            RecordCodecs.writeDataFile(tmpFile, dataToSave, codec);
         } catch (IOException e) {
-            System.err.println("Critical Error saving " + dataFile.getName() + ".");
-            if (backupFile.exists()) {
-                Files.copy(backupFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                System.err.println("Restored " + dataFile.getName() + " from backup.");
-            }
+            System.err.println("Critical Error saving " + dataFile.getFileName() + "; the previous version is unchanged.");
+            Files.deleteIfExists(tmpFile);
             throw e;
         }
+
+        if (Files.exists(dataFile) && Files.size(dataFile) > 0) {
+            Files.move(dataFile, backupFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(tmpFile, dataFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectoryQuietly(dataFile.toAbsolutePath().getParent());
+    }
+
+    /** Makes the renames durable where the platform allows opening a directory (not on Windows). */
+    private static void syncDirectoryQuietly(Path directory) {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Best effort only.
+        }
     }
 
 
-    private <T> T loadSpecificUserData(String username, String fileName, Class<?> expectedPrimaryType, T defaultValue) {
+    private <T> T loadSpecificUserData(String username, String fileName, RecordCodecs.RecordCodec<T> codec, Class<?> legacyType, T defaultValue) {
         String filePath = getUserSpecificFilePath(username, fileName);
         String backupPath = getUserSpecificBackupPath(username, fileName);
-        return loadGenericData(filePath, backupPath, expectedPrimaryType, defaultValue);
+        return loadGenericData(filePath, backupPath, codec, legacyType, defaultValue);
     }
 
-    private void saveSpecificUserData(String username, String fileName, Object dataToSave) throws IOException {
+    private <T> void saveSpecificUserData(String username, String fileName, T dataToSave, RecordCodecs.RecordCodec<T> codec) throws IOException {
         String filePath = getUserSpecificFilePath(username, fileName);
         String backupPath = getUserSpecificBackupPath(username, fileName);
-        saveGenericData(filePath, backupPath, dataToSave);
+        saveGenericData(filePath, backupPath, dataToSave, codec);
     }
 
     private void ensureDataDirectory() throws IOException {
@@ -3589,8 +4059,8 @@ public class HelloApplication extends Application {
 
     private LocalDate getMinDateFromEntries() {
         if (journalEntries == null && moodEntries == null) return LocalDate.now().minusYears(1);
-        Optional<LocalDate> minJournalDate = (journalEntries != null) ? journalEntries.stream().map(e -> e.date).filter(Objects::nonNull).min(LocalDate::compareTo) : Optional.empty();
-        Optional<LocalDate> minMoodDate = (moodEntries != null) ? moodEntries.stream().map(e -> e.date).filter(Objects::nonNull).min(LocalDate::compareTo) : Optional.empty();
+        Optional<LocalDate> minJournalDate = (journalEntries != null) ? journalEntries.minDate() : Optional.empty();
+        Optional<LocalDate> minMoodDate = (moodEntries != null) ? moodEntries.minDate() : Optional.empty();
         LocalDate defaultMin = LocalDate.now().minusYears(1);
         return minJournalDate
                 .flatMap(jDate -> minMoodDate.map(mDate -> jDate.isBefore(mDate) ? jDate : mDate))
@@ -3599,8 +4069,8 @@ public class HelloApplication extends Application {
 
     private LocalDate getMaxDateFromEntries() {
         if (journalEntries == null && moodEntries == null) return LocalDate.now();
-        Optional<LocalDate> maxJournalDate = (journalEntries != null) ? journalEntries.stream().map(e -> e.date).filter(Objects::nonNull).max(LocalDate::compareTo) : Optional.empty();
-        Optional<LocalDate> maxMoodDate = (moodEntries != null) ? moodEntries.stream().map(e -> e.date).filter(Objects::nonNull).max(LocalDate::compareTo) : Optional.empty();
+        Optional<LocalDate> maxJournalDate = (journalEntries != null) ? journalEntries.maxDate() : Optional.empty();
+        Optional<LocalDate> maxMoodDate = (moodEntries != null) ? moodEntries.maxDate() : Optional.empty();
         LocalDate defaultMax = LocalDate.now();
         return maxJournalDate
                 .flatMap(jDate -> maxMoodDate.map(mDate -> jDate.isAfter(mDate) ? jDate : mDate))
@@ -3625,27 +4095,33 @@ public class HelloApplication extends Application {
         }
 
         updateMoodChart(lineChart, selectedPeriod);
-        List<MoodEntry> filteredEntries = filterMoodEntries(selectedPeriod);
+        LocalDate[] range = getPeriodRange(selectedPeriod);
+        DailyMoodAggregates.Summary periodSummary = moodAggregates.summarize(range[0], range[1]);
 
         VBox summaryContentBox = new VBox(10);
         summaryContentBox.setPadding(new Insets(10));
-        Label mostCommonMood = new Label("Most Common Mood: " + getMostCommonMood(filteredEntries));
-        Label averageMood = new Label("Average Mood Level: " + String.format("%.1f", getAverageMoodLevel(filteredEntries)) + " / 10");
-        Label moodVariability = new Label("Mood Fluctuation: " + getMoodVariabilityDescription(filteredEntries));
-        Label entryCount = new Label("Total Mood Entries This Period: " + filteredEntries.size());
-
-        for(Label l : List.of(mostCommonMood, averageMood, moodVariability, entryCount)) {
+        Label mostCommonMood = new Label("Most Common Mood: " + getMostCommonMood(periodSummary));
+        Label averageMood = new Label("Average Mood Level: " + String.format("%.1f", getAverageMoodLevel(periodSummary)) + " / 10");
+        Label moodVariability = new Label("Mood Fluctuation: " + getMoodVariabilityDescription(periodSummary));
+        Label entryCount = new Label("Total Mood Entries This Period: " + periodSummary.count);
+        Label currentStreak = new Label("Current Low-Mood Streak: " + formatDays(lowMoodStreaks.currentEndingAt(LocalDate.now())));
+        Label longestStreak = new Label("Longest Low-Mood Streak This Period: " + formatDays(lowMoodStreaks.longestBetween(range[0], range[1])));
+
+        for(Label l : List.of(mostCommonMood, averageMood, moodVariability, entryCount, currentStreak, longestStreak)) {
             l.getStyleClass().add("summary-label"); l.setWrapText(true);
         }
-        summaryContentBox.getChildren().addAll(mostCommonMood, averageMood, moodVariability, entryCount);
+        summaryContentBox.getChildren().addAll(mostCommonMood, averageMood, moodVariability, entryCount, currentStreak, longestStreak);
         summaryPane.setContent(summaryContentBox);
 
         updateSuggestions(suggestionsPane);
     }
 
-    private List<MoodEntry> filterMoodEntries(String selectedPeriod) {
-        if (moodEntries == null) return Collections.emptyList();
+    private static String formatDays(int days) {
+        return days == 1 ? "1 day" : days + " days";
+    }
 
+    /** Inclusive [start, end] dates covered by one of the insight period choices. */
+    private LocalDate[] getPeriodRange(String selectedPeriod) {
         LocalDate endDateQuery = LocalDate.now();
         LocalDate startDateQuery;
 
@@ -3666,22 +4142,17 @@ public class HelloApplication extends Application {
                 break;
         }
 
-        final LocalDate finalStartDate = startDateQuery;
-        final LocalDate finalEndDate = endDateQuery;
-
-        return moodEntries.stream()
-                .filter(e -> e.date != null && !e.date.isBefore(finalStartDate) && !e.date.isAfter(finalEndDate))
-                .sorted(Comparator.comparing(e -> e.date))
-                .toList();
+        return new LocalDate[] { startDateQuery, endDateQuery };
     }
 
 
     private void updateMoodChart(LineChart<String, Number> chart, String selectedPeriod) {
-        if (chart == null || moodEntries == null) return;
+        if (chart == null || moodAggregates == null) return;
         chart.getData().clear();
-        List<MoodEntry> filteredEntries = filterMoodEntries(selectedPeriod);
+        LocalDate[] range = getPeriodRange(selectedPeriod);
+        NavigableMap<Long, DailyMoodAggregates.DayBucket> moodByDay = moodAggregates.daysBetween(range[0], range[1]);
 
-        if (filteredEntries.isEmpty()) {
+        if (moodByDay.isEmpty()) {
             chart.setTitle("Mood Trends (No data for " + selectedPeriod + ")");
             return;
         }
@@ -3690,15 +4161,9 @@ public class HelloApplication extends Application {
         XYChart.Series<String, Number> series = new XYChart.Series<>();
         series.setName("Average Mood");
 
-        Map<LocalDate, Double> avgMoodsByDate = filteredEntries.stream()
-                .collect(Collectors.groupingBy(e -> e.date,
-                        Collectors.averagingInt(e -> getMoodValue(e.mood))));
-
-        avgMoodsByDate.entrySet().stream()
-                .sorted(Map.Entry.comparingByKey())
-                .forEach(entry -> {
-                    LocalDate date = entry.getKey();
-                    double avgMood = entry.getValue();
+        moodByDay.forEach((epochDay, day) -> {
+                    LocalDate date = LocalDate.ofEpochDay(epochDay);
+                    double avgMood = day.average();
                     String moodDesc = avgMood >= 7.5 ? "Positive" : avgMood >= 4.5 ? "Neutral" : "Negative";
 
                     XYChart.Data<String, Number> dataPoint = new XYChart.Data<>(date.format(DateTimeFormatter.ofPattern("MMM d")), avgMood);
@@ -3727,46 +4192,28 @@ public class HelloApplication extends Application {
 
         chart.getData().add(series);
     }
-    private String getMostCommonMood(List<MoodEntry> entries) {
-        if (entries == null || entries.isEmpty()) return "N/A (No entries)";
-        Map<String, Long> moodCounts = entries.stream()
-                .filter(e -> e.mood != null)
-                .collect(Collectors.groupingBy(e -> e.mood, Collectors.counting()));
-
-        if (moodCounts.isEmpty()) return "N/A (No moods recorded)";
-
-        long maxCount = moodCounts.values().stream().max(Long::compare).orElse(0L);
-        if (maxCount == 0) return "N/A";
+    private String getMostCommonMood(DailyMoodAggregates.Summary summary) {
+        if (summary.count == 0) return "N/A (No entries)";
+        int[] moodCounts = summary.moodCounts;
 
-        List<String> mostCommon = moodCounts.entrySet().stream()
-                .filter(e -> e.getValue() == maxCount)
-                .map(Map.Entry::getKey)
-                .sorted()
-                .toList();
+        int maxCount = Arrays.stream(moodCounts).max().orElse(0);
+        List<String> mostCommon = new ArrayList<>();
+        for (int mood = 0; mood < Mood.COUNT; mood++) {
+            if (moodCounts[mood] == maxCount) mostCommon.add(Mood.ofOrdinal(mood).label);
+        }
+        Collections.sort(mostCommon);
 
         return String.join(" / ", mostCommon) + String.format(" (%d occurrence%s)", maxCount, maxCount == 1 ? "" : "s");
     }
 
-    private double getAverageMoodLevel(List<MoodEntry> entries) {
-        if (entries == null || entries.isEmpty()) return 0.0;
-        return entries.stream()
-                .filter(e -> e.mood != null)
-                .mapToInt(e -> getMoodValue(e.mood))
-                .average()
-                .orElse(0.0);
+    private double getAverageMoodLevel(DailyMoodAggregates.Summary summary) {
+        return summary.average();
     }
 
-    private String getMoodVariabilityDescription(List<MoodEntry> entries) {
-        if (entries == null || entries.size() < 2) return "N/A (Insufficient data)";
-        List<Integer> moodValues = entries.stream()
-                .filter(e -> e.mood != null)
-                .map(e -> getMoodValue(e.mood))
-                .toList();
-
-        if (moodValues.size() < 2) return "N/A (Insufficient data points)";
+    private String getMoodVariabilityDescription(DailyMoodAggregates.Summary summary) {
+        if (summary.count < 2) return "N/A (Insufficient data)";
 
-        double mean = moodValues.stream().mapToInt(Integer::intValue).average().orElse(0.0);
-        double stdDev = Math.sqrt(moodValues.stream().mapToDouble(v -> Math.pow(v - mean, 2)).sum() / moodValues.size());
+        double stdDev = summary.standardDeviation();
 
         if (stdDev < 1.2) return String.format("Low (Fairly Stable, SD: %.2f)", stdDev);
         if (stdDev < 2.8) return String.format("Moderate (Some Fluctuation, SD: %.2f)", stdDev);
@@ -4016,178 +4463,34 @@ public class HelloApplication extends Application {
         button.setOnMouseExited(e -> scaleOut.play());
     }
 
-    private void initializeSuggestionRules() {
-        suggestionRules.clear();
-
-        suggestionRules.add(new SuggestionRule(
-                "PERSISTENT_LOW_MOOD",
-                "Experiencing low mood (Sad, Very Sad, Anxious, Stressed, Tired) for 3 or more of the last 7 days with entries.",
-                (data, journalEs, moodEs) -> data.consecutiveLowMoodDays >= 2 ||
-                        data.moodCountsLast7Days.entrySet().stream()
-                                .filter(e -> Arrays.asList("Sad", "Very Sad", "Anxious", "Stressed", "Tired").contains(e.getKey()))
-                                .mapToLong(Map.Entry::getValue).sum() >= 3,
-                "It appears you've had several challenging mood days recently. Remember to be kind to yourself. " +
-                        "Consider what small act of self-care might feel supportive right now (e.g., a short break, calming music, talking to someone).",
-                "Persistent low moods can be taxing. Acknowledging them is the first step. " +
-                        "Self-compassion involves treating yourself with the same kindness you'd offer a friend. If these feelings are ongoing or intense, " +
-                        "reflecting on potential triggers or speaking with a trusted peer or professional could be beneficial.",
-                10
-        ));
-
-
-        suggestionRules.add(new SuggestionRule(
-                "HIGH_STRESS_ANXIETY_KEYWORDS",
-                "Journal entries in the last 7 days frequently mention themes of stress or anxiety.",
-                (data, journalEs, moodEs) -> {
-                    long stressKeywordCount = data.keywordsInJournalLast7Days.stream()
-                            .filter(k -> k.matches("stress|anxious|overwhelm|worried|panic|pressure|tense|burnout"))
-                            .count();
-                    return stressKeywordCount >= 3;
-                },
-                "Your recent writings suggest you might be under significant pressure or experiencing anxiety. " +
-                        "Are there grounding techniques (like deep breathing or the 5-4-3-2-1 method) that could offer some immediate relief?",
-                "When stress or anxiety is high, our thoughts can race. Grounding techniques help bring focus to the present moment. " +
-                        "Consider also if there are any manageable changes to your environment or schedule that could reduce immediate stressors. " +
-                        "It's okay to set boundaries or delegate if possible.",
-                20
-        ));
-
-        suggestionRules.add(new SuggestionRule(
-                "SLEEP_CONCERNS_EVIDENT",
-                "Reports 'Tired' mood and journal entries mention sleep difficulties or fatigue in the last 7 days.",
-                (data, journalEs, moodEs) -> {
-                    boolean tiredReported = data.moodCountsLast7Days.getOrDefault("Tired", 0L) >= 1;
-                    long sleepKeywordCount = data.keywordsInJournalLast7Days.stream()
-                            .filter(kw -> kw.matches("sleep|insomnia|awake|restless|fatigue|exhausted|nosleep|cantsleep"))
-                            .count();
-                    return tiredReported && sleepKeywordCount >= 1;
-                },
-                "Feeling tired, and your entries mention sleep-related themes? Quality rest is crucial. " +
-                        "Could reviewing your sleep hygiene (consistent schedule, calm pre-sleep routine, minimizing screens) be helpful?",
-                "Consistent, restorative sleep underpins mental well-being. Sleep hygiene practices aim to create optimal conditions for sleep. " +
-                        "This includes a cool, dark, quiet bedroom; avoiding caffeine/heavy meals before bed; and creating a wind-down period. " +
-                        "If sleep issues persist, discussing them with a healthcare provider is important.",
-                30
-        ));
-
-        suggestionRules.add(new SuggestionRule(
-                "POSITIVE_MOOD_PATTERN",
-                "Consistently positive or calm moods reported over several days in the last week.",
-                (data, journalEs, moodEs) -> {
-                    if (data.moodCountsLast7Days == null || moodEs == null) return false;
-                    long positiveAndCalmMoodCount = data.moodCountsLast7Days.getOrDefault("Very Happy", 0L) +
-                            data.moodCountsLast7Days.getOrDefault("Happy", 0L) +
-                            data.moodCountsLast7Days.getOrDefault("Content", 0L) +
-                            data.moodCountsLast7Days.getOrDefault("Calm", 0L) +
-                            data.moodCountsLast7Days.getOrDefault("Energetic", 0L);
-                    long totalMoodEntriesInPeriod = moodEs.stream()
-                            .filter(me -> me.date.isAfter(LocalDate.now().minusDays(8)))
-                            .count();
-                    return totalMoodEntriesInPeriod >= 2 && positiveAndCalmMoodCount >= 2 && (totalMoodEntriesInPeriod <=3 || ((double)positiveAndCalmMoodCount / totalMoodEntriesInPeriod) >= 0.6);
-                },
-                "It's great to see a pattern of positive or calm moods recently! " +
-                        "Perhaps take a moment to acknowledge what might be contributing to this period of well-being.",
-                "Recognizing and understanding periods of positive well-being is valuable. " +
-                        "Reflecting on activities, relationships, mindsets, or circumstances that align with these good feelings can help you consciously cultivate more of them. " +
-                        "Savor these moments and learn from them.",
-                40
-        ));
-
-        suggestionRules.add(new SuggestionRule(
-                "LOW_ENGAGEMENT_RECENTLY",
-                "Very few or no journal/mood entries in the past 7 days.",
-                (data, journalEs, moodEs) -> {
-                    if (journalEs == null || moodEs == null) return false;
-                    boolean noRecentJournal = journalEs.stream()
-                            .filter(je -> je.date.isAfter(LocalDate.now().minusDays(8)))
-                            .findAny().isEmpty();
-                    long recentMoodsCount = moodEs.stream()
-                            .filter(me -> me.date.isAfter(LocalDate.now().minusDays(8)))
-                            .count();
-                    return noRecentJournal && recentMoodsCount <= 1;
-                },
-                "It's been a little while since your last entry. Even a brief check-in with yourself can be insightful. " +
-                        "No pressure for a long entry – just a moment of reflection.",
-                "Regular self-reflection, even if short, helps maintain awareness of your emotional landscape. " +
-                        "If full journaling feels daunting, a quick mood log or noting one thought/feeling can still be beneficial. " +
-                        "Consider what might make it easier to engage (e.g., setting a reminder, choosing a specific time).",
-                5
-        ));
-    }
-    private AnalysisData gatherAnalysisData(LocalDate analysisEndDate) {
-        if (this.journalEntries == null || this.moodEntries == null) {
-            return new AnalysisData(new HashMap<>(), new ArrayList<>(), 0);
-        }
-
-        int daysToAnalyze = 7;
-        LocalDate analysisStartDate = analysisEndDate.minusDays(daysToAnalyze - 1);
-
-        List<MoodEntry> recentMoods = this.moodEntries.stream()
-                .filter(e -> e.date != null && !e.date.isBefore(analysisStartDate) && !e.date.isAfter(analysisEndDate))
-                .sorted(Comparator.comparing(e -> e.date))
-                .toList();
-
-        List<JournalEntry> recentJournals = this.journalEntries.stream()
-                .filter(e -> e.date != null && !e.date.isBefore(analysisStartDate) && !e.date.isAfter(analysisEndDate))
-                .toList();
-
-        Map<String, Long> moodCounts = recentMoods.stream()
-                .filter(e -> e.mood != null)
-                .collect(Collectors.groupingBy(e -> e.mood, Collectors.counting()));
-
-        List<String> keywords = recentJournals.stream()
-                .filter(e -> e.content != null && !e.content.isBlank())
-                .flatMap(e -> Arrays.stream(e.content.toLowerCase().split("\\W+")))
-                .filter(word -> word.length() > 3)
-                .distinct()
-                .toList();
-
-
-        int maxConsecutiveLowMoods = 0;
-        if (!recentMoods.isEmpty()) {
-            Map<LocalDate, Boolean> dailyLowMoodStatus = new TreeMap<>();
-            List<String> lowMoodStrings = Arrays.asList("Sad", "Very Sad", "Anxious", "Stressed", "Tired");
-
-            for (LocalDate date = analysisStartDate; !date.isAfter(analysisEndDate); date = date.plusDays(1)) {
-                final LocalDate currentDate = date;
-                List<MoodEntry> entriesForDate = recentMoods.stream().filter(e -> e.date.isEqual(currentDate)).toList();
-                if (!entriesForDate.isEmpty()) {
-                    boolean hasLowMood = entriesForDate.stream().anyMatch(e -> lowMoodStrings.contains(e.mood));
-                    dailyLowMoodStatus.put(currentDate, hasLowMood);
-                }
-            }
-
-
-            int currentStreak = 0;
-            for (LocalDate dateKey = analysisStartDate; !dateKey.isAfter(analysisEndDate); dateKey = dateKey.plusDays(1)) {
-                if (dailyLowMoodStatus.getOrDefault(dateKey, false)) {
-                    currentStreak++;
-                } else {
-                    maxConsecutiveLowMoods = Math.max(maxConsecutiveLowMoods, currentStreak);
-                    currentStreak = 0;
-                }
+    /**
+     * Loads the suggestion and well-being rules: {@value #RULES_FILE_NAME} in the data directory if there
+     * is one, otherwise the rules bundled with the application.
+     */
+    private void loadRuleBook() {
+        File userRules = new File(DATA_DIR, RULES_FILE_NAME);
+        if (userRules.isFile()) {
+            try {
+                ruleBook = RuleBook.parse(Files.readString(userRules.toPath(), StandardCharsets.UTF_8), userRules.getName());
+                return;
+            } catch (IOException e) {
+                System.err.println("Could not load " + userRules.getAbsolutePath() + ", using the built-in rules: " + e.getMessage());
             }
-            maxConsecutiveLowMoods = Math.max(maxConsecutiveLowMoods, currentStreak);
         }
-        return new AnalysisData(moodCounts, keywords, maxConsecutiveLowMoods);
+        try (InputStream rulesStream = getClass().getResourceAsStream(RULES_FILE_NAME)) {
+            if (rulesStream == null) throw new IOException("The built-in " + RULES_FILE_NAME + " is missing.");
+            ruleBook = RuleBook.parse(new String(rulesStream.readAllBytes(), StandardCharsets.UTF_8), RULES_FILE_NAME);
+        } catch (IOException e) {
+            System.err.println("Could not load the built-in rules, suggestions and well-being tasks are disabled: " + e.getMessage());
+            ruleBook = RuleBook.EMPTY;
+        }
     }
+
     public List<SuggestionRule> generateSuggestions() {
         if (this.journalEntries == null || this.moodEntries == null) {
             return Collections.emptyList();
         }
-        AnalysisData data = gatherAnalysisData(LocalDate.now());
-        LocalDate sevenDaysAgo = LocalDate.now().minusDays(7);
-
-        List<JournalEntry> recentJournalEntriesForRules = this.journalEntries.stream()
-                .filter(e -> e.date != null && !e.date.isBefore(sevenDaysAgo) && !e.date.isAfter(LocalDate.now()))
-                .toList();
-        List<MoodEntry> recentMoodEntriesForRules = this.moodEntries.stream()
-                .filter(e -> e.date != null && !e.date.isBefore(sevenDaysAgo) && !e.date.isAfter(LocalDate.now()))
-                .toList();
-
-
-        return suggestionRules.stream()
-                .filter(rule -> rule.condition.test(data, recentJournalEntriesForRules, recentMoodEntriesForRules))
+        return suggestionWindow.activeSuggestions(LocalDate.now()).stream()
                 .sorted(Comparator.comparingInt(rule -> rule.priority))
                 .toList();
     }
@@ -4283,110 +4586,47 @@ public class HelloApplication extends Application {
 
         suggestionsPane.setExpanded(!activeSuggestions.isEmpty());
     }
-    private void initializeWellBeingTasks() {
-        wellBeingTaskList.clear();
-
-        wellBeingTaskList.add(new WellBeingTask(
-                "Guided Mindful Breathing (5 min)",
-                "Find a quiet space. Sit comfortably. Close your eyes or soften your gaze. Gently bring your attention to your breath. Notice the sensation of air entering your nostrils, filling your lungs, and the release as you exhale. Don't try to change your breath, just observe its natural rhythm. If your mind wanders, gently guide it back. Continue for 5 minutes.\n\nBenefits: Calms the nervous system, reduces acute stress, improves focus.",
-                "Mindfulness & Relaxation", "5 mins",
-                data -> data.recentNegativeMoods.contains("Stressed") || data.recentNegativeMoods.contains("Anxious") || data.recentKeywordsFromJournals.stream().anyMatch(k -> k.matches("stress|anxiety|overwhelm|panic|tense"))
-        ));
-        wellBeingTaskList.add(new WellBeingTask(
-                "Body Scan Meditation (10 min)",
-                "Lie down or sit comfortably. Bring awareness to your feet, noticing any sensations without judgment. Slowly move your attention up through your legs, torso, arms, neck, and head, pausing at each part to observe sensations (tingling, warmth, tension). If you find tension, try to breathe into it and soften. The goal is observation, not necessarily relaxation, though it may occur.\n\nBenefits: Increases body awareness, can release physical tension, promotes calm.",
-                "Mindfulness & Relaxation", "10 mins",
-                data -> data.recentNegativeMoods.contains("Stressed") || data.recentKeywordsFromJournals.stream().anyMatch(k -> k.matches("tense|ache|pain|restless"))
-        ));
-
-        wellBeingTaskList.add(new WellBeingTask(
-                "Three Good Things / Gratitude Journaling",
-                "At the end of your day, write down three things that went well and briefly explain why they went well or what you're grateful for regarding them. They can be small (a good cup of coffee) or large (a personal achievement).\n\nBenefits: Shifts focus to positive experiences, boosts optimism, improves mood over time.",
-                "Positive Psychology", "5-7 mins",
-                data -> true
-        ));
-        wellBeingTaskList.add(new WellBeingTask(
-                "Savoring a Positive Memory",
-                "Bring to mind a recent positive experience. Close your eyes and relive it in detail: what did you see, hear, smell, feel (emotionally and physically)? Try to prolong the positive feelings associated with this memory for a few minutes.\n\nBenefits: Amplifies positive emotions, builds resilience.",
-                "Positive Psychology", "3-5 mins",
-                data -> data.recentPositiveMoods.isEmpty() && !data.recentNegativeMoods.isEmpty()
-        ));
-
-
-        wellBeingTaskList.add(new WellBeingTask(
-                "Mindful Walking (10-15 min)",
-                "If possible, go for a short walk. Pay attention to the sensation of your feet on the ground, the movement of your body, the sights, sounds, and smells around you. If indoors, walk slowly from one end of a room to another.\n\nBenefits: Combines light physical activity with mindfulness, can boost energy and clear the mind.",
-                "Gentle Activity", "10-15 mins",
-                data -> data.recentNegativeMoods.contains("Tired") || data.recentKeywordsFromJournals.stream().anyMatch(k -> k.matches("fatigue|lethargic|stuck|restless"))
-        ));
-        wellBeingTaskList.add(new WellBeingTask(
-                "Creative Outlet (15-20 min)",
-                "Engage in a simple creative activity you enjoy: sketching, coloring, writing for pleasure (not journaling), playing an instrument, listening attentively to new music. Focus on the process, not the outcome.\n\nBenefits: Can be a form of emotional expression, stress relief, and flow state induction.",
-                "Creative Engagement", "15-20 mins",
-                data -> data.lowEngagementJournal || data.recentKeywordsFromJournals.stream().anyMatch(k -> k.matches("bored|uninspired|stuck"))
-        ));
-
-        wellBeingTaskList.add(new WellBeingTask(
-                "Journal Prompt: Exploring a Challenge",
-                "Pick one challenge you're currently facing. Write about it from different perspectives: \n1. What are the objective facts? \n2. What are your thoughts and feelings about it? \n3. What is one small, actionable step you could take related to this challenge, or what's one aspect you can control?\n\nBenefits: Helps in problem-solving, reduces feeling overwhelmed, promotes agency.",
-                "Problem Solving & Reflection", "10-15 mins",
-                data -> data.recentNegativeMoods.contains("Stressed") || data.recentNegativeMoods.contains("Anxious") || data.recentKeywordsFromJournals.stream().anyMatch(k -> k.matches("overwhelm|problem|stuck"))
-        ));
-
-    }
     private AnalysisDataForWellBeing gatherWellBeingAnalysisData() {
         if (this.journalEntries == null || this.moodEntries == null) {
-            return new AnalysisDataForWellBeing(new HashSet<>(), new HashSet<>(), new HashSet<>(), true, true);
+            return new AnalysisDataForWellBeing(EnumSet.noneOf(Mood.class), EnumSet.noneOf(Mood.class), new BitSet(), new long[Mood.COUNT], 0, 0, 0, 0, 0);
         }
         LocalDate sevenDaysAgo = LocalDate.now().minusDays(6);
 
-        Set<String> negativeMoodsCollector = new HashSet<>();
-        Set<String> positiveMoodsCollector = new HashSet<>();
-        Set<String> keywordsCollector = new HashSet<>();
-
-        List<String> lowMoodMarkers = Arrays.asList("Sad", "Very Sad", "Anxious", "Stressed", "Tired");
-        List<String> positiveMoodMarkers = Arrays.asList("Very Happy", "Happy", "Content", "Calm", "Energetic");
+        Set<Mood> negativeMoodsCollector = EnumSet.noneOf(Mood.class);
+        Set<Mood> positiveMoodsCollector = EnumSet.noneOf(Mood.class);
+        long[] moodCountsCollector = new long[Mood.COUNT];
+        KeywordMatcher matcher = ruleBook.keywordMatcher();
+        BitSet ruleTermsCollector = new BitSet(matcher.termCount());
 
         long journalCountLast7Days = 0;
-        for (JournalEntry entry : this.journalEntries) {
-            if (entry.date != null && !entry.date.isBefore(sevenDaysAgo) && !entry.date.isAfter(LocalDate.now())) {
-                journalCountLast7Days++;
-                if (entry.mood != null) {
-                    if (lowMoodMarkers.contains(entry.mood)) negativeMoodsCollector.add(entry.mood);
-                    if (positiveMoodMarkers.contains(entry.mood)) positiveMoodsCollector.add(entry.mood);
-                }
-                if (entry.content != null && !entry.content.isBlank()) {
-                    keywordsCollector.addAll(Arrays.stream(entry.content.toLowerCase().split("\\W+"))
-                            .filter(s -> s.length() > 3).collect(Collectors.toSet()));
-                }
-            }
+        for (int index : this.journalEntries.indexesBetween(sevenDaysAgo, LocalDate.now(), i -> true)) {
+            Mood mood = this.journalEntries.get(index).moodKind;
+            journalCountLast7Days++;
+            moodCountsCollector[mood.ordinal()]++;
+            if (mood.isLow()) negativeMoodsCollector.add(mood);
+            if (mood.isPositive()) positiveMoodsCollector.add(mood);
+            ruleTermsCollector.or(this.journalEntries.matchedTerms(index, matcher));
         }
 
         long moodEntryCountLast7Days = 0;
-        for (MoodEntry entry : this.moodEntries) {
-            if (entry.date != null && !entry.date.isBefore(sevenDaysAgo) && !entry.date.isAfter(LocalDate.now())) {
-                moodEntryCountLast7Days++;
-                if (entry.mood != null) {
-                    if (lowMoodMarkers.contains(entry.mood)) negativeMoodsCollector.add(entry.mood);
-                    if (positiveMoodMarkers.contains(entry.mood)) positiveMoodsCollector.add(entry.mood);
-                }
-                if (entry.notes != null && !entry.notes.isBlank()) {
-                    keywordsCollector.addAll(Arrays.stream(entry.notes.toLowerCase().split("\\W+"))
-                            .filter(s -> s.length() > 3).collect(Collectors.toSet()));
-                }
-            }
-        }
-
-        boolean lowJournalEngagement = journalCountLast7Days < 2;
-        boolean lowMoodLogEngagement = moodEntryCountLast7Days < 2;
-
-        return new AnalysisDataForWellBeing(negativeMoodsCollector, positiveMoodsCollector, keywordsCollector, lowJournalEngagement, lowMoodLogEngagement);
+        for (int index : this.moodEntries.indexesBetween(sevenDaysAgo, LocalDate.now(), i -> true)) {
+            Mood mood = this.moodEntries.get(index).moodKind;
+            moodEntryCountLast7Days++;
+            moodCountsCollector[mood.ordinal()]++;
+            if (mood.isLow()) negativeMoodsCollector.add(mood);
+            if (mood.isPositive()) positiveMoodsCollector.add(mood);
+            ruleTermsCollector.or(this.moodEntries.matchedTerms(index, matcher));
+        }
+
+        return new AnalysisDataForWellBeing(negativeMoodsCollector, positiveMoodsCollector, ruleTermsCollector,
+                moodCountsCollector, journalCountLast7Days, moodEntryCountLast7Days,
+                lowMoodStreaks.longestBetween(sevenDaysAgo, LocalDate.now()),
+                lowMoodStreaks.currentEndingAt(LocalDate.now()),
+                lowMoodStreaks.longest());
     }
     private List<WellBeingTask> generateWellBeingTasks() {
         AnalysisDataForWellBeing analysisData = gatherWellBeingAnalysisData();
-        List<WellBeingTask> allApplicableTasks = wellBeingTaskList.stream()
-                .filter(task -> task.condition.test(analysisData))
-                .toList();
+        List<WellBeingTask> allApplicableTasks = ruleBook.tasksFor(analysisData);
 
         List<WellBeingTask> shuffledTasks = new ArrayList<>(allApplicableTasks);
         Collections.shuffle(shuffledTasks, random);
@@ -4481,21 +4721,6 @@ public class HelloApplication extends Application {
             delay += 100;
         }
     }
-    private int getMoodValue(String mood) {
-        if (mood == null) return 5; // Neutral as default
-        return switch (mood.toLowerCase()) {
-            case "very happy" -> 10;
-            case "happy" -> 8;
-            case "energetic", "content" -> 7;
-            case "calm" -> 6;
-            case "neutral" -> 5;
-            case "tired" -> 4;
-            case "sad", "anxious" -> 3;
-            case "stressed" -> 2;
-            case "very sad" -> 1;
-            default -> 5; // Fallback for any unknown mood string
-        };
-    }
     private void performExport(File file, String format, LocalDate startDate, LocalDate endDate, boolean includeJournal, boolean includeMood) throws IOException {
         if (this.journalEntries == null || this.moodEntries == null) {
             throw new IOException("User data not loaded. Cannot perform export.");
@@ -4521,18 +4746,14 @@ public class HelloApplication extends Application {
         DateTimeFormatter dtf = DateTimeFormatter.ofPattern("EEEE, MMMM d, yyyy");
         if (includeJournal) {
             writer.println("--- JOURNAL ENTRIES ---\n");
-            journalEntries.stream()
-                    .filter(e -> e.date != null && !e.date.isBefore(startDate) && !e.date.isAfter(endDate))
-                    .sorted(Comparator.comparing(e -> e.date))
+            journalEntries.entriesBetween(startDate, endDate)
                     .forEach(e -> writer.printf("Date: %s\nMood Reported: %s\n\nEntry Content:\n%s\n\n-----\n\n",
                             e.date.format(dtf), e.mood, e.content.trim()));
             writer.println("--- END JOURNAL ENTRIES ---\n");
         }
         if (includeMood) {
             writer.println("--- MOOD TRACKER ENTRIES ---\n");
-            moodEntries.stream()
-                    .filter(e -> e.date != null && !e.date.isBefore(startDate) && !e.date.isAfter(endDate))
-                    .sorted(Comparator.comparing(e -> e.date))
+            moodEntries.entriesBetween(startDate, endDate)
                     .forEach(e -> writer.printf("Date: %s\nMood: %s\n%s\n-----\n",
                             e.date.format(dtf), e.mood,
                             e.notes.isEmpty() ? "No additional notes." : "Notes:\n" + e.notes.trim()));
@@ -4545,18 +4766,14 @@ public class HelloApplication extends Application {
         writer.println("EntryType,Date,Mood,ContentOrNotes,SourceAppTab");
 
         if (includeJournal) {
-            journalEntries.stream()
-                    .filter(e -> e.date != null && !e.date.isBefore(startDate) && !e.date.isAfter(endDate))
-                    .sorted(Comparator.comparing(e -> e.date))
+            journalEntries.entriesBetween(startDate, endDate)
                     .forEach(e -> writer.printf("JournalEntry,%s,%s,%s,JournalTab\n",
                             e.date.format(dtf),
                             escapeCsv(e.mood),
                             escapeCsv(e.content)));
         }
         if (includeMood) {
-            moodEntries.stream()
-                    .filter(e -> e.date != null && !e.date.isBefore(startDate) && !e.date.isAfter(endDate))
-                    .sorted(Comparator.comparing(e -> e.date))
+            moodEntries.entriesBetween(startDate, endDate)
                     .forEach(e -> writer.printf("MoodTrackerEntry,%s,%s,%s,MoodTrackerTab\n",
                             e.date.format(dtf),
                             escapeCsv(e.mood),
@@ -4594,310 +4811,3 @@ public class HelloApplication extends Application {
         return scrollPane;
     }
 }
-
-
-class NetworkManager {
-    private final String myUid;
-    private final int myTcpPort;
-    private final HelloApplication app;
-    private ScheduledExecutorService scheduler;
-    private DatagramSocket udpSocket;
-    private ServerSocket tcpServerSocket;
-    private volatile boolean running = true;
-
-    private static final int UDP_BROADCAST_PORT = 25565;
-    private static final int PRESENCE_INTERVAL_SECONDS = 15;
-    private static final int FRIEND_TIMEOUT_SECONDS = PRESENCE_INTERVAL_SECONDS * 3 + 5;
-
-
-    public NetworkManager(String myUid, int myTcpPort, HelloApplication app) {
-        this.myUid = myUid;
-        this.myTcpPort = myTcpPort;
-        this.app = app;
-        System.out.println("NetworkManager initialized for UID: " + this.myUid + " on TCP Port: " + this.myTcpPort);
-    }
-
-    public void startServices() {
-        running = true;
-        scheduler = Executors.newScheduledThreadPool(3);
-
-        scheduler.execute(this::listenForUdpBroadcasts);
-        scheduler.scheduleAtFixedRate(this::broadcastPresence, 5, PRESENCE_INTERVAL_SECONDS, TimeUnit.SECONDS);
-        scheduler.scheduleAtFixedRate(this::checkFriendTimeouts, FRIEND_TIMEOUT_SECONDS, FRIEND_TIMEOUT_SECONDS / 2, TimeUnit.SECONDS);
-        scheduler.execute(this::startTcpServer);
-
-        System.out.println("Network services initiated. User UID: " + myUid + ". Listening on TCP Port: " + myTcpPort + ". UDP Discovery on: " + UDP_BROADCAST_PORT);
-    }
-
-    private void checkFriendTimeouts() {
-        if (!running || app.friendsList == null) return;
-        LocalDateTime now = LocalDateTime.now();
-        app.friendsList.forEach(friend -> {
-            if (friend.isOnline && friend.lastSeen != null &&
-                    java.time.Duration.between(friend.lastSeen, now).getSeconds() > FRIEND_TIMEOUT_SECONDS) {
-                System.out.println("Peer " + friend.uid + " (" + friend.nickname + ") timed out.");
-                app.updateFriendStatus(friend.uid, friend.ipAddress, friend.tcpPort, false);
-            }
-        });
-    }
-
-
-    private void broadcastPresence() {
-        if (!running || myUid == null) return;
-        try (DatagramSocket broadcastSocket = new DatagramSocket()){
-            broadcastSocket.setBroadcast(true);
-            String message = String.format("ALIVE:%s:%d", myUid, myTcpPort);
-            byte[] sendData = message.getBytes(StandardCharsets.UTF_8);
-
-            List<InetAddress> broadcastAddresses = new ArrayList<>();
-            try {
-                Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
-                while (interfaces.hasMoreElements()) {
-                    NetworkInterface networkInterface = interfaces.nextElement();
-                    if (networkInterface.isLoopback() || !networkInterface.isUp()) {
-                        continue;
-                    }
-                    for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
-                        InetAddress broadcast = interfaceAddress.getBroadcast();
-                        if (broadcast != null) {
-                            broadcastAddresses.add(broadcast);
-                        }
-                    }
-                }
-                if (broadcastAddresses.isEmpty()) {
-                    System.err.println("Warning: No broadcast addresses found for network interfaces. Using 255.255.255.255.");
-                    broadcastAddresses.add(InetAddress.getByName("255.255.255.255"));
-                }
-            } catch (SocketException | UnknownHostException e) {
-                System.err.println("Error getting broadcast addresses: " + e.getMessage() + ". Using 255.255.255.255.");
-                broadcastAddresses.clear();
-                try {
-                    broadcastAddresses.add(InetAddress.getByName("255.255.255.255"));
-                } catch (UnknownHostException ignored) { /* Should not happen for 255.255.255.255 */ }
-            }
-
-
-            for (InetAddress address : broadcastAddresses) {
-                try {
-                    DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, address, UDP_BROADCAST_PORT);
-                    broadcastSocket.send(sendPacket);
-                } catch (IOException e) {
-                    System.err.println("Network Error: Could not send broadcast to " + address + " for UID " + myUid + ". Error: " + e.getMessage());
-                }
-            }
-        } catch (SocketException e) {
-            System.err.println("Network Error: Could not create broadcast socket: " + e.getMessage());
-        }
-    }
-
-    private void listenForUdpBroadcasts() {
-        try {
-            udpSocket = new DatagramSocket(null);
-            udpSocket.setReuseAddress(true);
-            udpSocket.bind(new InetSocketAddress(UDP_BROADCAST_PORT));
-
-            byte[] receiveData = new byte[1024];
-            System.out.println("UDP Discovery Listener active on port " + UDP_BROADCAST_PORT);
-
-            while (running) {
-                DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
-                try {
-                    udpSocket.receive(receivePacket);
-                    String message = new String(receivePacket.getData(), 0, receivePacket.getLength(), StandardCharsets.UTF_8);
-                    InetAddress senderIp = receivePacket.getAddress();
-
-                    String[] parts = message.split(":");
-                    if (parts.length == 3 && "ALIVE".equals(parts[0])) {
-                        String senderUid = parts[1];
-                        int senderTcpPort;
-                        try {
-                            senderTcpPort = Integer.parseInt(parts[2]);
-                        } catch (NumberFormatException e) {
-                            System.err.println("Received ALIVE message with invalid port: " + message + " from " + senderIp.getHostAddress());
-                            continue;
-                        }
-
-                        if (!senderUid.equals(myUid)) {
-                            Optional<HelloApplication.Friend> knownFriendOpt = (app.friendsList != null) ?
-                                    app.friendsList.stream().filter(f -> f.uid.equals(senderUid)).findFirst() : Optional.empty();
-
-                            if (knownFriendOpt.isPresent()) {
-                                app.updateFriendStatus(senderUid, senderIp.getHostAddress(), senderTcpPort, true);
-                            }
-                        }
-                    }
-                } catch (SocketException se) {
-                    if (running) System.err.println("UDP SocketException in listener (potentially during shutdown): " + se.getMessage());
-                    else break;
-                } catch (IOException e) {
-                    if (running) System.err.println("IOException in UDP listener: " + e.getMessage());
-                }
-            }
-        } catch (SocketException e) {
-            System.err.println("FATAL: Could not bind UDP listener to port " + UDP_BROADCAST_PORT + ". Error: " + e.getMessage());
-        } finally {
-            if (udpSocket != null && !udpSocket.isClosed()) {
-                udpSocket.close();
-            }
-            System.out.println("UDP Discovery Listener stopped for UID " + myUid);
-        }
-    }
-
-    private void startTcpServer() {
-        try {
-            tcpServerSocket = new ServerSocket(myTcpPort);
-            System.out.println("TCP Message Server active for UID " + myUid + " on port " + myTcpPort);
-            while (running) {
-                try {
-                    Socket clientSocket = tcpServerSocket.accept();
-                    if (!running) {
-                        clientSocket.close();
-                        break;
-                    }
-                    System.out.println("TCP connection accepted from: " + clientSocket.getInetAddress().getHostAddress() + ":" + clientSocket.getPort() + " for user " + myUid);
-                    scheduler.execute(() -> handleTcpClient(clientSocket));
-                } catch (SocketException se) {
-                    if (running) System.err.println("TCP Server SocketException (potentially during shutdown accept): " + se.getMessage());
-                    else break;
-                }
-                catch (IOException e) {
-                    if (running) System.err.println("IOException in TCP server accept loop for UID " + myUid + ": " + e.getMessage());
-                }
-            }
-        } catch (BindException e) {
-            System.err.println("FATAL: Could not start TCP server for UID " + myUid + " on port " + myTcpPort + ". Port might be in use. Error: " + e.getMessage());
-            app.showAlert("Network Error", "Could not start TCP server on port " + myTcpPort + ". It might be in use. Connect feature will be limited.", Alert.AlertType.ERROR);
-        } catch (IOException e) {
-            System.err.println("FATAL: General IOException starting TCP server for UID " + myUid + " on port " + myTcpPort + ". Error: " + e.getMessage());
-        } finally {
-            if (tcpServerSocket != null && !tcpServerSocket.isClosed()) {
-                try {
-                    tcpServerSocket.close();
-                } catch (IOException e) { System.err.println("Error closing TCP server socket during shutdown for UID " + myUid + ": "+e.getMessage()); }
-            }
-            System.out.println("TCP Message Server stopped for UID " + myUid);
-        }
-    }
-
-    private void handleTcpClient(Socket clientSocket) {
-        String remoteClientUid = "Unknown";
-        try (
-                BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream(), StandardCharsets.UTF_8))
-        ) {
-            String line;
-            line = reader.readLine();
-            if (line != null && line.startsWith("INITMSG:")) {
-                remoteClientUid = line.substring("INITMSG:".length()).trim();
-                System.out.println("TCP Handshake successful with peer UID: " + remoteClientUid + " on connection for user " + myUid);
-
-                String clientIp = clientSocket.getInetAddress().getHostAddress();
-                final String finalRemoteClientUid = remoteClientUid;
-                if (app.friendsList != null) {
-                    app.friendsList.stream()
-                            .filter(f -> f.uid.equals(finalRemoteClientUid))
-                            .findFirst()
-                            .ifPresent(friend -> app.updateFriendStatus(friend.uid, clientIp, friend.tcpPort, true));
-                }
-
-
-            } else {
-                System.err.println("TCP Connection from " + clientSocket.getInetAddress().getHostAddress() +
-                        " - Invalid or missing INITMSG for user " + myUid + ". Closing connection.");
-                clientSocket.close();
-                return;
-            }
-
-            while (running && (line = reader.readLine()) != null) {
-                if (line.startsWith("MESSAGE:")) {
-                    String messageContent = line.substring("MESSAGE:".length());
-                    System.out.println("TCP Message received from UID " + remoteClientUid + " for user " + myUid + ": " + messageContent);
-                    app.receiveMessage(remoteClientUid, messageContent);
-                } else if (line.equalsIgnoreCase("BYE")) {
-                    System.out.println("Peer " + remoteClientUid + " sent BYE to user " + myUid + ". Closing connection.");
-                    break;
-                }else {
-                    System.out.println("TCP Received unhandled line from " + remoteClientUid + " for user " + myUid + ": " + line);
-                }
-            }
-        } catch (SocketException se) {
-            System.out.println("TCP Connection with " + remoteClientUid + " ("+clientSocket.getInetAddress().getHostAddress() +") for user "+ myUid +" ended: " + se.getMessage());
-        } catch (IOException e) {
-            System.err.println("IOException handling TCP client " + remoteClientUid + " ("+clientSocket.getInetAddress().getHostAddress() +") for user "+myUid+": " + e.getMessage());
-        } finally {
-            try {
-                if (!clientSocket.isClosed()) clientSocket.close();
-            } catch (IOException e) { System.err.println("Error closing client socket for " + remoteClientUid +" on user "+myUid+"'s server: " + e.getMessage());}
-            System.out.println("Closed TCP connection with " + remoteClientUid + " for user " + myUid);
-        }
-    }
-
-    public void sendMessage(HelloApplication.Friend friend, String message) {
-        if (myUid == null) {
-            System.err.println("Cannot send message: Current user's UID is not set in NetworkManager.");
-            app.showAlert("Network Error", "Your network identity is not set. Cannot send message.", Alert.AlertType.ERROR);
-            return;
-        }
-        if (!friend.isOnline || friend.ipAddress == null || friend.tcpPort <= 0) {
-            System.err.println("Cannot send message to " + friend.uid + " ("+friend.nickname+"): peer is offline or connection info is missing.");
-            app.showAlert("Send Error", "Peer " + friend.nickname + " is offline or connection details are unknown. Cannot send message.", Alert.AlertType.WARNING);
-            return;
-        }
-
-        scheduler.execute(() -> {
-            try (Socket socket = new Socket()) {
-                System.out.println("Attempting TCP connection from UID " + myUid + " to " + friend.ipAddress + ":" + friend.tcpPort + " (for peer " + friend.uid + ")");
-                socket.connect(new InetSocketAddress(friend.ipAddress, friend.tcpPort), 5000);
-                System.out.println("TCP Connection established from UID " + myUid + " to " + friend.nickname);
-
-                try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true)) {
-                    writer.println("INITMSG:" + myUid);
-                    writer.println("MESSAGE:" + message);
-                    System.out.println("Message sent from UID " + myUid + " to " + friend.uid + " ("+friend.nickname+"): " + message);
-                }
-
-            } catch (ConnectException e) {
-                System.err.println("TCP Connection refused or timed out for " + friend.nickname + " at " + friend.ipAddress + ":" + friend.tcpPort + " when sending from " + myUid + ". Marking as offline.");
-                app.updateFriendStatus(friend.uid, friend.ipAddress, friend.tcpPort, false);
-                Platform.runLater(() -> app.showAlert("Connection Error", "Could not connect to " + friend.nickname + ". They may have gone offline or a firewall is blocking.", Alert.AlertType.ERROR));
-            }
-            catch (UnknownHostException e) {
-                System.err.println("TCP Error: Unknown host " + friend.ipAddress + " for peer " + friend.nickname + " (sending from " + myUid + ").");
-                Platform.runLater(() ->app.showAlert("Network Error", "Cannot resolve hostname for " + friend.nickname + ". Check network configuration.", Alert.AlertType.ERROR));
-            }
-            catch (IOException e) {
-                String errorContext = "IOException sending TCP message from " + myUid + " to " + friend.uid + " ("+friend.nickname+")";
-                System.err.println(errorContext + ": " + e.getClass().getSimpleName() + " - " + e.getMessage());
-                Platform.runLater(() -> app.showAlert("Send Error", "Failed to send message to " + friend.nickname + ". Error: " + e.getMessage(), Alert.AlertType.ERROR));
-            }
-        });
-    }
-
-    public void shutdown() {
-        System.out.println("NetworkManager (UID: " + myUid + ", Port: " + myTcpPort + "): Initiating shutdown...");
-        running = false;
-
-        if (udpSocket != null && !udpSocket.isClosed()) {
-            udpSocket.close();
-        }
-        if (tcpServerSocket != null && !tcpServerSocket.isClosed()) {
-            try {
-                tcpServerSocket.close();
-            } catch (IOException e) { System.err.println("Error closing TCP server socket during shutdown for UID " + myUid + ": " + e.getMessage()); }
-        }
-
-        if (scheduler != null && !scheduler.isShutdown()) {
-            scheduler.shutdown();
-            try {
-                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                    scheduler.shutdownNow();
-                    if (!scheduler.awaitTermination(5, TimeUnit.SECONDS))
-                        System.err.println("Network scheduler (UID: " + myUid + ") did not terminate cleanly.");
-                }
-            } catch (InterruptedException ie) {
-                scheduler.shutdownNow();
-                Thread.currentThread().interrupt();
-            }
-        }
-        System.out.println("NetworkManager (UID: " + myUid + "): Services shut down complete.");
-    }
-}
\ No newline at end of file
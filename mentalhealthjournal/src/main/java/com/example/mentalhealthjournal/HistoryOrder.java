@@ -0,0 +1,86 @@
+package com.example.mentalhealthjournal;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Sort orders of the History lists, applied to entry ids. Range queries return ids in date order, so
+ * the date orders cost nothing; every other order reads one precomputed {@code int} key per entry and
+ * packs it with the entry's position into a {@code long}, so the sort itself compares primitives only.
+ */
+final class HistoryOrder {
+
+    static final String NEWEST_FIRST = "Newest First";
+    static final String OLDEST_FIRST = "Oldest First";
+    static final String MOOD_SCORE = "Highest Mood Score";
+    static final String LENGTH = "Longest First";
+    static final String RELEVANCE = "Best Match";
+    static final List<String> MODES = List.of(NEWEST_FIRST, OLDEST_FIRST, MOOD_SCORE, LENGTH, RELEVANCE);
+
+    /** Relevance scores are kept to three decimals in the sort key. */
+    private static final double RELEVANCE_SCALE = 1000.0;
+
+    private HistoryOrder() {
+    }
+
+    /**
+     * Reorders {@code dateOrderedIds} (list indexes as returned by a range query) by {@code mode}. The key
+     * functions take an id and are only called for the mode that needs them. Ties, and "Best Match"
+     * without a search query, fall back to newest first.
+     */
+    static int[] sort(int[] dateOrderedIds, String mode, IntUnaryOperator moodScore, IntUnaryOperator textLength,
+                      FullTextIndex index, String query) {
+        switch (mode) {
+            case OLDEST_FIRST:
+                return dateOrderedIds;
+            case MOOD_SCORE:
+                return byDescendingKey(dateOrderedIds, keys(dateOrderedIds, moodScore));
+            case LENGTH:
+                return byDescendingKey(dateOrderedIds, keys(dateOrderedIds, textLength));
+            case RELEVANCE:
+                if (index != null && query != null && !query.isBlank()) {
+                    double[] scores = index.relevance(query, dateOrderedIds);
+                    int[] keys = new int[scores.length];
+                    for (int i = 0; i < scores.length; i++) {
+                        keys[i] = (int) Math.min(Integer.MAX_VALUE, Math.round(scores[i] * RELEVANCE_SCALE));
+                    }
+                    return byDescendingKey(dateOrderedIds, keys);
+                }
+                return newestFirst(dateOrderedIds); // without a query every entry is equally relevant
+            case NEWEST_FIRST:
+            default:
+                return newestFirst(dateOrderedIds);
+        }
+    }
+
+    private static int[] newestFirst(int[] dateOrderedIds) {
+        int[] reversed = new int[dateOrderedIds.length];
+        for (int i = 0; i < reversed.length; i++) {
+            reversed[i] = dateOrderedIds[dateOrderedIds.length - 1 - i];
+        }
+        return reversed;
+    }
+
+    private static int[] keys(int[] ids, IntUnaryOperator key) {
+        int[] keys = new int[ids.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = key.applyAsInt(ids[i]);
+        }
+        return keys;
+    }
+
+    /** Highest key first; equal keys keep the later (newer) position first. */
+    static int[] byDescendingKey(int[] ids, int[] keys) {
+        long[] packed = new long[keys.length];
+        for (int i = 0; i < packed.length; i++) {
+            packed[i] = ((long) keys[i] << 32) | i;
+        }
+        Arrays.sort(packed);
+        int[] sorted = new int[packed.length];
+        for (int i = 0; i < packed.length; i++) {
+            sorted[i] = ids[(int) packed[packed.length - 1 - i]];
+        }
+        return sorted;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.mentalhealthjournal;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sorted on-disk segment of journal entries, read through a memory mapping.
+ * <p>
+ * Layout: {@code [int magic][short version][int rows]}, the epoch-day index ({@code int} per row,
+ * ascending, undated rows first), the record end offsets ({@code int} per row), the History sort keys
+ * (UTF-8 length of the entry text as an {@code int} per row, then the mood score as a {@code byte} per
+ * row) and the record heap, where each record is a {@link RecordCodecs#JOURNAL_RECORD}. A date range is
+ * found by binary search on the day index and only the records inside it are decoded.
+ * <p>
+ * Version 1 segments have no sort key columns; their keys come from decoding the record.
+ */
+final class JournalSegmentFile {
+
+    private static final int MAGIC = 0x4D484A53; // "MHJS"
+    private static final short VERSION_WITHOUT_KEYS = 1;
+    private static final short VERSION = 2;
+    private static final int HEADER_SIZE = Integer.BYTES + Short.BYTES + Integer.BYTES;
+
+    private JournalSegmentFile() {
+    }
+
+    /** Writes {@code unsorted} sorted by date (stable) and forces the file to disk. */
+    static void write(List<HelloApplication.JournalEntry> unsorted, Path target) throws IOException {
+        List<HelloApplication.JournalEntry> entries = new ArrayList<>(unsorted);
+        entries.sort(Comparator.comparingInt(e -> e.date != null ? Math.toIntExact(e.date.toEpochDay()) : DateSegment.NO_DATE));
+        int rows = entries.size();
+        int[] days = new int[rows];
+        int[] recordEnds = new int[rows];
+        int[] textLengths = new int[rows];
+        byte[] moodScores = new byte[rows];
+        ByteArrayOutputStream heap = new ByteArrayOutputStream(Math.max(32, rows * 128));
+        DataOutputStream heapOut = new DataOutputStream(heap);
+
+        for (int row = 0; row < rows; row++) {
+            HelloApplication.JournalEntry entry = entries.get(row);
+            days[row] = entry.date != null ? Math.toIntExact(entry.date.toEpochDay()) : DateSegment.NO_DATE;
+            RecordCodecs.JOURNAL_RECORD.write(entry, heapOut);
+            recordEnds[row] = heap.size();
+            textLengths[row] = RecordCodecs.utf8Length(entry.content);
+            moodScores[row] = (byte) entry.moodKind.score;
+        }
+
+        try (FileOutputStream fos = new FileOutputStream(target.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(rows);
+            for (int day : days) out.writeInt(day);
+            for (int end : recordEnds) out.writeInt(end);
+            for (int length : textLengths) out.writeInt(length);
+            out.write(moodScores);
+            heap.writeTo(out);
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    /** Whether {@code path} holds a segment, as opposed to a journal list written by an older version. */
+    static boolean isSegment(Path path) throws IOException {
+        if (!Files.isRegularFile(path) || Files.size(path) < HEADER_SIZE) return false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), HEADER_SIZE))) {
+            return in.readInt() == MAGIC;
+        }
+    }
+
+    /** Maps {@code source} read-only. The mapping stays valid after the file is replaced or deleted. */
+    static Reader open(Path source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Reader(buffer, source);
+        }
+    }
+
+    static final class Reader implements DateSegment<HelloApplication.JournalEntry> {
+        private final ByteBuffer buffer;
+        private final boolean hasSortKeys;
+        private final int rows;
+        private final int dayIndex;
+        private final int endIndex;
+        private final int textLengthColumn;
+        private final int moodScoreColumn;
+        private final int heap;
+
+        private Reader(ByteBuffer buffer, Path source) throws IOException {
+            this.buffer = buffer;
+            try {
+                short version = buffer.getShort(4);
+                if (buffer.getInt(0) != MAGIC || (version != VERSION && version != VERSION_WITHOUT_KEYS)) {
+                    throw new IOException(source.getFileName() + " is not a supported journal segment.");
+                }
+                hasSortKeys = version >= VERSION;
+                rows = buffer.getInt(6);
+                dayIndex = HEADER_SIZE;
+                endIndex = dayIndex + rows * Integer.BYTES;
+                textLengthColumn = endIndex + rows * Integer.BYTES;
+                moodScoreColumn = hasSortKeys ? textLengthColumn + rows * Integer.BYTES : textLengthColumn;
+                heap = hasSortKeys ? moodScoreColumn + rows : textLengthColumn;
+                if (rows < 0 || heap > buffer.limit() || (rows > 0 && heap + buffer.getInt(endIndex + (rows - 1) * Integer.BYTES) > buffer.limit())) {
+                    throw new IOException(source.getFileName() + " is truncated.");
+                }
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException(source.getFileName() + " is truncated or corrupt.", e);
+            }
+        }
+
+        @Override
+        public int rows() {
+            return rows;
+        }
+
+        /** False for a version 1 segment, whose sort keys are read by decoding the record. */
+        boolean hasSortKeys() {
+            return hasSortKeys;
+        }
+
+        @Override
+        public boolean sortedByDate() {
+            return true;
+        }
+
+        @Override
+        public int epochDay(int row) {
+            return buffer.getInt(dayIndex + row * Integer.BYTES);
+        }
+
+        @Override
+        public HelloApplication.JournalEntry entry(int row) {
+            int start = row == 0 ? 0 : buffer.getInt(endIndex + (row - 1) * Integer.BYTES);
+            int end = buffer.getInt(endIndex + row * Integer.BYTES);
+            byte[] bytes = new byte[end - start];
+            buffer.get(heap + start, bytes);
+            try {
+                return RecordCodecs.JOURNAL_RECORD.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Corrupt journal record at row " + row, e);
+            }
+        }
+
+        @Override
+        public int moodScore(int row) {
+            return hasSortKeys ? buffer.get(moodScoreColumn + row) : entry(row).moodKind.score;
+        }
+
+        @Override
+        public int textLength(int row) {
+            return hasSortKeys ? buffer.getInt(textLengthColumn + row * Integer.BYTES) : RecordCodecs.utf8Length(entry(row).content);
+        }
+    }
+}
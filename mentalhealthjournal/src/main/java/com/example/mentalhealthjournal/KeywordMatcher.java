@@ -0,0 +1,190 @@
+package com.example.mentalhealthjournal;
+
+import java.util.*;
+
+/**
+ * Aho-Corasick automaton over the keyword terms of all suggestion and well-being rules. One pass over
+ * an entry's text yields the set of terms it contains as a {@link BitSet} of term ids, and each rule
+ * tests its {@link TermGroup} against that set instead of matching a regex per keyword.
+ * <p>
+ * Matching is case-insensitive and whole-word: a term only counts when it is not preceded or followed
+ * by a letter or digit, like a keyword produced by {@link Tokenizer}. Terms may span several words.
+ * The automaton is a dense transition table, so scanning costs one array lookup per character.
+ */
+final class KeywordMatcher {
+
+    /** The terms of one rule condition. */
+    static final class TermGroup {
+        private final BitSet terms = new BitSet();
+        private final int single;
+
+        private TermGroup(int[] termIds) {
+            for (int id : termIds) terms.set(id);
+            single = terms.cardinality() == 1 ? terms.nextSetBit(0) : -1;
+        }
+
+        /** Ids of the group's terms. */
+        BitSet terms() {
+            return (BitSet) terms.clone();
+        }
+
+        /** Whether any of the group's terms is in {@code matched}. */
+        boolean anyIn(BitSet matched) {
+            return single >= 0 ? matched.get(single) : terms.intersects(matched);
+        }
+
+        /** How many distinct terms of the group are in {@code matched}. */
+        int countIn(BitSet matched) {
+            if (single >= 0) return matched.get(single) ? 1 : 0;
+            int count = 0;
+            for (int term = terms.nextSetBit(0); term >= 0; term = terms.nextSetBit(term + 1)) {
+                if (matched.get(term)) count++;
+            }
+            return count;
+        }
+    }
+
+    /** Collects term groups; terms shared by several groups get a single id. */
+    static final class Builder {
+        private final Map<String, Integer> termIds = new LinkedHashMap<>();
+
+        TermGroup group(String... terms) {
+            int[] ids = new int[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                String term = lowerCase(terms[i].trim());
+                if (term.isEmpty()) throw new IllegalArgumentException("Empty keyword term.");
+                ids[i] = termIds.computeIfAbsent(term, t -> termIds.size());
+            }
+            return new TermGroup(ids);
+        }
+
+        KeywordMatcher build() {
+            return new KeywordMatcher(new ArrayList<>(termIds.keySet()));
+        }
+    }
+
+    private static final int ROOT = 0;
+
+    private final int termCount;
+    private final int[] termLengths;
+    private final int[] asciiSymbols = new int[128];
+    private final Map<Character, Integer> otherSymbols = new HashMap<>();
+    private final int[][] transitions;
+    private final int[][] outputs;
+
+    private KeywordMatcher(List<String> terms) {
+        termCount = terms.size();
+        termLengths = new int[termCount];
+        Arrays.fill(asciiSymbols, -1);
+
+        int symbolCount = 0;
+        for (String term : terms) {
+            for (int i = 0; i < term.length(); i++) {
+                char c = term.charAt(i);
+                if (symbolOf(c) < 0) {
+                    if (c < 128) asciiSymbols[c] = symbolCount++;
+                    else otherSymbols.put(c, symbolCount++);
+                }
+            }
+        }
+
+        // Trie of the terms.
+        List<int[]> gotoTable = new ArrayList<>();
+        List<List<Integer>> nodeOutputs = new ArrayList<>();
+        gotoTable.add(newRow(symbolCount));
+        nodeOutputs.add(new ArrayList<>());
+        for (int id = 0; id < termCount; id++) {
+            String term = terms.get(id);
+            termLengths[id] = term.length();
+            int node = ROOT;
+            for (int i = 0; i < term.length(); i++) {
+                int symbol = symbolOf(term.charAt(i));
+                if (gotoTable.get(node)[symbol] < 0) {
+                    gotoTable.get(node)[symbol] = gotoTable.size();
+                    gotoTable.add(newRow(symbolCount));
+                    nodeOutputs.add(new ArrayList<>());
+                }
+                node = gotoTable.get(node)[symbol];
+            }
+            nodeOutputs.get(node).add(id);
+        }
+
+        // Breadth-first: fold the failure links into the table and inherit the outputs of suffixes.
+        int nodes = gotoTable.size();
+        int[] failure = new int[nodes];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int[] root = gotoTable.get(ROOT);
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            if (root[symbol] < 0) {
+                root[symbol] = ROOT;
+            } else {
+                failure[root[symbol]] = ROOT;
+                queue.add(root[symbol]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            int[] row = gotoTable.get(node);
+            nodeOutputs.get(node).addAll(nodeOutputs.get(failure[node]));
+            for (int symbol = 0; symbol < symbolCount; symbol++) {
+                int fallback = gotoTable.get(failure[node])[symbol];
+                if (row[symbol] < 0) {
+                    row[symbol] = fallback;
+                } else {
+                    failure[row[symbol]] = fallback;
+                    queue.add(row[symbol]);
+                }
+            }
+        }
+
+        transitions = gotoTable.toArray(new int[0][]);
+        outputs = new int[nodes][];
+        for (int node = 0; node < nodes; node++) {
+            List<Integer> ids = nodeOutputs.get(node);
+            if (!ids.isEmpty()) outputs[node] = ids.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    private static int[] newRow(int symbolCount) {
+        int[] row = new int[symbolCount];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private int symbolOf(char c) {
+        if (c < 128) return asciiSymbols[c];
+        Integer symbol = otherSymbols.get(c);
+        return symbol != null ? symbol : -1;
+    }
+
+    int termCount() {
+        return termCount;
+    }
+
+    /** Ids of the terms that occur in {@code text} (may be null) as whole words. */
+    BitSet match(String text) {
+        BitSet matched = new BitSet(termCount);
+        if (text == null || termCount == 0) return matched;
+        int length = text.length();
+        int state = ROOT;
+        for (int i = 0; i < length; i++) {
+            int symbol = symbolOf(Character.toLowerCase(text.charAt(i)));
+            state = symbol < 0 ? ROOT : transitions[state][symbol];
+            int[] found = outputs[state];
+            if (found == null || (i + 1 < length && Character.isLetterOrDigit(text.charAt(i + 1)))) continue;
+            for (int term : found) {
+                int start = i + 1 - termLengths[term];
+                if (start == 0 || !Character.isLetterOrDigit(text.charAt(start - 1))) matched.set(term);
+            }
+        }
+        return matched;
+    }
+
+    private static String lowerCase(String text) {
+        StringBuilder lower = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            lower.append(Character.toLowerCase(text.charAt(i)));
+        }
+        return lower.toString();
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.mentalhealthjournal;
+
+import javafx.collections.ObservableListBase;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Read-only list behind a History {@code ListView}. It holds only the ids of the matching entries;
+ * a {@link Row} (date, mood and the first {@value #PREVIEW_LENGTH} characters) is built the first time
+ * the list view asks for it, which happens for visible cells only, and then stays resident.
+ * <p>
+ * Rows are loaded a page at a time. The full entries of the last few pages are cached for the
+ * selection's detail view and evicted least recently used, so off-screen bodies are not kept.
+ * Used from the JavaFX Application Thread only.
+ */
+final class LazyHistoryList<T> extends ObservableListBase<LazyHistoryList.Row<T>> implements RandomAccess {
+
+    static final int PREVIEW_LENGTH = 100;
+    private static final int PAGE_SIZE = 50;
+    private static final int RESIDENT_BODY_PAGES = 4;
+
+    /** Summary of one entry: what a History cell shows. */
+    static final class Row<T> {
+        final LocalDate date;
+        final String mood;
+        final String preview;
+        final int textLength;
+        private final LazyHistoryList<T> owner;
+        private final int position;
+
+        private Row(LazyHistoryList<T> owner, int position, LocalDate date, String mood, String text) {
+            this.owner = owner;
+            this.position = position;
+            this.date = date;
+            this.mood = mood;
+            this.textLength = text != null ? text.length() : 0;
+            this.preview = text == null ? "" : text.substring(0, Math.min(text.length(), PREVIEW_LENGTH));
+        }
+
+        /** The full entry, decoded again if its page has been evicted. */
+        T entry() {
+            return owner.entry(position);
+        }
+    }
+
+    private final int[] ids;
+    private final IntFunction<T> loader;
+    private final Function<T, LocalDate> dateOf;
+    private final Function<T, String> moodOf;
+    private final Function<T, String> textOf;
+    private final Row<T>[] rows;
+    private final Map<Integer, List<T>> bodyPages = new LinkedHashMap<>(RESIDENT_BODY_PAGES + 1, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+            return size() > RESIDENT_BODY_PAGES;
+        }
+    };
+
+    /**
+     * @param ids    list indexes of the entries, in display order
+     * @param loader decodes the entry with a given id
+     */
+    @SuppressWarnings("unchecked")
+    LazyHistoryList(int[] ids, IntFunction<T> loader, Function<T, LocalDate> dateOf, Function<T, String> moodOf, Function<T, String> textOf) {
+        this.ids = ids;
+        this.loader = loader;
+        this.dateOf = dateOf;
+        this.moodOf = moodOf;
+        this.textOf = textOf;
+        this.rows = (Row<T>[]) new Row<?>[ids.length];
+    }
+
+    @Override
+    public Row<T> get(int index) {
+        Row<T> row = rows[index];
+        if (row == null) {
+            loadPage(index / PAGE_SIZE);
+            row = rows[index];
+        }
+        return row;
+    }
+
+    @Override
+    public int size() {
+        return ids.length;
+    }
+
+    private T entry(int position) {
+        List<T> page = bodyPages.get(position / PAGE_SIZE);
+        if (page == null) page = loadPage(position / PAGE_SIZE);
+        return page.get(position % PAGE_SIZE);
+    }
+
+    private List<T> loadPage(int page) {
+        int from = page * PAGE_SIZE;
+        int to = Math.min(ids.length, from + PAGE_SIZE);
+        List<T> bodies = new ArrayList<>(to - from);
+        for (int position = from; position < to; position++) {
+            T entry = loader.apply(ids[position]);
+            bodies.add(entry);
+            if (rows[position] == null) {
+                rows[position] = new Row<>(this, position, dateOf.apply(entry), moodOf.apply(entry), textOf.apply(entry));
+            }
+        }
+        bodyPages.put(page, bodies);
+        return bodies;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.mentalhealthjournal;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+
+/**
+ * Runs of consecutive days with a low mood ({@link Mood#isLow()}) logged, over the current user's whole mood history.
+ * <p>
+ * Two bitmaps indexed by epoch day (offset by an origin) record the days with a low mood and the days
+ * with any mood. A streak query walks the runs of set bits with {@code nextSetBit}/{@code nextClearBit},
+ * which skip 64 days per word, so the longest streak in any window (a week, a month, all time) costs
+ * one pass over the window's words and runs, however many entries fall into it. The all-time longest
+ * streak is kept up to date as moods are added, since adding a day can only join runs.
+ * Used from the JavaFX Application Thread only.
+ */
+final class LowMoodStreaks {
+
+    /** Room kept below the earliest day so back-dated entries rarely shift the bitmaps. */
+    private static final int ORIGIN_PADDING_DAYS = 366;
+
+    private BitSet lowDays = new BitSet();
+    private BitSet loggedDays = new BitSet();
+    private long originDay;
+    private boolean empty = true;
+    private int longest;
+
+    /** Builds the bitmaps from the date and mood columns of every dated entry in {@code entries}. */
+    static LowMoodStreaks of(MoodEntryList entries) {
+        LowMoodStreaks streaks = new LowMoodStreaks();
+        entries.forEachMoodBetween(LocalDate.MIN, LocalDate.MAX, streaks::add);
+        return streaks;
+    }
+
+    void add(HelloApplication.MoodEntry entry) {
+        if (entry.date != null) add(entry.date.toEpochDay(), entry.moodKind);
+    }
+
+    void add(long epochDay, Mood mood) {
+        int index = index(epochDay);
+        if (index < 0) return;
+        loggedDays.set(index);
+        if (!mood.isLow() || lowDays.get(index)) return;
+        lowDays.set(index);
+        longest = Math.max(longest, lowDays.nextClearBit(index) - lowDays.previousClearBit(index) - 1);
+    }
+
+    /** Longest run of low-mood days in the whole history. */
+    int longest() {
+        return longest;
+    }
+
+    /** Longest run of low-mood days within [start, end]; runs crossing the edges count only their inside part. */
+    int longestBetween(LocalDate start, LocalDate end) {
+        if (empty || end.isBefore(start)) return 0;
+        long first = Math.max(start.toEpochDay(), originDay);
+        long last = Math.min(end.toEpochDay(), originDay + lowDays.length() - 1);
+        if (first > last) return 0;
+        int to = (int) (last - originDay) + 1;
+        int best = 0;
+        for (int runStart = lowDays.nextSetBit((int) (first - originDay)); runStart >= 0 && runStart < to; ) {
+            int runEnd = Math.min(lowDays.nextClearBit(runStart), to);
+            best = Math.max(best, runEnd - runStart);
+            runStart = lowDays.nextSetBit(runEnd);
+        }
+        return best;
+    }
+
+    /**
+     * Length of the low-mood run that is still going on {@code today}: it ends today, or yesterday when
+     * no mood has been logged yet today.
+     */
+    int currentEndingAt(LocalDate today) {
+        if (empty) return 0;
+        long day = today.toEpochDay();
+        if (day >= originDay && !loggedDays.get((int) (day - originDay))) day--;
+        if (day < originDay || !lowDays.get((int) (day - originDay))) return 0;
+        int index = (int) (day - originDay);
+        return index - lowDays.previousClearBit(index);
+    }
+
+    /** Bitmap index of {@code epochDay}, shifting the bitmaps if it is before the origin; -1 if out of range. */
+    private int index(long epochDay) {
+        if (!empty && (epochDay - originDay > Integer.MAX_VALUE - 64 || originDay - epochDay > Integer.MAX_VALUE / 2)) {
+            System.err.println("Mood entry dated " + LocalDate.ofEpochDay(epochDay) + " is too far from the rest of the history for streaks, ignored.");
+            return -1;
+        }
+        if (empty) {
+            originDay = epochDay - ORIGIN_PADDING_DAYS;
+            empty = false;
+        } else if (epochDay < originDay) {
+            long newOrigin = epochDay - ORIGIN_PADDING_DAYS;
+            int shift = (int) (originDay - newOrigin);
+            lowDays = shifted(lowDays, shift);
+            loggedDays = shifted(loggedDays, shift);
+            originDay = newOrigin;
+        }
+        return (int) (epochDay - originDay);
+    }
+
+    private static BitSet shifted(BitSet bits, int shift) {
+        BitSet moved = new BitSet(bits.length() + shift);
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) moved.set(i + shift);
+        return moved;
+    }
+}
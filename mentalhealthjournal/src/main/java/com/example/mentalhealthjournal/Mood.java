@@ -0,0 +1,89 @@
+package com.example.mentalhealthjournal;
+
+import java.util.*;
+
+/**
+ * The moods a user can log, with the score and valence each one stands for.
+ * <p>
+ * Entries keep the label they were saved with (rules files and exports refer to moods by label), and
+ * resolve it to a constant once when they are created or read. Scoring and classifying a mood is then a
+ * field read, and per-mood statistics are arrays indexed by {@link #ordinal()}. Labels that are not one
+ * of the moods below, e.g. from old or hand-edited data, resolve to {@link #UNKNOWN}.
+ */
+enum Mood {
+    VERY_HAPPY("Very Happy", "😄", 10, Valence.POSITIVE),
+    HAPPY("Happy", "🙂", 8, Valence.POSITIVE),
+    CONTENT("Content", "😌", 7, Valence.POSITIVE),
+    NEUTRAL("Neutral", "😐", 5, Valence.NEUTRAL),
+    SAD("Sad", "😔", 3, Valence.NEGATIVE),
+    VERY_SAD("Very Sad", "😢", 1, Valence.NEGATIVE),
+    ANXIOUS("Anxious", "😰", 3, Valence.NEGATIVE),
+    STRESSED("Stressed", "😫", 2, Valence.NEGATIVE),
+    CALM("Calm", "🧘", 6, Valence.POSITIVE),
+    ENERGETIC("Energetic", "⚡", 7, Valence.POSITIVE),
+    TIRED("Tired", "😴", 4, Valence.NEGATIVE),
+    /** Any label that is not one of the moods above; scored like {@link #NEUTRAL} and never offered. */
+    UNKNOWN("Unknown", "", 5, Valence.NEUTRAL);
+
+    enum Valence { POSITIVE, NEUTRAL, NEGATIVE }
+
+    /** The moods offered when logging, in display order. */
+    static final List<Mood> SELECTABLE = List.of(VERY_HAPPY, HAPPY, CONTENT, NEUTRAL, SAD, VERY_SAD, ANXIOUS, STRESSED, CALM, ENERGETIC, TIRED);
+
+    static final int COUNT = values().length;
+
+    private static final Mood[] BY_ORDINAL = values();
+    private static final Map<String, Mood> BY_LABEL = new HashMap<>();
+
+    static {
+        for (Mood mood : BY_ORDINAL) BY_LABEL.put(mood.label, mood);
+    }
+
+    final String label;
+    final String emoji;
+    /** 1 (worst) to 10 (best), as charted and sorted. */
+    final int score;
+    final Valence valence;
+
+    Mood(String label, String emoji, int score, Valence valence) {
+        this.label = label;
+        this.emoji = emoji;
+        this.score = score;
+        this.valence = valence;
+    }
+
+    /** Whether the mood counts towards a low-mood streak. */
+    boolean isLow() {
+        return valence == Valence.NEGATIVE;
+    }
+
+    boolean isPositive() {
+        return valence == Valence.POSITIVE;
+    }
+
+    static Mood ofOrdinal(int ordinal) {
+        return BY_ORDINAL[ordinal];
+    }
+
+    /** The mood labelled {@code label}, ignoring case, or null if there is none. */
+    static Mood find(String label) {
+        if (label == null) return null;
+        Mood mood = BY_LABEL.get(label);
+        if (mood != null) return mood;
+        for (Mood candidate : BY_ORDINAL) {
+            if (candidate.label.equalsIgnoreCase(label)) return candidate;
+        }
+        return null;
+    }
+
+    /** The mood labelled {@code label}, or {@link #UNKNOWN}. */
+    static Mood of(String label) {
+        Mood mood = find(label);
+        return mood != null ? mood : UNKNOWN;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.mentalhealthjournal;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Columnar on-disk format for mood entries, read through a memory mapping.
+ * <p>
+ * Layout: {@code [int magic][short version][int rows][short dictSize]} followed by the mood dictionary
+ * ({@code [int length][utf8]} per mood), then the columns: epoch day ({@code int} per row), mood code
+ * ({@code byte} per row, index into the dictionary), notes end offset ({@code int} per row) and finally
+ * the UTF-8 notes heap. Dates and moods can be scanned without creating a {@code MoodEntry},
+ * {@code LocalDate} or {@code String} per row.
+ * <p>
+ * Version 2 files are sorted by date (stably, undated rows first), so the day column serves as the
+ * range index. Version 1 files kept list order and are only scanned.
+ */
+final class MoodColumnFile {
+
+    private static final int MAGIC = 0x4D484D43; // "MHMC"
+    private static final short VERSION_UNSORTED = 1;
+    private static final short VERSION = 2;
+    static final int NO_DATE = DateSegment.NO_DATE;
+    private static final int MAX_DICTIONARY_SIZE = 256;
+
+    private MoodColumnFile() {
+    }
+
+    /** Writes {@code entries} sorted by date and forces the file to disk. */
+    static void write(List<HelloApplication.MoodEntry> unsorted, Path target) throws IOException {
+        List<HelloApplication.MoodEntry> entries = new ArrayList<>(unsorted);
+        entries.sort(Comparator.comparingInt(e -> e.date != null ? Math.toIntExact(e.date.toEpochDay()) : NO_DATE));
+        int rows = entries.size();
+        Map<String, Integer> codes = new LinkedHashMap<>();
+        int[] days = new int[rows];
+        byte[] moodCodes = new byte[rows];
+        int[] notesEnds = new int[rows];
+        ByteArrayOutputStream heap = new ByteArrayOutputStream();
+
+        for (int row = 0; row < rows; row++) {
+            HelloApplication.MoodEntry entry = entries.get(row);
+            days[row] = entry.date != null ? Math.toIntExact(entry.date.toEpochDay()) : NO_DATE;
+            String mood = entry.mood != null ? entry.mood : "Unknown";
+            Integer code = codes.get(mood);
+            if (code == null) {
+                if (codes.size() == MAX_DICTIONARY_SIZE) throw new IOException("Too many distinct moods for the columnar mood file.");
+                code = codes.size();
+                codes.put(mood, code);
+            }
+            moodCodes[row] = (byte) (int) code;
+            heap.writeBytes((entry.notes != null ? entry.notes : "").getBytes(StandardCharsets.UTF_8));
+            notesEnds[row] = heap.size();
+        }
+
+        try (FileOutputStream fos = new FileOutputStream(target.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(rows);
+            out.writeShort(codes.size());
+            for (String mood : codes.keySet()) {
+                byte[] bytes = mood.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            for (int day : days) out.writeInt(day);
+            out.write(moodCodes);
+            for (int end : notesEnds) out.writeInt(end);
+            heap.writeTo(out);
+            out.flush();
+            fos.getFD().sync();
+        }
+    }
+
+    /** Maps {@code source} read-only. The mapping stays valid after the file is replaced or deleted. */
+    static Reader open(Path source) throws IOException {
+        try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Reader(buffer, source);
+        }
+    }
+
+    static final class Reader implements DateSegment<HelloApplication.MoodEntry> {
+        private final ByteBuffer buffer;
+        private final boolean sorted;
+        private final int rows;
+        private final String[] dictionary;
+        private final Mood[] dictionaryMoods;
+        private final int dayColumn;
+        private final int moodColumn;
+        private final int notesIndexColumn;
+        private final int notesHeap;
+
+        private Reader(ByteBuffer buffer, Path source) throws IOException {
+            this.buffer = buffer;
+            try {
+                short version = buffer.getShort(4);
+                if (buffer.getInt(0) != MAGIC || (version != VERSION && version != VERSION_UNSORTED)) {
+                    throw new IOException(source.getFileName() + " is not a supported mood column file.");
+                }
+                sorted = version >= VERSION;
+                rows = buffer.getInt(6);
+                dictionary = new String[buffer.getShort(10) & 0xFFFF];
+                int position = 12;
+                for (int i = 0; i < dictionary.length; i++) {
+                    int length = buffer.getInt(position);
+                    byte[] bytes = new byte[length];
+                    buffer.get(position + Integer.BYTES, bytes);
+                    dictionary[i] = new String(bytes, StandardCharsets.UTF_8).intern();
+                    position += Integer.BYTES + length;
+                }
+                dictionaryMoods = new Mood[dictionary.length];
+                for (int i = 0; i < dictionary.length; i++) dictionaryMoods[i] = Mood.of(dictionary[i]);
+                dayColumn = position;
+                moodColumn = dayColumn + rows * Integer.BYTES;
+                notesIndexColumn = moodColumn + rows;
+                notesHeap = notesIndexColumn + rows * Integer.BYTES;
+                if (rows < 0 || notesHeap > buffer.limit()) {
+                    throw new IOException(source.getFileName() + " is truncated.");
+                }
+            } catch (IndexOutOfBoundsException e) {
+                throw new IOException(source.getFileName() + " is truncated or corrupt.", e);
+            }
+        }
+
+        @Override
+        public int rows() {
+            return rows;
+        }
+
+        @Override
+        public boolean sortedByDate() {
+            return sorted;
+        }
+
+        @Override
+        public int epochDay(int row) {
+            return buffer.getInt(dayColumn + row * Integer.BYTES);
+        }
+
+        int moodCode(int row) {
+            return buffer.get(moodColumn + row) & 0xFF;
+        }
+
+        /** Mood label of {@code row}; the dictionary strings are shared, so nothing is allocated. */
+        String mood(int row) {
+            return dictionary[moodCode(row)];
+        }
+
+        /** Mood of {@code row}, resolved once per dictionary entry. */
+        Mood moodKind(int row) {
+            return dictionaryMoods[moodCode(row)];
+        }
+
+        String notes(int row) {
+            int start = notesStart(row);
+            byte[] bytes = new byte[notesEnd(row) - start];
+            buffer.get(notesHeap + start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private int notesStart(int row) {
+            return row == 0 ? 0 : buffer.getInt(notesIndexColumn + (row - 1) * Integer.BYTES);
+        }
+
+        private int notesEnd(int row) {
+            return buffer.getInt(notesIndexColumn + row * Integer.BYTES);
+        }
+
+        @Override
+        public int moodScore(int row) {
+            return moodKind(row).score;
+        }
+
+        /** Length of the notes of {@code row}, from the offset column. */
+        @Override
+        public int textLength(int row) {
+            return notesEnd(row) - notesStart(row);
+        }
+
+        @Override
+        public HelloApplication.MoodEntry entry(int row) {
+            int day = epochDay(row);
+            return new HelloApplication.MoodEntry(day == NO_DATE ? null : LocalDate.ofEpochDay(day), mood(row), notes(row));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.mentalhealthjournal;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The current user's mood entries on top of the mapped columnar snapshot. Besides the range queries of
+ * {@link SegmentedEntryList}, {@link #forEachMoodBetween} reads the date and mood columns directly
+ * without creating a {@code MoodEntry} per row.
+ */
+final class MoodEntryList extends SegmentedEntryList<HelloApplication.MoodEntry> {
+
+    @FunctionalInterface
+    interface MoodVisitor {
+        void visit(long epochDay, Mood mood);
+    }
+
+    private static final Fields<HelloApplication.MoodEntry> FIELDS = new Fields<>(e -> e.date, e -> e.moodKind, e -> e.notes);
+
+    private final MoodColumnFile.Reader columns;
+
+    MoodEntryList(MoodColumnFile.Reader columns) {
+        this(columns, new ArrayList<>());
+    }
+
+    private MoodEntryList(MoodColumnFile.Reader columns, List<HelloApplication.MoodEntry> recent) {
+        super(columns, recent, FIELDS);
+        this.columns = columns;
+    }
+
+    /**
+     * Maps the columnar mood snapshot of {@code log} and replays the log on top of it. A user still on the
+     * legacy serialized moodEntries.dat (snapshot generation 0, read by {@code legacySnapshot}), or on an
+     * unsorted column file, is migrated once when {@code migrate} is set.
+     */
+    static MoodEntryList load(EntryLog<HelloApplication.MoodEntry> log, Supplier<List<HelloApplication.MoodEntry>> legacySnapshot,
+                              boolean migrate) throws IOException {
+        if (log.snapshotGeneration() == 0) {
+            MoodEntryList legacy = new MoodEntryList(null);
+            List<HelloApplication.MoodEntry> serialized = legacySnapshot.get();
+            if (serialized != null) legacy.addAll(serialized);
+            log.replayInto(legacy);
+            if (!migrate) return legacy;
+            log.compactNow(legacy);
+        }
+        MoodEntryList entries = new MoodEntryList(MoodColumnFile.open(log.snapshotPath()));
+        log.replayInto(entries);
+        if (migrate && !entries.isIndexed()) {
+            log.compactNow(entries.snapshot());
+            entries = new MoodEntryList(MoodColumnFile.open(log.snapshotPath()));
+            log.replayInto(entries);
+        }
+        return entries;
+    }
+
+    @Override
+    MoodEntryList snapshot() {
+        return new MoodEntryList(columns, new ArrayList<>(recent));
+    }
+
+    /** Visits the date and mood of every entry dated within [start, end]. */
+    void forEachMoodBetween(LocalDate start, LocalDate end, MoodVisitor visitor) {
+        long startDay = start.toEpochDay();
+        long endDay = end.toEpochDay();
+        forEachSegmentRowBetween(startDay, endDay, row -> visitor.visit(columns.epochDay(row), columns.moodKind(row)));
+        forEachRecentBetween(startDay, endDay, entry -> visitor.visit(entry.date.toEpochDay(), entry.moodKind));
+    }
+}
@@ -0,0 +1,377 @@
+package com.example.mentalhealthjournal;
+
+import javafx.application.Platform;
+import javafx.scene.control.Alert;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds friends through UDP presence broadcasts and exchanges chat messages with them over TCP, for
+ * the logged-in user. Delivery state and the outbox live in the friend's chat history.
+ */
+class NetworkManager {
+    /**
+     * How inbound connections are served. In both modes the UDP listener and each outbound send run on a
+     * virtual thread of their own, so a slow peer never holds up the timers on the scheduler.
+     */
+    enum ExecutionMode {
+        /** Inbound connections on one selector thread. */
+        SELECTOR,
+        /** Accept and each inbound connection on a virtual thread of its own. */
+        VIRTUAL_THREADS;
+
+        /** {@code VIRTUAL_THREADS} when started with {@code -Dmentalhealthjournal.virtualThreads=true}. */
+        static ExecutionMode configured() {
+            return Boolean.getBoolean("mentalhealthjournal.virtualThreads") ? VIRTUAL_THREADS : SELECTOR;
+        }
+    }
+
+    /** Backoff of a friend's outbox after failed sends. */
+    private static final class OutboxRetry {
+        int failures;
+        long notBeforeMillis;
+        boolean scheduled;
+    }
+
+    private final String myUid;
+    private final int myTcpPort;
+    private final HelloApplication app;
+    private final ExecutionMode mode;
+    private ScheduledExecutorService scheduler; // timers only; none of them blocks
+    private ExecutorService workers; // blocking tasks: the UDP listener and outbound sends
+    private final PeerConnectionPool outboundConnections;
+    private PeerMessageServer messageServer;
+    private DatagramSocket udpSocket;
+    private volatile boolean running = true;
+
+    // Failed sends of a friend's outbox; FX thread only.
+    private final Map<String, OutboxRetry> outboxRetries = new HashMap<>();
+
+    private static final long OUTBOX_RETRY_INITIAL_MILLIS = 2000;
+    private static final long OUTBOX_RETRY_MAX_MILLIS = 60_000;
+    /** Failed sends after which a message leaves the outbox as {@link HelloApplication.ChatMessage.Delivery#FAILED}. */
+    static final int MAX_SEND_ATTEMPTS = 5;
+    private static final int UDP_BROADCAST_PORT = 25565;
+    private static final int PRESENCE_INTERVAL_SECONDS = 15;
+    private static final int FRIEND_TIMEOUT_SECONDS = PRESENCE_INTERVAL_SECONDS * 3 + 5;
+    // Peers close idle outbound connections themselves; this only drops connections of peers that vanished.
+    private static final long INBOUND_IDLE_TIMEOUT_MILLIS = PeerConnectionPool.IDLE_TIMEOUT_MILLIS * 3;
+
+
+    public NetworkManager(String myUid, int myTcpPort, HelloApplication app) {
+        this(myUid, myTcpPort, app, ExecutionMode.configured());
+    }
+
+    NetworkManager(String myUid, int myTcpPort, HelloApplication app, ExecutionMode mode) {
+        this.myUid = myUid;
+        this.myTcpPort = myTcpPort;
+        this.app = app;
+        this.mode = mode;
+        this.outboundConnections = new PeerConnectionPool(myUid);
+        System.out.println("NetworkManager initialized for UID: " + this.myUid + " on TCP Port: " + this.myTcpPort + " (" + mode + ")");
+    }
+
+    public void startServices() {
+        running = true;
+        scheduler = Executors.newScheduledThreadPool(1);
+        workers = Executors.newVirtualThreadPerTaskExecutor();
+
+        workers.execute(this::listenForUdpBroadcasts);
+        scheduler.scheduleAtFixedRate(this::broadcastPresence, 5, PRESENCE_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(this::checkFriendTimeouts, FRIEND_TIMEOUT_SECONDS, FRIEND_TIMEOUT_SECONDS / 2, TimeUnit.SECONDS);
+        scheduler.scheduleAtFixedRate(outboundConnections::closeIdle, PeerConnectionPool.IDLE_TIMEOUT_MILLIS / 2,
+                PeerConnectionPool.IDLE_TIMEOUT_MILLIS / 2, TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(outboundConnections::expireUnacked, PeerConnectionPool.ACK_TIMEOUT_MILLIS / 4,
+                PeerConnectionPool.ACK_TIMEOUT_MILLIS / 4, TimeUnit.MILLISECONDS);
+        startMessageServer();
+
+        System.out.println("Network services initiated. User UID: " + myUid + ". Listening on TCP Port: " + myTcpPort + ". UDP Discovery on: " + UDP_BROADCAST_PORT);
+    }
+
+    private void startMessageServer() {
+        messageServer = new PeerMessageServer(myUid, myTcpPort, INBOUND_IDLE_TIMEOUT_MILLIS, mode == ExecutionMode.VIRTUAL_THREADS, new PeerMessageServer.Handler() {
+            @Override
+            public void peerConnected(String peerUid, InetAddress address) {
+                NetworkManager.this.peerConnected(peerUid, address);
+            }
+
+            @Override
+            public CompletableFuture<?> messageReceived(String peerUid, long messageId, long sentAtMillis, String message) {
+                return NetworkManager.this.messageReceived(peerUid, messageId, sentAtMillis, message);
+            }
+        });
+        try {
+            messageServer.start();
+        } catch (BindException e) {
+            messageServer = null;
+            System.err.println("FATAL: Could not start TCP server for UID " + myUid + " on port " + myTcpPort + ". Port might be in use. Error: " + e.getMessage());
+            app.showAlert("Network Error", "Could not start TCP server on port " + myTcpPort + ". It might be in use. Connect feature will be limited.", Alert.AlertType.ERROR);
+        } catch (IOException e) {
+            messageServer = null;
+            System.err.println("FATAL: General IOException starting TCP server for UID " + myUid + " on port " + myTcpPort + ". Error: " + e.getMessage());
+        }
+    }
+
+    private void checkFriendTimeouts() {
+        if (!running || app.friendsList == null) return;
+        LocalDateTime now = LocalDateTime.now();
+        app.friendsList.forEach(friend -> {
+            if (friend.isOnline && friend.lastSeen != null &&
+                    java.time.Duration.between(friend.lastSeen, now).getSeconds() > FRIEND_TIMEOUT_SECONDS) {
+                System.out.println("Peer " + friend.uid + " (" + friend.nickname + ") timed out.");
+                outboundConnections.close(friend.uid);
+                app.updateFriendStatus(friend.uid, friend.ipAddress, friend.tcpPort, false);
+            }
+        });
+    }
+
+
+    private void broadcastPresence() {
+        if (!running || myUid == null) return;
+        try (DatagramSocket broadcastSocket = new DatagramSocket()){
+            broadcastSocket.setBroadcast(true);
+            String message = String.format("ALIVE:%s:%d", myUid, myTcpPort);
+            byte[] sendData = message.getBytes(StandardCharsets.UTF_8);
+
+            List<InetAddress> broadcastAddresses = new ArrayList<>();
+            try {
+                Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+                while (interfaces.hasMoreElements()) {
+                    NetworkInterface networkInterface = interfaces.nextElement();
+                    if (networkInterface.isLoopback() || !networkInterface.isUp()) {
+                        continue;
+                    }
+                    for (InterfaceAddress interfaceAddress : networkInterface.getInterfaceAddresses()) {
+                        InetAddress broadcast = interfaceAddress.getBroadcast();
+                        if (broadcast != null) {
+                            broadcastAddresses.add(broadcast);
+                        }
+                    }
+                }
+                if (broadcastAddresses.isEmpty()) {
+                    System.err.println("Warning: No broadcast addresses found for network interfaces. Using 255.255.255.255.");
+                    broadcastAddresses.add(InetAddress.getByName("255.255.255.255"));
+                }
+            } catch (SocketException | UnknownHostException e) {
+                System.err.println("Error getting broadcast addresses: " + e.getMessage() + ". Using 255.255.255.255.");
+                broadcastAddresses.clear();
+                try {
+                    broadcastAddresses.add(InetAddress.getByName("255.255.255.255"));
+                } catch (UnknownHostException ignored) { /* Should not happen for 255.255.255.255 */ }
+            }
+
+
+            for (InetAddress address : broadcastAddresses) {
+                try {
+                    DatagramPacket sendPacket = new DatagramPacket(sendData, sendData.length, address, UDP_BROADCAST_PORT);
+                    broadcastSocket.send(sendPacket);
+                } catch (IOException e) {
+                    System.err.println("Network Error: Could not send broadcast to " + address + " for UID " + myUid + ". Error: " + e.getMessage());
+                }
+            }
+        } catch (SocketException e) {
+            System.err.println("Network Error: Could not create broadcast socket: " + e.getMessage());
+        }
+    }
+
+    private void listenForUdpBroadcasts() {
+        try {
+            udpSocket = new DatagramSocket(null);
+            udpSocket.setReuseAddress(true);
+            udpSocket.bind(new InetSocketAddress(UDP_BROADCAST_PORT));
+
+            byte[] receiveData = new byte[1024];
+            System.out.println("UDP Discovery Listener active on port " + UDP_BROADCAST_PORT);
+
+            while (running) {
+                DatagramPacket receivePacket = new DatagramPacket(receiveData, receiveData.length);
+                try {
+                    udpSocket.receive(receivePacket);
+                    String message = new String(receivePacket.getData(), 0, receivePacket.getLength(), StandardCharsets.UTF_8);
+                    InetAddress senderIp = receivePacket.getAddress();
+
+                    String[] parts = message.split(":");
+                    if (parts.length == 3 && "ALIVE".equals(parts[0])) {
+                        String senderUid = parts[1];
+                        int senderTcpPort;
+                        try {
+                            senderTcpPort = Integer.parseInt(parts[2]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Received ALIVE message with invalid port: " + message + " from " + senderIp.getHostAddress());
+                            continue;
+                        }
+
+                        if (!senderUid.equals(myUid)) {
+                            Optional<HelloApplication.Friend> knownFriendOpt = (app.friendsList != null) ?
+                                    app.friendsList.stream().filter(f -> f.uid.equals(senderUid)).findFirst() : Optional.empty();
+
+                            if (knownFriendOpt.isPresent()) {
+                                app.updateFriendStatus(senderUid, senderIp.getHostAddress(), senderTcpPort, true);
+                            }
+                        }
+                    }
+                } catch (SocketException se) {
+                    if (running) System.err.println("UDP SocketException in listener (potentially during shutdown): " + se.getMessage());
+                    else break;
+                } catch (IOException e) {
+                    if (running) System.err.println("IOException in UDP listener: " + e.getMessage());
+                }
+            }
+        } catch (SocketException e) {
+            System.err.println("FATAL: Could not bind UDP listener to port " + UDP_BROADCAST_PORT + ". Error: " + e.getMessage());
+        } finally {
+            if (udpSocket != null && !udpSocket.isClosed()) {
+                udpSocket.close();
+            }
+            System.out.println("UDP Discovery Listener stopped for UID " + myUid);
+        }
+    }
+
+    /** Called on the message server thread once a peer has identified itself. */
+    private void peerConnected(String peerUid, InetAddress address) {
+        if (app.friendsList == null) return;
+        String clientIp = address.getHostAddress();
+        app.friendsList.stream()
+                .filter(f -> f.uid.equals(peerUid))
+                .findFirst()
+                .ifPresent(friend -> app.updateFriendStatus(friend.uid, clientIp, friend.tcpPort, true));
+    }
+
+    /**
+     * Called on the message server thread; the future completes once the message is saved, see
+     * {@link HelloApplication#receiveMessage(String, long, String, LocalDateTime)}. A message sent again after
+     * a lost acknowledgement is dropped there, against the saved chat history.
+     */
+    private CompletableFuture<Void> messageReceived(String peerUid, long messageId, long sentAtMillis, String messageContent) {
+        System.out.println("TCP Message received from UID " + peerUid + " for user " + myUid + ": " + messageContent);
+        return app.receiveMessage(peerUid, messageId, messageContent,
+                LocalDateTime.ofInstant(Instant.ofEpochMilli(sentAtMillis), ZoneId.systemDefault()));
+    }
+
+    // --- Outbox ---
+
+    /** A new id for a message of ours; it stays with the message across retries and restarts. */
+    long nextMessageId() {
+        return outboundConnections.nextMessageId();
+    }
+
+    /**
+     * Sends {@code friend}'s pending messages in one batch if the friend is online. The outbox is the
+     * friend's {@link HelloApplication.ChatMessage.Delivery#PENDING} messages, which are saved with the
+     * chat history, so messages written while the friend is offline, or before a restart, go out once the
+     * friend is reported online. After a failed send the outbox waits for a growing backoff, unless
+     * {@code retryNow}; a message that failed {@link #MAX_SEND_ATTEMPTS} times is marked failed and
+     * leaves the outbox. Called on the FX thread.
+     */
+    public void flushOutbox(HelloApplication.Friend friend, boolean retryNow) {
+        if (!running || myUid == null || workers == null) return;
+        OutboxRetry retry = outboxRetries.get(friend.uid);
+        if (retry != null) {
+            if (retryNow) retry.notBeforeMillis = 0;
+            else if (System.currentTimeMillis() < retry.notBeforeMillis) return; // the scheduled retry flushes
+        }
+        if (!friend.isOnline || friend.ipAddress == null || friend.tcpPort <= 0) return;
+
+        List<HelloApplication.ChatMessage> batch = new ArrayList<>();
+        for (HelloApplication.ChatMessage message : friend.getChatMessages()) {
+            if (message.isPending() && !message.sending) batch.add(message);
+        }
+        if (batch.isEmpty()) return;
+
+        // The friend's address is updated on the FX thread; take it now rather than on the sending thread.
+        String ipAddress = friend.ipAddress;
+        int tcpPort = friend.tcpPort;
+        List<PeerConnectionPool.Outgoing> outgoing = new ArrayList<>(batch.size());
+        for (HelloApplication.ChatMessage message : batch) {
+            message.sending = true;
+            long queuedAtMillis = message.timestamp.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            PeerConnectionPool.Outgoing next = new PeerConnectionPool.Outgoing(message.messageId, queuedAtMillis, message.content);
+            next.delivered.whenComplete((acked, failure) ->
+                    Platform.runLater(() -> outboxResult(friend, message, acked, failure, ipAddress, tcpPort)));
+            outgoing.add(next);
+        }
+        System.out.println("Sending " + batch.size() + " queued message(s) from UID " + myUid + " to " + friend.uid + " (" + friend.nickname + ")");
+        workers.execute(() -> outboundConnections.send(friend.uid, new InetSocketAddress(ipAddress, tcpPort), outgoing));
+    }
+
+    /** Called on the FX thread for every message of a flushed batch. */
+    private void outboxResult(HelloApplication.Friend friend, HelloApplication.ChatMessage message, Boolean acked,
+                              Throwable failure, String ipAddress, int tcpPort) {
+        message.sending = false;
+        if (failure == null) {
+            message.delivery = acked ? HelloApplication.ChatMessage.Delivery.ACKED : HelloApplication.ChatMessage.Delivery.SENT;
+            outboxRetries.remove(friend.uid);
+            System.out.println("Message delivered from UID " + myUid + " to " + friend.uid + " (" + friend.nickname + "): " + message.content);
+            app.chatDeliveryChanged(friend);
+            return;
+        }
+        if (!running) return;
+        if (++message.failedSends >= MAX_SEND_ATTEMPTS) {
+            message.delivery = HelloApplication.ChatMessage.Delivery.FAILED;
+            System.err.println("Giving up on message " + message.messageId + " to " + friend.uid + " (" + friend.nickname + ") after " + message.failedSends + " failed sends.");
+            app.chatDeliveryChanged(friend);
+        }
+        OutboxRetry retry = outboxRetries.computeIfAbsent(friend.uid, uid -> new OutboxRetry());
+        if (retry.scheduled) return; // the other messages of the batch failed with it
+
+        if (failure instanceof ConnectException) {
+            System.err.println("TCP Connection refused or timed out for " + friend.nickname + " at " + ipAddress + ":" + tcpPort + " when sending from " + myUid + ". Marking as offline.");
+            app.updateFriendStatus(friend.uid, ipAddress, tcpPort, false);
+        } else if (failure instanceof UnknownHostException) {
+            System.err.println("TCP Error: Unknown host " + ipAddress + " for peer " + friend.nickname + " (sending from " + myUid + ").");
+        } else {
+            System.err.println("IOException sending TCP message from " + myUid + " to " + friend.uid + " (" + friend.nickname + "): " + failure.getClass().getSimpleName() + " - " + failure.getMessage());
+        }
+        long delayMillis = Math.min(OUTBOX_RETRY_MAX_MILLIS, OUTBOX_RETRY_INITIAL_MILLIS << Math.min(retry.failures, 16));
+        retry.failures++;
+        retry.notBeforeMillis = System.currentTimeMillis() + delayMillis;
+        retry.scheduled = true;
+        System.out.println("Messages to " + friend.nickname + " stay queued; retrying in " + delayMillis / 1000 + " s or when they come online.");
+        scheduler.schedule(() -> Platform.runLater(() -> {
+            retry.scheduled = false;
+            flushOutbox(friend, false);
+        }), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        System.out.println("NetworkManager (UID: " + myUid + ", Port: " + myTcpPort + "): Initiating shutdown...");
+        running = false;
+
+        outboundConnections.closeAll();
+        if (udpSocket != null && !udpSocket.isClosed()) {
+            udpSocket.close();
+        }
+        if (messageServer != null) {
+            messageServer.close();
+        }
+
+        if (workers != null) {
+            workers.shutdown();
+        }
+        if (scheduler != null && !scheduler.isShutdown()) {
+            scheduler.shutdown();
+            try {
+                if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
+                    scheduler.shutdownNow();
+                    if (!scheduler.awaitTermination(5, TimeUnit.SECONDS))
+                        System.err.println("Network scheduler (UID: " + myUid + ") did not terminate cleanly.");
+                }
+            } catch (InterruptedException ie) {
+                scheduler.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+        System.out.println("NetworkManager (UID: " + myUid + "): Services shut down complete.");
+    }
+}
\ No newline at end of file
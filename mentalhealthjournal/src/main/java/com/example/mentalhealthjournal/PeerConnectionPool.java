@@ -0,0 +1,415 @@
+package com.example.mentalhealthjournal;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Long-lived outbound chat connections, one per peer UID.
+ * <p>
+ * A new connection sends {@link PeerProtocol#PREFACE} and a {@code HELLO} frame and waits for the peer's
+ * preface. After that, messages are {@code MESSAGE} frames: sends to a peer that arrive while a write to
+ * it is in progress are queued and go out together in the next write, and a virtual thread per connection
+ * reads the peer's {@code ACK} frames and completes {@link Outgoing#delivered}. A peer that does not
+ * answer the preface runs an older version; its address is then served with the line protocol
+ * ({@code INITMSG:<uid>}, {@code MESSAGE:} lines), where a message counts as delivered once written.
+ * <p>
+ * A write that fails on a reused connection is retried once on a fresh one. A message whose connection
+ * closes before its acknowledgement arrives fails, and so does one still unacknowledged
+ * {@link #ACK_TIMEOUT_MILLIS} after it was written: {@link #expireUnacked} fails it and closes its
+ * connection, which is then most likely half-open, and it also closes a connection whose write has been
+ * blocked that long. {@link #closeIdle} closes connections with nothing unacknowledged that have not been
+ * used for {@link #IDLE_TIMEOUT_MILLIS}, with {@code BYE}.
+ * Thread-safe: sends to different peers run in parallel, writes to the same peer are serialized. Each
+ * peer is guarded by a {@link ReentrantLock} rather than {@code synchronized}, so a send blocked in
+ * connect or write does not pin its carrier thread when it runs on a virtual thread. The timers never
+ * wait for that lock: a send can hold it for as long as a write blocks, so expiry and close shut the
+ * channel directly, which fails the blocked write, and leave dropping the connection to its sender.
+ */
+final class PeerConnectionPool {
+
+    static final long IDLE_TIMEOUT_MILLIS = 60_000;
+    static final long ACK_TIMEOUT_MILLIS = 20_000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    /** How long a new connection waits for the peer's preface before falling back to the line protocol. */
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 3000;
+    private static final int ACK_BUFFER_BYTES = 4 * 1024;
+
+    /** A message handed to {@link #send}; a message sent again must keep its id, so the peer can drop the copy. */
+    static final class Outgoing {
+        final long id;
+        final long queuedAtMillis;
+        final String text;
+        /**
+         * Completes with true when the peer has acknowledged the message, with false when it was written to
+         * a line-protocol peer, which cannot acknowledge, or exceptionally with the IOException that lost it.
+         */
+        final CompletableFuture<Boolean> delivered = new CompletableFuture<>();
+        private volatile long writtenAtMillis;
+
+        Outgoing(long id, long queuedAtMillis, String text) {
+            this.id = id;
+            this.queuedAtMillis = queuedAtMillis;
+            this.text = text;
+        }
+    }
+
+    private final String myUid;
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+    // Increasing ids, and practically unique across restarts unless a million messages are queued in one millisecond.
+    private final AtomicLong nextId = new AtomicLong(System.currentTimeMillis() << 20);
+    private volatile boolean closed;
+
+    PeerConnectionPool(String myUid) {
+        this.myUid = myUid;
+    }
+
+    /** A new message id, increasing over the pool's lifetime. */
+    long nextMessageId() {
+        return nextId.getAndIncrement();
+    }
+
+    /** Sends one new chat message; see {@link #send(String, InetSocketAddress, List)}. */
+    Outgoing send(String peerUid, InetSocketAddress address, String message) {
+        Outgoing outgoing = new Outgoing(nextMessageId(), System.currentTimeMillis(), message);
+        send(peerUid, address, List.of(outgoing));
+        return outgoing;
+    }
+
+    /**
+     * Sends {@code messages} to {@code peerUid} at {@code address} in one write, connecting first if there
+     * is no open connection or the peer's address has changed. Blocks for the connect and the write. If a
+     * send to the same peer is already writing, that one takes these messages along in its next write
+     * before it lets go of the peer, and this call returns once they have been written. Failures are
+     * reported through each message's {@link Outgoing#delivered}.
+     */
+    void send(String peerUid, InetSocketAddress address, List<Outgoing> messages) {
+        List<Outgoing> accepted = new ArrayList<>(messages.size());
+        for (Outgoing outgoing : messages) {
+            if (closed) {
+                outgoing.delivered.completeExceptionally(new IOException("Connection pool is closed."));
+            } else if (outgoing.text.getBytes(StandardCharsets.UTF_8).length > PeerProtocol.MAX_PAYLOAD_BYTES) {
+                outgoing.delivered.completeExceptionally(new IOException("Message is longer than " + PeerProtocol.MAX_PAYLOAD_BYTES + " bytes."));
+            } else {
+                accepted.add(outgoing);
+            }
+        }
+        if (!accepted.isEmpty()) peers.computeIfAbsent(peerUid, Peer::new).send(address, accepted);
+    }
+
+    /** Closes the connection to {@code peerUid}, if any, e.g. when the peer has gone offline. */
+    void close(String peerUid) {
+        Peer peer = peers.get(peerUid);
+        if (peer != null) peer.close(true);
+    }
+
+    /** Closes the connections unused for longer than {@link #IDLE_TIMEOUT_MILLIS}. */
+    void closeIdle() {
+        long now = System.currentTimeMillis();
+        peers.values().forEach(peer -> peer.closeIfIdleSince(now - IDLE_TIMEOUT_MILLIS));
+    }
+
+    /**
+     * Fails the messages unacknowledged for longer than {@link #ACK_TIMEOUT_MILLIS} and closes their
+     * connections, as well as connections with a write blocked for that long. Does not block.
+     */
+    void expireUnacked() {
+        expireWrittenBefore(System.currentTimeMillis() - ACK_TIMEOUT_MILLIS);
+    }
+
+    /** Fails the unacknowledged messages written before {@code cutoffMillis} and closes their connections. */
+    void expireWrittenBefore(long cutoffMillis) {
+        peers.values().forEach(peer -> peer.expireUnackedSince(cutoffMillis));
+    }
+
+    void closeAll() {
+        closed = true;
+        peers.values().forEach(peer -> peer.close(true));
+    }
+
+    int openConnections() {
+        return (int) peers.values().stream().filter(Peer::isOpen).count();
+    }
+
+    /** One open connection; {@code unacked} is only used by binary connections. */
+    private static final class Connection {
+        final SocketChannel channel;
+        final boolean binary;
+        final Map<Long, Outgoing> unacked = new ConcurrentHashMap<>();
+        volatile long writingSinceMillis; // 0 unless a write is in progress
+
+        Connection(SocketChannel channel, boolean binary) {
+            this.channel = channel;
+            this.binary = binary;
+        }
+    }
+
+    private final class Peer {
+        private final String uid;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Queue<Outgoing> queue = new ConcurrentLinkedQueue<>();
+        private volatile Connection connection; // replaced under the lock, read without it by the timers
+        private InetSocketAddress address;
+        private InetSocketAddress lineProtocolAddress; // last address that did not answer the preface
+        private long lastUsed;
+
+        Peer(String uid) {
+            this.uid = uid;
+        }
+
+        void send(InetSocketAddress target, List<Outgoing> messages) {
+            queue.addAll(messages);
+            lock.lock();
+            try {
+                // Messages queued by other senders during a write go out in the next one.
+                for (List<Outgoing> batch = drainQueue(); !batch.isEmpty(); batch = drainQueue()) {
+                    flush(target, batch);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private List<Outgoing> drainQueue() {
+            List<Outgoing> batch = new ArrayList<>();
+            for (Outgoing queued; (queued = queue.poll()) != null; ) batch.add(queued);
+            return batch;
+        }
+
+        private void flush(InetSocketAddress target, List<Outgoing> batch) {
+            if (connection != null && (!target.equals(address) || (!connection.binary && closedByPeer()))) close(false);
+            boolean reused = connection != null;
+            try {
+                if (!reused) open(target);
+                try {
+                    write(batch);
+                } catch (IOException e) {
+                    if (!reused) throw e;
+                    // Messages the connection's reader already failed are not sent again.
+                    Connection stale = connection;
+                    batch.removeIf(outgoing -> stale.binary && stale.unacked.remove(outgoing.id) == null);
+                    close(false);
+                    open(target);
+                    write(batch);
+                }
+                lastUsed = System.currentTimeMillis();
+            } catch (IOException e) {
+                for (Outgoing outgoing : batch) {
+                    if (connection != null) connection.unacked.remove(outgoing.id);
+                    outgoing.delivered.completeExceptionally(e);
+                }
+            }
+        }
+
+        boolean isOpen() {
+            Connection current = connection;
+            return current != null && current.channel.isOpen();
+        }
+
+        /** Skipped while a send holds the peer, which is then not idle. */
+        void closeIfIdleSince(long cutoff) {
+            if (!lock.tryLock()) return;
+            try {
+                if (connection != null && lastUsed < cutoff && connection.unacked.isEmpty()) close(true);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /** Runs without the lock, so it also reaches a send blocked in a write to a peer that stopped reading. */
+        void expireUnackedSince(long cutoff) {
+            Connection current = connection;
+            if (current == null) return;
+            boolean expired = false;
+            if (current.binary) {
+                IOException timedOut = new IOException("Not acknowledged by " + uid + " within " + ACK_TIMEOUT_MILLIS / 1000 + " s.");
+                for (Outgoing outgoing : current.unacked.values()) {
+                    if (outgoing.writtenAtMillis < cutoff && current.unacked.remove(outgoing.id, outgoing)) {
+                        outgoing.delivered.completeExceptionally(timedOut);
+                        expired = true;
+                    }
+                }
+            }
+            long writingSince = current.writingSinceMillis;
+            if (expired || (writingSince != 0 && writingSince < cutoff)) closeChannel(current);
+        }
+
+        /**
+         * Closes the connection; the ack reader then fails whatever is still unacknowledged on it. If a send
+         * holds the peer, only the channel is closed, which fails the send's write, and the send drops the
+         * connection; {@code BYE} is then skipped.
+         */
+        void close(boolean sayBye) {
+            if (!lock.tryLock()) {
+                Connection current = connection;
+                if (current != null) closeChannel(current);
+                return;
+            }
+            try {
+                if (connection == null) return;
+                if (sayBye) {
+                    try {
+                        writeFully(connection.binary ? PeerProtocol.encode(List.of(PeerProtocol.bye()), false)
+                                : ByteBuffer.wrap("BYE\n".getBytes(StandardCharsets.UTF_8)));
+                    } catch (IOException ignored) { /* closing anyway */ }
+                }
+                closeChannel(connection);
+                connection = null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void closeChannel(Connection closing) {
+            try {
+                closing.channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing connection to " + uid + ": " + e.getMessage());
+            }
+        }
+
+        private void open(InetSocketAddress target) throws IOException {
+            if (!target.equals(lineProtocolAddress)) {
+                if (connect(target, true)) return;
+                System.out.println("Peer " + uid + " at " + target + " did not answer the binary protocol; using the line protocol.");
+                lineProtocolAddress = target;
+            }
+            connect(target, false);
+        }
+
+        /** Connects and identifies; false if {@code binary} was asked for but the peer did not answer the preface. */
+        private boolean connect(InetSocketAddress target, boolean binary) throws IOException {
+            SocketChannel opened = SocketChannel.open();
+            try {
+                opened.socket().setTcpNoDelay(true);
+                opened.socket().connect(target, CONNECT_TIMEOUT_MILLIS);
+                if (closed) throw new IOException("Connection pool is closed.");
+                connection = new Connection(opened, binary);
+                address = target;
+                if (!binary) {
+                    writeFully(ByteBuffer.wrap(("INITMSG:" + myUid + "\n").getBytes(StandardCharsets.UTF_8)));
+                    return true;
+                }
+                writeFully(PeerProtocol.encode(List.of(PeerProtocol.Frame.of(PeerProtocol.HELLO, 0, System.currentTimeMillis(), myUid)), true));
+                if (!answeredPreface(opened)) {
+                    connection = null;
+                    opened.close();
+                    return false;
+                }
+                Connection reading = connection;
+                Thread.ofVirtual().name("peer-acks-" + uid).start(() -> readAcks(reading));
+                return true;
+            } catch (IOException e) {
+                connection = null;
+                opened.close();
+                throw e;
+            }
+        }
+
+        private boolean answeredPreface(SocketChannel channel) throws IOException {
+            channel.socket().setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            try {
+                InputStream in = channel.socket().getInputStream();
+                return Arrays.equals(in.readNBytes(PeerProtocol.PREFACE.length), PeerProtocol.PREFACE);
+            } catch (SocketTimeoutException e) {
+                return false;
+            } finally {
+                channel.socket().setSoTimeout(0);
+            }
+        }
+
+        private void write(List<Outgoing> batch) throws IOException {
+            if (connection.binary) {
+                List<PeerProtocol.Frame> frames = new ArrayList<>(batch.size());
+                long now = System.currentTimeMillis();
+                for (Outgoing outgoing : batch) {
+                    // Registered before the write: the ack can arrive before the write call returns.
+                    outgoing.writtenAtMillis = now;
+                    connection.unacked.put(outgoing.id, outgoing);
+                    frames.add(PeerProtocol.Frame.of(PeerProtocol.MESSAGE, outgoing.id, outgoing.queuedAtMillis, outgoing.text));
+                }
+                writeFully(PeerProtocol.encode(frames, false));
+                return;
+            }
+            StringBuilder lines = new StringBuilder();
+            for (Outgoing outgoing : batch) {
+                lines.append("MESSAGE:").append(outgoing.text.replace('\n', ' ')).append('\n');
+            }
+            writeFully(ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8)));
+            for (Outgoing outgoing : batch) outgoing.delivered.complete(false);
+        }
+
+        private void writeFully(ByteBuffer bytes) throws IOException {
+            Connection writing = connection;
+            writing.writingSinceMillis = System.currentTimeMillis();
+            try {
+                while (bytes.hasRemaining()) writing.channel.write(bytes);
+            } finally {
+                writing.writingSinceMillis = 0;
+            }
+        }
+
+        /** Runs on a virtual thread for as long as {@code reading} is open. */
+        private void readAcks(Connection reading) {
+            ByteBuffer buffer = ByteBuffer.allocate(ACK_BUFFER_BYTES);
+            try {
+                boolean open = true;
+                while (open && reading.channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    try {
+                        PeerProtocol.Frame frame;
+                        while (open && (frame = PeerProtocol.decode(buffer)) != null) {
+                            if (frame.type() == PeerProtocol.ACK) {
+                                Outgoing outgoing = reading.unacked.remove(frame.messageId());
+                                if (outgoing != null) outgoing.delivered.complete(true);
+                            } else if (frame.type() == PeerProtocol.BYE) {
+                                open = false;
+                            }
+                        }
+                    } finally {
+                        buffer.compact();
+                    }
+                    if (!buffer.hasRemaining()) throw new IOException("Unexpected large frame from " + uid + ".");
+                }
+            } catch (IOException e) {
+                if (reading.channel.isOpen()) System.err.println("Connection to " + uid + " failed: " + e.getMessage());
+            } finally {
+                lock.lock();
+                try {
+                    if (connection == reading) close(false);
+                } finally {
+                    lock.unlock();
+                }
+                IOException lost = new IOException("Connection to " + uid + " closed before the message was acknowledged.");
+                for (Long id : reading.unacked.keySet()) {
+                    Outgoing outgoing = reading.unacked.remove(id);
+                    if (outgoing != null) outgoing.delivered.completeExceptionally(lost);
+                }
+            }
+        }
+
+        /** Whether the peer has closed its end; a non-blocking read sees end-of-stream without waiting. */
+        private boolean closedByPeer() {
+            try {
+                connection.channel.configureBlocking(false);
+                try {
+                    return connection.channel.read(ByteBuffer.allocate(64)) < 0;
+                } finally {
+                    connection.channel.configureBlocking(true);
+                }
+            } catch (IOException e) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,530 @@
+package com.example.mentalhealthjournal;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Server side of the peer chat protocol.
+ * <p>
+ * By default every inbound connection is handled by one selector thread: channels are non-blocking and
+ * each connection has its own read buffer, which is split into frames (or lines) as bytes arrive, so a
+ * peer that sends half a frame or nothing at all costs a buffer, not a thread. With
+ * {@code virtualThreads}, accept and each connection instead run as blocking loops on virtual threads,
+ * with the same buffers and framing. Connections silent for longer than the idle timeout are closed.
+ * <p>
+ * A connection that starts with {@link PeerProtocol#PREFACE} speaks the binary protocol: it gets the
+ * preface back, must send {@code HELLO} first, and the messages of each read are acknowledged together
+ * in one write once the {@link Handler} reports all of them stored, so an acknowledged message survives a
+ * crash of the receiver. Any other connection is read as the line protocol of older versions: {@code INITMSG:<uid>},
+ * then {@code MESSAGE:<text>} lines and finally {@code BYE}, with no acknowledgements.
+ * The {@link Handler} is called on the server thread, or on the connections' virtual threads, and must
+ * not block.
+ */
+final class PeerMessageServer {
+
+    interface Handler {
+        /** A connection from {@code address} identified itself as {@code peerUid}. */
+        void peerConnected(String peerUid, InetAddress address);
+
+        /**
+         * @param messageId    the sender's id of the message, 0 from line-protocol peers
+         * @param sentAtMillis when the sender queued it, or when it arrived from line-protocol peers
+         * @return not null; completes once the message is stored, or dropped for good; binary-protocol messages are
+         *         acknowledged then, and not at all if it completes exceptionally, so the sender resends them
+         */
+        CompletableFuture<?> messageReceived(String peerUid, long messageId, long sentAtMillis, String message);
+    }
+
+    /** Largest read buffer; a connection sending a longer line or larger frame is closed. */
+    private static final int MAX_BUFFER_BYTES = PeerProtocol.maxFrameBytes();
+    /** Most output kept for a peer that does not read its acknowledgements. */
+    private static final int MAX_PENDING_OUTPUT_BYTES = 1024 * 1024;
+    private static final int INITIAL_BUFFER_BYTES = 4 * 1024;
+    private static final long SWEEP_INTERVAL_MILLIS = 1000;
+    private static final int ACCEPT_BACKLOG = 512;
+
+    private static final class Connection {
+        final SocketChannel channel;
+        final String remote;
+        SelectionKey key; // selector mode only
+        ByteBuffer buffer = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+        ByteBuffer pendingOutput; // selector mode: bytes the socket did not take yet
+        final ReentrantLock writeLock = new ReentrantLock(); // virtual-thread mode: the reader and ack writers
+        Boolean binary; // null until the first bytes tell
+        String peerUid;
+        volatile long lastActivity = System.currentTimeMillis();
+
+        Connection(SocketChannel channel, String remote) {
+            this.channel = channel;
+            this.remote = remote;
+        }
+
+        String name() {
+            return peerUid != null ? peerUid : remote;
+        }
+    }
+
+    private final String myUid;
+    private final int port;
+    private final long idleTimeoutMillis;
+    private final boolean virtualThreads;
+    private final Handler handler;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    // Selector mode: work handed to the selector thread, e.g. acknowledgements of messages stored meanwhile.
+    private final Queue<Runnable> selectorTasks = new ConcurrentLinkedQueue<>();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running;
+
+    PeerMessageServer(String myUid, int port, long idleTimeoutMillis, boolean virtualThreads, Handler handler) {
+        this.myUid = myUid;
+        this.port = port;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.virtualThreads = virtualThreads;
+        this.handler = handler;
+    }
+
+    /** Binds the port and starts the server thread; throws if the port cannot be bound. */
+    void start() throws IOException {
+        try {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            serverChannel.bind(new InetSocketAddress(port), ACCEPT_BACKLOG);
+            if (!virtualThreads) {
+                selector = Selector.open();
+                serverChannel.configureBlocking(false);
+                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            }
+        } catch (IOException e) {
+            if (serverChannel != null) serverChannel.close();
+            if (selector != null) selector.close();
+            throw e;
+        }
+        running = true;
+        if (virtualThreads) {
+            thread = Thread.ofVirtual().name("peer-message-accept-" + port).start(this::acceptLoop);
+            Thread.ofVirtual().name("peer-message-sweep-" + port).start(this::sweepLoop);
+        } else {
+            thread = new Thread(this::run, "peer-message-server-" + port);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        System.out.println("TCP Message Server active for UID " + myUid + " on port " + port + (virtualThreads ? " (virtual threads)" : ""));
+    }
+
+    /** Port actually bound, e.g. when started on port 0. */
+    int localPort() throws IOException {
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    int connectionCount() {
+        return connections.size();
+    }
+
+    /** Stops the server thread and closes every connection. */
+    void close() {
+        if (!running) return;
+        running = false;
+        if (virtualThreads) {
+            closeQuietly(serverChannel);
+            connections.forEach(this::close);
+        } else {
+            selector.wakeup();
+        }
+        try {
+            thread.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long nextSweep = System.currentTimeMillis() + SWEEP_INTERVAL_MILLIS;
+        try {
+            while (running) {
+                selector.select(SWEEP_INTERVAL_MILLIS);
+                for (Runnable task; (task = selectorTasks.poll()) != null; ) task.run();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    if (key.isWritable()) writePending(key);
+                    if (key.isValid() && key.isReadable()) read(key);
+                }
+                long now = System.currentTimeMillis();
+                if (now >= nextSweep) {
+                    closeIdle(now);
+                    nextSweep = now + SWEEP_INTERVAL_MILLIS;
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) System.err.println("TCP Message Server for UID " + myUid + " failed: " + e.getMessage());
+        } finally {
+            connections.forEach(this::close);
+            closeQuietly(serverChannel);
+            try {
+                selector.close();
+            } catch (IOException e) {
+                System.err.println("Error closing selector of TCP Message Server for UID " + myUid + ": " + e.getMessage());
+            }
+            System.out.println("TCP Message Server stopped for UID " + myUid);
+        }
+    }
+
+    // --- Virtual-thread mode ---
+
+    private void acceptLoop() {
+        try {
+            while (running) {
+                Connection connection = accepted(serverChannel.accept());
+                if (connection == null) continue;
+                connections.add(connection);
+                Thread.ofVirtual().name("peer-connection-" + connection.remote).start(() -> readLoop(connection));
+            }
+        } catch (IOException e) {
+            if (running) System.err.println("TCP Message Server for UID " + myUid + " failed: " + e.getMessage());
+        } finally {
+            closeQuietly(serverChannel);
+            System.out.println("TCP Message Server stopped for UID " + myUid);
+        }
+    }
+
+    private void readLoop(Connection connection) {
+        try {
+            while (running) {
+                if (!connection.buffer.hasRemaining() && !grow(connection)) {
+                    System.err.println("TCP Connection from " + connection.name() + " sent a frame or line over " + MAX_BUFFER_BYTES + " bytes. Closing connection.");
+                    break;
+                }
+                if (connection.channel.read(connection.buffer) < 0) break;
+                connection.lastActivity = System.currentTimeMillis();
+                if (!process(connection)) break;
+            }
+        } catch (IOException e) {
+            if (running && connection.channel.isOpen()) {
+                System.out.println("TCP Connection with " + connection.name() + " for user " + myUid + " ended: " + e.getMessage());
+            }
+        } finally {
+            close(connection);
+        }
+    }
+
+    private void sweepLoop() {
+        try {
+            while (running) {
+                Thread.sleep(SWEEP_INTERVAL_MILLIS);
+                closeIdle(System.currentTimeMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- Selector mode ---
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            Connection connection = accepted(channel);
+            if (connection == null) continue;
+            try {
+                channel.configureBlocking(false);
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                connections.add(connection);
+            } catch (IOException e) {
+                System.err.println("Could not register TCP connection from " + connection.remote + ": " + e.getMessage());
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    private void read(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            while (true) {
+                if (!connection.buffer.hasRemaining() && !grow(connection)) {
+                    System.err.println("TCP Connection from " + connection.name() + " sent a frame or line over " + MAX_BUFFER_BYTES + " bytes. Closing connection.");
+                    close(connection);
+                    return;
+                }
+                int read = connection.channel.read(connection.buffer);
+                if (read < 0) {
+                    close(connection);
+                    return;
+                }
+                if (read == 0) break;
+                connection.lastActivity = System.currentTimeMillis();
+                if (!process(connection)) {
+                    close(connection);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("TCP Connection with " + connection.name() + " for user " + myUid + " ended: " + e.getMessage());
+            close(connection);
+        }
+    }
+
+    /** Writes what an earlier {@link #write} could not; stops asking for OP_WRITE once all is out. */
+    private void writePending(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            connection.channel.write(connection.pendingOutput);
+            if (!connection.pendingOutput.hasRemaining()) {
+                connection.pendingOutput = null;
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        } catch (IOException e) {
+            System.out.println("TCP Connection with " + connection.name() + " for user " + myUid + " ended: " + e.getMessage());
+            close(connection);
+        }
+    }
+
+    // --- Framing, shared by both modes ---
+
+    /** Handles what the buffer holds so far; returns false if the connection should be closed. */
+    private boolean process(Connection connection) throws IOException {
+        if (connection.binary == null) {
+            connection.binary = PeerProtocol.startsWithPreface(connection.buffer.array(), connection.buffer.position());
+            if (connection.binary == null) return true;
+            if (connection.binary) {
+                connection.buffer.flip().position(PeerProtocol.PREFACE.length);
+                connection.buffer.compact();
+                write(connection, ByteBuffer.wrap(PeerProtocol.PREFACE));
+            }
+        }
+        return connection.binary ? processFrames(connection) : processLines(connection);
+    }
+
+    /** Handles the complete frames in the buffer and acknowledges their messages in one write once stored. */
+    private boolean processFrames(Connection connection) throws IOException {
+        ByteBuffer buffer = connection.buffer.flip();
+        List<PeerProtocol.Frame> acks = new ArrayList<>();
+        List<CompletableFuture<?>> stored = new ArrayList<>();
+        boolean open = true;
+        try {
+            PeerProtocol.Frame frame;
+            while (open && (frame = PeerProtocol.decode(buffer)) != null) {
+                open = handleFrame(connection, frame, acks, stored);
+            }
+        } finally {
+            buffer.compact();
+        }
+        if (acks.isEmpty()) return open;
+        CompletableFuture<Void> allStored = CompletableFuture.allOf(stored.toArray(new CompletableFuture<?>[0]));
+        if (allStored.isDone() && !allStored.isCompletedExceptionally()) {
+            write(connection, PeerProtocol.encode(acks, false));
+        } else {
+            allStored.whenComplete((v, failure) -> {
+                if (failure != null) {
+                    System.err.println("Not acknowledging " + acks.size() + " message(s) from " + connection.name() + ": " + failure.getMessage());
+                    return;
+                }
+                writeAcks(connection, PeerProtocol.encode(acks, false));
+            });
+        }
+        return open;
+    }
+
+    /**
+     * Writes acknowledgements from whichever thread stored the messages: in selector mode on the selector
+     * thread, otherwise on a virtual thread of their own, as a blocking write must not hold up the storing thread.
+     */
+    private void writeAcks(Connection connection, ByteBuffer acks) {
+        Runnable write = () -> {
+            if (!connections.contains(connection)) return;
+            try {
+                write(connection, acks);
+            } catch (IOException e) {
+                System.out.println("TCP Connection with " + connection.name() + " for user " + myUid + " ended: " + e.getMessage());
+                close(connection);
+            }
+        };
+        if (!running) return;
+        if (virtualThreads) {
+            Thread.ofVirtual().name("peer-acks-" + connection.remote).start(write);
+        } else {
+            selectorTasks.add(write);
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Returns false if the connection should be closed; adds an ACK for each message to {@code acks} and
+     * the handler's future of its storing to {@code stored}.
+     */
+    private boolean handleFrame(Connection connection, PeerProtocol.Frame frame, List<PeerProtocol.Frame> acks,
+                                List<CompletableFuture<?>> stored) {
+        if (connection.peerUid == null) {
+            if (frame.type() != PeerProtocol.HELLO) {
+                System.err.println("TCP Connection from " + connection.remote + " - missing HELLO for user " + myUid + ". Closing connection.");
+                return false;
+            }
+            identified(connection, frame.text());
+            return true;
+        }
+        switch (frame.type()) {
+            case PeerProtocol.MESSAGE:
+                try {
+                    stored.add(handler.messageReceived(connection.peerUid, frame.messageId(), frame.sentAtMillis(), frame.text()));
+                    acks.add(PeerProtocol.ack(frame.messageId()));
+                } catch (RuntimeException e) {
+                    System.err.println("Error handling data from " + connection.name() + " for user " + myUid + ": " + e);
+                }
+                return true;
+            case PeerProtocol.BYE:
+                System.out.println("Peer " + connection.peerUid + " sent BYE to user " + myUid + ". Closing connection.");
+                return false;
+            default:
+                System.out.println("TCP Received unhandled frame type " + frame.type() + " from " + connection.peerUid + " for user " + myUid);
+                return true;
+        }
+    }
+
+    /** Handles the complete lines in the buffer; returns false if the connection should be closed. */
+    private boolean processLines(Connection connection) {
+        ByteBuffer buffer = connection.buffer;
+        byte[] bytes = buffer.array();
+        int end = buffer.position();
+        int lineStart = 0;
+        for (int i = 0; i < end; i++) {
+            if (bytes[i] != '\n') continue;
+            int lineEnd = i > lineStart && bytes[i - 1] == '\r' ? i - 1 : i;
+            String line = new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+            lineStart = i + 1;
+            if (!handleLine(connection, line)) return false;
+        }
+        if (lineStart > 0) {
+            buffer.flip().position(lineStart);
+            buffer.compact();
+        }
+        return true;
+    }
+
+    /** Returns false if the connection should be closed. */
+    private boolean handleLine(Connection connection, String line) {
+        if (connection.peerUid == null) {
+            if (!line.startsWith("INITMSG:")) {
+                System.err.println("TCP Connection from " + connection.remote + " - Invalid or missing INITMSG for user " + myUid + ". Closing connection.");
+                return false;
+            }
+            identified(connection, line.substring("INITMSG:".length()));
+        } else if (line.startsWith("MESSAGE:")) {
+            String message = line.substring("MESSAGE:".length());
+            call(connection, () -> handler.messageReceived(connection.peerUid, 0, System.currentTimeMillis(), message));
+        } else if (line.equalsIgnoreCase("BYE")) {
+            System.out.println("Peer " + connection.peerUid + " sent BYE to user " + myUid + ". Closing connection.");
+            return false;
+        } else {
+            System.out.println("TCP Received unhandled line from " + connection.peerUid + " for user " + myUid + ": " + line);
+        }
+        return true;
+    }
+
+    private void identified(Connection connection, String peerUid) {
+        connection.peerUid = peerUid.trim();
+        System.out.println("TCP Handshake successful with peer UID: " + connection.peerUid + " on connection for user " + myUid);
+        call(connection, () -> handler.peerConnected(connection.peerUid, connection.channel.socket().getInetAddress()));
+    }
+
+    private void call(Connection connection, Runnable callback) {
+        try {
+            callback.run();
+        } catch (RuntimeException e) {
+            System.err.println("Error handling data from " + connection.name() + " for user " + myUid + ": " + e);
+        }
+    }
+
+    /**
+     * Writes {@code bytes} to the peer. A virtual thread blocks until all is written; the selector thread
+     * keeps what the socket does not take now and writes it when the channel becomes writable.
+     */
+    private void write(Connection connection, ByteBuffer bytes) throws IOException {
+        if (virtualThreads) {
+            connection.writeLock.lock();
+            try {
+                while (bytes.hasRemaining()) connection.channel.write(bytes);
+            } finally {
+                connection.writeLock.unlock();
+            }
+            return;
+        }
+        if (connection.pendingOutput == null) {
+            connection.channel.write(bytes);
+            if (!bytes.hasRemaining()) return;
+            connection.pendingOutput = ByteBuffer.allocate(bytes.remaining()).put(bytes).flip();
+            connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            return;
+        }
+        if (connection.pendingOutput.remaining() + bytes.remaining() > MAX_PENDING_OUTPUT_BYTES) {
+            throw new IOException("Peer is not reading its acknowledgements.");
+        }
+        connection.pendingOutput = ByteBuffer.allocate(connection.pendingOutput.remaining() + bytes.remaining())
+                .put(connection.pendingOutput).put(bytes).flip();
+    }
+
+    private boolean grow(Connection connection) {
+        int capacity = connection.buffer.capacity();
+        if (capacity >= MAX_BUFFER_BYTES) return false;
+        ByteBuffer larger = ByteBuffer.allocate(Math.min(MAX_BUFFER_BYTES, capacity * 2));
+        connection.buffer.flip();
+        larger.put(connection.buffer);
+        connection.buffer = larger;
+        return true;
+    }
+
+    private void closeIdle(long now) {
+        for (Connection connection : connections) {
+            if (now - connection.lastActivity > idleTimeoutMillis) {
+                System.out.println("TCP Connection with " + connection.name() + " for user " + myUid + " idle for too long, closing.");
+                close(connection);
+            }
+        }
+    }
+
+    /** Closes {@code connection} once; closing the channel also cancels its selection key. */
+    private void close(Connection connection) {
+        if (!connections.remove(connection)) return;
+        closeQuietly(connection.channel);
+        System.out.println("Closed TCP connection with " + connection.name() + " for user " + myUid);
+    }
+
+    /** Wraps a newly accepted channel; null if the peer is already gone. */
+    private Connection accepted(SocketChannel channel) {
+        try {
+            InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+            return new Connection(channel, remote.getAddress().getHostAddress() + ":" + remote.getPort());
+        } catch (IOException e) {
+            closeQuietly(channel);
+            return null;
+        }
+    }
+
+    private void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Error closing channel on " + myUid + "'s server: " + e.getMessage());
+        }
+    }
+}
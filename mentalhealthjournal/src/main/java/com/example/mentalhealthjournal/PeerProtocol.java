@@ -0,0 +1,112 @@
+package com.example.mentalhealthjournal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Binary wire format of the peer chat protocol.
+ * <p>
+ * Both ends start a connection with the 4-byte {@link #PREFACE} ({@code "MHP"} and the protocol version);
+ * the connecting side sends it followed by a {@link #HELLO} frame, and the accepting side answers with its
+ * own preface. After that the stream is a sequence of frames:
+ * {@code [int length][byte type][long messageId][long sentAtMillis][payload]}, where {@code length}
+ * counts everything after itself and the payload of {@link #HELLO} and {@link #MESSAGE} is UTF-8 text.
+ * Every {@link #MESSAGE} is answered with an {@link #ACK} carrying its id. Several frames may be written
+ * at once; readers take frames off the buffer as long as complete ones are there.
+ * <p>
+ * A peer running an older version speaks the line protocol ({@code INITMSG:}, {@code MESSAGE:},
+ * {@code BYE}) instead. The accepting side tells the two apart by the first bytes of the connection, and
+ * the connecting side falls back to lines when the other end does not answer the preface.
+ */
+final class PeerProtocol {
+
+    static final byte VERSION = 1;
+    static final byte[] PREFACE = {'M', 'H', 'P', VERSION};
+
+    static final byte HELLO = 1;
+    static final byte MESSAGE = 2;
+    static final byte ACK = 3;
+    static final byte BYE = 4;
+
+    /** Bytes of a frame before its payload: length, type, message id and timestamp. */
+    static final int HEADER_BYTES = Integer.BYTES + 1 + Long.BYTES + Long.BYTES;
+    /** Largest payload accepted; a peer sending a larger frame is disconnected. */
+    static final int MAX_PAYLOAD_BYTES = 256 * 1024;
+
+    record Frame(byte type, long messageId, long sentAtMillis, byte[] payload) {
+        static Frame of(byte type, long messageId, long sentAtMillis, String text) {
+            return new Frame(type, messageId, sentAtMillis, text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        String text() {
+            return new String(payload, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final byte[] NO_PAYLOAD = new byte[0];
+
+    private PeerProtocol() {
+    }
+
+    static Frame ack(long messageId) {
+        return new Frame(ACK, messageId, 0, NO_PAYLOAD);
+    }
+
+    static Frame bye() {
+        return new Frame(BYE, 0, 0, NO_PAYLOAD);
+    }
+
+    /** All {@code frames} in one buffer, ready to be written with a single call; prefixed by the preface if asked. */
+    static ByteBuffer encode(List<Frame> frames, boolean withPreface) {
+        int size = withPreface ? PREFACE.length : 0;
+        for (Frame frame : frames) size += HEADER_BYTES + frame.payload().length;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        if (withPreface) buffer.put(PREFACE);
+        for (Frame frame : frames) {
+            buffer.putInt(HEADER_BYTES - Integer.BYTES + frame.payload().length)
+                    .put(frame.type())
+                    .putLong(frame.messageId())
+                    .putLong(frame.sentAtMillis())
+                    .put(frame.payload());
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Whether {@code bytes} (the first {@code available} bytes of a connection) start with the preface:
+     * true or false once that is known, null while more bytes are needed.
+     */
+    static Boolean startsWithPreface(byte[] bytes, int available) {
+        for (int i = 0; i < Math.min(available, PREFACE.length); i++) {
+            if (bytes[i] != PREFACE[i]) return false;
+        }
+        return available >= PREFACE.length ? true : null;
+    }
+
+    /**
+     * Takes the next complete frame from {@code buffer} (in read mode), or returns null and leaves the
+     * buffer untouched if the frame is not complete yet.
+     */
+    static Frame decode(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < Integer.BYTES) return null;
+        int length = buffer.getInt(buffer.position());
+        if (length < HEADER_BYTES - Integer.BYTES || length - (HEADER_BYTES - Integer.BYTES) > MAX_PAYLOAD_BYTES) {
+            throw new IOException("Invalid frame length " + length + ".");
+        }
+        if (buffer.remaining() < Integer.BYTES + length) return null;
+        buffer.getInt();
+        byte type = buffer.get();
+        long messageId = buffer.getLong();
+        long sentAtMillis = buffer.getLong();
+        byte[] payload = new byte[length - (HEADER_BYTES - Integer.BYTES)];
+        buffer.get(payload);
+        return new Frame(type, messageId, sentAtMillis, payload);
+    }
+
+    /** Room a read buffer needs to hold the largest frame. */
+    static int maxFrameBytes() {
+        return HEADER_BYTES + MAX_PAYLOAD_BYTES;
+    }
+}
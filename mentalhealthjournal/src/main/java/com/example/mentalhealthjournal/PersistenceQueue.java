@@ -0,0 +1,141 @@
+package com.example.mentalhealthjournal;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Single background writer for user data. Writes run one at a time in submission order, so a later
+ * save of a file can never be overtaken by an earlier one. Submitting never blocks the caller.
+ * Appends go through {@link #submit} and each one runs. Whole-file snapshots go through
+ * {@link #submitLatest}: a snapshot that has not started yet is dropped when a newer one of the same
+ * file arrives, so a writer that falls behind has at most one pending write per file.
+ * <p>
+ * Callers must hand over data that no other thread mutates (a copy taken on the submitting thread).
+ */
+final class PersistenceQueue {
+
+    @FunctionalInterface
+    interface Write {
+        void run() throws IOException;
+    }
+
+    /** A queued snapshot; whoever claims it first either runs it or drops it for a newer one. */
+    private static final class Snapshot {
+        final Write write;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final AtomicBoolean claimed = new AtomicBoolean();
+
+        Snapshot(Write write) {
+            this.write = write;
+        }
+    }
+
+    private final ThreadPoolExecutor writer;
+    private final Map<String, Snapshot> pendingSnapshots = new HashMap<>(); // guarded by itself
+    private long snapshotsDropped;
+
+    PersistenceQueue(String threadName) {
+        this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, threadName);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Queues {@code write}; the future completes on the writer thread once it has finished or failed. */
+    CompletableFuture<Void> submit(String description, Write write) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        execute(() -> run(description, write, done), done);
+        return done;
+    }
+
+    /**
+     * Queues a write of the whole of file {@code key}, replacing its previous write if that has not
+     * started yet. The future completes once this or a newer write of the same file has finished.
+     */
+    CompletableFuture<Void> submitLatest(String key, Write write) {
+        Snapshot snapshot = new Snapshot(write);
+        Snapshot superseded;
+        synchronized (pendingSnapshots) {
+            superseded = pendingSnapshots.put(key, snapshot);
+        }
+        if (superseded != null && superseded.claimed.compareAndSet(false, true)) {
+            synchronized (pendingSnapshots) {
+                snapshotsDropped++;
+            }
+            snapshot.done.whenComplete((v, e) -> {
+                if (e != null) superseded.done.completeExceptionally(e);
+                else superseded.done.complete(null);
+            });
+        }
+        execute(() -> {
+            if (!snapshot.claimed.compareAndSet(false, true)) return; // a newer snapshot replaced it
+            synchronized (pendingSnapshots) {
+                pendingSnapshots.remove(key, snapshot);
+            }
+            run(key, snapshot.write, snapshot.done);
+        }, snapshot.done);
+        return snapshot.done;
+    }
+
+    private void execute(Runnable task, CompletableFuture<Void> done) {
+        try {
+            writer.execute(task);
+        } catch (RejectedExecutionException e) {
+            done.completeExceptionally(e);
+        }
+    }
+
+    private static void run(String description, Write write, CompletableFuture<Void> done) {
+        try {
+            write.run();
+            done.complete(null);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Background save failed (" + description + "): " + e.getMessage());
+            done.completeExceptionally(e);
+        }
+    }
+
+    /** Number of writes queued or running. */
+    int pending() {
+        return writer.getQueue().size() + writer.getActiveCount();
+    }
+
+    /** Snapshot writes dropped because a newer one of the same file was queued before they started. */
+    long snapshotsDropped() {
+        synchronized (pendingSnapshots) {
+            return snapshotsDropped;
+        }
+    }
+
+    /**
+     * Waits until every write submitted before this call has finished.
+     *
+     * @return false if they did not finish within the timeout
+     */
+    boolean flush(long timeout, TimeUnit unit) {
+        try {
+            submit("flush", () -> { }).get(timeout, unit);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    /** Finishes the queued writes (up to the timeout) and stops the writer thread. */
+    boolean shutdown(long timeout, TimeUnit unit) {
+        writer.shutdown();
+        try {
+            return writer.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.mentalhealthjournal;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encodings for the entries written to the per-user record logs and data files.
+ * Strings are length-prefixed UTF-8 so journal bodies are not limited to the 64 KB of {@code writeUTF}.
+ * <p>
+ * Data files start with {@code [int magic][short formatVersion]} followed by one value. Every domain
+ * record in a data file is written as {@code [short version][int length][fields]}: new fields are only
+ * ever appended, readers use the version to know which fields are present, and bytes after the fields
+ * a reader knows about are skipped. Old readers can therefore load files written by newer versions.
+ */
+final class RecordCodecs {
+
+    interface RecordCodec<T> {
+        void write(T value, DataOutput out) throws IOException;
+
+        T read(DataInput in) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface FieldWriter<T> {
+        void write(T value, DataOutput out) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface FieldReader<T> {
+        /** Reads the fields present in {@code version}; fields added later must get their defaults. */
+        T read(DataInput in, int version) throws IOException;
+    }
+
+    private static final long NULL_DATE = Long.MIN_VALUE;
+    private static final int NULL_STRING = -1;
+    private static final int DATA_FILE_MAGIC = 0x4D484A44; // "MHJD"
+    private static final short DATA_FILE_FORMAT = 1;
+
+    static final RecordCodec<HelloApplication.JournalEntry> JOURNAL = new RecordCodec<>() {
+        @Override
+        public void write(HelloApplication.JournalEntry entry, DataOutput out) throws IOException {
+            writeDate(out, entry.date);
+            writeString(out, entry.content);
+            writeString(out, entry.mood);
+        }
+
+        @Override
+        public HelloApplication.JournalEntry read(DataInput in) throws IOException {
+            LocalDate date = readDate(in);
+            String content = readString(in);
+            String mood = readString(in);
+            return new HelloApplication.JournalEntry(date, content, mood);
+        }
+    };
+
+    static final RecordCodec<HelloApplication.MoodEntry> MOOD = new RecordCodec<>() {
+        @Override
+        public void write(HelloApplication.MoodEntry entry, DataOutput out) throws IOException {
+            writeDate(out, entry.date);
+            writeString(out, entry.mood);
+            writeString(out, entry.notes);
+        }
+
+        @Override
+        public HelloApplication.MoodEntry read(DataInput in) throws IOException {
+            LocalDate date = readDate(in);
+            String mood = readString(in);
+            String notes = readString(in);
+            return new HelloApplication.MoodEntry(date, mood, notes);
+        }
+    };
+
+    // --- Versioned codecs for data files ---
+
+    static final RecordCodec<HelloApplication.JournalEntry> JOURNAL_RECORD = versioned(1, JOURNAL::write, (in, version) -> JOURNAL.read(in));
+
+    static final RecordCodec<HelloApplication.MoodEntry> MOOD_RECORD = versioned(1, MOOD::write, (in, version) -> MOOD.read(in));
+
+    static final RecordCodec<HelloApplication.User> USER = versioned(1, (user, out) -> {
+        writeString(out, user.username);
+        writeString(out, user.hashedPassword);
+        writeString(out, user.profilePicturePath);
+        writeString(out, user.role);
+        writeString(out, user.themePreference);
+    }, (in, version) -> {
+        HelloApplication.User user = new HelloApplication.User(readString(in), readString(in), null);
+        user.profilePicturePath = readString(in);
+        user.role = readString(in);
+        user.themePreference = readString(in);
+        return user;
+    });
+
+    static final RecordCodec<HelloApplication.MyInfo> MY_INFO = versioned(1, (info, out) -> {
+        writeString(out, info.uid);
+        out.writeInt(info.tcpPort);
+    }, (in, version) -> new HelloApplication.MyInfo(readString(in), in.readInt()));
+
+    /** Version 2 appends the message id and the delivery state. */
+    static final RecordCodec<HelloApplication.ChatMessage> CHAT_MESSAGE = versioned(2, (message, out) -> {
+        writeString(out, message.senderUid);
+        writeString(out, message.content);
+        writeDateTime(out, message.timestamp);
+        out.writeBoolean(message.isMe);
+        out.writeLong(message.messageId);
+        out.writeByte(message.delivery != null ? message.delivery.ordinal() : HelloApplication.ChatMessage.Delivery.ACKED.ordinal());
+    }, (in, version) -> {
+        HelloApplication.ChatMessage message = new HelloApplication.ChatMessage(readString(in), readString(in), readDateTime(in), in.readBoolean());
+        if (version >= 2) {
+            message.messageId = in.readLong();
+            HelloApplication.ChatMessage.Delivery[] states = HelloApplication.ChatMessage.Delivery.values();
+            int state = in.readUnsignedByte();
+            message.delivery = state < states.length ? states[state] : HelloApplication.ChatMessage.Delivery.ACKED;
+        }
+        return message;
+    });
+
+    static final RecordCodec<HelloApplication.Friend> FRIEND = versioned(1, (friend, out) -> {
+        writeString(out, friend.uid);
+        writeString(out, friend.nickname);
+        listOf(CHAT_MESSAGE).write(friend.getChatMessages(), out);
+    }, (in, version) -> {
+        HelloApplication.Friend friend = new HelloApplication.Friend(readString(in), readString(in));
+        friend.getChatMessages().setAll(listOf(CHAT_MESSAGE).read(in));
+        return friend;
+    });
+
+    static final RecordCodec<HelloApplication.PrescriptionEntry> PRESCRIPTION = versioned(1, (entry, out) -> {
+        writeDate(out, entry.date);
+        writeString(out, entry.doctorName);
+        writeString(out, entry.prescriptionText);
+        writeString(out, entry.filePath);
+    }, (in, version) -> new HelloApplication.PrescriptionEntry(readDate(in), readString(in), readString(in), readString(in)));
+
+    private RecordCodecs() {
+    }
+
+    /** Wraps {@code fields} as {@code [short version][int length][fields]}; see the class comment. */
+    static <T> RecordCodec<T> versioned(int version, FieldWriter<T> fields, FieldReader<T> reader) {
+        return new RecordCodec<>() {
+            @Override
+            public void write(T value, DataOutput out) throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+                fields.write(value, new DataOutputStream(bytes));
+                out.writeShort(version);
+                out.writeInt(bytes.size());
+                out.write(bytes.toByteArray());
+            }
+
+            @Override
+            public T read(DataInput in) throws IOException {
+                int recordVersion = in.readUnsignedShort();
+                int length = in.readInt();
+                if (length < 0) throw new IOException("Negative record length: " + length);
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                return reader.read(new DataInputStream(new ByteArrayInputStream(bytes)), recordVersion);
+            }
+        };
+    }
+
+    static <T> RecordCodec<List<T>> listOf(RecordCodec<T> element) {
+        return new RecordCodec<>() {
+            @Override
+            public void write(List<T> values, DataOutput out) throws IOException {
+                out.writeInt(values.size());
+                for (T value : values) {
+                    element.write(value, out);
+                }
+            }
+
+            @Override
+            public List<T> read(DataInput in) throws IOException {
+                int size = in.readInt();
+                if (size < 0) throw new IOException("Negative list size: " + size);
+                List<T> values = new ArrayList<>(Math.min(size, 1 << 16));
+                for (int i = 0; i < size; i++) {
+                    values.add(element.read(in));
+                }
+                return values;
+            }
+        };
+    }
+
+    // --- Data files ---
+
+    /** Writes {@code value} as a data file and forces it to disk. */
+    static <T> void writeDataFile(Path target, T value, RecordCodec<T> codec) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(target.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024))) {
+            out.writeInt(DATA_FILE_MAGIC);
+            out.writeShort(DATA_FILE_FORMAT);
+            codec.write(value, out);
+            out.flush();
+            fos.getChannel().force(true);
+        }
+    }
+
+    /**
+     * Consumes the data file header if {@code in} starts with one. Otherwise the stream is left where it
+     * was, e.g. on a file written with {@code ObjectOutputStream} by an older version.
+     */
+    static boolean readDataFileHeader(BufferedInputStream in) throws IOException {
+        in.mark(Integer.BYTES + Short.BYTES);
+        DataInputStream data = new DataInputStream(in);
+        try {
+            if (data.readInt() == DATA_FILE_MAGIC) {
+                int format = data.readUnsignedShort();
+                if (format > DATA_FILE_FORMAT) throw new IOException("Unsupported data file format " + format + ".");
+                return true;
+            }
+        } catch (EOFException e) {
+            // Too short to be a data file.
+        }
+        in.reset();
+        return false;
+    }
+
+    static void writeDate(DataOutput out, LocalDate date) throws IOException {
+        out.writeLong(date != null ? date.toEpochDay() : NULL_DATE);
+    }
+
+    static LocalDate readDate(DataInput in) throws IOException {
+        long epochDay = in.readLong();
+        return epochDay == NULL_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    static void writeDateTime(DataOutput out, LocalDateTime dateTime) throws IOException {
+        writeDate(out, dateTime != null ? dateTime.toLocalDate() : null);
+        if (dateTime != null) out.writeLong(dateTime.toLocalTime().toNanoOfDay());
+    }
+
+    static LocalDateTime readDateTime(DataInput in) throws IOException {
+        LocalDate date = readDate(in);
+        return date == null ? null : date.atTime(LocalTime.ofNanoOfDay(in.readLong()));
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Number of bytes {@link #writeString} writes for the characters of {@code value} (0 for null), without encoding it. */
+    static int utf8Length(String value) {
+        if (value == null) return 0;
+        int bytes = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++; // unpaired surrogates are encoded as '?'
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length == NULL_STRING) return null;
+        if (length < 0) throw new IOException("Negative string length in record: " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,475 @@
+package com.example.mentalhealthjournal;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * The suggestion and well-being rules, parsed from a rules file and compiled into one {@link RulePlan}
+ * per kind. The file is a sequence of blocks:
+ * <pre>
+ * # Comments run to the end of the line.
+ * define low_moods = mood("Sad", "Very Sad", "Anxious", "Stressed", "Tired")
+ *
+ * suggestion PERSISTENT_LOW_MOOD
+ *     priority 10
+ *     when low_mood_streak &gt;= 2 or low_moods &gt;= 3
+ *     condition "Low mood on several of the last 7 days."
+ *     text "It appears you've had several challenging mood days recently. "
+ *          "Remember to be kind to yourself."
+ *     details "..."
+ *
+ * task "Guided Mindful Breathing (5 min)"
+ *     category "Mindfulness &amp; Relaxation"
+ *     time "5 mins"
+ *     when mood("Stressed", "Anxious") or keywords("stress", "panic")
+ *     description "..."
+ * </pre>
+ * A suggestion needs {@code priority}, {@code when}, {@code condition} and {@code text}; {@code details}
+ * is optional. A task needs every property shown. Adjacent strings are joined, and strings take the
+ * escapes {@code \n}, {@code \t}, {@code \"} and {@code \\}.
+ * <p>
+ * A {@code when} expression combines numbers, {@code true}/{@code false}, the metrics of
+ * {@link RulePlan.Metric}, {@code mood("...", ...)} (entries with any of the {@link Mood}s),
+ * {@code keywords("...", ...)} (distinct words found, matched as by {@link KeywordMatcher}) and earlier
+ * {@code define}s with {@code + - * /}, comparisons and {@code and}, {@code or}, {@code not}.
+ */
+final class RuleBook {
+
+    static final RuleBook EMPTY = new RuleBook();
+
+    private static final Set<String> RESERVED = Set.of(
+            "define", "suggestion", "task", "and", "or", "not", "true", "false", "mood", "keywords",
+            "priority", "when", "condition", "text", "details", "category", "time", "description");
+
+    private final KeywordMatcher keywordMatcher;
+    private final List<HelloApplication.SuggestionRule> suggestions;
+    private final RulePlan suggestionPlan;
+    private final List<HelloApplication.WellBeingTask> tasks;
+    private final RulePlan taskPlan;
+
+    private RuleBook() {
+        this(new Parser(""));
+    }
+
+    private RuleBook(Parser parser) {
+        keywordMatcher = parser.terms.build();
+        suggestions = List.copyOf(parser.suggestions);
+        suggestionPlan = parser.suggestionPlan.build();
+        tasks = List.copyOf(parser.tasks);
+        taskPlan = parser.taskPlan.build();
+    }
+
+    /**
+     * Parses and compiles the rules in {@code source}.
+     *
+     * @param sourceName file name used in error messages
+     * @throws IOException if the rules are malformed; the message gives the line
+     */
+    static RuleBook parse(String source, String sourceName) throws IOException {
+        Parser parser = new Parser(sourceName);
+        parser.parseFile(source);
+        return new RuleBook(parser);
+    }
+
+    /** Matcher over the keyword terms of all rules, for {@code JournalEntry.matchedTerms} and friends. */
+    KeywordMatcher keywordMatcher() {
+        return keywordMatcher;
+    }
+
+    /** The suggestions whose condition holds, in file order. */
+    List<HelloApplication.SuggestionRule> suggestionsFor(RulePlan.Facts facts) {
+        return suggestionPlan.evaluate(facts).stream().mapToObj(suggestions::get).toList();
+    }
+
+    /** Keeps the outcome of every suggestion current as {@code facts} change; see {@link RulePlan.Tracker}. */
+    RulePlan.Tracker trackSuggestions(RulePlan.Facts facts) {
+        return suggestionPlan.track(facts);
+    }
+
+    /** The suggestion with the given index in file order, as in the tracker's {@code holding()} set. */
+    HelloApplication.SuggestionRule suggestion(int index) {
+        return suggestions.get(index);
+    }
+
+    /** The well-being tasks whose condition holds, in file order. */
+    List<HelloApplication.WellBeingTask> tasksFor(RulePlan.Facts facts) {
+        return taskPlan.evaluate(facts).stream().mapToObj(tasks::get).toList();
+    }
+
+    int suggestionCount() {
+        return suggestions.size();
+    }
+
+    int taskCount() {
+        return tasks.size();
+    }
+
+    /** Size of both compiled plans; shared sub-expressions count once per plan. */
+    int planNodeCount() {
+        return suggestionPlan.nodeCount() + taskPlan.nodeCount();
+    }
+
+    // --- Parsing ---
+
+    private static final int NUMBER = 0;
+    private static final int STRING = 1;
+    private static final int NAME = 2;
+    private static final int SYMBOL = 3;
+    private static final int END = 4;
+
+    private record Token(int type, String text, int line) {
+    }
+
+    private static final class Parser {
+        private final String sourceName;
+        private final List<Token> tokens = new ArrayList<>();
+        private int position;
+
+        final KeywordMatcher.Builder terms = new KeywordMatcher.Builder();
+        final RulePlan.Builder suggestionPlan = new RulePlan.Builder(terms);
+        final RulePlan.Builder taskPlan = new RulePlan.Builder(terms);
+        final List<HelloApplication.SuggestionRule> suggestions = new ArrayList<>();
+        final List<HelloApplication.WellBeingTask> tasks = new ArrayList<>();
+        // A define is expanded where it is used, into whichever plan is being built; the value is the
+        // token index of its expression.
+        private final Map<String, Integer> defines = new HashMap<>();
+        private final Set<String> suggestionIds = new HashSet<>();
+
+        Parser(String sourceName) {
+            this.sourceName = sourceName;
+        }
+
+        void parseFile(String source) throws IOException {
+            tokenize(source);
+            while (peek().type != END) {
+                Token block = next();
+                switch (block.text) {
+                    case "define":
+                        parseDefine();
+                        break;
+                    case "suggestion":
+                        parseSuggestion();
+                        break;
+                    case "task":
+                        parseTask();
+                        break;
+                    default:
+                        throw error(block, "expected 'define', 'suggestion' or 'task' but found '" + block.text + "'");
+                }
+            }
+        }
+
+        private void parseDefine() throws IOException {
+            Token name = expect(NAME, "a name");
+            if (RESERVED.contains(name.text) || RulePlan.Metric.named(name.text) != null) {
+                throw error(name, "'" + name.text + "' is a reserved word");
+            }
+            if (defines.containsKey(name.text)) throw error(name, "'" + name.text + "' is already defined");
+            expectSymbol("=");
+            int start = position;
+            // Parsed once into a scratch plan so errors point at the define rather than at its uses.
+            parseExpression(new RulePlan.Builder(new KeywordMatcher.Builder()));
+            defines.put(name.text, start);
+        }
+
+        private void parseSuggestion() throws IOException {
+            Token id = expect(NAME, "a suggestion id");
+            if (!suggestionIds.add(id.text)) throw error(id, "suggestion " + id.text + " is defined twice");
+            Integer condition = null;
+            Integer priority = null;
+            String description = null;
+            String text = null;
+            String details = null;
+            while (isProperty(peek())) {
+                Token property = next();
+                switch (property.text) {
+                    case "when": condition = parseExpression(suggestionPlan); break;
+                    case "priority": priority = parseInteger(); break;
+                    case "condition": description = parseText(); break;
+                    case "text": text = parseText(); break;
+                    case "details": details = parseText(); break;
+                    default: throw error(property, "'" + property.text + "' is not a suggestion property");
+                }
+            }
+            if (condition == null || priority == null || description == null || text == null) {
+                throw error(id, "suggestion " + id.text + " needs 'priority', 'when', 'condition' and 'text'");
+            }
+            suggestionPlan.rule(condition);
+            suggestions.add(new HelloApplication.SuggestionRule(id.text, description, text, details, priority));
+        }
+
+        private void parseTask() throws IOException {
+            Token title = expect(STRING, "a task title");
+            Integer condition = null;
+            String category = null;
+            String time = null;
+            String description = null;
+            while (isProperty(peek())) {
+                Token property = next();
+                switch (property.text) {
+                    case "when": condition = parseExpression(taskPlan); break;
+                    case "category": category = parseText(); break;
+                    case "time": time = parseText(); break;
+                    case "description": description = parseText(); break;
+                    default: throw error(property, "'" + property.text + "' is not a task property");
+                }
+            }
+            if (condition == null || category == null || time == null || description == null) {
+                throw error(title, "task \"" + title.text + "\" needs 'category', 'time', 'when' and 'description'");
+            }
+            taskPlan.rule(condition);
+            tasks.add(new HelloApplication.WellBeingTask(title.text, description, category, time));
+        }
+
+        private boolean isProperty(Token token) {
+            return token.type == NAME && RESERVED.contains(token.text) && !isBlockStart(token) && !isOperator(token);
+        }
+
+        private static boolean isBlockStart(Token token) {
+            return token.text.equals("define") || token.text.equals("suggestion") || token.text.equals("task");
+        }
+
+        private static boolean isOperator(Token token) {
+            return token.text.equals("and") || token.text.equals("or") || token.text.equals("not")
+                    || token.text.equals("true") || token.text.equals("false")
+                    || token.text.equals("mood") || token.text.equals("keywords");
+        }
+
+        private int parseInteger() throws IOException {
+            Token number = expect(NUMBER, "a whole number");
+            try {
+                return Integer.parseInt(number.text);
+            } catch (NumberFormatException e) {
+                throw error(number, "expected a whole number but found " + number.text);
+            }
+        }
+
+        private String parseText() throws IOException {
+            StringBuilder text = new StringBuilder(expect(STRING, "a string").text);
+            while (peek().type == STRING) text.append(next().text);
+            return text.toString();
+        }
+
+        // expression := and ('or' and)*, and := unary ('and' unary)*, unary := 'not' unary | comparison,
+        // comparison := sum (('<' | '<=' | '>' | '>=' | '==' | '!=') sum)?, sum := product (('+' | '-') product)*,
+        // product := factor (('*' | '/') factor)*
+
+        private int parseExpression(RulePlan.Builder plan) throws IOException {
+            int node = parseAnd(plan);
+            while (peekName("or")) {
+                next();
+                node = plan.binary("or", node, parseAnd(plan));
+            }
+            return node;
+        }
+
+        private int parseAnd(RulePlan.Builder plan) throws IOException {
+            int node = parseUnary(plan);
+            while (peekName("and")) {
+                next();
+                node = plan.binary("and", node, parseUnary(plan));
+            }
+            return node;
+        }
+
+        private int parseUnary(RulePlan.Builder plan) throws IOException {
+            if (peekName("not")) {
+                next();
+                return plan.not(parseUnary(plan));
+            }
+            int node = parseSum(plan);
+            Token token = peek();
+            if (token.type == SYMBOL && (token.text.startsWith("<") || token.text.startsWith(">")
+                    || token.text.equals("==") || token.text.equals("!="))) {
+                next();
+                node = plan.binary(token.text, node, parseSum(plan));
+            }
+            return node;
+        }
+
+        private int parseSum(RulePlan.Builder plan) throws IOException {
+            int node = parseProduct(plan);
+            while (peekSymbol("+") || peekSymbol("-")) {
+                String operator = next().text;
+                node = plan.binary(operator, node, parseProduct(plan));
+            }
+            return node;
+        }
+
+        private int parseProduct(RulePlan.Builder plan) throws IOException {
+            int node = parseFactor(plan);
+            while (peekSymbol("*") || peekSymbol("/")) {
+                String operator = next().text;
+                node = plan.binary(operator, node, parseFactor(plan));
+            }
+            return node;
+        }
+
+        private int parseFactor(RulePlan.Builder plan) throws IOException {
+            Token token = next();
+            if (token.type == NUMBER) return plan.constant(Double.parseDouble(token.text));
+            if (token.type == SYMBOL && token.text.equals("-")) return plan.binary("-", plan.constant(0), parseFactor(plan));
+            if (token.type == SYMBOL && token.text.equals("(")) {
+                int node = parseExpression(plan);
+                expectSymbol(")");
+                return node;
+            }
+            if (token.type != NAME) throw error(token, "expected an expression but found " + describe(token));
+            switch (token.text) {
+                case "true": return plan.constant(1);
+                case "false": return plan.constant(0);
+                case "mood": return plan.moods(parseMoodArguments());
+                case "keywords": return plan.keywords(parseArguments());
+                default:
+            }
+            if (RESERVED.contains(token.text)) throw error(token, "expected an expression but found " + describe(token));
+            RulePlan.Metric metric = RulePlan.Metric.named(token.text);
+            if (metric != null) return plan.metric(metric);
+            Integer define = defines.get(token.text);
+            if (define == null) throw error(token, "unknown name '" + token.text + "'");
+            int resume = position;
+            position = define;
+            int node = parseExpression(plan);
+            position = resume;
+            return node;
+        }
+
+        private List<String> parseArguments() throws IOException {
+            List<String> arguments = new ArrayList<>();
+            for (Token argument : parseArgumentTokens()) arguments.add(argument.text);
+            return arguments;
+        }
+
+        /** Like {@link #parseArguments}, but each argument must be the label of a {@link Mood}. */
+        private List<String> parseMoodArguments() throws IOException {
+            List<String> labels = new ArrayList<>();
+            for (Token argument : parseArgumentTokens()) {
+                Mood mood = Mood.find(argument.text);
+                if (mood == null) throw error(argument, "unknown mood " + describe(argument));
+                labels.add(mood.label);
+            }
+            return labels;
+        }
+
+        private List<Token> parseArgumentTokens() throws IOException {
+            expectSymbol("(");
+            List<Token> arguments = new ArrayList<>();
+            while (true) {
+                Token argument = expect(STRING, "a quoted string");
+                if (argument.text.isBlank()) throw error(argument, "empty string");
+                arguments.add(argument);
+                if (!peekSymbol(",")) break;
+                next();
+            }
+            expectSymbol(")");
+            return arguments;
+        }
+
+        private Token peek() {
+            return tokens.get(position);
+        }
+
+        private Token next() {
+            Token token = tokens.get(position);
+            if (token.type != END) position++;
+            return token;
+        }
+
+        private boolean peekName(String name) {
+            return peek().type == NAME && peek().text.equals(name);
+        }
+
+        private boolean peekSymbol(String symbol) {
+            return peek().type == SYMBOL && peek().text.equals(symbol);
+        }
+
+        private Token expect(int type, String what) throws IOException {
+            Token token = next();
+            if (token.type != type) throw error(token, "expected " + what + " but found " + describe(token));
+            return token;
+        }
+
+        private void expectSymbol(String symbol) throws IOException {
+            Token token = next();
+            if (token.type != SYMBOL || !token.text.equals(symbol)) {
+                throw error(token, "expected '" + symbol + "' but found " + describe(token));
+            }
+        }
+
+        private static String describe(Token token) {
+            switch (token.type) {
+                case END: return "the end of the file";
+                case STRING: return "\"" + token.text + "\"";
+                default: return "'" + token.text + "'";
+            }
+        }
+
+        private IOException error(Token token, String message) {
+            return error(token.line, message);
+        }
+
+        private IOException error(int line, String message) {
+            return new IOException(sourceName + " line " + line + ": " + message + ".");
+        }
+
+        private void tokenize(String source) throws IOException {
+            int line = 1;
+            int i = 0;
+            int length = source.length();
+            while (i < length) {
+                char c = source.charAt(i);
+                if (c == '\n') {
+                    line++;
+                    i++;
+                } else if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '#') {
+                    while (i < length && source.charAt(i) != '\n') i++;
+                } else if (c == '"') {
+                    StringBuilder text = new StringBuilder();
+                    int startLine = line;
+                    i++;
+                    while (true) {
+                        if (i >= length || source.charAt(i) == '\n') throw error(startLine, "unterminated string");
+                        char s = source.charAt(i++);
+                        if (s == '"') break;
+                        if (s == '\\' && i < length) {
+                            char escaped = source.charAt(i++);
+                            switch (escaped) {
+                                case 'n': text.append('\n'); break;
+                                case 't': text.append('\t'); break;
+                                case '"': case '\\': text.append(escaped); break;
+                                default: throw error(line, "unknown escape \\" + escaped);
+                            }
+                        } else {
+                            text.append(s);
+                        }
+                    }
+                    tokens.add(new Token(STRING, text.toString(), startLine));
+                } else if (Character.isDigit(c) || (c == '.' && i + 1 < length && Character.isDigit(source.charAt(i + 1)))) {
+                    int start = i;
+                    while (i < length && (Character.isDigit(source.charAt(i)) || source.charAt(i) == '.')) i++;
+                    String number = source.substring(start, i);
+                    if (number.indexOf('.') != number.lastIndexOf('.')) throw error(line, "malformed number " + number);
+                    tokens.add(new Token(NUMBER, number, line));
+                } else if (Character.isLetter(c) || c == '_') {
+                    int start = i;
+                    while (i < length && (Character.isLetterOrDigit(source.charAt(i)) || source.charAt(i) == '_')) i++;
+                    tokens.add(new Token(NAME, source.substring(start, i), line));
+                } else {
+                    String pair = i + 1 < length ? source.substring(i, i + 2) : "";
+                    if (pair.equals("<=") || pair.equals(">=") || pair.equals("==") || pair.equals("!=")) {
+                        tokens.add(new Token(SYMBOL, pair, line));
+                        i += 2;
+                    } else if ("()<>=+-*/,".indexOf(c) >= 0) {
+                        tokens.add(new Token(SYMBOL, String.valueOf(c), line));
+                        i++;
+                    } else {
+                        throw error(line, "unexpected character '" + c + "'");
+                    }
+                }
+            }
+            tokens.add(new Token(END, "", line));
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.example.mentalhealthjournal;
+
+import java.util.*;
+
+/**
+ * Compiled conditions of a set of rules, evaluated together against one {@link Facts} snapshot.
+ * <p>
+ * Every condition is a DAG of nodes in a single array. The {@link Builder} hash-conses nodes, so an
+ * expression that several rules share (a mood group, a keyword set, a threshold test) is one node and
+ * is computed once per evaluation. Operands of commutative operators are put in a canonical order and
+ * {@code a > b} is stored as {@code b < a}, so equivalent spellings share too. Constant sub-expressions
+ * are folded while building. Since a node is always created after its operands, evaluation is one pass
+ * over the array with no recursion and no allocation besides the value array.
+ * <p>
+ * A {@link Tracker} keeps the values of one evaluation and, when some inputs change, recomputes only
+ * the nodes that read them (and their users, while values keep changing), so the cost of an update
+ * depends on how many rules read the changed inputs, not on how many rules there are.
+ * <p>
+ * Values are doubles; a condition holds when its value is non-zero. Comparisons and the logical
+ * operators yield 1 or 0, and division by zero yields 0.
+ */
+final class RulePlan {
+
+    /** Named numbers a rule condition can refer to. */
+    enum Metric {
+        /** Longest run of consecutive days with a low mood logged in the window. */
+        LOW_MOOD_STREAK("low_mood_streak"),
+        /** Low-mood days in a row up to today (or yesterday, if nothing is logged today yet). */
+        CURRENT_LOW_MOOD_STREAK("current_low_mood_streak"),
+        /** Longest run of low-mood days in the whole history. */
+        LONGEST_LOW_MOOD_STREAK("longest_low_mood_streak"),
+        /** Journal entries written in the window. */
+        JOURNAL_ENTRIES("journal_entries"),
+        /** Moods logged in the window. */
+        MOOD_ENTRIES("mood_entries");
+
+        final String name;
+
+        Metric(String name) {
+            this.name = name;
+        }
+
+        static Metric named(String name) {
+            for (Metric metric : values()) {
+                if (metric.name.equals(name)) return metric;
+            }
+            return null;
+        }
+    }
+
+    /** What the rules are evaluated against: one analysis window of the current user's entries. */
+    interface Facts {
+        long moodCount(String mood);
+
+        /** Ids of the keyword terms found in the window's entries, from the rules' {@link KeywordMatcher}. */
+        BitSet matchedTerms();
+
+        long metric(Metric metric);
+    }
+
+    private static final int CONSTANT = 0;
+    private static final int MOODS = 1;
+    private static final int TERMS = 2;
+    private static final int METRIC = 3;
+    private static final int NOT = 4;
+    private static final int AND = 5;
+    private static final int OR = 6;
+    private static final int ADD = 7;
+    private static final int SUBTRACT = 8;
+    private static final int MULTIPLY = 9;
+    private static final int DIVIDE = 10;
+    private static final int LESS = 11;
+    private static final int LESS_OR_EQUAL = 12;
+    private static final int EQUAL = 13;
+    private static final int NOT_EQUAL = 14;
+
+    private static final Metric[] METRICS = Metric.values();
+
+    private final int[] ops;
+    private final int[] left;
+    private final int[] right;
+    private final double[] constants;
+    private final String[] moods;
+    private final int[][] moodGroups;
+    private final KeywordMatcher.TermGroup[] termGroups;
+    private final int[] roots;
+    // Derived for the Tracker: the users of each node, the rules each node is the root of, and the
+    // leaf nodes reading each input.
+    private final int[][] parents;
+    private final int[][] rulesByRoot;
+    private final Map<String, int[]> moodReaders = new HashMap<>();
+    private final Map<Integer, int[]> termReaders = new HashMap<>();
+    private final int[] metricReaders;
+
+    private RulePlan(Builder builder) {
+        int size = builder.ops.size();
+        ops = new int[size];
+        left = new int[size];
+        right = new int[size];
+        constants = new double[size];
+        for (int i = 0; i < size; i++) {
+            ops[i] = builder.ops.get(i);
+            left[i] = builder.left.get(i);
+            right[i] = builder.right.get(i);
+            constants[i] = builder.constants.get(i);
+        }
+        moods = builder.moodSlots.keySet().toArray(new String[0]);
+        moodGroups = builder.moodGroups.toArray(new int[0][]);
+        termGroups = builder.termGroups.toArray(new KeywordMatcher.TermGroup[0]);
+        roots = builder.roots.stream().mapToInt(Integer::intValue).toArray();
+
+        List<List<Integer>> users = new ArrayList<>();
+        List<List<Integer>> rules = new ArrayList<>();
+        for (int node = 0; node < size; node++) {
+            users.add(new ArrayList<>(2));
+            rules.add(new ArrayList<>(1));
+        }
+        Map<String, List<Integer>> moodNodes = new HashMap<>();
+        Map<Integer, List<Integer>> termNodes = new HashMap<>();
+        metricReaders = new int[METRICS.length];
+        Arrays.fill(metricReaders, -1);
+        for (int node = 0; node < size; node++) {
+            switch (ops[node]) {
+                case CONSTANT:
+                    break;
+                case MOODS:
+                    for (int slot : moodGroups[left[node]]) moodNodes.computeIfAbsent(moods[slot], m -> new ArrayList<>()).add(node);
+                    break;
+                case TERMS: {
+                    BitSet groupTerms = termGroups[left[node]].terms();
+                    for (int term = groupTerms.nextSetBit(0); term >= 0; term = groupTerms.nextSetBit(term + 1)) {
+                        termNodes.computeIfAbsent(term, t -> new ArrayList<>()).add(node);
+                    }
+                    break;
+                }
+                case METRIC:
+                    metricReaders[left[node]] = node;
+                    break;
+                case NOT:
+                    users.get(left[node]).add(node);
+                    break;
+                default:
+                    users.get(left[node]).add(node);
+                    if (right[node] != left[node]) users.get(right[node]).add(node);
+            }
+        }
+        for (int rule = 0; rule < roots.length; rule++) rules.get(roots[rule]).add(rule);
+        parents = toArrays(users);
+        rulesByRoot = toArrays(rules);
+        moodNodes.forEach((mood, nodes) -> moodReaders.put(mood, nodes.stream().mapToInt(Integer::intValue).toArray()));
+        termNodes.forEach((term, nodes) -> termReaders.put(term, nodes.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    private static int[][] toArrays(List<List<Integer>> lists) {
+        int[][] arrays = new int[lists.size()][];
+        for (int i = 0; i < arrays.length; i++) {
+            arrays[i] = lists.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+        return arrays;
+    }
+
+    int ruleCount() {
+        return roots.length;
+    }
+
+    int nodeCount() {
+        return ops.length;
+    }
+
+    /** Indexes, in the order the rules were added, of the rules whose condition holds for {@code facts}. */
+    BitSet evaluate(Facts facts) {
+        double[] moodCounts = new double[moods.length];
+        for (int slot = 0; slot < moods.length; slot++) {
+            moodCounts[slot] = facts.moodCount(moods[slot]);
+        }
+        BitSet terms = facts.matchedTerms();
+
+        double[] values = new double[ops.length];
+        for (int node = 0; node < ops.length; node++) {
+            values[node] = compute(node, values, moodCounts, terms, facts);
+        }
+
+        BitSet holds = new BitSet(roots.length);
+        for (int rule = 0; rule < roots.length; rule++) {
+            if (values[roots[rule]] != 0) holds.set(rule);
+        }
+        return holds;
+    }
+
+    /** Starts tracking the rule outcomes for {@code facts}, which the tracker reads again on each update. */
+    Tracker track(Facts facts) {
+        return new Tracker(facts);
+    }
+
+    private double compute(int node, double[] values, double[] moodCounts, BitSet terms, Facts facts) {
+        switch (ops[node]) {
+            case CONSTANT:
+                return constants[node];
+            case MOODS: {
+                double count = 0;
+                for (int slot : moodGroups[left[node]]) count += moodCounts[slot];
+                return count;
+            }
+            case TERMS:
+                return termGroups[left[node]].countIn(terms);
+            case METRIC:
+                return facts.metric(METRICS[left[node]]);
+            case NOT:
+                return values[left[node]] == 0 ? 1 : 0;
+            default:
+                return apply(ops[node], values[left[node]], values[right[node]]);
+        }
+    }
+
+    private static double apply(int op, double a, double b) {
+        switch (op) {
+            case AND: return a != 0 && b != 0 ? 1 : 0;
+            case OR: return a != 0 || b != 0 ? 1 : 0;
+            case ADD: return a + b;
+            case SUBTRACT: return a - b;
+            case MULTIPLY: return a * b;
+            case DIVIDE: return b == 0 ? 0 : a / b;
+            case LESS: return a < b ? 1 : 0;
+            case LESS_OR_EQUAL: return a <= b ? 1 : 0;
+            case EQUAL: return a == b ? 1 : 0;
+            case NOT_EQUAL: return a != b ? 1 : 0;
+            default: throw new IllegalStateException("Not a binary operator: " + op);
+        }
+    }
+
+    /**
+     * Rule outcomes kept current as {@link Facts} change. The owner reports each changed input with the
+     * {@code *Changed} methods and then calls {@link #update()}. Not thread-safe.
+     */
+    final class Tracker {
+        private final Facts facts;
+        private final double[] values = new double[ops.length];
+        private final double[] moodCounts = new double[moods.length];
+        private final BitSet dirty = new BitSet(ops.length);
+        private final BitSet holds = new BitSet(roots.length);
+        private int recomputed;
+
+        private Tracker(Facts facts) {
+            this.facts = facts;
+            reset();
+        }
+
+        /** Re-reads every input and recomputes every node, e.g. after the facts were rebuilt. */
+        void reset() {
+            for (int slot = 0; slot < moods.length; slot++) moodCounts[slot] = facts.moodCount(moods[slot]);
+            BitSet terms = facts.matchedTerms();
+            for (int node = 0; node < ops.length; node++) {
+                values[node] = compute(node, values, moodCounts, terms, facts);
+            }
+            holds.clear();
+            for (int rule = 0; rule < roots.length; rule++) {
+                if (values[roots[rule]] != 0) holds.set(rule);
+            }
+            dirty.clear();
+            recomputed = ops.length;
+        }
+
+        void moodChanged(String mood) {
+            int[] readers = moodReaders.get(mood);
+            if (readers == null) return;
+            for (int node : readers) dirty.set(node);
+        }
+
+        /** The presence of the terms in {@code termIds} may have changed. */
+        void termsChanged(BitSet termIds) {
+            for (int term = termIds.nextSetBit(0); term >= 0; term = termIds.nextSetBit(term + 1)) {
+                int[] readers = termReaders.get(term);
+                if (readers != null) for (int node : readers) dirty.set(node);
+            }
+        }
+
+        void metricChanged(Metric metric) {
+            int reader = metricReaders[metric.ordinal()];
+            if (reader >= 0) dirty.set(reader);
+        }
+
+        /** Recomputes the nodes reading changed inputs, then their users as long as values change. */
+        void update() {
+            recomputed = 0;
+            if (dirty.isEmpty()) return;
+            for (int slot = 0; slot < moods.length; slot++) moodCounts[slot] = facts.moodCount(moods[slot]);
+            BitSet terms = facts.matchedTerms();
+            // Users always come after their operands, so one ascending sweep settles everything.
+            for (int node = dirty.nextSetBit(0); node >= 0; node = dirty.nextSetBit(node + 1)) {
+                recomputed++;
+                double value = compute(node, values, moodCounts, terms, facts);
+                if (value == values[node]) continue;
+                values[node] = value;
+                for (int user : parents[node]) dirty.set(user);
+                for (int rule : rulesByRoot[node]) holds.set(rule, value != 0);
+            }
+            dirty.clear();
+        }
+
+        /** Indexes of the rules whose condition holds as of the last update; do not modify. */
+        BitSet holding() {
+            return holds;
+        }
+
+        /** Nodes recomputed by the last update or reset. */
+        int recomputedNodes() {
+            return recomputed;
+        }
+    }
+
+    /** Builds a plan; every method returns the id of the (possibly shared) node for its expression. */
+    static final class Builder {
+        private final KeywordMatcher.Builder terms;
+        private final Map<String, Integer> nodeIds = new HashMap<>();
+        private final List<Integer> ops = new ArrayList<>();
+        private final List<Integer> left = new ArrayList<>();
+        private final List<Integer> right = new ArrayList<>();
+        private final List<Double> constants = new ArrayList<>();
+        private final Map<String, Integer> moodSlots = new LinkedHashMap<>();
+        private final List<int[]> moodGroups = new ArrayList<>();
+        private final List<KeywordMatcher.TermGroup> termGroups = new ArrayList<>();
+        private final List<Integer> roots = new ArrayList<>();
+
+        /** @param terms collects the keyword terms of {@link #keywords} calls */
+        Builder(KeywordMatcher.Builder terms) {
+            this.terms = terms;
+        }
+
+        int constant(double value) {
+            return node("c" + value, CONSTANT, 0, 0, value);
+        }
+
+        /** Number of entries in the window with any of {@code names} as their mood. */
+        int moods(Collection<String> names) {
+            SortedSet<String> distinct = new TreeSet<>(names);
+            String key = "m" + distinct;
+            Integer existing = nodeIds.get(key);
+            if (existing != null) return existing;
+            int[] slots = new int[distinct.size()];
+            int i = 0;
+            for (String mood : distinct) {
+                slots[i++] = moodSlots.computeIfAbsent(mood, m -> moodSlots.size());
+            }
+            moodGroups.add(slots);
+            return node(key, MOODS, moodGroups.size() - 1, 0, 0);
+        }
+
+        /** Number of distinct terms of {@code words} found in the window's entries. */
+        int keywords(Collection<String> words) {
+            SortedSet<String> distinct = new TreeSet<>();
+            for (String word : words) distinct.add(word.trim().toLowerCase(Locale.ROOT));
+            String key = "k" + distinct;
+            Integer existing = nodeIds.get(key);
+            if (existing != null) return existing;
+            termGroups.add(terms.group(distinct.toArray(new String[0])));
+            return node(key, TERMS, termGroups.size() - 1, 0, 0);
+        }
+
+        int metric(Metric metric) {
+            return node("v" + metric.ordinal(), METRIC, metric.ordinal(), 0, 0);
+        }
+
+        int not(int operand) {
+            if (ops.get(operand) == CONSTANT) return constant(constants.get(operand) == 0 ? 1 : 0);
+            return node("!" + operand, NOT, operand, 0, 0);
+        }
+
+        /** {@code a op b} for {@code op} one of {@code and or + - * / < <= > >= == !=}. */
+        int binary(String operator, int a, int b) {
+            int op;
+            switch (operator) {
+                case "and": op = AND; break;
+                case "or": op = OR; break;
+                case "+": op = ADD; break;
+                case "-": op = SUBTRACT; break;
+                case "*": op = MULTIPLY; break;
+                case "/": op = DIVIDE; break;
+                case "<": op = LESS; break;
+                case "<=": op = LESS_OR_EQUAL; break;
+                case ">": return binary("<", b, a);
+                case ">=": return binary("<=", b, a);
+                case "==": op = EQUAL; break;
+                case "!=": op = NOT_EQUAL; break;
+                default: throw new IllegalArgumentException("Unknown operator: " + operator);
+            }
+            if (ops.get(a) == CONSTANT && ops.get(b) == CONSTANT) {
+                return constant(apply(op, constants.get(a), constants.get(b)));
+            }
+            boolean commutative = op == AND || op == OR || op == ADD || op == MULTIPLY || op == EQUAL || op == NOT_EQUAL;
+            if (commutative && a > b) {
+                int swap = a;
+                a = b;
+                b = swap;
+            }
+            return node(op + "(" + a + "," + b + ")", op, a, b, 0);
+        }
+
+        /** Adds a rule whose condition is {@code condition}; rules are numbered in the order added. */
+        int rule(int condition) {
+            roots.add(condition);
+            return roots.size() - 1;
+        }
+
+        RulePlan build() {
+            return new RulePlan(this);
+        }
+
+        private int node(String key, int op, int a, int b, double constant) {
+            Integer existing = nodeIds.get(key);
+            if (existing != null) return existing;
+            ops.add(op);
+            left.add(a);
+            right.add(b);
+            constants.add(constant);
+            nodeIds.put(key, ops.size() - 1);
+            return ops.size() - 1;
+        }
+    }
+}
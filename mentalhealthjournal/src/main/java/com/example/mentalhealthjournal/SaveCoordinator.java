@@ -0,0 +1,158 @@
+package com.example.mentalhealthjournal;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.util.Duration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Tracks which per-user files changed since the last flush and rewrites only those.
+ * <p>
+ * Changes marked within the coalescing window are flushed together, so a burst of chat messages
+ * becomes a single write of the friends file. Journal and mood entries are not handled here; they
+ * are appended to their entry logs. A failed write marks its file dirty again and schedules a retry,
+ * with the delay doubling on each consecutive failure up to {@link #MAX_RETRY_DELAY}; a change marked
+ * with {@link #markDirtyAndAwaitWrite} reports when a write that includes it has succeeded. A write that
+ * is still queued when the same file is flushed again is replaced by the newer copy. Used from the
+ * JavaFX Application Thread only: the data is copied there and the copy is written by the
+ * {@link PersistenceQueue}.
+ */
+final class SaveCoordinator {
+
+    enum UserFile { MY_INFO, FRIENDS, PRESCRIPTIONS }
+
+    /** Files the previous save rewrote on every request: journal, moods, my info, friends and prescriptions. */
+    private static final int FILES_PER_FULL_SAVE = 5;
+    private static final Duration MAX_RETRY_DELAY = Duration.minutes(1);
+
+    /** A copy of a file's contents ready to be written to {@code target}, the file's path on disk. */
+    record Prepared(String target, PersistenceQueue.Write write) { }
+
+    @FunctionalInterface
+    interface Saver {
+        /** Copies the current contents of {@code file} and returns the write that persists the copy. */
+        Prepared prepare(UserFile file);
+    }
+
+    private final Saver saver;
+    private final PersistenceQueue queue;
+    private final Consumer<Throwable> onError;
+    private final Duration coalesceWindow;
+    private final PauseTransition coalesce;
+    private final EnumSet<UserFile> dirty = EnumSet.noneOf(UserFile.class);
+    // Futures of changes whose file has not been written successfully since they were marked.
+    private final Map<UserFile, List<CompletableFuture<Void>>> awaitingWrite = new EnumMap<>(UserFile.class);
+
+    private long saveRequests;
+    private long filesWritten;
+    private int failedRetries; // consecutive retries scheduled after failed writes
+
+    SaveCoordinator(Duration coalesceWindow, Saver saver, PersistenceQueue queue, Consumer<Throwable> onError) {
+        this.saver = saver;
+        this.queue = queue;
+        this.onError = onError;
+        this.coalesceWindow = coalesceWindow;
+        this.coalesce = new PauseTransition(coalesceWindow);
+        this.coalesce.setOnFinished(e -> flushNow());
+    }
+
+    /** Records that {@code file} changed and schedules a flush at the end of the coalescing window. */
+    void markDirty(UserFile file) {
+        saveRequests++;
+        dirty.add(file);
+        if (coalesce.getStatus() != PauseTransition.Status.RUNNING) {
+            coalesce.setDuration(coalesceWindow);
+            coalesce.playFromStart();
+        }
+    }
+
+    /**
+     * Like {@link #markDirty}; the future completes once a write of {@code file} that includes the change
+     * has succeeded, after retries if needed, or exceptionally if the change is {@link #discard discarded}.
+     */
+    CompletableFuture<Void> markDirtyAndAwaitWrite(UserFile file) {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        awaitingWrite.computeIfAbsent(file, f -> new ArrayList<>()).add(written);
+        markDirty(file);
+        return written;
+    }
+
+    boolean isDirty() {
+        return !dirty.isEmpty();
+    }
+
+    /**
+     * Queues a write of every dirty file now. The future completes once all of them are on disk;
+     * a file whose write fails is marked dirty again and retried after a backoff.
+     */
+    CompletableFuture<Void> flushNow() {
+        coalesce.stop();
+        List<CompletableFuture<Void>> writes = new ArrayList<>();
+        for (UserFile file : dirty.clone()) {
+            dirty.remove(file);
+            filesWritten++;
+            Prepared prepared = saver.prepare(file);
+            List<CompletableFuture<Void>> waiting = awaitingWrite.remove(file);
+            CompletableFuture<Void> write = queue.submitLatest(prepared.target(), prepared.write());
+            write.whenComplete((v, ex) -> Platform.runLater(() -> {
+                if (ex == null) {
+                    failedRetries = 0;
+                    if (waiting != null) waiting.forEach(written -> written.complete(null));
+                    return;
+                }
+                dirty.add(file);
+                if (waiting != null) awaitingWrite.computeIfAbsent(file, f -> new ArrayList<>()).addAll(waiting);
+                onError.accept(ex);
+                retryLater();
+            }));
+            writes.add(write);
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /** Schedules a flush after a failed write; files failing together share one retry. */
+    private void retryLater() {
+        if (coalesce.getStatus() == PauseTransition.Status.RUNNING) return;
+        Duration delay = coalesceWindow.multiply(Math.pow(2, Math.min(failedRetries, 16)));
+        failedRetries++;
+        coalesce.setDuration(delay.greaterThan(MAX_RETRY_DELAY) ? MAX_RETRY_DELAY : delay);
+        coalesce.playFromStart();
+    }
+
+    /** Drops pending changes without writing them, e.g. after the user's data has been unloaded. */
+    void discard() {
+        coalesce.stop();
+        dirty.clear();
+        failedRetries = 0;
+        IOException discarded = new IOException("Discarded before it was written.");
+        awaitingWrite.values().forEach(waiting -> waiting.forEach(written -> written.completeExceptionally(discarded)));
+        awaitingWrite.clear();
+    }
+
+    // --- Counters ---
+
+    long saveRequests() {
+        return saveRequests;
+    }
+
+    long filesWritten() {
+        return filesWritten;
+    }
+
+    /** File writes saved compared to the previous save, which rewrote all five user files on each request. */
+    long writesAvoided() {
+        return Math.max(0, saveRequests * FILES_PER_FULL_SAVE - filesWritten);
+    }
+
+    String statsSummary() {
+        return "save requests: " + saveRequests + ", files written: " + filesWritten + ", writes avoided: " + writesAvoided();
+    }
+}
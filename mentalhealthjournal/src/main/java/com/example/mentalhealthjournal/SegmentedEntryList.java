@@ -0,0 +1,275 @@
+package com.example.mentalhealthjournal;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * A user's entries: the rows of a mapped {@link DateSegment} followed by the entries recorded since
+ * (replayed from the log or newly saved).
+ * <p>
+ * {@link #get} decodes a segment row on demand. Date-range consumers should use {@link #entriesBetween},
+ * which binary-searches the segment and only decodes the rows inside the range. Recent entries are
+ * indexed by epoch day as they are added (users back-date entries, so they arrive in any order), and
+ * both sorted sources are merged, so a range comes back in date order without sorting.
+ * {@link #moodScore} and {@link #textLength} give the History sort keys, again without decoding rows.
+ * {@link #matchedTerms} scans an entry's text for the rule keywords once and keeps the result by list
+ * index, since {@link #get} returns a newly decoded entry for a segment row on every call.
+ */
+class SegmentedEntryList<T> extends AbstractList<T> implements RandomAccess {
+
+    /** How to read an entry's date, mood and text (journal body or mood notes). */
+    record Fields<T>(Function<T, LocalDate> date, Function<T, Mood> mood, Function<T, String> text) {
+    }
+
+    protected final DateSegment<T> segment;
+    protected final int segmentRows;
+    protected final List<T> recent;
+    // Positions in {@code recent}, by epoch day.
+    private final NavigableMap<Long, List<Integer>> recentByDay = new TreeMap<>();
+    protected final Fields<T> fields;
+    private KeywordMatcher termsMatcher;
+    private BitSet[] termsByIndex; // built by termsMatcher; null slots are not scanned yet
+
+    SegmentedEntryList(DateSegment<T> segment, List<T> recent, Fields<T> fields) {
+        this.segment = segment;
+        this.segmentRows = segment != null ? segment.rows() : 0;
+        this.recent = recent;
+        this.fields = fields;
+        for (int i = 0; i < recent.size(); i++) {
+            index(recent.get(i), i);
+        }
+    }
+
+    private void index(T entry, int position) {
+        LocalDate date = fields.date().apply(entry);
+        if (date != null) {
+            recentByDay.computeIfAbsent(date.toEpochDay(), day -> new ArrayList<>(1)).add(position);
+        }
+    }
+
+    @Override
+    public T get(int index) {
+        if (index < segmentRows) {
+            Objects.checkIndex(index, size());
+            return segment.entry(index);
+        }
+        return recent.get(index - segmentRows);
+    }
+
+    /** {@link Mood#score} of the entry at {@code index}; a segment row is read from its column. */
+    int moodScore(int index) {
+        if (index < segmentRows) {
+            Objects.checkIndex(index, size());
+            return segment.moodScore(index);
+        }
+        return fields.mood().apply(recent.get(index - segmentRows)).score;
+    }
+
+    /** Length in UTF-8 bytes of the text of the entry at {@code index}; a segment row is read from its column. */
+    int textLength(int index) {
+        if (index < segmentRows) {
+            Objects.checkIndex(index, size());
+            return segment.textLength(index);
+        }
+        return RecordCodecs.utf8Length(fields.text().apply(recent.get(index - segmentRows)));
+    }
+
+    /** Epoch day of the entry at {@code index}, or {@link DateSegment#NO_DATE}; a segment row is read from its column. */
+    long epochDay(int index) {
+        if (index < segmentRows) {
+            Objects.checkIndex(index, size());
+            return segment.epochDay(index);
+        }
+        LocalDate date = fields.date().apply(recent.get(index - segmentRows));
+        return date != null ? date.toEpochDay() : DateSegment.NO_DATE;
+    }
+
+    /**
+     * Ids of {@code matcher}'s terms in the text of the entry at {@code index}. Each entry is scanned once per
+     * matcher; the result is shared and must not be modified.
+     */
+    BitSet matchedTerms(int index, KeywordMatcher matcher) {
+        Objects.checkIndex(index, size());
+        if (termsMatcher != matcher) {
+            termsMatcher = matcher;
+            termsByIndex = new BitSet[size()];
+        } else if (index >= termsByIndex.length) {
+            termsByIndex = Arrays.copyOf(termsByIndex, Math.max(size(), termsByIndex.length * 2));
+        }
+        BitSet terms = termsByIndex[index];
+        if (terms == null) {
+            terms = matcher.match(fields.text().apply(get(index)));
+            termsByIndex[index] = terms;
+        }
+        return terms;
+    }
+
+    @Override
+    public int size() {
+        return segmentRows + recent.size();
+    }
+
+    @Override
+    public boolean add(T entry) {
+        modCount++;
+        index(entry, recent.size());
+        return recent.add(entry);
+    }
+
+    /** An unchanging copy for compaction; the mapped rows are shared, only recent entries are copied. */
+    SegmentedEntryList<T> snapshot() {
+        return new SegmentedEntryList<>(segment, new ArrayList<>(recent), fields);
+    }
+
+    /** False for a segment written before snapshots were sorted; such a list is scanned instead of searched. */
+    boolean isIndexed() {
+        return segment == null || segment.sortedByDate();
+    }
+
+    /**
+     * Entries dated within [start, end] in date order (entries of the same day in the order they were
+     * recorded). Only matching segment rows are decoded.
+     */
+    List<T> entriesBetween(LocalDate start, LocalDate end) {
+        return entriesBetween(start, end, index -> true);
+    }
+
+    /**
+     * Like {@link #entriesBetween(LocalDate, LocalDate)}, but only keeps the entries whose list index
+     * passes {@code include} (for example the hits of a {@link FullTextIndex} search). Rejected segment
+     * rows are never decoded.
+     */
+    List<T> entriesBetween(LocalDate start, LocalDate end, IntPredicate include) {
+        int[] indexes = indexesBetween(start, end, include);
+        List<T> matches = new ArrayList<>(indexes.length);
+        for (int index : indexes) {
+            matches.add(get(index));
+        }
+        return matches;
+    }
+
+    /**
+     * List indexes of the entries dated within [start, end] that pass {@code include}, in the order of
+     * {@link #entriesBetween(LocalDate, LocalDate)}. Nothing is decoded unless the segment is unsorted.
+     */
+    int[] indexesBetween(LocalDate start, LocalDate end, IntPredicate include) {
+        long startDay = Math.max(start.toEpochDay(), DateSegment.NO_DATE + 1L);
+        long endDay = end.toEpochDay();
+        IndexBuffer matches = new IndexBuffer();
+        if (!isIndexed()) {
+            List<Integer> unsorted = new ArrayList<>();
+            forEachSegmentRowBetween(startDay, endDay, row -> {
+                if (include.test(row)) unsorted.add(row);
+            });
+            forEachRecentIndexBetween(startDay, endDay, position -> {
+                if (include.test(segmentRows + position)) unsorted.add(segmentRows + position);
+            });
+            unsorted.sort(Comparator.comparing(index -> fields.date().apply(get(index))));
+            unsorted.forEach(matches::add);
+            return matches.toArray();
+        }
+
+        // Merge the segment rows and the recent entries; both are already in day order.
+        Iterator<Map.Entry<Long, List<Integer>>> days = recentByDay.subMap(startDay, true, endDay, true).entrySet().iterator();
+        Map.Entry<Long, List<Integer>> day = days.hasNext() ? days.next() : null;
+        int row = segment != null ? segment.lowerBound(startDay) : 0;
+        while (row < segmentRows && segment.epochDay(row) <= endDay) {
+            int rowDay = segment.epochDay(row);
+            while (day != null && day.getKey() < rowDay) {
+                addRecent(day.getValue(), include, matches);
+                day = days.hasNext() ? days.next() : null;
+            }
+            if (include.test(row)) matches.add(row);
+            row++;
+        }
+        while (day != null) {
+            addRecent(day.getValue(), include, matches);
+            day = days.hasNext() ? days.next() : null;
+        }
+        return matches.toArray();
+    }
+
+    private void addRecent(List<Integer> positions, IntPredicate include, IndexBuffer matches) {
+        for (int position : positions) {
+            if (include.test(segmentRows + position)) matches.add(segmentRows + position);
+        }
+    }
+
+    /** Growable {@code int} array, so collecting indexes does not box them. */
+    private static final class IndexBuffer {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /** Visits the recent entries dated within [startDay, endDay], in date order. */
+    protected void forEachRecentBetween(long startDay, long endDay, Consumer<T> action) {
+        forEachRecentIndexBetween(startDay, endDay, position -> action.accept(recent.get(position)));
+    }
+
+    /** Visits the positions in {@code recent} of the entries dated within [startDay, endDay], in date order. */
+    private void forEachRecentIndexBetween(long startDay, long endDay, IntConsumer action) {
+        for (List<Integer> sameDay : recentByDay.subMap(startDay, true, endDay, true).values()) {
+            for (int position : sameDay) action.accept(position);
+        }
+    }
+
+    /** Visits the segment rows dated within [startDay, endDay], in row order. */
+    protected void forEachSegmentRowBetween(long startDay, long endDay, IntConsumer action) {
+        if (segment == null) return;
+        if (segment.sortedByDate()) {
+            // Undated rows sort first; start after them.
+            for (int row = segment.lowerBound(Math.max(startDay, DateSegment.NO_DATE + 1L)); row < segmentRows && segment.epochDay(row) <= endDay; row++) {
+                action.accept(row);
+            }
+            return;
+        }
+        for (int row = 0; row < segmentRows; row++) {
+            int day = segment.epochDay(row);
+            if (day != DateSegment.NO_DATE && day >= startDay && day <= endDay) {
+                action.accept(row);
+            }
+        }
+    }
+
+    Optional<LocalDate> minDate() {
+        long min = Long.MAX_VALUE;
+        if (segment != null && segment.sortedByDate()) {
+            int first = segment.lowerBound(DateSegment.NO_DATE + 1L);
+            if (first < segmentRows) min = segment.epochDay(first);
+        } else {
+            for (int row = 0; row < segmentRows; row++) {
+                int day = segment.epochDay(row);
+                if (day != DateSegment.NO_DATE) min = Math.min(min, day);
+            }
+        }
+        if (!recentByDay.isEmpty()) min = Math.min(min, recentByDay.firstKey());
+        return min == Long.MAX_VALUE ? Optional.empty() : Optional.of(LocalDate.ofEpochDay(min));
+    }
+
+    Optional<LocalDate> maxDate() {
+        long max = Long.MIN_VALUE;
+        if (segment != null && segment.sortedByDate()) {
+            if (segmentRows > 0 && segment.epochDay(segmentRows - 1) != DateSegment.NO_DATE) max = segment.epochDay(segmentRows - 1);
+        } else {
+            for (int row = 0; row < segmentRows; row++) {
+                int day = segment.epochDay(row);
+                if (day != DateSegment.NO_DATE) max = Math.max(max, day);
+            }
+        }
+        if (!recentByDay.isEmpty()) max = Math.max(max, recentByDay.lastKey());
+        return max == Long.MIN_VALUE ? Optional.empty() : Optional.of(LocalDate.ofEpochDay(max));
+    }
+}
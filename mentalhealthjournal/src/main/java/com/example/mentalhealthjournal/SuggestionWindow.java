@@ -0,0 +1,232 @@
+package com.example.mentalhealthjournal;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * The last {@value #DAYS} days of the current user's entries as the suggestion rules see them, and which
+ * suggestions currently apply.
+ * <p>
+ * The window keeps one bucket per day (mood counts, journal and mood entry counts, how many journal
+ * entries matched each rule keyword) and running totals over the buckets; streaks come from
+ * {@link LowMoodStreaks}. Recording an entry updates its day's bucket and the totals, and tells the
+ * {@link RulePlan.Tracker} which inputs changed: the entry's mood, the keyword terms that appeared, the
+ * entry counts and the streaks. Only the rules reading those inputs are re-tested, so an entry costs the same however many
+ * entries and rules there are. When the date changes the window slides: the days that fall out are
+ * subtracted and the days that come in are read from the entry lists.
+ * Used from the JavaFX Application Thread only.
+ */
+final class SuggestionWindow implements RulePlan.Facts {
+
+    static final int DAYS = 7;
+
+    private static final class Day {
+        final int[] moodCounts = new int[Mood.COUNT];
+        final Map<Integer, Integer> termCounts = new HashMap<>(4); // journal entries matching each term
+        int journalEntries;
+        int moodEntries;
+    }
+
+    private final RuleBook rules;
+    private final KeywordMatcher matcher;
+    private final SegmentedEntryList<HelloApplication.JournalEntry> journalEntries;
+    private final MoodEntryList moodEntries;
+    private final LowMoodStreaks streaks;
+
+    private final Day[] days = new Day[DAYS]; // indexed by epoch day modulo DAYS
+    private long lastDay; // the window is [lastDay - DAYS + 1, lastDay]
+    private final long[] moodCounts = new long[Mood.COUNT];
+    private final Map<Integer, Integer> termCounts = new HashMap<>();
+    private final BitSet matchedTerms = new BitSet();
+    private long journalCount;
+    private long moodCount;
+    private final RulePlan.Tracker tracker;
+
+    /** @param streaks kept current by the caller, which adds each mood entry to it before {@link #moodEntryRecorded} */
+    SuggestionWindow(RuleBook rules, SegmentedEntryList<HelloApplication.JournalEntry> journalEntries, MoodEntryList moodEntries,
+                     LowMoodStreaks streaks, LocalDate today) {
+        this.rules = rules;
+        this.matcher = rules.keywordMatcher();
+        this.journalEntries = journalEntries;
+        this.moodEntries = moodEntries;
+        this.streaks = streaks;
+        this.lastDay = today.toEpochDay();
+        fill(lastDay - DAYS + 1, lastDay);
+        this.tracker = rules.trackSuggestions(this);
+    }
+
+    /** The suggestions whose condition holds as of {@code today}, in rules file order. */
+    List<HelloApplication.SuggestionRule> activeSuggestions(LocalDate today) {
+        advanceTo(today.toEpochDay());
+        BitSet holding = tracker.holding();
+        List<HelloApplication.SuggestionRule> active = new ArrayList<>(holding.cardinality());
+        for (int rule = holding.nextSetBit(0); rule >= 0; rule = holding.nextSetBit(rule + 1)) {
+            active.add(rules.suggestion(rule));
+        }
+        return active;
+    }
+
+    /** Rule plan nodes re-tested by the last recorded entry or date change; see {@link RulePlan.Tracker#recomputedNodes()}. */
+    int recomputedNodes() {
+        return tracker.recomputedNodes();
+    }
+
+    /**
+     * Counts a journal entry that was just recorded, after it was added as the last of the journal entries;
+     * entries outside the window are ignored.
+     */
+    void journalEntryRecorded(HelloApplication.JournalEntry entry) {
+        if (entry.date == null || !contains(entry.date.toEpochDay())) return;
+        BitSet appeared = addJournal(entry.date.toEpochDay(), journalEntries.matchedTerms(journalEntries.size() - 1, matcher));
+        tracker.metricChanged(RulePlan.Metric.JOURNAL_ENTRIES);
+        tracker.termsChanged(appeared);
+        tracker.update();
+    }
+
+    /** Counts a mood entry that was just recorded; outside the window it can only change the streaks. */
+    void moodEntryRecorded(HelloApplication.MoodEntry entry) {
+        if (entry.date == null) return;
+        // A back-dated low mood can still extend the all-time longest streak.
+        streaksChanged();
+        if (contains(entry.date.toEpochDay())) {
+            addMood(entry.date.toEpochDay(), entry.moodKind);
+            tracker.metricChanged(RulePlan.Metric.MOOD_ENTRIES);
+            tracker.moodChanged(entry.moodKind.label);
+        }
+        tracker.update();
+    }
+
+    // --- RulePlan.Facts ---
+
+    @Override
+    public long moodCount(String mood) {
+        Mood kind = Mood.find(mood);
+        return kind != null ? moodCounts[kind.ordinal()] : 0;
+    }
+
+    @Override
+    public BitSet matchedTerms() {
+        return matchedTerms;
+    }
+
+    @Override
+    public long metric(RulePlan.Metric metric) {
+        switch (metric) {
+            case LOW_MOOD_STREAK: return streaks.longestBetween(LocalDate.ofEpochDay(lastDay - DAYS + 1), LocalDate.ofEpochDay(lastDay));
+            case CURRENT_LOW_MOOD_STREAK: return streaks.currentEndingAt(LocalDate.ofEpochDay(lastDay));
+            case LONGEST_LOW_MOOD_STREAK: return streaks.longest();
+            case JOURNAL_ENTRIES: return journalCount;
+            case MOOD_ENTRIES: return moodCount;
+            default: throw new IllegalArgumentException("Unknown metric: " + metric);
+        }
+    }
+
+    // --- Window maintenance ---
+
+    private boolean contains(long epochDay) {
+        return epochDay <= lastDay && epochDay > lastDay - DAYS;
+    }
+
+    private Day day(long epochDay) {
+        int slot = (int) Math.floorMod(epochDay, (long) DAYS);
+        if (days[slot] == null) days[slot] = new Day();
+        return days[slot];
+    }
+
+    /** Slides the window so it ends at {@code today}; a jump of a week or more, or backwards, refills it. */
+    private void advanceTo(long today) {
+        if (today == lastDay) return;
+        if (today < lastDay || today - lastDay >= DAYS) {
+            Arrays.fill(days, null);
+            Arrays.fill(moodCounts, 0);
+            termCounts.clear();
+            matchedTerms.clear();
+            journalCount = 0;
+            moodCount = 0;
+            lastDay = today;
+            fill(today - DAYS + 1, today);
+            tracker.reset();
+            return;
+        }
+        Set<Mood> changedMoods = EnumSet.noneOf(Mood.class);
+        BitSet changedTerms = new BitSet();
+        while (lastDay < today) {
+            lastDay++;
+            int slot = (int) Math.floorMod(lastDay, (long) DAYS);
+            Day leaving = days[slot];
+            days[slot] = null;
+            if (leaving != null) remove(leaving, changedMoods, changedTerms);
+            fill(lastDay, lastDay, changedMoods, changedTerms);
+        }
+        tracker.metricChanged(RulePlan.Metric.JOURNAL_ENTRIES);
+        tracker.metricChanged(RulePlan.Metric.MOOD_ENTRIES);
+        streaksChanged();
+        for (Mood mood : changedMoods) tracker.moodChanged(mood.label);
+        tracker.termsChanged(changedTerms);
+        tracker.update();
+    }
+
+    private void fill(long firstDay, long lastDayInclusive) {
+        fill(firstDay, lastDayInclusive, EnumSet.noneOf(Mood.class), new BitSet());
+    }
+
+    private void streaksChanged() {
+        tracker.metricChanged(RulePlan.Metric.LOW_MOOD_STREAK);
+        tracker.metricChanged(RulePlan.Metric.CURRENT_LOW_MOOD_STREAK);
+        tracker.metricChanged(RulePlan.Metric.LONGEST_LOW_MOOD_STREAK);
+    }
+
+    /** Adds the entries dated within [firstDay, lastDayInclusive] from the entry lists. */
+    private void fill(long firstDay, long lastDayInclusive, Set<Mood> changedMoods, BitSet changedTerms) {
+        LocalDate start = LocalDate.ofEpochDay(firstDay);
+        LocalDate end = LocalDate.ofEpochDay(lastDayInclusive);
+        for (int index : journalEntries.indexesBetween(start, end, i -> true)) {
+            changedTerms.or(addJournal(journalEntries.epochDay(index), journalEntries.matchedTerms(index, matcher)));
+        }
+        moodEntries.forEachMoodBetween(start, end, (epochDay, mood) -> {
+            addMood(epochDay, mood);
+            changedMoods.add(mood);
+        });
+    }
+
+    /** Returns the terms that were not in the window before. */
+    private BitSet addJournal(long epochDay, BitSet terms) {
+        Day day = day(epochDay);
+        day.journalEntries++;
+        journalCount++;
+        BitSet appeared = new BitSet();
+        for (int term = terms.nextSetBit(0); term >= 0; term = terms.nextSetBit(term + 1)) {
+            day.termCounts.merge(term, 1, Integer::sum);
+            if (termCounts.merge(term, 1, Integer::sum) == 1) {
+                matchedTerms.set(term);
+                appeared.set(term);
+            }
+        }
+        return appeared;
+    }
+
+    private void addMood(long epochDay, Mood mood) {
+        Day day = day(epochDay);
+        day.moodEntries++;
+        moodCount++;
+        day.moodCounts[mood.ordinal()]++;
+        moodCounts[mood.ordinal()]++;
+    }
+
+    private void remove(Day day, Set<Mood> changedMoods, BitSet changedTerms) {
+        journalCount -= day.journalEntries;
+        moodCount -= day.moodEntries;
+        for (int mood = 0; mood < Mood.COUNT; mood++) {
+            if (day.moodCounts[mood] == 0) continue;
+            moodCounts[mood] -= day.moodCounts[mood];
+            changedMoods.add(Mood.ofOrdinal(mood));
+        }
+        day.termCounts.forEach((term, count) -> {
+            if (termCounts.merge(term, -count, Integer::sum) == 0) {
+                termCounts.remove(term);
+                matchedTerms.clear(term);
+                changedTerms.set(term);
+            }
+        });
+    }
+}
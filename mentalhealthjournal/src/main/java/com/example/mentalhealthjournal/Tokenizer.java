@@ -0,0 +1,55 @@
+package com.example.mentalhealthjournal;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Splits entry text into lower-cased tokens (runs of letters and digits) by scanning characters, with
+ * no regex and no lower-cased copy of the whole text. A token that is already lower case is a plain
+ * substring; only tokens with upper-case characters are copied.
+ * <p>
+ * {@link #SEARCH} keeps every token and backs the full-text index. The suggestion and well-being rules
+ * do not tokenize; they match their keyword terms with {@link KeywordMatcher}.
+ */
+final class Tokenizer {
+
+    static final Tokenizer SEARCH = new Tokenizer();
+
+    private Tokenizer() {
+    }
+
+    /** Tokens of {@code text} (may be null) in order, duplicates included. */
+    List<String> tokens(String text) {
+        List<String> tokens = new ArrayList<>();
+        forEachToken(text, tokens::add);
+        return tokens;
+    }
+
+    void forEachToken(String text, Consumer<String> action) {
+        if (text == null) return;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            int start = i;
+            boolean lowerCase = true;
+            while (i < length) {
+                char c = text.charAt(i);
+                if (!Character.isLetterOrDigit(c)) break;
+                if (lowerCase && Character.toLowerCase(c) != c) lowerCase = false;
+                i++;
+            }
+            if (i == start) continue;
+            String token = lowerCase ? text.substring(start, i) : lowerCase(text, start, i);
+            action.accept(token);
+        }
+    }
+
+    private static String lowerCase(String text, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = Character.toLowerCase(text.charAt(i));
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.mentalhealthjournal;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares save/load throughput and file size of the binary data file codecs against the
+ * {@code ObjectOutputStream} format used before. Run with
+ * {@code java -cp target/test-classes:target/classes com.example.mentalhealthjournal.CodecBenchmark [entries]}.
+ */
+final class CodecBenchmark {
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    private CodecBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        Random random = new Random(42);
+        String[] moods = {"Very Happy", "Happy", "Content", "Neutral", "Sad", "Very Sad", "Anxious", "Stressed", "Calm", "Energetic", "Tired"};
+        LocalDate start = LocalDate.now().minusDays(count);
+
+        List<HelloApplication.JournalEntry> journals = new ArrayList<>(count);
+        List<HelloApplication.MoodEntry> moodList = new ArrayList<>(count);
+        List<HelloApplication.ChatMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LocalDate date = start.plusDays(random.nextInt(count));
+            String mood = moods[random.nextInt(moods.length)];
+            journals.add(new HelloApplication.JournalEntry(date, "Entry " + i + ": today I felt " + mood.toLowerCase() + " after a long walk.", mood));
+            moodList.add(new HelloApplication.MoodEntry(date, mood, i % 3 == 0 ? "" : "note " + i));
+            messages.add(new HelloApplication.ChatMessage("uid-" + (i % 7), "message " + i, LocalDateTime.now().minusMinutes(i), i % 2 == 0));
+        }
+
+        Path dir = Files.createTempDirectory("codec-benchmark");
+        try {
+            System.out.printf("%,d entries per list, %d measured rounds after %d warm-up rounds%n%n", count, MEASURED_ROUNDS, WARMUP_ROUNDS);
+            System.out.printf("%-16s %-10s %12s %12s %14s%n", "data", "format", "save ms", "load ms", "file bytes");
+            run("JournalEntry", journals, RecordCodecs.listOf(RecordCodecs.JOURNAL_RECORD), dir);
+            run("MoodEntry", moodList, RecordCodecs.listOf(RecordCodecs.MOOD_RECORD), dir);
+            run("ChatMessage", messages, RecordCodecs.listOf(RecordCodecs.CHAT_MESSAGE), dir);
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path file : files.toList()) Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static <T> void run(String name, List<T> values, RecordCodecs.RecordCodec<List<T>> codec, Path dir) throws Exception {
+        Path serialized = dir.resolve(name + ".ser");
+        Path binary = dir.resolve(name + ".bin");
+
+        double[] serializedTimes = measure(() -> writeSerialized(serialized, values), () -> readSerialized(serialized));
+        double[] binaryTimes = measure(() -> RecordCodecs.writeDataFile(binary, values, codec), () -> readBinary(binary, codec));
+
+        System.out.printf("%-16s %-10s %12.1f %12.1f %,14d%n", name, "serialized", serializedTimes[0], serializedTimes[1], Files.size(serialized));
+        System.out.printf("%-16s %-10s %12.1f %12.1f %,14d%n", name, "binary", binaryTimes[0], binaryTimes[1], Files.size(binary));
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void run() throws Exception;
+    }
+
+    /** Average save and load time in milliseconds. */
+    private static double[] measure(Step save, Step load) throws Exception {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            save.run();
+            load.run();
+        }
+        long saveNanos = 0;
+        long loadNanos = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long t0 = System.nanoTime();
+            save.run();
+            long t1 = System.nanoTime();
+            load.run();
+            long t2 = System.nanoTime();
+            saveNanos += t1 - t0;
+            loadNanos += t2 - t1;
+        }
+        return new double[] { saveNanos / 1e6 / MEASURED_ROUNDS, loadNanos / 1e6 / MEASURED_ROUNDS };
+    }
+
+    // Same steps as the old saveGenericData/loadGenericData, including the fsync the new path does.
+    private static void writeSerialized(Path target, List<?> values) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(target.toFile());
+             ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(fos))) {
+            oos.writeObject(new ArrayList<>(values));
+            oos.flush();
+            fos.getChannel().force(true);
+        }
+    }
+
+    private static void readSerialized(Path source) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(source.toFile())))) {
+            if (!(ois.readObject() instanceof List)) throw new IOException("Unexpected content in " + source);
+        }
+    }
+
+    private static <T> void readBinary(Path source, RecordCodecs.RecordCodec<T> codec) throws IOException {
+        try (BufferedInputStream in = new BufferedInputStream(new FileInputStream(source.toFile()), 64 * 1024)) {
+            if (!RecordCodecs.readDataFileHeader(in)) throw new IOException("Missing data file header in " + source);
+            codec.read(new DataInputStream(in));
+        }
+    }
+}
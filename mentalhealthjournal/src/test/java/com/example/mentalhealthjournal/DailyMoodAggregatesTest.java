@@ -0,0 +1,105 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DailyMoodAggregatesTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    private record Logged(long epochDay, Mood mood) {
+    }
+
+    private static DailyMoodAggregates.Summary bruteForce(List<Logged> logged, LocalDate start, LocalDate end) {
+        DailyMoodAggregates.Summary summary = new DailyMoodAggregates.Summary();
+        for (Logged entry : logged) {
+            if (entry.epochDay() < start.toEpochDay() || entry.epochDay() > end.toEpochDay()) continue;
+            summary.count++;
+            summary.sum += entry.mood().score;
+            summary.sumOfSquares += (long) entry.mood().score * entry.mood().score;
+            summary.moodCounts[entry.mood().ordinal()]++;
+        }
+        return summary;
+    }
+
+    private static void assertSummary(DailyMoodAggregates.Summary expected, DailyMoodAggregates.Summary actual) {
+        assertEquals(expected.count, actual.count);
+        assertEquals(expected.sum, actual.sum);
+        assertEquals(expected.sumOfSquares, actual.sumOfSquares);
+        assertArrayEquals(expected.moodCounts, actual.moodCounts);
+        assertEquals(expected.standardDeviation(), actual.standardDeviation(), 1e-9);
+    }
+
+    @Test
+    void periodSummariesMatchBruteForce() {
+        Random random = new Random(11);
+        Mood[] moods = Mood.values();
+        DailyMoodAggregates aggregates = new DailyMoodAggregates();
+        List<Logged> logged = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Logged entry = new Logged(START.toEpochDay() + random.nextInt(900), moods[random.nextInt(moods.length)]);
+            logged.add(entry);
+            aggregates.add(entry.epochDay(), entry.mood());
+        }
+
+        for (int round = 0; round < 200; round++) {
+            LocalDate from = START.plusDays(random.nextInt(1000) - 50);
+            LocalDate to = from.plusDays(random.nextInt(400));
+            assertSummary(bruteForce(logged, from, to), aggregates.summarize(from, to));
+        }
+    }
+
+    @Test
+    void backDatedEntryOutsideTheIndexedRangeIsCounted() {
+        DailyMoodAggregates aggregates = new DailyMoodAggregates();
+        aggregates.add(START.toEpochDay(), Mood.HAPPY);
+        aggregates.add(START.minusYears(5).toEpochDay(), Mood.values()[Mood.COUNT - 1]);
+        aggregates.add(START.plusYears(3).toEpochDay(), Mood.HAPPY);
+
+        DailyMoodAggregates.Summary all = aggregates.summarize(START.minusYears(10), START.plusYears(10));
+        assertEquals(3, all.count);
+        assertEquals(2, all.moodCounts[Mood.HAPPY.ordinal()]);
+        assertEquals(1, aggregates.summarize(START.minusYears(6), START.minusYears(4)).count);
+    }
+
+    @Test
+    void historySpanningCenturiesFallsBackToDayBuckets() {
+        DailyMoodAggregates aggregates = new DailyMoodAggregates();
+        List<Logged> logged = List.of(
+                new Logged(START.minusYears(150).toEpochDay(), Mood.HAPPY),
+                new Logged(START.toEpochDay(), Mood.CONTENT),
+                new Logged(START.plusYears(150).toEpochDay(), Mood.VERY_HAPPY));
+        logged.forEach(entry -> aggregates.add(entry.epochDay(), entry.mood()));
+
+        assertSummary(bruteForce(logged, START.minusYears(200), START), aggregates.summarize(START.minusYears(200), START));
+        assertSummary(bruteForce(logged, START, START.plusYears(200)), aggregates.summarize(START, START.plusYears(200)));
+    }
+
+    @Test
+    void emptyAggregatesSummarizeToZero() {
+        DailyMoodAggregates.Summary summary = new DailyMoodAggregates().summarize(START, START.plusDays(30));
+
+        assertEquals(0, summary.count);
+        assertEquals(0.0, summary.average());
+        assertEquals(0.0, summary.standardDeviation());
+    }
+
+    @Test
+    void dayBucketsAreReturnedInDateOrder() {
+        DailyMoodAggregates aggregates = new DailyMoodAggregates();
+        aggregates.add(START.plusDays(2).toEpochDay(), Mood.HAPPY);
+        aggregates.add(START.toEpochDay(), Mood.CONTENT);
+        aggregates.add(START.toEpochDay(), Mood.VERY_HAPPY);
+
+        var days = aggregates.daysBetween(START, START.plusDays(1));
+        assertEquals(1, days.size());
+        assertEquals(2, days.get(START.toEpochDay()).count);
+        assertEquals((Mood.CONTENT.score + Mood.VERY_HAPPY.score) / 2.0, days.get(START.toEpochDay()).average());
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntryLogTest {
+
+    private static final RecordCodecs.RecordCodec<String> TEXT = new RecordCodecs.RecordCodec<>() {
+        @Override
+        public void write(String value, DataOutput out) throws IOException {
+            RecordCodecs.writeString(out, value);
+        }
+
+        @Override
+        public String read(DataInput in) throws IOException {
+            return RecordCodecs.readString(in);
+        }
+    };
+
+    @TempDir
+    Path dir;
+
+    private IntFunction<Path> snapshots() {
+        return generation -> dir.resolve("entries." + generation + ".snap");
+    }
+
+    private Path logPath() {
+        return dir.resolve("entries.log");
+    }
+
+    private EntryLog<String> open() throws IOException {
+        return EntryLog.open(snapshots(), logPath(), TEXT, (entries, target) -> Files.write(target, entries));
+    }
+
+    private List<String> replay(EntryLog<String> log) throws IOException {
+        List<String> entries = new ArrayList<>();
+        log.replayInto(entries);
+        return entries;
+    }
+
+    private List<String> loadAll(EntryLog<String> log) throws IOException {
+        Path snapshot = log.snapshotPath();
+        List<String> entries = Files.exists(snapshot) ? new ArrayList<>(Files.readAllLines(snapshot)) : new ArrayList<>();
+        log.replayInto(entries);
+        return entries;
+    }
+
+    @Test
+    void appendedEntriesAreReplayedAfterReopening() throws IOException {
+        try (EntryLog<String> log = open()) {
+            replay(log);
+            log.append("first");
+            log.append("second");
+        }
+        try (EntryLog<String> log = open()) {
+            assertEquals(List.of("first", "second"), replay(log));
+        }
+    }
+
+    @Test
+    void tornTailIsTruncatedAndLaterAppendsSurvive() throws IOException {
+        try (EntryLog<String> log = open()) {
+            replay(log);
+            log.append("kept");
+            log.append("torn");
+        }
+        long size = Files.size(logPath());
+        try (FileChannel channel = FileChannel.open(logPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(size - 2);
+        }
+        try (EntryLog<String> log = open()) {
+            assertEquals(List.of("kept"), replay(log));
+            log.append("after");
+        }
+        try (EntryLog<String> log = open()) {
+            assertEquals(List.of("kept", "after"), replay(log));
+        }
+    }
+
+    @Test
+    void recordWithBadChecksumEndsTheReplay() throws IOException {
+        try (EntryLog<String> log = open()) {
+            replay(log);
+            log.append("good");
+            log.append("corrupt");
+            log.append("unreachable");
+        }
+        byte[] bytes = Files.readAllBytes(logPath());
+        String text = new String(bytes, java.nio.charset.StandardCharsets.ISO_8859_1);
+        bytes[text.indexOf("corrupt")] ^= 0x20; // flip a payload bit of the second record
+        Files.write(logPath(), bytes);
+
+        try (EntryLog<String> log = open()) {
+            assertEquals(List.of("good"), replay(log));
+        }
+        assertTrue(Files.size(logPath()) < bytes.length, "corrupt tail should be truncated");
+    }
+
+    @Test
+    void compactionMovesEntriesIntoTheNextSnapshotGeneration() throws IOException {
+        try (EntryLog<String> log = open()) {
+            List<String> entries = replay(log);
+            for (String entry : List.of("a", "b", "c")) {
+                log.append(entry);
+                entries.add(entry);
+            }
+            log.compactNow(List.copyOf(entries));
+            log.append("d");
+            assertEquals(1, log.snapshotGeneration());
+            assertEquals(1, log.recordsSinceCompaction());
+        }
+        try (EntryLog<String> log = open()) {
+            assertEquals(1, log.snapshotGeneration());
+            assertEquals(List.of("a", "b", "c", "d"), loadAll(log));
+        }
+    }
+
+    @Test
+    void leftoversOfAnUncommittedCompactionAreRemoved() throws IOException {
+        try (EntryLog<String> log = open()) {
+            replay(log);
+            log.append("a");
+            log.compactNow(List.of("a"));
+            log.append("b");
+        }
+        // A crash after writing the next snapshot and temp log, before the log was replaced.
+        Path orphanSnapshot = snapshots().apply(2);
+        Path orphanLog = dir.resolve("entries.log.tmp");
+        Files.write(orphanSnapshot, List.of("a", "b"));
+        Files.write(orphanLog, new byte[]{1, 2, 3});
+
+        try (EntryLog<String> log = open()) {
+            assertEquals(1, log.snapshotGeneration());
+            assertEquals(List.of("a", "b"), loadAll(log));
+        }
+        assertFalse(Files.exists(orphanSnapshot));
+        assertFalse(Files.exists(orphanLog));
+    }
+
+    @Test
+    void readOnlyOpenNeverCreatesTruncatesOrDeletesFiles() throws IOException {
+        try (EntryLog<String> log = EntryLog.openReadOnly(snapshots(), logPath(), TEXT)) {
+            assertEquals(List.of(), replay(log));
+            assertThrows(IOException.class, () -> log.append("x"));
+        }
+        assertFalse(Files.exists(logPath()));
+
+        try (EntryLog<String> log = open()) {
+            replay(log);
+            log.append("a");
+            log.compactNow(List.of("a"));
+            log.append("b");
+            log.append("torn");
+        }
+        long size = Files.size(logPath());
+        try (FileChannel channel = FileChannel.open(logPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(size - 1);
+        }
+        Path orphanSnapshot = snapshots().apply(2);
+        Files.write(orphanSnapshot, List.of("orphan"));
+
+        try (EntryLog<String> log = EntryLog.openReadOnly(snapshots(), logPath(), TEXT)) {
+            assertEquals(List.of("a", "b"), loadAll(log));
+            assertThrows(IOException.class, () -> log.compactNow(List.of("a", "b")));
+        }
+        assertEquals(size - 1, Files.size(logPath()));
+        assertTrue(Files.exists(orphanSnapshot));
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FenwickTreeTest {
+
+    @Test
+    void rangeSumsMatchBruteForceAfterBuildAndUpdates() {
+        Random random = new Random(7);
+        long[] values = new long[257];
+        for (int i = 0; i < values.length; i++) values[i] = random.nextInt(21) - 10;
+        FenwickTree tree = FenwickTree.of(values);
+
+        for (int round = 0; round < 500; round++) {
+            int index = random.nextInt(values.length);
+            long delta = random.nextInt(11) - 5;
+            values[index] += delta;
+            tree.add(index, delta);
+
+            int from = random.nextInt(values.length);
+            int to = from + random.nextInt(values.length - from);
+            long expected = 0;
+            for (int i = from; i <= to; i++) expected += values[i];
+            assertEquals(expected, tree.rangeSum(from, to), "[" + from + ", " + to + "]");
+        }
+    }
+
+    @Test
+    void boundsAreClampedToTheTree() {
+        FenwickTree tree = FenwickTree.of(new long[]{1, 2, 3});
+
+        assertEquals(3, tree.size());
+        assertEquals(0, tree.prefixSum(-1));
+        assertEquals(6, tree.prefixSum(10));
+        assertEquals(0, tree.rangeSum(2, 1));
+        assertEquals(5, tree.rangeSum(1, 2));
+    }
+
+    @Test
+    void emptyTreeSumsToZero() {
+        FenwickTree tree = new FenwickTree(0);
+
+        assertEquals(0, tree.size());
+        assertEquals(0, tree.prefixSum(0));
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FullTextIndexTest {
+
+    @TempDir
+    Path dir;
+
+    private static FullTextIndex indexOf(String... texts) {
+        FullTextIndex index = new FullTextIndex(3);
+        for (String text : texts) index.add(text);
+        return index;
+    }
+
+    private static BitSet documents(int... ids) {
+        BitSet set = new BitSet();
+        for (int id : ids) set.set(id);
+        return set;
+    }
+
+    @Test
+    void phraseMatchesOnlyConsecutiveTokens() {
+        FullTextIndex index = indexOf(
+                "Went for a walk in the park.",
+                "A walk? I went for coffee instead.",
+                "went for a long walk",
+                "We went, for a walk, after lunch");
+
+        assertEquals(documents(0, 3), index.search("\"went for a walk\""));
+        assertEquals(documents(2), index.search("\"long walk\""));
+        assertEquals(documents(), index.search("\"walk went\""));
+    }
+
+    @Test
+    void phraseMatchesWhenATokenRepeatsInTheDocument() {
+        FullTextIndex index = indexOf("walk walk walk away", "away walk");
+
+        assertEquals(documents(0), index.search("\"walk away\""));
+        assertEquals(documents(0), index.search("\"walk walk walk\""));
+        assertEquals(documents(), index.search("\"walk walk walk walk\""));
+    }
+
+    @Test
+    void prefixMatchesEveryTokenStartingWithIt() {
+        FullTextIndex index = indexOf("Walking again", "a short walk", "walked home", "sidewalk", "WALKS");
+
+        assertEquals(documents(0, 1, 2, 4), index.search("walk*"));
+        assertEquals(documents(1), index.search("walk"));
+        assertEquals(documents(), index.search("walkz*"));
+    }
+
+    @Test
+    void termsPhrasesAndPrefixesAreCombinedWithAnd() {
+        FullTextIndex index = indexOf(
+                "Slept badly, anxious about the exam",
+                "slept well, calm before the exam",
+                "anxiety before the exam, slept badly");
+
+        assertEquals(documents(0, 2), index.search("\"slept badly\" anx*"));
+        assertEquals(documents(2), index.search("\"slept badly\" anx* before"));
+        assertEquals(documents(1), index.search("Calm EXAM"));
+    }
+
+    @Test
+    void queryWithoutSearchableTermsMatchesEverything() {
+        FullTextIndex index = indexOf("one", null, "three");
+
+        assertEquals(documents(0, 1, 2), index.search("  ?! "));
+        assertEquals(documents(0, 1, 2), index.search("\"\""));
+    }
+
+    @Test
+    void relevanceFavoursFrequentRareTokens() {
+        FullTextIndex index = indexOf("calm calm calm", "calm day", "day day day", "another day");
+
+        double[] scores = index.relevance("calm", new int[]{0, 1, 2});
+
+        assertTrue(scores[0] > scores[1]);
+        assertEquals(0.0, scores[2]);
+    }
+
+    @Test
+    void indexSurvivesWriteAndRead() throws IOException {
+        FullTextIndex index = indexOf("went for a walk", "a walk in the rain");
+        Path file = dir.resolve("journal.idx");
+
+        index.writeTo(file);
+        FullTextIndex read = FullTextIndex.readFrom(file);
+        read.add("rainy walk");
+
+        assertEquals(3, read.sourceGeneration());
+        assertEquals(3, read.documentCount());
+        assertEquals(documents(0), read.search("\"for a walk\""));
+        assertEquals(documents(1, 2), read.search("rain*"));
+    }
+
+    @Test
+    void damagedIndexIsRejected() throws IOException {
+        Path file = dir.resolve("journal.idx");
+        indexOf("went for a walk").writeTo(file);
+        byte[] bytes = Files.readAllBytes(file);
+
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        assertThrows(IOException.class, () -> FullTextIndex.readFrom(file));
+
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6});
+        IOException e = assertThrows(IOException.class, () -> FullTextIndex.readFrom(file));
+        assertTrue(e.getMessage().contains("not a supported search index"));
+    }
+}
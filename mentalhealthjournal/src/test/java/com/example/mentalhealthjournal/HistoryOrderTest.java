@@ -0,0 +1,82 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistoryOrderTest {
+
+    private static final SegmentedEntryList.Fields<HelloApplication.JournalEntry> FIELDS =
+            new SegmentedEntryList.Fields<>(e -> e.date, e -> e.moodKind, e -> e.content);
+    private static final LocalDate DAY = LocalDate.of(2024, 6, 1);
+
+    @TempDir
+    Path dir;
+
+    private SegmentedEntryList<HelloApplication.JournalEntry> journal() throws IOException {
+        Path segment = dir.resolve("journal.1.dat");
+        JournalSegmentFile.write(List.of(
+                new HelloApplication.JournalEntry(DAY.plusDays(2), "short", "Sad"),
+                new HelloApplication.JournalEntry(DAY, "a much longer entry about the week", "Happy"),
+                new HelloApplication.JournalEntry(DAY.plusDays(1), "café ☕", "Very Happy")), segment);
+        SegmentedEntryList<HelloApplication.JournalEntry> entries =
+                new SegmentedEntryList<>(JournalSegmentFile.open(segment), new ArrayList<>(), FIELDS);
+        entries.add(new HelloApplication.JournalEntry(DAY.plusDays(3), "recent, not in the segment", "Calm"));
+        return entries;
+    }
+
+    @Test
+    void sortKeysOfSegmentRowsAndRecentEntriesMatchTheEntries() throws IOException {
+        SegmentedEntryList<HelloApplication.JournalEntry> entries = journal();
+
+        for (int id = 0; id < entries.size(); id++) {
+            HelloApplication.JournalEntry entry = entries.get(id);
+            assertEquals(entry.moodKind.score, entries.moodScore(id));
+            assertEquals(entry.content.getBytes(StandardCharsets.UTF_8).length, entries.textLength(id));
+        }
+    }
+
+    @Test
+    void sortsBySegmentColumns() throws IOException {
+        SegmentedEntryList<HelloApplication.JournalEntry> entries = journal();
+        int[] dateOrdered = entries.indexesBetween(DAY, DAY.plusDays(3), id -> true);
+
+        assertArrayEquals(new int[]{0, 1, 2, 3}, dateOrdered);
+        assertArrayEquals(new int[]{1, 0, 3, 2},
+                HistoryOrder.sort(dateOrdered, HistoryOrder.MOOD_SCORE, entries::moodScore, entries::textLength, null, null));
+        assertArrayEquals(new int[]{0, 3, 1, 2},
+                HistoryOrder.sort(dateOrdered, HistoryOrder.LENGTH, entries::moodScore, entries::textLength, null, null));
+    }
+
+    @Test
+    void bestMatchWithoutQueryIsNewestFirst() {
+        int[] ids = {4, 7, 9};
+
+        assertArrayEquals(new int[]{9, 7, 4}, HistoryOrder.sort(ids, HistoryOrder.RELEVANCE, id -> 0, id -> 0, null, " "));
+        assertArrayEquals(new int[]{9, 7, 4}, HistoryOrder.sort(ids, HistoryOrder.NEWEST_FIRST, id -> 0, id -> 0, null, null));
+        assertArrayEquals(ids, HistoryOrder.sort(ids, HistoryOrder.OLDEST_FIRST, id -> 0, id -> 0, null, null));
+    }
+
+    @Test
+    void bestMatchOrdersByRelevance() {
+        FullTextIndex index = new FullTextIndex(1);
+        index.add("walk");
+        index.add("walk walk walk");
+        index.add("rain");
+
+        assertArrayEquals(new int[]{1, 0, 2}, HistoryOrder.sort(new int[]{0, 1, 2}, HistoryOrder.RELEVANCE, id -> 0, id -> 0, index, "walk"));
+    }
+
+    @Test
+    void equalKeysKeepNewerEntriesFirst() {
+        assertArrayEquals(new int[]{2, 1, 0}, HistoryOrder.byDescendingKey(new int[]{0, 1, 2}, new int[]{5, 5, 5}));
+    }
+}
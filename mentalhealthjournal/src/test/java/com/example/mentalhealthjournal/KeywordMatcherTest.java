@@ -0,0 +1,133 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeywordMatcherTest {
+
+    /** Keyword alternations of the rules before they were compiled into one matcher. */
+    private static final String[] OLD_ALTERNATIONS = {
+            "stress|anxious|overwhelm|worried|panic|pressure|tense|burnout",
+            "sleep|insomnia|awake|restless|fatigue|exhausted|nosleep|cantsleep",
+            "stress|anxiety|overwhelm|panic|tense",
+            "tense|ache|pain|restless",
+            "fatigue|lethargic|stuck|restless",
+            "bored|uninspired|stuck",
+            "overwhelm|problem|stuck"};
+
+    private static BitSet terms(int... ids) {
+        BitSet bits = new BitSet();
+        for (int id : ids) bits.set(id);
+        return bits;
+    }
+
+    @Test
+    void matchesWholeWordsIgnoringCase() {
+        KeywordMatcher.Builder builder = new KeywordMatcher.Builder();
+        builder.group("stress");
+        builder.group("Panic");
+        KeywordMatcher matcher = builder.build();
+
+        assertEquals(terms(0), matcher.match("So much STRESS-free talk."));
+        assertEquals(terms(1), matcher.match("panic"));
+        assertEquals(terms(0, 1), matcher.match("Stress, then PANIC!"));
+        assertEquals(terms(), matcher.match("stressed, distress, panicky, stress2"));
+        assertEquals(terms(), matcher.match(null));
+        assertEquals(terms(), matcher.match(""));
+    }
+
+    @Test
+    void overlappingAndSuffixTermsAreEachMatchedOnlyAsWholeWords() {
+        KeywordMatcher.Builder builder = new KeywordMatcher.Builder();
+        builder.group("she", "he", "hers");
+        builder.group("ache", "headache");
+        builder.group("no sleep", "sleep");
+        KeywordMatcher matcher = builder.build();
+
+        assertEquals(terms(0, 2), matcher.match("she said hers"));
+        assertEquals(terms(1), matcher.match("he"));
+        assertEquals(terms(), matcher.match("ushers"));
+        assertEquals(terms(4), matcher.match("a headache"));
+        assertEquals(terms(3, 4), matcher.match("ache, then headache"));
+        assertEquals(terms(5, 6), matcher.match("No sleep tonight"));
+        assertEquals(terms(6), matcher.match("sleep, no sleepover"));
+    }
+
+    @Test
+    void termsSharedByGroupsGetOneId() {
+        KeywordMatcher.Builder builder = new KeywordMatcher.Builder();
+        KeywordMatcher.TermGroup stress = builder.group("stress", "panic");
+        KeywordMatcher.TermGroup panic = builder.group(" PANIC ");
+        KeywordMatcher matcher = builder.build();
+
+        assertEquals(2, matcher.termCount());
+        assertEquals(terms(0, 1), stress.terms());
+        assertEquals(terms(1), panic.terms());
+        BitSet found = matcher.match("panic");
+        assertTrue(stress.anyIn(found) && panic.anyIn(found));
+        assertEquals(1, stress.countIn(found));
+        assertThrows(IllegalArgumentException.class, () -> builder.group(" "));
+    }
+
+    @Test
+    void matchesNonAsciiTerms() {
+        KeywordMatcher.Builder builder = new KeywordMatcher.Builder();
+        builder.group("café");
+        KeywordMatcher matcher = builder.build();
+
+        assertEquals(terms(0), matcher.match("Le CAFÉ était fermé"));
+        assertEquals(terms(), matcher.match("cafés"));
+    }
+
+    /**
+     * The old path lower-cased the text, split it on {@code \W+}, kept words over three characters and
+     * tested each against the rule's alternation. The texts use ASCII letters and digits only: the regex
+     * treats {@code _} as a word character and non-ASCII letters as separators, where the matcher follows
+     * {@link Character#isLetterOrDigit}.
+     */
+    @Test
+    void agreesWithTheOldSplitAndRegexPathOnRandomText() {
+        KeywordMatcher.Builder builder = new KeywordMatcher.Builder();
+        List<KeywordMatcher.TermGroup> groups = new ArrayList<>();
+        Set<String> vocabulary = new LinkedHashSet<>();
+        for (String alternation : OLD_ALTERNATIONS) {
+            String[] words = alternation.split("\\|");
+            groups.add(builder.group(words));
+            for (String word : words) {
+                vocabulary.add(word);
+                vocabulary.add(word + "s");
+                vocabulary.add("un" + word);
+                vocabulary.add(word.substring(0, word.length() - 1));
+            }
+        }
+        vocabulary.addAll(List.of("day", "work", "walk", "it", "a", "no", "sleepy", "9am"));
+        List<String> words = new ArrayList<>(vocabulary);
+        String separators = "  ,.!?-'\n\t()\"";
+        KeywordMatcher matcher = builder.build();
+        Random random = new Random(42);
+
+        for (int round = 0; round < 2000; round++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(12);
+            for (int i = 0; i < length; i++) {
+                String word = words.get(random.nextInt(words.size()));
+                if (random.nextInt(4) == 0) word = word.toUpperCase(Locale.ROOT);
+                else if (random.nextInt(4) == 0) word = Character.toUpperCase(word.charAt(0)) + word.substring(1);
+                text.append(word);
+                // Mostly a separator, sometimes glued to the next word.
+                if (random.nextInt(8) != 0) text.append(separators.charAt(random.nextInt(separators.length())));
+            }
+            List<String> tokens = Arrays.stream(text.toString().toLowerCase().split("\\W+"))
+                    .filter(token -> token.length() > 3).toList();
+            BitSet found = matcher.match(text.toString());
+            for (int group = 0; group < OLD_ALTERNATIONS.length; group++) {
+                String alternation = OLD_ALTERNATIONS[group];
+                boolean old = tokens.stream().anyMatch(token -> token.matches(alternation));
+                assertEquals(old, groups.get(group).anyIn(found), () -> "\"" + text + "\" against " + alternation);
+            }
+        }
+    }
+}
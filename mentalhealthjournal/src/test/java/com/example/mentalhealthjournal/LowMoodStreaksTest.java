@@ -0,0 +1,97 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LowMoodStreaksTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 6, 15);
+
+    private static void log(LowMoodStreaks streaks, LocalDate date, Mood mood) {
+        streaks.add(date.toEpochDay(), mood);
+    }
+
+    @Test
+    void backDatedEntryBeforeTheOriginShiftsBothBitmaps() {
+        LowMoodStreaks streaks = new LowMoodStreaks();
+        log(streaks, TODAY, Mood.SAD);
+        log(streaks, TODAY.minusDays(1), Mood.ANXIOUS);
+        log(streaks, TODAY.minusDays(2), Mood.HAPPY);
+
+        log(streaks, TODAY.minusYears(3), Mood.TIRED); // far before the padding below the first day
+        log(streaks, TODAY.minusYears(3).plusDays(1), Mood.STRESSED);
+        log(streaks, TODAY.minusYears(3).plusDays(2), Mood.VERY_SAD);
+
+        assertEquals(3, streaks.longest());
+        assertEquals(2, streaks.longestBetween(TODAY.minusDays(7), TODAY));
+        assertEquals(3, streaks.longestBetween(TODAY.minusYears(4), TODAY.minusYears(2)));
+        assertEquals(2, streaks.currentEndingAt(TODAY));
+        // Nothing is logged tomorrow yet, so the run ending today still counts.
+        assertEquals(2, streaks.currentEndingAt(TODAY.plusDays(1)));
+        assertEquals(0, streaks.currentEndingAt(TODAY.minusDays(2)));
+    }
+
+    @Test
+    void runJoinedAcrossAShiftCountsAsOne() {
+        LowMoodStreaks streaks = new LowMoodStreaks();
+        LocalDate first = TODAY.minusDays(500);
+        log(streaks, TODAY, Mood.SAD);
+        log(streaks, first, Mood.SAD);
+        for (LocalDate day = first.plusDays(1); day.isBefore(TODAY); day = day.plusDays(1)) {
+            log(streaks, day, Mood.SAD);
+        }
+
+        assertEquals(501, streaks.longest());
+        assertEquals(501, streaks.currentEndingAt(TODAY));
+        assertEquals(10, streaks.longestBetween(first.minusDays(30), first.plusDays(9)));
+    }
+
+    @Test
+    void matchesBruteForceWithEntriesInAnyOrder() {
+        Random random = new Random(3);
+        LowMoodStreaks streaks = new LowMoodStreaks();
+        TreeSet<Long> lowDays = new TreeSet<>();
+        long base = TODAY.toEpochDay();
+        for (int i = 0; i < 3000; i++) {
+            // Later entries reach further back, so the origin moves several times.
+            long day = base - random.nextInt(200 + i);
+            Mood mood = random.nextInt(3) == 0 ? Mood.HAPPY : Mood.SAD;
+            streaks.add(day, mood);
+            if (mood.isLow()) lowDays.add(day);
+        }
+
+        assertEquals(longestRun(lowDays, Long.MIN_VALUE, Long.MAX_VALUE), streaks.longest());
+        for (int round = 0; round < 100; round++) {
+            long start = base - random.nextInt(3500);
+            long end = start + random.nextInt(120);
+            assertEquals(longestRun(lowDays, start, end),
+                    streaks.longestBetween(LocalDate.ofEpochDay(start), LocalDate.ofEpochDay(end)), "window from " + start);
+        }
+    }
+
+    @Test
+    void emptyHistoryHasNoStreaks() {
+        LowMoodStreaks streaks = new LowMoodStreaks();
+
+        assertEquals(0, streaks.longest());
+        assertEquals(0, streaks.longestBetween(TODAY.minusDays(7), TODAY));
+        assertEquals(0, streaks.currentEndingAt(TODAY));
+    }
+
+    private static int longestRun(TreeSet<Long> days, long start, long end) {
+        int best = 0;
+        int run = 0;
+        long previous = Long.MIN_VALUE;
+        for (long day : days.subSet(start, true, end, true)) {
+            run = day == previous + 1 ? run + 1 : 1;
+            best = Math.max(best, run);
+            previous = day;
+        }
+        return best;
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoodColumnFileTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 6, 1);
+
+    @TempDir
+    Path dir;
+
+    private static HelloApplication.MoodEntry mood(LocalDate date, String mood, String notes) {
+        return new HelloApplication.MoodEntry(date, mood, notes);
+    }
+
+    private static String describe(HelloApplication.MoodEntry entry) {
+        return entry.date + "|" + entry.mood + "|" + entry.notes;
+    }
+
+    private static List<String> describe(List<HelloApplication.MoodEntry> entries) {
+        return entries.stream().map(MoodColumnFileTest::describe).toList();
+    }
+
+    private static List<HelloApplication.MoodEntry> sample() {
+        return List.of(
+                mood(DAY.plusDays(2), "Happy", "a walk"),
+                mood(null, "Sad", "undated, first of two"),
+                mood(DAY, "Sad", "Café ☕, naïve 😊"),
+                mood(DAY.plusDays(2), "Gloomy", ""),
+                mood(null, null, null),
+                mood(DAY.minusDays(400), "Happy", "日記"));
+    }
+
+    private IntFunction<Path> snapshots() {
+        return generation -> dir.resolve(generation == 0 ? "moodEntries.dat" : "moodEntries." + generation + ".mcol");
+    }
+
+    private EntryLog<HelloApplication.MoodEntry> openLog() throws IOException {
+        return EntryLog.open(snapshots(), dir.resolve("moodEntries.log"), RecordCodecs.MOOD, MoodColumnFile::write);
+    }
+
+    private List<HelloApplication.MoodEntry> readLegacy() {
+        return HelloApplication.loadGenericData(snapshots().apply(0).toString(), dir.resolve("moodEntries_backup.dat").toString(),
+                RecordCodecs.listOf(RecordCodecs.MOOD_RECORD), List.class, new ArrayList<>());
+    }
+
+    /** A version 1 file as older builds wrote it: rows in list order. */
+    private static void writeUnsorted(List<HelloApplication.MoodEntry> entries, Path target) throws IOException {
+        List<String> dictionary = entries.stream().map(e -> e.mood).distinct().toList();
+        ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(target.toFile()))) {
+            out.writeInt(0x4D484D43);
+            out.writeShort(1);
+            out.writeInt(entries.size());
+            out.writeShort(dictionary.size());
+            for (String mood : dictionary) {
+                byte[] bytes = mood.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+            for (HelloApplication.MoodEntry entry : entries) {
+                out.writeInt(entry.date != null ? (int) entry.date.toEpochDay() : MoodColumnFile.NO_DATE);
+            }
+            for (HelloApplication.MoodEntry entry : entries) out.writeByte(dictionary.indexOf(entry.mood));
+            for (HelloApplication.MoodEntry entry : entries) {
+                heap.writeBytes(entry.notes.getBytes(StandardCharsets.UTF_8));
+                out.writeInt(heap.size());
+            }
+            heap.writeTo(out);
+        }
+    }
+
+    @Test
+    void roundTripsSortedByDateWithUndatedRowsFirst() throws IOException {
+        Path file = dir.resolve("moods.mcol");
+        MoodColumnFile.write(sample(), file);
+        MoodColumnFile.Reader reader = MoodColumnFile.open(file);
+
+        assertTrue(reader.sortedByDate());
+        assertEquals(6, reader.rows());
+        List<HelloApplication.MoodEntry> read = new ArrayList<>();
+        for (int row = 0; row < reader.rows(); row++) read.add(reader.entry(row));
+        assertEquals(List.of(
+                "null|Sad|undated, first of two",
+                "null|Unknown|",
+                DAY.minusDays(400) + "|Happy|日記",
+                DAY + "|Sad|Café ☕, naïve 😊",
+                DAY.plusDays(2) + "|Happy|a walk",
+                DAY.plusDays(2) + "|Gloomy|"), describe(read));
+        assertEquals(MoodColumnFile.NO_DATE, reader.epochDay(0));
+        assertEquals(DAY.toEpochDay(), reader.epochDay(3));
+        assertEquals("Café ☕, naïve 😊".getBytes(StandardCharsets.UTF_8).length, reader.textLength(3));
+        assertEquals(0, reader.textLength(5));
+        assertEquals(Mood.UNKNOWN, reader.moodKind(5), "a mood missing from the enum");
+        assertEquals(Mood.SAD.score, reader.moodScore(3));
+    }
+
+    @Test
+    void repeatedMoodsShareOneDictionaryCode() throws IOException {
+        Path file = dir.resolve("moods.mcol");
+        MoodColumnFile.write(sample(), file);
+        MoodColumnFile.Reader reader = MoodColumnFile.open(file);
+
+        // Codes are assigned in sorted row order: Sad, Unknown, Happy, then Gloomy.
+        int[] codes = new int[reader.rows()];
+        for (int row = 0; row < reader.rows(); row++) codes[row] = reader.moodCode(row);
+        assertArrayEquals(new int[]{0, 1, 2, 0, 2, 3}, codes);
+        assertSame(reader.mood(0), reader.mood(3));
+        assertSame(Mood.SAD, reader.moodKind(0));
+
+        List<HelloApplication.MoodEntry> tooMany = new ArrayList<>();
+        for (int i = 0; i <= 256; i++) tooMany.add(mood(DAY, "Mood " + i, ""));
+        assertThrows(IOException.class, () -> MoodColumnFile.write(tooMany, dir.resolve("too-many.mcol")));
+    }
+
+    @Test
+    void readsUnsortedVersionOneFilesByScanning() throws IOException {
+        Path file = dir.resolve("moods.mcol");
+        writeUnsorted(sample(), file);
+        MoodColumnFile.Reader reader = MoodColumnFile.open(file);
+
+        assertFalse(reader.sortedByDate());
+        List<HelloApplication.MoodEntry> read = new ArrayList<>();
+        for (int row = 0; row < reader.rows(); row++) read.add(reader.entry(row));
+        assertEquals(describe(sample()), describe(read));
+
+        MoodEntryList entries = new MoodEntryList(reader);
+        assertFalse(entries.isIndexed());
+        List<String> sadOrHappy = new ArrayList<>();
+        entries.forEachMoodBetween(DAY, DAY.plusDays(2), (epochDay, mood) -> sadOrHappy.add(LocalDate.ofEpochDay(epochDay) + " " + mood.label));
+        sadOrHappy.sort(null);
+        assertEquals(List.of(DAY + " Sad", DAY.plusDays(2) + " Happy", DAY.plusDays(2) + " Unknown"), sadOrHappy);
+    }
+
+    @Test
+    void rejectsOtherAndTruncatedFiles() throws IOException {
+        Path file = dir.resolve("moods.mcol");
+        MoodColumnFile.write(sample(), file);
+        byte[] bytes = Files.readAllBytes(file);
+
+        Files.write(file, Arrays.copyOf(bytes, 40));
+        assertThrows(IOException.class, () -> MoodColumnFile.open(file));
+        bytes[5] = 9; // version
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> MoodColumnFile.open(file));
+    }
+
+    @Test
+    void migratesALegacySerializedFileOnce() throws IOException {
+        Path legacy = snapshots().apply(0);
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(legacy.toFile()))) {
+            out.writeObject(new ArrayList<>(sample()));
+        }
+        HelloApplication.MoodEntry recorded = mood(DAY.plusDays(1), "Calm", "after the last save");
+        List<String> expected = new ArrayList<>(describe(sample()));
+        expected.add(describe(recorded));
+        expected.sort(null);
+
+        try (EntryLog<HelloApplication.MoodEntry> log = openLog()) {
+            log.append(recorded);
+            MoodEntryList readOnly = MoodEntryList.load(log, this::readLegacy, false);
+            assertEquals(0, log.snapshotGeneration(), "not migrated without asking");
+            assertEquals(expected, describe(readOnly).stream().sorted().toList());
+
+            MoodEntryList entries = MoodEntryList.load(log, this::readLegacy, true);
+            assertEquals(1, log.snapshotGeneration());
+            assertTrue(entries.isIndexed());
+            assertEquals(expected, describe(entries).stream().sorted().toList());
+        }
+        assertTrue(Files.exists(legacy), "the legacy file is kept");
+        assertTrue(Files.exists(snapshots().apply(1)));
+
+        try (EntryLog<HelloApplication.MoodEntry> log = openLog()) {
+            MoodEntryList entries = MoodEntryList.load(log, () -> fail("the legacy file is read again"), true);
+            assertEquals(1, log.snapshotGeneration());
+            assertEquals(expected, describe(entries).stream().sorted().toList());
+            assertEquals(List.of(DAY + "|Sad|Café ☕, naïve 😊", DAY.plusDays(1) + "|Calm|after the last save"),
+                    describe(entries.entriesBetween(DAY, DAY.plusDays(1))));
+        }
+    }
+
+    @Test
+    void migratesAnUnsortedColumnFileOnce() throws IOException {
+        try (EntryLog<HelloApplication.MoodEntry> log = openLog()) {
+            log.compactNow(new ArrayList<>());
+        }
+        writeUnsorted(sample(), snapshots().apply(1));
+
+        try (EntryLog<HelloApplication.MoodEntry> log = openLog()) {
+            MoodEntryList entries = MoodEntryList.load(log, () -> fail("not a legacy user"), true);
+            assertEquals(2, log.snapshotGeneration());
+            assertTrue(entries.isIndexed());
+            assertEquals(describe(sample()).stream().sorted().toList(), describe(entries).stream().sorted().toList());
+        }
+    }
+}
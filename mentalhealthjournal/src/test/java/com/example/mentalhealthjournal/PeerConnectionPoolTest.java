@@ -0,0 +1,99 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeerConnectionPoolTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Test
+    void messageNotAcknowledgedInTimeFailsAndClosesTheConnection() throws Exception {
+        try (ServerSocket silentPeer = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+             ExecutorService server = Executors.newSingleThreadExecutor()) {
+            // Answers the preface, then reads everything and never acknowledges.
+            CountDownLatch connectionClosed = new CountDownLatch(1);
+            server.submit(() -> {
+                try (Socket socket = silentPeer.accept(); InputStream in = socket.getInputStream()) {
+                    socket.getOutputStream().write(PeerProtocol.PREFACE);
+                    while (in.read() >= 0) {
+                        // discard
+                    }
+                    connectionClosed.countDown();
+                }
+                return null;
+            });
+            PeerConnectionPool pool = new PeerConnectionPool("sender");
+            try {
+                InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), silentPeer.getLocalPort());
+                PeerConnectionPool.Outgoing outgoing = pool.send("silent", address, "anyone there?");
+                assertEquals(1, pool.openConnections());
+
+                pool.expireWrittenBefore(System.currentTimeMillis() - PeerConnectionPool.ACK_TIMEOUT_MILLIS);
+                assertFalse(outgoing.delivered.isDone(), "written just now, still within the deadline");
+
+                pool.expireWrittenBefore(System.currentTimeMillis() + 1);
+                ExecutionException failure = assertThrows(ExecutionException.class,
+                        () -> outgoing.delivered.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                assertInstanceOf(IOException.class, failure.getCause());
+                assertEquals(0, pool.openConnections());
+                assertTrue(connectionClosed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            } finally {
+                pool.closeAll();
+            }
+        }
+    }
+
+    @Test
+    void expiryDoesNotWaitForAWriteBlockedOnAPeerThatStoppedReading() throws Exception {
+        try (ServerSocket stalledPeer = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+             ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+            // Answers the preface, then never reads, so the sender's socket buffer fills up.
+            CountDownLatch release = new CountDownLatch(1);
+            threads.submit(() -> {
+                try (Socket socket = stalledPeer.accept()) {
+                    socket.getOutputStream().write(PeerProtocol.PREFACE);
+                    release.await();
+                }
+                return null;
+            });
+            PeerConnectionPool pool = new PeerConnectionPool("sender");
+            try {
+                String payload = "x".repeat(PeerProtocol.MAX_PAYLOAD_BYTES);
+                List<PeerConnectionPool.Outgoing> batch = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    batch.add(new PeerConnectionPool.Outgoing(pool.nextMessageId(), System.currentTimeMillis(), payload));
+                }
+                InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), stalledPeer.getLocalPort());
+                Future<?> send = threads.submit(() -> pool.send("stalled", address, batch));
+                Thread.sleep(500);
+                assertFalse(send.isDone(), "the write should be blocked on the full socket buffer");
+
+                assertTimeoutPreemptively(Duration.ofSeconds(2),
+                        () -> pool.expireWrittenBefore(System.currentTimeMillis() + 1));
+                assertTimeoutPreemptively(Duration.ofSeconds(2),
+                        () -> pool.close("stalled"));
+                send.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                for (PeerConnectionPool.Outgoing outgoing : batch) {
+                    assertTrue(outgoing.delivered.isCompletedExceptionally());
+                }
+                assertEquals(0, pool.openConnections());
+            } finally {
+                release.countDown();
+                pool.closeAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeerProtocolTest {
+
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private record Received(String peerUid, long messageId, String message) {
+    }
+
+    /**
+     * Records what the server delivers; identifications count as a message with id -1. Messages count as
+     * stored once {@code storing} completes.
+     */
+    private static final class Recorder implements PeerMessageServer.Handler {
+        final BlockingQueue<Received> received = new LinkedBlockingQueue<>();
+        volatile CompletableFuture<Void> storing = CompletableFuture.completedFuture(null);
+
+        @Override
+        public void peerConnected(String peerUid, InetAddress address) {
+            received.add(new Received(peerUid, -1, null));
+        }
+
+        @Override
+        public CompletableFuture<?> messageReceived(String peerUid, long messageId, long sentAtMillis, String message) {
+            received.add(new Received(peerUid, messageId, message));
+            return storing;
+        }
+
+        Received next() throws InterruptedException {
+            Received next = received.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            assertNotNull(next, "nothing received");
+            return next;
+        }
+    }
+
+    @Test
+    void framesDecodeOnlyOnceComplete() throws IOException {
+        ByteBuffer encoded = PeerProtocol.encode(List.of(
+                PeerProtocol.Frame.of(PeerProtocol.MESSAGE, 7, 1234, "héllo"),
+                PeerProtocol.ack(7),
+                PeerProtocol.Frame.of(PeerProtocol.MESSAGE, 8, 1235, "")), false);
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+
+        // Feed one byte at a time, as a slow connection would deliver them.
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+        List<PeerProtocol.Frame> frames = new ArrayList<>();
+        for (byte b : bytes) {
+            buffer.put(b);
+            buffer.flip();
+            int before = buffer.remaining();
+            PeerProtocol.Frame frame = PeerProtocol.decode(buffer);
+            if (frame == null) {
+                assertEquals(before, buffer.remaining(), "an incomplete frame must leave the buffer untouched");
+            } else {
+                frames.add(frame);
+            }
+            buffer.compact();
+        }
+
+        assertEquals(3, frames.size());
+        assertEquals(PeerProtocol.MESSAGE, frames.get(0).type());
+        assertEquals(7, frames.get(0).messageId());
+        assertEquals(1234, frames.get(0).sentAtMillis());
+        assertEquals("héllo", frames.get(0).text());
+        assertEquals(PeerProtocol.ACK, frames.get(1).type());
+        assertEquals("", frames.get(2).text());
+    }
+
+    @Test
+    void invalidFrameLengthIsRejected() {
+        ByteBuffer tooShort = ByteBuffer.allocate(8).putInt(3).flip();
+        ByteBuffer tooLong = ByteBuffer.allocate(8).putInt(PeerProtocol.maxFrameBytes()).flip();
+
+        assertThrows(IOException.class, () -> PeerProtocol.decode(tooShort));
+        assertThrows(IOException.class, () -> PeerProtocol.decode(tooLong));
+    }
+
+    @Test
+    void prefaceIsRecognisedFromItsFirstBytes() {
+        byte[] preface = PeerProtocol.encode(List.of(), true).array();
+        byte[] line = "INITMSG:abc\n".getBytes(StandardCharsets.UTF_8);
+
+        assertNull(PeerProtocol.startsWithPreface(preface, 0));
+        assertNull(PeerProtocol.startsWithPreface(preface, 3));
+        assertEquals(Boolean.TRUE, PeerProtocol.startsWithPreface(preface, 4));
+        assertEquals(Boolean.FALSE, PeerProtocol.startsWithPreface(line, 1));
+        assertEquals(Boolean.FALSE, PeerProtocol.startsWithPreface(new byte[]{'M', 'H', 'X'}, 3));
+    }
+
+    @Test
+    void serverAcceptsLineProtocolClients() throws Exception {
+        for (boolean virtualThreads : new boolean[]{false, true}) {
+            Recorder recorder = new Recorder();
+            PeerMessageServer server = new PeerMessageServer("server", 0, 60_000, virtualThreads, recorder);
+            server.start();
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.localPort())) {
+                OutputStream out = socket.getOutputStream();
+                out.write("INITMSG:old-peer\nMESSAGE:hi there\nMESSAGE:sec".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                assertEquals(new Received("old-peer", -1, null), recorder.next());
+                assertEquals(new Received("old-peer", 0, "hi there"), recorder.next());
+                out.write("ond\nBYE\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                assertEquals(new Received("old-peer", 0, "second"), recorder.next());
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    @Test
+    void poolAndServerSpeakTheBinaryProtocol() throws Exception {
+        Recorder recorder = new Recorder();
+        PeerMessageServer server = new PeerMessageServer("server", 0, 60_000, false, recorder);
+        server.start();
+        PeerConnectionPool pool = new PeerConnectionPool("new-peer");
+        try {
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.localPort());
+            PeerConnectionPool.Outgoing first = pool.send("server", address, "one");
+            PeerConnectionPool.Outgoing second = pool.send("server", address, "two");
+
+            assertTrue(first.delivered.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertTrue(second.delivered.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertEquals(new Received("new-peer", -1, null), recorder.next());
+            assertEquals(new Received("new-peer", first.id, "one"), recorder.next());
+            assertEquals(new Received("new-peer", second.id, "two"), recorder.next());
+            assertEquals(1, pool.openConnections());
+        } finally {
+            pool.closeAll();
+            server.close();
+        }
+    }
+
+    @Test
+    void messagesAreAcknowledgedOnlyOnceStored() throws Exception {
+        for (boolean virtualThreads : new boolean[]{false, true}) {
+            Recorder recorder = new Recorder();
+            CompletableFuture<Void> stored = new CompletableFuture<>();
+            recorder.storing = stored;
+            PeerMessageServer server = new PeerMessageServer("server", 0, 60_000, virtualThreads, recorder);
+            server.start();
+            PeerConnectionPool pool = new PeerConnectionPool("new-peer");
+            try {
+                InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.localPort());
+                PeerConnectionPool.Outgoing outgoing = pool.send("server", address, "keep me");
+                recorder.next();
+                assertEquals(new Received("new-peer", outgoing.id, "keep me"), recorder.next());
+                assertThrows(TimeoutException.class, () -> outgoing.delivered.get(300, TimeUnit.MILLISECONDS),
+                        "acknowledged before it was stored");
+
+                stored.complete(null);
+                assertTrue(outgoing.delivered.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            } finally {
+                pool.closeAll();
+                server.close();
+            }
+        }
+    }
+
+    @Test
+    void messagesThatFailToStoreAreNotAcknowledged() throws Exception {
+        Recorder recorder = new Recorder();
+        recorder.storing = CompletableFuture.failedFuture(new IOException("disk full"));
+        PeerMessageServer server = new PeerMessageServer("server", 0, 60_000, false, recorder);
+        server.start();
+        PeerConnectionPool pool = new PeerConnectionPool("new-peer");
+        try {
+            InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.localPort());
+            PeerConnectionPool.Outgoing outgoing = pool.send("server", address, "lost");
+            recorder.next();
+            recorder.next();
+
+            assertThrows(TimeoutException.class, () -> outgoing.delivered.get(300, TimeUnit.MILLISECONDS));
+            pool.expireWrittenBefore(System.currentTimeMillis() + 1);
+            assertThrows(ExecutionException.class, () -> outgoing.delivered.get(TIMEOUT_SECONDS, TimeUnit.SECONDS),
+                    "left for the sender to send again");
+        } finally {
+            pool.closeAll();
+            server.close();
+        }
+    }
+
+    @Test
+    void poolFallsBackToLinesForPeersThatDoNotAnswerThePreface() throws Exception {
+        try (ServerSocket oldPeer = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+             ExecutorService reader = Executors.newSingleThreadExecutor()) {
+            // An older version reads lines and never answers the preface.
+            Future<List<String>> lines = reader.submit(() -> {
+                try (Socket ignored = oldPeer.accept();
+                     Socket socket = oldPeer.accept();
+                     BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+                    List<String> read = new ArrayList<>();
+                    for (String line; read.size() < 3 && (line = in.readLine()) != null; ) read.add(line);
+                    return read;
+                }
+            });
+            PeerConnectionPool pool = new PeerConnectionPool("new-peer");
+            try {
+                InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), oldPeer.getLocalPort());
+                PeerConnectionPool.Outgoing first = pool.send("old-peer", address, "hello");
+                PeerConnectionPool.Outgoing second = pool.send("old-peer", address, "two\nlines");
+
+                assertFalse(first.delivered.get(TIMEOUT_SECONDS, TimeUnit.SECONDS), "written, but not acknowledged");
+                assertFalse(second.delivered.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+                assertEquals(List.of("INITMSG:new-peer", "MESSAGE:hello", "MESSAGE:two lines"),
+                        lines.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            } finally {
+                pool.closeAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Opens many simulated peers on loopback against a {@link PeerMessageServer}, each with its own
+ * {@link PeerConnectionPool}, and has every peer send a burst of chat messages at once. The tests check,
+ * in both {@link NetworkManager.ExecutionMode}s, that every message arrives once and is acknowledged.
+ * <p>
+ * {@link #main} reports, per mode and peer count, how long the handshakes and the messages (until all
+ * were acknowledged) took and how many platform threads the process used. Run with
+ * {@code java -cp target/test-classes:target/classes com.example.mentalhealthjournal.PeerStressTest [peers] [messagesPerPeer]}.
+ */
+class PeerStressTest {
+
+    private static final long TIMEOUT_SECONDS = 120;
+    private static final int TEST_PEERS = 50;
+    private static final int TEST_MESSAGES_PER_PEER = 20;
+
+    @Test
+    void everyMessageIsAcknowledgedWithSelector() throws Exception {
+        assertAllDelivered(NetworkManager.ExecutionMode.SELECTOR);
+    }
+
+    @Test
+    void everyMessageIsAcknowledgedWithVirtualThreads() throws Exception {
+        assertAllDelivered(NetworkManager.ExecutionMode.VIRTUAL_THREADS);
+    }
+
+    private static void assertAllDelivered(NetworkManager.ExecutionMode mode) throws Exception {
+        Result result = run(mode, TEST_PEERS, TEST_MESSAGES_PER_PEER);
+
+        assertEquals((long) TEST_PEERS * TEST_MESSAGES_PER_PEER, result.messages);
+        assertEquals(result.messages, result.received);
+        assertEquals(result.messages, result.acknowledged);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int maxPeers = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int messagesPerPeer = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        PrintStream console = System.out;
+        // The server and pools log every connection; keep the report readable.
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            console.printf("%-16s %6s %9s %12s %12s %14s %16s%n",
+                    "mode", "peers", "messages", "connect ms", "send ms", "messages/s", "platform threads");
+            for (NetworkManager.ExecutionMode mode : NetworkManager.ExecutionMode.values()) {
+                for (int peers = Math.min(10, maxPeers); ; peers = Math.min(peers * 10, maxPeers)) {
+                    Result result = run(mode, peers, messagesPerPeer);
+                    console.printf("%-16s %6d %9d %12d %12d %14.0f %16d%n", mode, peers, result.messages, result.connectMillis,
+                            result.sendMillis, result.messages * 1000.0 / Math.max(1, result.sendMillis), result.platformThreads);
+                    if (peers >= maxPeers) break;
+                }
+            }
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    private record Result(long messages, long received, long acknowledged, long connectMillis, long sendMillis, int platformThreads) {
+    }
+
+    private static Result run(NetworkManager.ExecutionMode mode, int peers, int messagesPerPeer) throws Exception {
+        CountDownLatch connected = new CountDownLatch(peers);
+        CountDownLatch received = new CountDownLatch(peers * messagesPerPeer);
+        Set<String> distinct = ConcurrentHashMap.newKeySet();
+        PeerMessageServer server = new PeerMessageServer("stress-server", 0, TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS),
+                mode == NetworkManager.ExecutionMode.VIRTUAL_THREADS, new PeerMessageServer.Handler() {
+            @Override
+            public void peerConnected(String peerUid, InetAddress address) {
+                connected.countDown();
+            }
+
+            @Override
+            public CompletableFuture<?> messageReceived(String peerUid, long messageId, long sentAtMillis, String message) {
+                if (distinct.add(peerUid + ":" + messageId)) received.countDown();
+                return CompletableFuture.completedFuture(null);
+            }
+        });
+        server.start();
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.localPort());
+        List<PeerConnectionPool> pools = new ArrayList<>(peers);
+        Queue<CompletableFuture<Boolean>> acks = new ConcurrentLinkedQueue<>();
+        long acknowledged = 0;
+        for (int i = 0; i < peers; i++) pools.add(new PeerConnectionPool("peer-" + i));
+
+        // The simulated peers always run on virtual threads, so the load generator is the same in both modes.
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            long start = System.nanoTime();
+            // First message of each peer opens its connection and does the handshake.
+            List<Future<?>> sends = new ArrayList<>(peers);
+            for (PeerConnectionPool pool : pools) sends.add(clients.submit(() -> send(pool, address, 0, acks)));
+            for (Future<?> send : sends) send.get();
+            await(connected, "handshakes");
+            long connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            for (CompletableFuture<Boolean> ack : acks) {
+                if (ack.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)) acknowledged++;
+            }
+            start = System.nanoTime();
+            sends.clear();
+            acks.clear();
+            for (PeerConnectionPool pool : pools) {
+                sends.add(clients.submit(() -> {
+                    for (int m = 1; m < messagesPerPeer; m++) send(pool, address, m, acks);
+                }));
+            }
+            for (Future<?> send : sends) send.get();
+            await(received, "messages");
+            for (CompletableFuture<Boolean> ack : acks) {
+                if (ack.get(TIMEOUT_SECONDS, TimeUnit.SECONDS)) acknowledged++;
+            }
+            long sendMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            int platformThreads = Thread.getAllStackTraces().size(); // virtual threads are not included
+            return new Result((long) peers * messagesPerPeer, distinct.size(), acknowledged, connectMillis, sendMillis, platformThreads);
+        } finally {
+            pools.forEach(PeerConnectionPool::closeAll);
+            server.close();
+        }
+    }
+
+    private static void send(PeerConnectionPool pool, InetSocketAddress address, int message, Queue<CompletableFuture<Boolean>> acks) {
+        acks.add(pool.send("stress-server", address, "message " + message).delivered);
+    }
+
+    private static void await(CountDownLatch latch, String what) throws InterruptedException, TimeoutException {
+        if (!latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new TimeoutException(latch.getCount() + " " + what + " still missing after " + TIMEOUT_SECONDS + " s");
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistenceQueueTest {
+
+    @Test
+    void queuedSnapshotIsReplacedByNewerOneOfTheSameFile() throws Exception {
+        PersistenceQueue queue = new PersistenceQueue("test-writer");
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> written = new CopyOnWriteArrayList<>();
+        queue.submit("blocker", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        CompletableFuture<Void> first = queue.submitLatest("friends", () -> written.add("friends v1"));
+        queue.submit("append", () -> written.add("append"));
+        CompletableFuture<Void> second = queue.submitLatest("friends", () -> written.add("friends v2"));
+        queue.submitLatest("moods", () -> written.add("moods v1"));
+        release.countDown();
+
+        assertTrue(queue.flush(5, TimeUnit.SECONDS));
+        assertEquals(List.of("append", "friends v2", "moods v1"), written);
+        assertTrue(first.isDone() && !first.isCompletedExceptionally());
+        assertTrue(second.isDone() && !second.isCompletedExceptionally());
+        assertEquals(1, queue.snapshotsDropped());
+        queue.shutdown(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void replacedSnapshotReportsTheNewerWritesFailure() throws Exception {
+        PersistenceQueue queue = new PersistenceQueue("test-writer");
+        CountDownLatch release = new CountDownLatch(1);
+        queue.submit("blocker", () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        CompletableFuture<Void> first = queue.submitLatest("friends", () -> { });
+        CompletableFuture<Void> second = queue.submitLatest("friends", () -> {
+            throw new IOException("disk full");
+        });
+        release.countDown();
+
+        assertTrue(queue.flush(5, TimeUnit.SECONDS));
+        assertTrue(second.isCompletedExceptionally());
+        assertTrue(first.isCompletedExceptionally());
+        queue.shutdown(5, TimeUnit.SECONDS);
+    }
+}
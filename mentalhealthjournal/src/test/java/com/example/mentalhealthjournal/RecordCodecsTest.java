@@ -0,0 +1,178 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordCodecsTest {
+
+    private static final LocalDateTime SENT_AT = LocalDateTime.of(2024, 3, 5, 14, 30, 15, 123_000_000);
+
+    /** The chat message fields written before delivery tracking was added. */
+    private static final RecordCodecs.RecordCodec<HelloApplication.ChatMessage> CHAT_MESSAGE_V1 = RecordCodecs.versioned(1, (message, out) -> {
+        RecordCodecs.writeString(out, message.senderUid);
+        RecordCodecs.writeString(out, message.content);
+        RecordCodecs.writeDateTime(out, message.timestamp);
+        out.writeBoolean(message.isMe);
+    }, (in, version) -> new HelloApplication.ChatMessage(RecordCodecs.readString(in), RecordCodecs.readString(in),
+            RecordCodecs.readDateTime(in), in.readBoolean()));
+
+    @TempDir
+    Path dir;
+
+    private static <T> byte[] encode(RecordCodecs.RecordCodec<T> codec, T value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.write(value, new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    private static <T> T decode(RecordCodecs.RecordCodec<T> codec, byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        T value = codec.read(in);
+        assertEquals(-1, in.read(), "record not fully consumed");
+        return value;
+    }
+
+    @Test
+    void chatMessageRoundTripsDeliveryState() throws IOException {
+        HelloApplication.ChatMessage message = new HelloApplication.ChatMessage("uid-1", "hello ünïcode", SENT_AT, true,
+                42L, HelloApplication.ChatMessage.Delivery.PENDING);
+
+        HelloApplication.ChatMessage read = decode(RecordCodecs.CHAT_MESSAGE, encode(RecordCodecs.CHAT_MESSAGE, message));
+
+        assertEquals("uid-1", read.senderUid);
+        assertEquals("hello ünïcode", read.content);
+        assertEquals(SENT_AT, read.timestamp);
+        assertTrue(read.isMe);
+        assertEquals(42L, read.messageId);
+        assertEquals(HelloApplication.ChatMessage.Delivery.PENDING, read.delivery);
+    }
+
+    @Test
+    void failedMessageStaysFailed() throws IOException {
+        HelloApplication.ChatMessage message = new HelloApplication.ChatMessage("uid-1", "gave up", SENT_AT, true,
+                43L, HelloApplication.ChatMessage.Delivery.FAILED);
+
+        HelloApplication.ChatMessage read = decode(RecordCodecs.CHAT_MESSAGE, encode(RecordCodecs.CHAT_MESSAGE, message));
+
+        assertEquals(HelloApplication.ChatMessage.Delivery.FAILED, read.delivery);
+        assertFalse(read.isPending());
+    }
+
+    @Test
+    void versionOneChatMessageReadsAsAcknowledged() throws IOException {
+        HelloApplication.ChatMessage old = new HelloApplication.ChatMessage("uid-2", "from before acks", SENT_AT, false);
+
+        HelloApplication.ChatMessage read = decode(RecordCodecs.CHAT_MESSAGE, encode(CHAT_MESSAGE_V1, old));
+
+        assertEquals("from before acks", read.content);
+        assertEquals(0L, read.messageId);
+        assertEquals(HelloApplication.ChatMessage.Delivery.ACKED, read.delivery);
+    }
+
+    @Test
+    void olderReaderSkipsFieldsAddedByNewerVersion() throws IOException {
+        HelloApplication.ChatMessage message = new HelloApplication.ChatMessage("uid-3", "newer file", SENT_AT, true,
+                7L, HelloApplication.ChatMessage.Delivery.SENT);
+        byte[] twoRecords = concat(encode(RecordCodecs.CHAT_MESSAGE, message), encode(RecordCodecs.CHAT_MESSAGE, message));
+
+        List<HelloApplication.ChatMessage> read = decode(RecordCodecs.listOf(CHAT_MESSAGE_V1), concat(intBytes(2), twoRecords));
+
+        assertEquals(2, read.size());
+        assertEquals("newer file", read.get(1).content);
+        assertEquals(SENT_AT, read.get(1).timestamp);
+    }
+
+    @Test
+    void friendRoundTripsChatHistoryThroughDataFile() throws IOException {
+        HelloApplication.Friend friend = new HelloApplication.Friend("uid-4", "Sam");
+        friend.getChatMessages().add(new HelloApplication.ChatMessage("uid-4", "hi", SENT_AT, false, 9L,
+                HelloApplication.ChatMessage.Delivery.ACKED));
+        friend.getChatMessages().add(new HelloApplication.ChatMessage("me", null, null, true));
+        Path file = dir.resolve("friends.dat");
+
+        RecordCodecs.writeDataFile(file, List.of(friend), RecordCodecs.listOf(RecordCodecs.FRIEND));
+        List<HelloApplication.Friend> read;
+        try (BufferedInputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            assertTrue(RecordCodecs.readDataFileHeader(in));
+            read = RecordCodecs.listOf(RecordCodecs.FRIEND).read(new DataInputStream(in));
+        }
+
+        assertEquals(1, read.size());
+        assertEquals("Sam", read.get(0).nickname);
+        assertEquals(2, read.get(0).getChatMessages().size());
+        assertEquals(9L, read.get(0).getChatMessages().get(0).messageId);
+        assertNull(read.get(0).getChatMessages().get(1).content);
+        assertNull(read.get(0).getChatMessages().get(1).timestamp);
+    }
+
+    @Test
+    void receivedMessageIdsSurviveSavingSoResendsAreDropped() throws IOException {
+        HelloApplication.Friend friend = new HelloApplication.Friend("uid-5", "Alex");
+        assertTrue(friend.firstReceipt(11L));
+        friend.getChatMessages().add(new HelloApplication.ChatMessage("uid-5", "once", SENT_AT, false, 11L,
+                HelloApplication.ChatMessage.Delivery.ACKED));
+        assertFalse(friend.firstReceipt(11L));
+        Path file = dir.resolve("friends.dat");
+
+        RecordCodecs.writeDataFile(file, List.of(friend), RecordCodecs.listOf(RecordCodecs.FRIEND));
+        HelloApplication.Friend reloaded;
+        try (BufferedInputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            assertTrue(RecordCodecs.readDataFileHeader(in));
+            reloaded = RecordCodecs.listOf(RecordCodecs.FRIEND).read(new DataInputStream(in)).get(0);
+        }
+
+        assertFalse(reloaded.firstReceipt(11L));
+        assertTrue(reloaded.firstReceipt(12L));
+    }
+
+    @Test
+    void journalAndMoodRecordsRoundTrip() throws IOException {
+        HelloApplication.JournalEntry journal = new HelloApplication.JournalEntry(LocalDate.of(2024, 1, 2), "x".repeat(70_000), "Calm");
+        HelloApplication.MoodEntry mood = new HelloApplication.MoodEntry(LocalDate.of(2024, 1, 3), "Happy", "");
+
+        HelloApplication.JournalEntry readJournal = decode(RecordCodecs.JOURNAL_RECORD, encode(RecordCodecs.JOURNAL_RECORD, journal));
+        HelloApplication.MoodEntry readMood = decode(RecordCodecs.MOOD_RECORD, encode(RecordCodecs.MOOD_RECORD, mood));
+
+        assertEquals(journal.date, readJournal.date);
+        assertEquals(70_000, readJournal.content.length());
+        assertEquals("Calm", readJournal.mood);
+        assertEquals("Happy", readMood.mood);
+        assertEquals("", readMood.notes);
+    }
+
+    @Test
+    void fileWithoutHeaderIsLeftUnread() throws IOException {
+        byte[] legacy = {(byte) 0xAC, (byte) 0xED, 0, 5, 1, 2};
+        try (BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(legacy))) {
+            assertFalse(RecordCodecs.readDataFileHeader(in));
+            assertEquals(0xAC, in.read());
+        }
+    }
+
+    @Test
+    void negativeRecordLengthIsRejected() {
+        byte[] corrupt = {0, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xF0};
+        IOException e = assertThrows(IOException.class, () -> decode(RecordCodecs.CHAT_MESSAGE, corrupt));
+        assertTrue(e.getMessage().contains("Negative record length"));
+    }
+
+    private static byte[] intBytes(int value) {
+        return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] joined = new byte[a.length + b.length];
+        System.arraycopy(a, 0, joined, 0, a.length);
+        System.arraycopy(b, 0, joined, a.length, b.length);
+        return joined;
+    }
+}
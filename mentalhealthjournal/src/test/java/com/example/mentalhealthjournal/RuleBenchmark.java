@@ -0,0 +1,118 @@
+package com.example.mentalhealthjournal;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Measures how long a compiled {@link RuleBook} takes to evaluate a generated set of suggestion rules
+ * against one analysis window, how many plan nodes the rules share, and what a
+ * {@link RulePlan.Tracker} update costs when one new mood entry changes a few inputs. Run with
+ * {@code java -cp target/test-classes:target/classes com.example.mentalhealthjournal.RuleBenchmark [rules]}.
+ */
+final class RuleBenchmark {
+
+    private static final int WARMUP_ROUNDS = 200_000;
+    private static final int MEASURED_ROUNDS = 1_000_000;
+
+    private static final String[] MOODS = {"Very Happy", "Happy", "Content", "Neutral", "Sad", "Very Sad", "Anxious", "Stressed", "Calm", "Energetic", "Tired"};
+    private static final String[] WORDS = {"stress", "anxious", "overwhelm", "worried", "panic", "pressure", "tense", "burnout", "sleep",
+            "insomnia", "awake", "restless", "fatigue", "exhausted", "bored", "stuck", "lonely", "grateful", "calm", "walk"};
+
+    private RuleBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        RuleBook book = RuleBook.parse(generateRules(count, new Random(42)), "generated");
+        System.out.printf("%d rules compiled to %d plan nodes, %d keyword terms%n", book.suggestionCount(),
+                book.planNodeCount(), book.keywordMatcher().termCount());
+
+        FixedFacts data = new FixedFacts(book.keywordMatcher().match("Feeling stressed and restless, could not sleep. Went for a walk, felt calm."));
+        data.moodCounts.put("Tired", 2L);
+        data.moodCounts.put("Stressed", 1L);
+        data.moodCounts.put("Happy", 3L);
+
+        long fired = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; i++) fired += book.suggestionsFor(data).size();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) fired += book.suggestionsFor(data).size();
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%.2f us per evaluation of all rules (%d fired per round)%n",
+                elapsed / 1_000.0 / MEASURED_ROUNDS, fired / (WARMUP_ROUNDS + MEASURED_ROUNDS));
+
+        // A new mood entry alternately logs and retracts a "Sad" day: the mood and both counts change.
+        RulePlan.Tracker tracker = book.trackSuggestions(data);
+        long recomputed = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            if (round == WARMUP_ROUNDS) {
+                start = System.nanoTime();
+                recomputed = 0;
+            }
+            long delta = round % 2 == 0 ? 1 : -1;
+            data.moodCounts.merge("Sad", delta, Long::sum);
+            data.moodEntries += delta;
+            tracker.moodChanged("Sad");
+            tracker.metricChanged(RulePlan.Metric.MOOD_ENTRIES);
+            tracker.update();
+            recomputed += tracker.recomputedNodes();
+        }
+        elapsed = System.nanoTime() - start;
+        System.out.printf("%.3f us per incremental update after a new entry (%.1f nodes recomputed)%n",
+                elapsed / 1_000.0 / MEASURED_ROUNDS, (double) recomputed / MEASURED_ROUNDS);
+    }
+
+    private static final class FixedFacts implements RulePlan.Facts {
+        final Map<String, Long> moodCounts = new HashMap<>();
+        final BitSet terms;
+        long moodEntries = 6;
+
+        FixedFacts(BitSet terms) {
+            this.terms = terms;
+        }
+
+        @Override
+        public long moodCount(String mood) {
+            return moodCounts.getOrDefault(mood, 0L);
+        }
+
+        @Override
+        public BitSet matchedTerms() {
+            return terms;
+        }
+
+        @Override
+        public long metric(RulePlan.Metric metric) {
+            switch (metric) {
+                case LOW_MOOD_STREAK: return 2;
+                case JOURNAL_ENTRIES: return 3;
+                case MOOD_ENTRIES: return moodEntries;
+                default: throw new IllegalArgumentException("Unknown metric: " + metric);
+            }
+        }
+    }
+
+    /** Rules drawing on a small vocabulary, like hand-written ones: many share groups and thresholds. */
+    private static String generateRules(int count, Random random) {
+        StringBuilder rules = new StringBuilder();
+        rules.append("define low_moods = mood(\"Sad\", \"Very Sad\", \"Anxious\", \"Stressed\", \"Tired\")\n");
+        rules.append("define positive_moods = mood(\"Very Happy\", \"Happy\", \"Content\", \"Calm\", \"Energetic\")\n");
+        for (int i = 0; i < count; i++) {
+            rules.append("suggestion RULE_").append(i).append('\n')
+                    .append("    priority ").append(random.nextInt(100)).append('\n')
+                    .append("    when ").append(condition(random)).append(" and ").append(condition(random)).append('\n')
+                    .append("    condition \"Generated condition ").append(i).append("\"\n")
+                    .append("    text \"Generated suggestion ").append(i).append("\"\n");
+        }
+        return rules.toString();
+    }
+
+    private static String condition(Random random) {
+        switch (random.nextInt(5)) {
+            case 0: return "low_moods >= " + (1 + random.nextInt(4));
+            case 1: return "positive_moods / mood_entries >= 0." + (4 + random.nextInt(5));
+            case 2: return "mood(\"" + MOODS[random.nextInt(MOODS.length)] + "\") > " + random.nextInt(3);
+            case 3: return "keywords(\"" + WORDS[random.nextInt(WORDS.length)] + "\", \"" + WORDS[random.nextInt(WORDS.length)] + "\") >= " + (1 + random.nextInt(2));
+            default: return "(low_mood_streak >= " + (1 + random.nextInt(3)) + " or journal_entries < " + (1 + random.nextInt(3)) + ")";
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleBookTest {
+
+    private static final String RULES = """
+            # Two suggestions sharing a define, and one task.
+            define low_moods = mood("Sad", "very sad", "Anxious")
+
+            suggestion LOW_MOOD
+                priority 10
+                when low_mood_streak >= 2 or low_moods >= 3
+                condition "Low mood on several days."
+                text "Be kind "
+                     "to yourself.\\n"
+
+            suggestion QUIET_WEEK
+                priority 3
+                when journal_entries == 0 and not (mood_entries > 5)
+                condition "Nothing written."
+                text "Try a few lines."
+                details "Even \\"one line\\" helps."
+
+            task "Breathing"
+                category "Mindfulness"
+                time "5 mins"
+                when keywords("stress", "panic") or low_moods * 2 > 4
+                description "Breathe slowly."
+            """;
+
+    private static final class Facts implements RulePlan.Facts {
+        final Map<String, Long> moods = new HashMap<>();
+        final Map<RulePlan.Metric, Long> metrics = new EnumMap<>(RulePlan.Metric.class);
+        BitSet terms = new BitSet();
+
+        @Override
+        public long moodCount(String mood) {
+            return moods.getOrDefault(mood, 0L);
+        }
+
+        @Override
+        public BitSet matchedTerms() {
+            return terms;
+        }
+
+        @Override
+        public long metric(RulePlan.Metric metric) {
+            return metrics.getOrDefault(metric, 0L);
+        }
+    }
+
+    private static List<String> suggestionIds(RuleBook book, RulePlan.Facts facts) {
+        return book.suggestionsFor(facts).stream().map(rule -> rule.id).toList();
+    }
+
+    private static IOException parseError(String rules) {
+        return assertThrows(IOException.class, () -> RuleBook.parse(rules, "rules.txt"));
+    }
+
+    @Test
+    void parsesBlocksAndJoinsStrings() throws IOException {
+        RuleBook book = RuleBook.parse(RULES, "rules.txt");
+
+        assertEquals(2, book.suggestionCount());
+        assertEquals(1, book.taskCount());
+        HelloApplication.SuggestionRule lowMood = book.suggestion(0);
+        assertEquals("LOW_MOOD", lowMood.id);
+        assertEquals(10, lowMood.priority);
+        assertEquals("Be kind to yourself.\n", lowMood.suggestionText);
+        assertNull(lowMood.detailedExplanation);
+        assertEquals("Even \"one line\" helps.", book.suggestion(1).detailedExplanation);
+    }
+
+    @Test
+    void evaluatesConditions() throws IOException {
+        RuleBook book = RuleBook.parse(RULES, "rules.txt");
+        Facts facts = new Facts();
+        facts.metrics.put(RulePlan.Metric.MOOD_ENTRIES, 6L);
+        facts.metrics.put(RulePlan.Metric.JOURNAL_ENTRIES, 1L);
+        assertEquals(List.of(), suggestionIds(book, facts));
+
+        facts.moods.put("Sad", 1L);
+        facts.moods.put("Very Sad", 2L);
+        assertEquals(List.of("LOW_MOOD"), suggestionIds(book, facts));
+        assertEquals(1, book.tasksFor(facts).size());
+
+        facts.moods.clear();
+        facts.metrics.put(RulePlan.Metric.JOURNAL_ENTRIES, 0L);
+        facts.metrics.put(RulePlan.Metric.MOOD_ENTRIES, 5L);
+        assertEquals(List.of("QUIET_WEEK"), suggestionIds(book, facts));
+        assertEquals(0, book.tasksFor(facts).size());
+
+        facts.terms = book.keywordMatcher().match("So much stress at work.");
+        assertEquals("Breathing", book.tasksFor(facts).get(0).title);
+    }
+
+    @Test
+    void bundledRulesParse() throws IOException {
+        try (InputStream in = RuleBook.class.getResourceAsStream("rules.txt")) {
+            assertNotNull(in);
+            RuleBook book = RuleBook.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8), "rules.txt");
+            assertTrue(book.suggestionCount() > 0);
+            assertTrue(book.taskCount() > 0);
+        }
+    }
+
+    @Test
+    void emptyFileHasNoRules() throws IOException {
+        RuleBook book = RuleBook.parse("# nothing yet\n", "rules.txt");
+
+        assertEquals(0, book.suggestionCount());
+        assertEquals(List.of(), book.suggestionsFor(new Facts()));
+    }
+
+    @Test
+    void errorsNameTheFileAndLine() {
+        assertEquals("rules.txt line 2: expected 'define', 'suggestion' or 'task' but found 'rule'.",
+                parseError("\nrule X").getMessage());
+        assertEquals("rules.txt line 1: 'and' is a reserved word.",
+                parseError("define and = 1").getMessage());
+        assertEquals("rules.txt line 1: 'mood_entries' is a reserved word.",
+                parseError("define mood_entries = 1").getMessage());
+        assertEquals("rules.txt line 2: 'x' is already defined.",
+                parseError("define x = 1\ndefine x = 2").getMessage());
+    }
+
+    @Test
+    void errorsForIncompleteBlocks() {
+        assertEquals("rules.txt line 1: suggestion A needs 'priority', 'when', 'condition' and 'text'.",
+                parseError("suggestion A\n priority 1\n when true\n text \"t\"").getMessage());
+        assertEquals("rules.txt line 3: suggestion A is defined twice.",
+                parseError("suggestion A priority 1 when true condition \"c\" text \"t\"\n\nsuggestion A").getMessage());
+        assertEquals("rules.txt line 1: task \"T\" needs 'category', 'time', 'when' and 'description'.",
+                parseError("task \"T\" category \"c\" when true").getMessage());
+        assertEquals("rules.txt line 2: 'category' is not a suggestion property.",
+                parseError("suggestion A\n category \"c\"").getMessage());
+    }
+
+    @Test
+    void errorsInExpressions() {
+        assertEquals("rules.txt line 1: unknown name 'sadness'.",
+                parseError("suggestion A priority 1 when sadness > 1").getMessage());
+        assertEquals("rules.txt line 1: unknown mood \"Gloomy\".",
+                parseError("define m = mood(\"Gloomy\")").getMessage());
+        assertEquals("rules.txt line 1: empty string.",
+                parseError("define k = keywords(\" \")").getMessage());
+        assertEquals("rules.txt line 2: expected ')' but found the end of the file.",
+                parseError("define x = (1 +\n 2").getMessage());
+        assertEquals("rules.txt line 1: expected a whole number but found 1.5.",
+                parseError("suggestion A priority 1.5").getMessage());
+    }
+
+    @Test
+    void errorsInTokens() {
+        assertEquals("rules.txt line 1: unterminated string.",
+                parseError("task \"open\n").getMessage());
+        assertEquals("rules.txt line 1: unknown escape \\q.",
+                parseError("task \"a\\q\"").getMessage());
+        assertEquals("rules.txt line 3: unexpected character '@'.",
+                parseError("\n\ndefine x = @").getMessage());
+        assertEquals("rules.txt line 1: malformed number 1.2.3.",
+                parseError("define x = 1.2.3").getMessage());
+    }
+}
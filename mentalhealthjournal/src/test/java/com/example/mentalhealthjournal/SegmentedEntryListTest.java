@@ -0,0 +1,122 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedEntryListTest {
+
+    private static final SegmentedEntryList.Fields<HelloApplication.JournalEntry> FIELDS =
+            new SegmentedEntryList.Fields<>(e -> e.date, e -> e.moodKind, e -> e.content);
+    private static final LocalDate DAY = LocalDate.of(2024, 6, 1);
+
+    /** A sorted in-memory segment that counts how often rows are decoded. */
+    private static final class CountingSegment implements DateSegment<HelloApplication.JournalEntry> {
+        final List<HelloApplication.JournalEntry> rows;
+        int decoded;
+
+        CountingSegment(List<HelloApplication.JournalEntry> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int rows() {
+            return rows.size();
+        }
+
+        @Override
+        public int epochDay(int row) {
+            LocalDate date = rows.get(row).date;
+            return date != null ? (int) date.toEpochDay() : NO_DATE;
+        }
+
+        @Override
+        public HelloApplication.JournalEntry entry(int row) {
+            decoded++;
+            HelloApplication.JournalEntry entry = rows.get(row);
+            return new HelloApplication.JournalEntry(entry.date, entry.content, entry.mood);
+        }
+
+        @Override
+        public int moodScore(int row) {
+            return rows.get(row).moodKind.score;
+        }
+
+        @Override
+        public int textLength(int row) {
+            return RecordCodecs.utf8Length(rows.get(row).content);
+        }
+
+        @Override
+        public boolean sortedByDate() {
+            return true;
+        }
+    }
+
+    private static KeywordMatcher matcher(KeywordMatcher.Builder terms) {
+        terms.group("tired");
+        terms.group("panic", "worried");
+        return terms.build();
+    }
+
+    private static CountingSegment segment() {
+        return new CountingSegment(List.of(
+                new HelloApplication.JournalEntry(null, "undated and tired", "Sad"),
+                new HelloApplication.JournalEntry(DAY, "Tired after work", "Sad"),
+                new HelloApplication.JournalEntry(DAY.plusDays(1), "a calm day", "Calm")));
+    }
+
+    @Test
+    void segmentRowsAreScannedOncePerMatcher() {
+        CountingSegment segment = segment();
+        SegmentedEntryList<HelloApplication.JournalEntry> entries = new SegmentedEntryList<>(segment, new ArrayList<>(), FIELDS);
+        KeywordMatcher matcher = matcher(new KeywordMatcher.Builder());
+
+        BitSet first = entries.matchedTerms(1, matcher);
+        BitSet again = entries.matchedTerms(1, matcher);
+        entries.matchedTerms(2, matcher);
+
+        assertEquals(BitSet.valueOf(new long[]{1}), first);
+        assertSame(first, again);
+        assertTrue(entries.matchedTerms(2, matcher).isEmpty());
+        assertEquals(2, segment.decoded);
+
+        KeywordMatcher reloaded = matcher(new KeywordMatcher.Builder());
+        assertEquals(first, entries.matchedTerms(1, reloaded));
+        assertEquals(3, segment.decoded, "a new matcher scans again");
+    }
+
+    @Test
+    void entriesAddedAfterScanningAreScannedToo() {
+        SegmentedEntryList<HelloApplication.JournalEntry> entries = new SegmentedEntryList<>(segment(), new ArrayList<>(), FIELDS);
+        KeywordMatcher matcher = matcher(new KeywordMatcher.Builder());
+        entries.matchedTerms(0, matcher);
+
+        for (int i = 0; i < 10; i++) {
+            entries.add(new HelloApplication.JournalEntry(DAY.plusDays(2), "worried, then panic " + i, "Anxious"));
+        }
+
+        BitSet last = entries.matchedTerms(entries.size() - 1, matcher);
+        assertTrue(last.get(1) && last.get(2) && !last.get(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> entries.matchedTerms(entries.size(), matcher));
+    }
+
+    @Test
+    void epochDayReadsSegmentColumnAndRecentEntries() {
+        CountingSegment segment = segment();
+        SegmentedEntryList<HelloApplication.JournalEntry> entries = new SegmentedEntryList<>(segment, new ArrayList<>(), FIELDS);
+        entries.add(new HelloApplication.JournalEntry(DAY.plusDays(5), "recent", "Calm"));
+        entries.add(new HelloApplication.JournalEntry(null, "recent, undated", "Calm"));
+
+        assertEquals(DateSegment.NO_DATE, entries.epochDay(0));
+        assertEquals(DAY.toEpochDay(), entries.epochDay(1));
+        assertEquals(DAY.plusDays(5).toEpochDay(), entries.epochDay(3));
+        assertEquals(DateSegment.NO_DATE, entries.epochDay(4));
+        assertEquals(0, segment.decoded);
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.mentalhealthjournal;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SuggestionWindowTest {
+
+    private static final SegmentedEntryList.Fields<HelloApplication.JournalEntry> JOURNAL_FIELDS =
+            new SegmentedEntryList.Fields<>(e -> e.date, e -> e.moodKind, e -> e.content);
+    private static final LocalDate DAY = LocalDate.of(2024, 6, 1);
+
+    private static final String RULES = """
+            suggestion MOODY priority 1 when mood("Sad") >= 1 condition "c" text "t"
+            suggestion PANICKY priority 1 when keywords("panic") condition "c" text "t"
+            suggestion BUSY priority 1 when journal_entries >= 2 condition "c" text "t"
+            """;
+
+    private static final String[] WORDS = {
+            "panic", "stress", "tired", "sleep", "restless", "stuck", "bored", "pain", "overwhelm",
+            "a", "calm", "walk", "day", "work", "tense", "worried", "exhausted", "problem"};
+
+    /** The entry lists and streaks as the application keeps them, with the window on top. */
+    private static final class Journal {
+        final RuleBook rules;
+        final SegmentedEntryList<HelloApplication.JournalEntry> journalEntries =
+                new SegmentedEntryList<>(null, new ArrayList<>(), JOURNAL_FIELDS);
+        final MoodEntryList moodEntries = new MoodEntryList(null);
+        final LowMoodStreaks streaks = new LowMoodStreaks();
+        final SuggestionWindow window;
+
+        Journal(RuleBook rules, LocalDate today) {
+            this.rules = rules;
+            this.window = new SuggestionWindow(rules, journalEntries, moodEntries, streaks, today);
+        }
+
+        void write(LocalDate date, String content) {
+            HelloApplication.JournalEntry entry = new HelloApplication.JournalEntry(date, content, "Neutral");
+            journalEntries.add(entry);
+            window.journalEntryRecorded(entry);
+        }
+
+        void log(LocalDate date, String mood) {
+            HelloApplication.MoodEntry entry = new HelloApplication.MoodEntry(date, mood, "");
+            moodEntries.add(entry);
+            streaks.add(entry);
+            window.moodEntryRecorded(entry);
+        }
+
+        List<String> active(LocalDate today) {
+            return window.activeSuggestions(today).stream().map(rule -> rule.id).toList();
+        }
+
+        /** The suggestions evaluated from scratch: every fact recomputed from the full entry lists. */
+        List<String> expected(LocalDate today) {
+            long last = today.toEpochDay();
+            long first = last - SuggestionWindow.DAYS + 1;
+            Map<String, Long> moods = new HashMap<>();
+            Set<Long> lowDays = new HashSet<>();
+            Set<Long> loggedDays = new HashSet<>();
+            long moodCount = 0;
+            for (HelloApplication.MoodEntry entry : moodEntries) {
+                if (entry.date == null) continue;
+                long day = entry.date.toEpochDay();
+                loggedDays.add(day);
+                if (entry.moodKind.isLow()) lowDays.add(day);
+                if (day < first || day > last) continue;
+                moodCount++;
+                moods.merge(entry.moodKind.label, 1L, Long::sum);
+            }
+            BitSet terms = new BitSet();
+            long journalCount = 0;
+            for (HelloApplication.JournalEntry entry : journalEntries) {
+                if (entry.date == null || entry.date.toEpochDay() < first || entry.date.toEpochDay() > last) continue;
+                journalCount++;
+                terms.or(rules.keywordMatcher().match(entry.content));
+            }
+            long currentEnd = loggedDays.contains(last) ? last : last - 1;
+            Map<RulePlan.Metric, Long> metrics = new EnumMap<>(RulePlan.Metric.class);
+            metrics.put(RulePlan.Metric.JOURNAL_ENTRIES, journalCount);
+            metrics.put(RulePlan.Metric.MOOD_ENTRIES, moodCount);
+            metrics.put(RulePlan.Metric.LOW_MOOD_STREAK, longestRun(lowDays, first, last));
+            metrics.put(RulePlan.Metric.CURRENT_LOW_MOOD_STREAK, runEndingAt(lowDays, currentEnd));
+            metrics.put(RulePlan.Metric.LONGEST_LOW_MOOD_STREAK,
+                    lowDays.stream().mapToLong(day -> runEndingAt(lowDays, day)).max().orElse(0));
+            RulePlan.Facts facts = new RulePlan.Facts() {
+                @Override
+                public long moodCount(String mood) {
+                    Mood kind = Mood.find(mood);
+                    return kind != null ? moods.getOrDefault(kind.label, 0L) : 0;
+                }
+
+                @Override
+                public BitSet matchedTerms() {
+                    return terms;
+                }
+
+                @Override
+                public long metric(RulePlan.Metric metric) {
+                    return metrics.get(metric);
+                }
+            };
+            return rules.suggestionsFor(facts).stream().map(rule -> rule.id).toList();
+        }
+    }
+
+    private static long runEndingAt(Set<Long> lowDays, long day) {
+        long length = 0;
+        while (lowDays.contains(day - length)) length++;
+        return length;
+    }
+
+    private static long longestRun(Set<Long> lowDays, long first, long last) {
+        long best = 0;
+        long run = 0;
+        for (long day = first; day <= last; day++) {
+            run = lowDays.contains(day) ? run + 1 : 0;
+            best = Math.max(best, run);
+        }
+        return best;
+    }
+
+    private static RuleBook bundledRules() throws IOException {
+        try (InputStream in = RuleBook.class.getResourceAsStream("rules.txt")) {
+            assertNotNull(in);
+            return RuleBook.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8), "rules.txt");
+        }
+    }
+
+    @Test
+    void matchesAFromScratchEvaluationAcrossInsertsAndDateChanges() throws IOException {
+        RuleBook rules = bundledRules();
+        Mood[] moods = Mood.values();
+        Random random = new Random(7);
+        LocalDate today = DAY;
+        Journal journal = new Journal(rules, today);
+        Set<List<String>> outcomes = new HashSet<>();
+
+        for (int step = 0; step < 3000; step++) {
+            int action = random.nextInt(20);
+            LocalDate date = random.nextInt(15) == 0 ? null : today.plusDays(random.nextInt(12) - 9);
+            if (action < 8) {
+                StringBuilder content = new StringBuilder();
+                for (int i = random.nextInt(4); i >= 0; i--) content.append(WORDS[random.nextInt(WORDS.length)]).append(". ");
+                journal.write(date, content.toString());
+            } else if (action < 16) {
+                journal.log(date, moods[random.nextInt(moods.length)].label);
+            } else if (action < 18) {
+                today = today.plusDays(1);
+            } else if (action == 18) {
+                today = today.plusDays(random.nextInt(12));
+            } else {
+                today = today.minusDays(1 + random.nextInt(10));
+            }
+            List<String> expected = journal.expected(today);
+            assertEquals(expected, journal.active(today), "step " + step + " on " + today);
+            outcomes.add(expected);
+        }
+        assertTrue(outcomes.size() > 10, "the entries should exercise many combinations of rules");
+    }
+
+    @Test
+    void reTestsOnlyTheRulesWhoseInputsChanged() throws IOException {
+        RuleBook rules = RuleBook.parse(RULES, "rules.txt");
+        Journal journal = new Journal(rules, DAY);
+        assertEquals(List.of(), journal.active(DAY));
+
+        // The terms node, and the journal count with its comparison; not the mood rule.
+        journal.write(DAY, "Panic at work");
+        assertEquals(3, journal.window.recomputedNodes());
+        assertEquals(List.of("PANICKY"), journal.active(DAY));
+
+        // The mood count and its comparison; the keyword and journal count rules are untouched.
+        journal.log(DAY, "Sad");
+        assertEquals(2, journal.window.recomputedNodes());
+        assertEquals(List.of("MOODY", "PANICKY"), journal.active(DAY));
+
+        // A day later nothing has left the window: only the journal count is re-read.
+        assertEquals(List.of("MOODY", "PANICKY"), journal.active(DAY.plusDays(1)));
+        assertEquals(1, journal.window.recomputedNodes());
+
+        // Entries outside the window change nothing.
+        journal.write(DAY.minusDays(6), "panic");
+        journal.write(DAY.plusDays(10), "panic");
+        assertEquals(List.of("MOODY", "PANICKY"), journal.active(DAY.plusDays(1)));
+
+        // An entry dated later comes in as the window slides to it.
+        journal.write(DAY.plusDays(3), "panic again");
+        assertEquals(List.of("MOODY", "PANICKY", "BUSY"), journal.active(DAY.plusDays(6)));
+
+        // When the first day leaves, its mood is subtracted; "panic" is still in the window, so only the
+        // mood count and the journal count are re-tested, each with its comparison.
+        assertEquals(List.of("PANICKY"), journal.active(DAY.plusDays(7)));
+        assertEquals(4, journal.window.recomputedNodes());
+        assertEquals(List.of("PANICKY"), journal.active(DAY.plusDays(10)));
+        assertEquals(List.of(), journal.active(DAY.plusDays(17)));
+    }
+
+    @Test
+    void jumpsOfAWeekOrBackwardsRefillTheWindow() throws IOException {
+        RuleBook rules = RuleBook.parse(RULES, "rules.txt");
+        Journal journal = new Journal(rules, DAY);
+        journal.write(DAY, "panic");
+        journal.write(DAY, "more panic");
+        journal.log(DAY, "Sad");
+        int nodes = rules.planNodeCount();
+        assertEquals(List.of("MOODY", "PANICKY", "BUSY"), journal.active(DAY));
+
+        assertEquals(List.of(), journal.active(DAY.plusDays(SuggestionWindow.DAYS)));
+        assertEquals(nodes, journal.window.recomputedNodes());
+
+        assertEquals(List.of("MOODY", "PANICKY", "BUSY"), journal.active(DAY.plusDays(3)));
+        assertEquals(nodes, journal.window.recomputedNodes());
+
+        // Backwards, the entries after the new day are left out.
+        assertEquals(List.of(), journal.active(DAY.minusDays(1)));
+        assertEquals(nodes, journal.window.recomputedNodes());
+    }
+}